@@ -0,0 +1,178 @@
+package net.spookly.kodama.brain.service;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import net.spookly.kodama.brain.BrainApplication;
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceState;
+import net.spookly.kodama.brain.domain.instance.InstanceTemplateLayer;
+import net.spookly.kodama.brain.domain.template.Template;
+import net.spookly.kodama.brain.domain.template.TemplateType;
+import net.spookly.kodama.brain.domain.template.TemplateVersion;
+import net.spookly.kodama.brain.dto.InstanceDto;
+import net.spookly.kodama.brain.repository.InstanceRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.MySQLContainer;
+
+/**
+ * Lists every instance through {@link InstanceService#listInstances()} against a MySQL container seeded with
+ * {@code instanceCount} instances of one template layer each. {@code findAllInstances} loads only the instances, so
+ * the difference between the two is the layer lookup and DTO mapping. Requires Docker.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InstanceListingBenchmark {
+
+    private static final int SEED_BATCH_SIZE = 1_000;
+    private static final UUID REQUESTER_ID = UUID.fromString("00000000-0000-0000-0000-000000000002");
+
+    @Param({"1000", "10000", "100000"})
+    public int instanceCount;
+
+    private MySQLContainer<?> mysql;
+    private ConfigurableApplicationContext context;
+    private InstanceService instanceService;
+    private InstanceRepository instanceRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mysql = new MySQLContainer<>("mysql:8.4.0");
+        mysql.start();
+        context = new SpringApplicationBuilder(BenchmarkConfig.class)
+                .web(WebApplicationType.NONE)
+                .properties(Map.of(
+                        "spring.datasource.url", mysql.getJdbcUrl(),
+                        "spring.datasource.username", mysql.getUsername(),
+                        "spring.datasource.password", mysql.getPassword(),
+                        "spring.datasource.driver-class-name", mysql.getDriverClassName(),
+                        "spring.jpa.hibernate.ddl-auto", "validate",
+                        "spring.jpa.open-in-view", "false",
+                        "spring.jpa.properties.hibernate.jdbc.batch_size", String.valueOf(SEED_BATCH_SIZE),
+                        "spring.jpa.properties.hibernate.order_inserts", "true",
+                        "spring.main.banner-mode", "off"
+                ))
+                .run();
+        instanceService = context.getBean(InstanceService.class);
+        instanceRepository = context.getBean(InstanceRepository.class);
+        seed();
+    }
+
+    @Benchmark
+    public List<InstanceDto> listInstances() {
+        return instanceService.listInstances();
+    }
+
+    @Benchmark
+    public List<Instance> findAllInstances() {
+        return instanceRepository.findAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        if (mysql != null) {
+            mysql.stop();
+        }
+    }
+
+    private void seed() {
+        TransactionTemplate transactions = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        EntityManager entityManager = context.getBean(EntityManager.class);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        UUID versionId = transactions.execute(status -> {
+            Template template = new Template("bench", "Benchmark template", TemplateType.CUSTOM, now, REQUESTER_ID);
+            entityManager.persist(template);
+            TemplateVersion version = new TemplateVersion(
+                    template,
+                    "1.0.0",
+                    "a".repeat(64),
+                    "templates/bench/1.0.0.tar.gz",
+                    null,
+                    now
+            );
+            entityManager.persist(version);
+            return version.getId();
+        });
+        for (int start = 0; start < instanceCount; start += SEED_BATCH_SIZE) {
+            int end = Math.min(instanceCount, start + SEED_BATCH_SIZE);
+            int batchStart = start;
+            transactions.executeWithoutResult(status -> {
+                TemplateVersion version = entityManager.getReference(TemplateVersion.class, versionId);
+                for (int index = batchStart; index < end; index++) {
+                    Instance instance = new Instance(
+                            "instance-" + index,
+                            "Instance " + index,
+                            InstanceState.RUNNING,
+                            REQUESTER_ID,
+                            null,
+                            "eu-west-1",
+                            null,
+                            null,
+                            null,
+                            "{\"WORLD\":\"world-" + index + "\"}",
+                            now,
+                            now
+                    );
+                    entityManager.persist(instance);
+                    entityManager.persist(new InstanceTemplateLayer(instance, version, 0));
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+        }
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    @AutoConfigurationPackage(basePackageClasses = BrainApplication.class)
+    @Import({InstanceService.class, InstanceStateMachine.class, PrepareTraceService.class})
+    static class BenchmarkConfig {
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.spookly.kodama.brain.service;
+
+import java.lang.reflect.Proxy;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceEventType;
+import net.spookly.kodama.brain.domain.instance.InstanceState;
+import net.spookly.kodama.brain.repository.InstanceEventRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Drives an instance around the start/stop cycle with an event repository that discards events, measuring the
+ * validation and bookkeeping cost of {@link InstanceStateMachine#transition} without the database write.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InstanceStateMachineBenchmark {
+
+    private static final InstanceState[] CYCLE = {
+            InstanceState.STOPPING,
+            InstanceState.STOPPED,
+            InstanceState.STARTING,
+            InstanceState.RUNNING
+    };
+    private static final InstanceEventType[] CYCLE_EVENTS = {
+            InstanceEventType.STOP_DISPATCHED,
+            InstanceEventType.STOP_COMPLETED,
+            InstanceEventType.START_DISPATCHED,
+            InstanceEventType.START_COMPLETED
+    };
+
+    private InstanceStateMachine stateMachine;
+    private Instance instance;
+    private OffsetDateTime timestamp;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InstanceEventRepository discardingRepository = (InstanceEventRepository) Proxy.newProxyInstance(
+                InstanceEventRepository.class.getClassLoader(),
+                new Class<?>[] {InstanceEventRepository.class},
+                (proxy, method, args) -> "save".equals(method.getName()) ? args[0] : null
+        );
+        stateMachine = new InstanceStateMachine(discardingRepository);
+        timestamp = OffsetDateTime.now(ZoneOffset.UTC);
+        instance = new Instance(
+                "bench-instance",
+                "Bench Instance",
+                InstanceState.RUNNING,
+                UUID.randomUUID(),
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                timestamp,
+                timestamp
+        );
+    }
+
+    @Benchmark
+    public Instance transition() {
+        int index = step;
+        step = (step + 1) % CYCLE.length;
+        stateMachine.transition(instance, CYCLE[index], CYCLE_EVENTS[index], timestamp);
+        return instance;
+    }
+}
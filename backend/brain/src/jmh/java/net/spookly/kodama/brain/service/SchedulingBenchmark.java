@@ -0,0 +1,97 @@
+package net.spookly.kodama.brain.service;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Selects a node from {@code nodeCount} candidates spread over four regions, with random tag sets drawn from eight
+ * tags. Nine in ten nodes are online and a fifth of them are full, so filtering and ordering both do real work.
+ * The {@link NodeSchedulingIndex} is built once per trial, as it is in the Brain, so only selection is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulingBenchmark {
+
+    private static final String[] REGIONS = {"eu-west-1", "eu-central-1", "us-east-1", "ap-south-1"};
+    private static final String[] TAGS = {"modded", "ssd", "high-memory", "gpu", "lobby", "minigames", "beta", "ipv6"};
+
+    @Param({"10", "100", "1000", "10000"})
+    public int nodeCount;
+
+    /**
+     * Tags requested by the instance; empty means no tag filter.
+     */
+    @Param({"", "modded", "modded,ssd,high-memory"})
+    public String requestedTags;
+
+    private NodeSchedulingIndex nodeIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Map<UUID, Node> nodes = new HashMap<>(nodeCount);
+        for (int index = 0; index < nodeCount; index++) {
+            int capacity = 8 + random.nextInt(24);
+            int usedSlots = random.nextInt(5) == 0 ? capacity : random.nextInt(capacity);
+            nodes.put(new UUID(0, index), new Node(
+                    "node-" + index,
+                    REGIONS[index % REGIONS.length],
+                    random.nextInt(10) == 0 ? NodeStatus.OFFLINE : NodeStatus.ONLINE,
+                    false,
+                    capacity,
+                    usedSlots,
+                    now,
+                    "1.0.0",
+                    randomTags(random),
+                    "http://node-" + index + ".internal"
+            ));
+        }
+        nodeIndex = NodeSchedulingIndex.of(nodes);
+    }
+
+    @Benchmark
+    public UUID selectInRegion() {
+        return nodeIndex.select("eu-west-1", requestedTags, false);
+    }
+
+    @Benchmark
+    public UUID selectAnyRegion() {
+        return nodeIndex.select(null, requestedTags, null);
+    }
+
+    private static String randomTags(Random random) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (String tag : TAGS) {
+            if (random.nextBoolean()) {
+                joiner.add(tag);
+            }
+        }
+        return joiner.toString();
+    }
+}
@@ -1,21 +1,74 @@
 package net.spookly.kodama.brain.config;
 
-import java.time.Duration;
-
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+/**
+ * HTTP client for Brain to node commands. Connections are pooled and kept alive per node ({@code baseUrl} route),
+ * so bulk operations reuse a few connections per node instead of opening one per command.
+ */
 @Configuration
 public class NodeClientConfig {
 
+    private static final TimeValue CONNECTION_TIME_TO_LIVE = TimeValue.ofMinutes(5);
+    private static final TimeValue VALIDATE_AFTER_INACTIVITY = TimeValue.ofSeconds(2);
+
+    @Bean
+    public PoolingHttpClientConnectionManager nodeConnectionManager(
+            NodeProperties nodeProperties,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        Timeout timeout = Timeout.ofSeconds(nodeProperties.getCommandTimeoutSeconds());
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(nodeProperties.getCommandMaxConnections())
+                .setMaxConnPerRoute(nodeProperties.getCommandMaxConnectionsPerNode())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(timeout)
+                        .setSocketTimeout(timeout)
+                        .setTimeToLive(CONNECTION_TIME_TO_LIVE)
+                        .setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY)
+                        .build())
+                .build();
+        meterRegistry.ifAvailable(registry ->
+                new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "node-commands")
+                        .bindTo(registry));
+        return connectionManager;
+    }
+
+    @Bean
+    public CloseableHttpClient nodeHttpClient(
+            NodeProperties nodeProperties,
+            PoolingHttpClientConnectionManager nodeConnectionManager
+    ) {
+        Timeout timeout = Timeout.ofSeconds(nodeProperties.getCommandTimeoutSeconds());
+        return HttpClients.custom()
+                .setConnectionManager(nodeConnectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeout)
+                        .setResponseTimeout(timeout)
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(nodeProperties.getCommandConnectionIdleSeconds()))
+                // CommandDispatcherService and the outbox decide what to retry.
+                .disableAutomaticRetries()
+                .build();
+    }
+
     @Bean
-    public RestTemplate nodeRestTemplate(NodeProperties nodeProperties) {
-        int timeoutMillis = (int) Duration.ofSeconds(nodeProperties.getCommandTimeoutSeconds()).toMillis();
-        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
-        requestFactory.setConnectTimeout(timeoutMillis);
-        requestFactory.setReadTimeout(timeoutMillis);
-        return new RestTemplate(requestFactory);
+    public RestTemplate nodeRestTemplate(CloseableHttpClient nodeHttpClient) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(nodeHttpClient));
     }
 }
@@ -0,0 +1,38 @@
+package net.spookly.kodama.brain.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.brain.controller.NodeCommandStreamHandler;
+import net.spookly.kodama.brain.service.NodeCommandStreamService;
+import net.spookly.kodama.brain.service.NodeService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+/**
+ * Exposes the node command stream when {@code node.command-stream-enabled} is set. Without it nodes keep using the
+ * HTTP command and callback endpoints only.
+ */
+@Configuration
+@EnableWebSocket
+@ConditionalOnProperty(prefix = "node", name = "command-stream-enabled", havingValue = "true")
+public class NodeCommandStreamConfig implements WebSocketConfigurer {
+
+    private final NodeCommandStreamHandler handler;
+
+    public NodeCommandStreamConfig(
+            NodeCommandStreamService streamService,
+            NodeService nodeService,
+            BrainSecurityProperties securityProperties,
+            ObjectMapper objectMapper
+    ) {
+        this.handler = new NodeCommandStreamHandler(streamService, nodeService, securityProperties, objectMapper);
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(handler, NodeCommandStreamHandler.PATH)
+                .addInterceptors(handler);
+    }
+}
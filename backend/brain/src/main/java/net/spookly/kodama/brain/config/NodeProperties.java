@@ -26,6 +26,48 @@ public class NodeProperties {
     @Min(0)
     private long commandRetryBackoffMillis = 500;
 
+    @Min(0)
+    private long commandRetryMaxBackoffMillis = 30_000;
+
+    @Min(1)
+    private int commandMaxConnections = 64;
+
+    @Min(1)
+    private int commandMaxConnectionsPerNode = 8;
+
+    @Min(1)
+    private int commandConnectionIdleSeconds = 60;
+
+    @Min(1)
+    private int commandCircuitFailureThreshold = 5;
+
+    @Min(1)
+    private int commandCircuitOpenSeconds = 30;
+
+    @Min(1)
+    private int commandMaxConcurrency = 64;
+
+    @Min(1)
+    private int commandMaxConcurrencyPerNode = 4;
+
+    @Min(1)
+    private int commandOutboxMaxAttempts = 8;
+
+    @Min(1)
+    private int commandOutboxPollIntervalSeconds = 5;
+
+    @Min(1)
+    private int commandOutboxRetentionHours = 24;
+
+    /**
+     * Accept node command streams. The node agent has no stream command handlers yet, so streams currently carry
+     * heartbeats and callbacks only and commands keep going over HTTP.
+     */
+    private boolean commandStreamEnabled = false;
+
+    @Min(1)
+    private int schedulingIndexRefreshSeconds = 60;
+
     public int getHeartbeatIntervalSeconds() {
         return heartbeatIntervalSeconds;
     }
@@ -73,4 +115,108 @@ public class NodeProperties {
     public void setCommandRetryBackoffMillis(long commandRetryBackoffMillis) {
         this.commandRetryBackoffMillis = commandRetryBackoffMillis;
     }
+
+    public long getCommandRetryMaxBackoffMillis() {
+        return commandRetryMaxBackoffMillis;
+    }
+
+    public void setCommandRetryMaxBackoffMillis(long commandRetryMaxBackoffMillis) {
+        this.commandRetryMaxBackoffMillis = commandRetryMaxBackoffMillis;
+    }
+
+    public int getCommandMaxConnections() {
+        return commandMaxConnections;
+    }
+
+    public void setCommandMaxConnections(int commandMaxConnections) {
+        this.commandMaxConnections = commandMaxConnections;
+    }
+
+    public int getCommandMaxConnectionsPerNode() {
+        return commandMaxConnectionsPerNode;
+    }
+
+    public void setCommandMaxConnectionsPerNode(int commandMaxConnectionsPerNode) {
+        this.commandMaxConnectionsPerNode = commandMaxConnectionsPerNode;
+    }
+
+    public int getCommandConnectionIdleSeconds() {
+        return commandConnectionIdleSeconds;
+    }
+
+    public void setCommandConnectionIdleSeconds(int commandConnectionIdleSeconds) {
+        this.commandConnectionIdleSeconds = commandConnectionIdleSeconds;
+    }
+
+    public int getCommandCircuitFailureThreshold() {
+        return commandCircuitFailureThreshold;
+    }
+
+    public void setCommandCircuitFailureThreshold(int commandCircuitFailureThreshold) {
+        this.commandCircuitFailureThreshold = commandCircuitFailureThreshold;
+    }
+
+    public int getCommandCircuitOpenSeconds() {
+        return commandCircuitOpenSeconds;
+    }
+
+    public void setCommandCircuitOpenSeconds(int commandCircuitOpenSeconds) {
+        this.commandCircuitOpenSeconds = commandCircuitOpenSeconds;
+    }
+
+    public int getCommandMaxConcurrency() {
+        return commandMaxConcurrency;
+    }
+
+    public void setCommandMaxConcurrency(int commandMaxConcurrency) {
+        this.commandMaxConcurrency = commandMaxConcurrency;
+    }
+
+    public int getCommandMaxConcurrencyPerNode() {
+        return commandMaxConcurrencyPerNode;
+    }
+
+    public void setCommandMaxConcurrencyPerNode(int commandMaxConcurrencyPerNode) {
+        this.commandMaxConcurrencyPerNode = commandMaxConcurrencyPerNode;
+    }
+
+    public int getCommandOutboxMaxAttempts() {
+        return commandOutboxMaxAttempts;
+    }
+
+    public void setCommandOutboxMaxAttempts(int commandOutboxMaxAttempts) {
+        this.commandOutboxMaxAttempts = commandOutboxMaxAttempts;
+    }
+
+    public int getCommandOutboxPollIntervalSeconds() {
+        return commandOutboxPollIntervalSeconds;
+    }
+
+    public void setCommandOutboxPollIntervalSeconds(int commandOutboxPollIntervalSeconds) {
+        this.commandOutboxPollIntervalSeconds = commandOutboxPollIntervalSeconds;
+    }
+
+    public int getCommandOutboxRetentionHours() {
+        return commandOutboxRetentionHours;
+    }
+
+    public void setCommandOutboxRetentionHours(int commandOutboxRetentionHours) {
+        this.commandOutboxRetentionHours = commandOutboxRetentionHours;
+    }
+
+    public boolean isCommandStreamEnabled() {
+        return commandStreamEnabled;
+    }
+
+    public void setCommandStreamEnabled(boolean commandStreamEnabled) {
+        this.commandStreamEnabled = commandStreamEnabled;
+    }
+
+    public int getSchedulingIndexRefreshSeconds() {
+        return schedulingIndexRefreshSeconds;
+    }
+
+    public void setSchedulingIndexRefreshSeconds(int schedulingIndexRefreshSeconds) {
+        this.schedulingIndexRefreshSeconds = schedulingIndexRefreshSeconds;
+    }
 }
@@ -4,8 +4,12 @@ import java.util.List;
 import java.util.UUID;
 
 import jakarta.validation.Valid;
+import net.spookly.kodama.brain.dto.BulkCreateInstancesRequest;
+import net.spookly.kodama.brain.dto.BulkInstanceActionRequest;
+import net.spookly.kodama.brain.dto.BulkInstanceResponse;
 import net.spookly.kodama.brain.dto.CreateInstanceRequest;
 import net.spookly.kodama.brain.dto.InstanceDto;
+import net.spookly.kodama.brain.service.InstanceBulkService;
 import net.spookly.kodama.brain.service.InstanceService;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -22,9 +26,11 @@ import org.springframework.web.bind.annotation.RestController;
 public class InstanceController {
 
     private final InstanceService instanceService;
+    private final InstanceBulkService instanceBulkService;
 
-    public InstanceController(InstanceService instanceService) {
+    public InstanceController(InstanceService instanceService, InstanceBulkService instanceBulkService) {
         this.instanceService = instanceService;
+        this.instanceBulkService = instanceBulkService;
     }
 
     @GetMapping
@@ -45,4 +51,22 @@ public class InstanceController {
     public InstanceDto createInstance(@Valid @RequestBody CreateInstanceRequest request) {
         return instanceService.createInstance(request);
     }
+
+    @PostMapping("/bulk")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN','ROLE_OPERATOR')")
+    public BulkInstanceResponse createInstances(@Valid @RequestBody BulkCreateInstancesRequest request) {
+        return new BulkInstanceResponse(instanceService.createInstances(request.getInstances()));
+    }
+
+    @PostMapping("/bulk/stop")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN','ROLE_OPERATOR')")
+    public BulkInstanceResponse stopInstances(@Valid @RequestBody BulkInstanceActionRequest request) {
+        return new BulkInstanceResponse(instanceBulkService.stopInstances(request.getInstanceIds()));
+    }
+
+    @PostMapping("/bulk/destroy")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN','ROLE_OPERATOR')")
+    public BulkInstanceResponse destroyInstances(@Valid @RequestBody BulkInstanceActionRequest request) {
+        return new BulkInstanceResponse(instanceBulkService.destroyInstances(request.getInstanceIds()));
+    }
 }
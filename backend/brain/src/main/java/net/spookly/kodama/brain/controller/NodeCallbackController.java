@@ -2,17 +2,24 @@ package net.spookly.kodama.brain.controller;
 
 import java.util.UUID;
 
+import jakarta.validation.Valid;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchRequest;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchResponse;
+import net.spookly.kodama.brain.dto.node.NodePreparedCallbackRequest;
+import net.spookly.kodama.brain.service.CommandDispatcherService;
 import net.spookly.kodama.brain.service.InstanceService;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
-@RequestMapping("/api/nodes/{nodeId}/instances/{instanceId}")
+@RequestMapping("/api/nodes/{nodeId}/instances")
 public class NodeCallbackController {
 
     private final InstanceService instanceService;
@@ -21,35 +28,56 @@ public class NodeCallbackController {
         this.instanceService = instanceService;
     }
 
-    @PostMapping("/prepared")
+    @PostMapping("/callbacks")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasAuthority('ROLE_NODE')")
-    public void prepared(@PathVariable UUID nodeId, @PathVariable UUID instanceId) {
-        instanceService.reportInstancePrepared(nodeId, instanceId);
+    public NodeCallbackBatchResponse callbacks(
+            @PathVariable UUID nodeId,
+            @Valid @RequestBody NodeCallbackBatchRequest request
+    ) {
+        return new NodeCallbackBatchResponse(instanceService.reportInstanceCallbacks(nodeId, request.getCallbacks()));
     }
 
-    @PostMapping("/running")
+    @PostMapping("/{instanceId}/prepared")
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasAuthority('ROLE_NODE')")
+    public void prepared(
+            @PathVariable UUID nodeId,
+            @PathVariable UUID instanceId,
+            @RequestHeader(name = CommandDispatcherService.TRACE_ID_HEADER, required = false) String traceHeader,
+            @Valid @RequestBody(required = false) NodePreparedCallbackRequest request
+    ) {
+        String traceId = request != null && request.getTraceId() != null ? request.getTraceId() : traceHeader;
+        instanceService.reportInstancePrepared(
+                nodeId,
+                instanceId,
+                traceId,
+                request == null ? null : request.getPhases()
+        );
+    }
+
+    @PostMapping("/{instanceId}/running")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasAuthority('ROLE_NODE')")
     public void running(@PathVariable UUID nodeId, @PathVariable UUID instanceId) {
         instanceService.reportInstanceRunning(nodeId, instanceId);
     }
 
-    @PostMapping("/stopped")
+    @PostMapping("/{instanceId}/stopped")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasAuthority('ROLE_NODE')")
     public void stopped(@PathVariable UUID nodeId, @PathVariable UUID instanceId) {
         instanceService.reportInstanceStopped(nodeId, instanceId);
     }
 
-    @PostMapping("/destroyed")
+    @PostMapping("/{instanceId}/destroyed")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasAuthority('ROLE_NODE')")
     public void destroyed(@PathVariable UUID nodeId, @PathVariable UUID instanceId) {
         instanceService.reportInstanceDestroyed(nodeId, instanceId);
     }
 
-    @PostMapping("/failed")
+    @PostMapping("/{instanceId}/failed")
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasAuthority('ROLE_NODE')")
     public void failed(@PathVariable UUID nodeId, @PathVariable UUID instanceId) {
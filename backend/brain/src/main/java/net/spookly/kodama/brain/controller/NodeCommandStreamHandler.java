@@ -0,0 +1,145 @@
+package net.spookly.kodama.brain.controller;
+
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.brain.config.BrainSecurityProperties;
+import net.spookly.kodama.brain.dto.node.NodeStreamMessage;
+import net.spookly.kodama.brain.service.NodeCommandStreamService;
+import net.spookly.kodama.brain.service.NodeService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+/**
+ * WebSocket endpoint {@code /api/nodes/{nodeId}/command-stream}. The handshake is authenticated by
+ * {@link net.spookly.kodama.brain.security.NodeAuthFilter} like every other node endpoint; frames are handed to
+ * {@link NodeCommandStreamService}.
+ */
+public class NodeCommandStreamHandler extends TextWebSocketHandler implements HandshakeInterceptor {
+
+    public static final String PATH = "/api/nodes/*/command-stream";
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCommandStreamHandler.class);
+    private static final String NODE_AUTHORITY = "ROLE_NODE";
+    private static final String NODE_ID_ATTRIBUTE = "kodama.nodeId";
+
+    private final NodeCommandStreamService streamService;
+    private final NodeService nodeService;
+    private final BrainSecurityProperties securityProperties;
+    private final ObjectMapper objectMapper;
+
+    public NodeCommandStreamHandler(
+            NodeCommandStreamService streamService,
+            NodeService nodeService,
+            BrainSecurityProperties securityProperties,
+            ObjectMapper objectMapper
+    ) {
+        this.streamService = streamService;
+        this.nodeService = nodeService;
+        this.securityProperties = securityProperties;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public boolean beforeHandshake(
+            ServerHttpRequest request,
+            ServerHttpResponse response,
+            WebSocketHandler wsHandler,
+            Map<String, Object> attributes
+    ) {
+        if (securityProperties.isEnabled() && !hasNodeAuthority()) {
+            response.setStatusCode(HttpStatus.FORBIDDEN);
+            return false;
+        }
+        UUID nodeId = parseNodeId(request.getURI().getPath());
+        if (nodeId == null || !nodeService.nodeExists(nodeId)) {
+            response.setStatusCode(HttpStatus.NOT_FOUND);
+            return false;
+        }
+        attributes.put(NODE_ID_ATTRIBUTE, nodeId);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(
+            ServerHttpRequest request,
+            ServerHttpResponse response,
+            WebSocketHandler wsHandler,
+            Exception exception
+    ) {
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        streamService.register(nodeId(session), session);
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        UUID nodeId = nodeId(session);
+        NodeStreamMessage frame;
+        try {
+            frame = objectMapper.readValue(message.getPayload(), NodeStreamMessage.class);
+        } catch (JsonProcessingException ex) {
+            logger.warn("Dropping malformed node stream frame nodeId={}: {}", nodeId, ex.getOriginalMessage());
+            return;
+        }
+        if (frame.getType() == null) {
+            logger.warn("Dropping node stream frame without type nodeId={}", nodeId);
+            return;
+        }
+        streamService.handleMessage(nodeId, session, frame);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        logger.debug("Node command stream transport error nodeId={}", nodeId(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        streamService.unregister(nodeId(session), session);
+    }
+
+    static UUID parseNodeId(String path) {
+        if (path == null) {
+            return null;
+        }
+        String[] segments = path.split("/");
+        // ["", "api", "nodes", "{nodeId}", "command-stream"], possibly behind a context path.
+        for (int i = 0; i + 2 < segments.length; i++) {
+            if ("nodes".equals(segments[i]) && "command-stream".equals(segments[i + 2])) {
+                try {
+                    return UUID.fromString(segments[i + 1]);
+                } catch (IllegalArgumentException ex) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean hasNodeAuthority() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null
+                && authentication.getAuthorities().stream()
+                        .anyMatch(authority -> NODE_AUTHORITY.equals(authority.getAuthority()));
+    }
+
+    private UUID nodeId(WebSocketSession session) {
+        return (UUID) session.getAttributes().get(NODE_ID_ATTRIBUTE);
+    }
+}
@@ -0,0 +1,28 @@
+package net.spookly.kodama.brain.controller;
+
+import java.util.List;
+
+import net.spookly.kodama.brain.dto.PrepareTraceDto;
+import net.spookly.kodama.brain.service.PrepareTraceService;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/prepare-traces")
+public class PrepareTraceController {
+
+    private final PrepareTraceService prepareTraceService;
+
+    public PrepareTraceController(PrepareTraceService prepareTraceService) {
+        this.prepareTraceService = prepareTraceService;
+    }
+
+    @GetMapping("/slowest")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN','ROLE_OPERATOR','ROLE_VIEWER')")
+    public List<PrepareTraceDto> listSlowest(@RequestParam(defaultValue = "20") int limit) {
+        return prepareTraceService.findSlowest(limit);
+    }
+}
@@ -7,6 +7,7 @@ import jakarta.validation.Valid;
 import net.spookly.kodama.brain.dto.CreateTemplateRequest;
 import net.spookly.kodama.brain.dto.CreateTemplateVersionRequest;
 import net.spookly.kodama.brain.dto.TemplateDto;
+import net.spookly.kodama.brain.dto.TemplateFileManifestEntry;
 import net.spookly.kodama.brain.dto.TemplateVersionDto;
 import net.spookly.kodama.brain.service.TemplateService;
 import org.springframework.http.HttpStatus;
@@ -63,4 +64,10 @@ public class TemplateController {
     public List<TemplateVersionDto> listVersions(@PathVariable UUID id) {
         return templateService.listVersions(id);
     }
+
+    @GetMapping("/{id}/versions/{versionId}/manifest")
+    @PreAuthorize("hasAnyAuthority('ROLE_ADMIN','ROLE_OPERATOR','ROLE_VIEWER')")
+    public List<TemplateFileManifestEntry> getVersionManifest(@PathVariable UUID id, @PathVariable UUID versionId) {
+        return templateService.getVersionManifest(id, versionId);
+    }
 }
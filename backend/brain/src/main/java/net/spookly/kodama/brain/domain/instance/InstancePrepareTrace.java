@@ -0,0 +1,87 @@
+package net.spookly.kodama.brain.domain.instance;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.Lob;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import net.spookly.kodama.brain.domain.node.Node;
+import org.hibernate.annotations.UuidGenerator;
+
+/**
+ * Timing of one prepare command, from the moment the Brain dispatched it until the node reported
+ * {@code /prepared}. The phase breakdown reported by the node is kept as JSON.
+ */
+@Entity
+@Table(name = "instance_prepare_traces")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class InstancePrepareTrace {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator
+    private UUID id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "instance_id", nullable = false)
+    private Instance instance;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "node_id")
+    private Node node;
+
+    @Column(name = "trace_id", nullable = false, unique = true, length = 64)
+    private String traceId;
+
+    @Column(name = "dispatched_at", nullable = false)
+    private OffsetDateTime dispatchedAt;
+
+    @Column(name = "dispatch_millis", nullable = false)
+    private long dispatchMillis;
+
+    @Column(name = "completed_at")
+    private OffsetDateTime completedAt;
+
+    @Column(name = "total_millis")
+    private Long totalMillis;
+
+    @Lob
+    @Column(name = "phases_json", columnDefinition = "TEXT")
+    private String phasesJson;
+
+    public InstancePrepareTrace(
+            Instance instance,
+            Node node,
+            String traceId,
+            OffsetDateTime dispatchedAt,
+            long dispatchMillis
+    ) {
+        this.instance = instance;
+        this.node = node;
+        this.traceId = traceId;
+        this.dispatchedAt = dispatchedAt;
+        this.dispatchMillis = dispatchMillis;
+    }
+
+    public boolean isCompleted() {
+        return completedAt != null;
+    }
+
+    public void complete(OffsetDateTime completedAt, String phasesJson) {
+        this.completedAt = completedAt;
+        this.totalMillis = Math.max(0, Duration.between(dispatchedAt, completedAt).toMillis());
+        this.phasesJson = phasesJson;
+    }
+}
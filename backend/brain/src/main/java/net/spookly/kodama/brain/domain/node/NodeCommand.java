@@ -0,0 +1,127 @@
+package net.spookly.kodama.brain.domain.node;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.Lob;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import net.spookly.kodama.brain.domain.instance.Instance;
+import org.hibernate.annotations.UuidGenerator;
+
+/**
+ * Outbox row for one instance command sent to a node. The row is written in the transaction that decided to send
+ * the command and stays {@link NodeCommandStatus#PENDING} until the node accepted it or the attempts ran out, so
+ * commands survive a Brain restart.
+ */
+@Entity
+@Table(name = "node_commands")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class NodeCommand {
+
+    public static final int MAX_ERROR_LENGTH = 1024;
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator
+    private UUID id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "node_id", nullable = false)
+    private Node node;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "instance_id", nullable = false)
+    private Instance instance;
+
+    @Column(nullable = false, length = 32)
+    private String action;
+
+    @Lob
+    @Column(name = "payload_json", nullable = false, columnDefinition = "TEXT")
+    private String payloadJson;
+
+    @Column(name = "trace_id", length = 64)
+    private String traceId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private NodeCommandStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "created_at", nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private OffsetDateTime nextAttemptAt;
+
+    @Column(name = "completed_at")
+    private OffsetDateTime completedAt;
+
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    private String lastError;
+
+    public NodeCommand(
+            Node node,
+            Instance instance,
+            String action,
+            String payloadJson,
+            String traceId,
+            OffsetDateTime createdAt
+    ) {
+        this.node = node;
+        this.instance = instance;
+        this.action = action;
+        this.payloadJson = payloadJson;
+        this.traceId = traceId;
+        this.status = NodeCommandStatus.PENDING;
+        this.attempts = 0;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public boolean isPending() {
+        return status == NodeCommandStatus.PENDING;
+    }
+
+    public void markDelivered(OffsetDateTime deliveredAt) {
+        this.attempts++;
+        this.status = NodeCommandStatus.DELIVERED;
+        this.completedAt = deliveredAt;
+        this.lastError = null;
+    }
+
+    public void markRetry(OffsetDateTime nextAttemptAt, String error) {
+        this.attempts++;
+        this.nextAttemptAt = nextAttemptAt;
+        this.lastError = truncate(error);
+    }
+
+    public void markFailed(OffsetDateTime failedAt, String error) {
+        this.attempts++;
+        this.status = NodeCommandStatus.FAILED;
+        this.completedAt = failedAt;
+        this.lastError = truncate(error);
+    }
+
+    private static String truncate(String error) {
+        if (error == null || error.length() <= MAX_ERROR_LENGTH) {
+            return error;
+        }
+        return error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
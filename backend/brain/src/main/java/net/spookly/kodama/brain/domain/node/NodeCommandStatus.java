@@ -0,0 +1,7 @@
+package net.spookly.kodama.brain.domain.node;
+
+public enum NodeCommandStatus {
+    PENDING,
+    DELIVERED,
+    FAILED
+}
@@ -0,0 +1,56 @@
+package net.spookly.kodama.brain.domain.template;
+
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.UuidGenerator;
+
+/**
+ * One regular file of a template version's tarball. Nodes diff these manifests between versions so they only
+ * download files whose content changed.
+ */
+@Entity
+@Table(name = "template_version_files")
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class TemplateVersionFile {
+
+    @Id
+    @GeneratedValue
+    @UuidGenerator
+    private UUID id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "template_version_id", nullable = false)
+    private TemplateVersion templateVersion;
+
+    @Column(nullable = false, length = 1024)
+    private String path;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(nullable = false, length = 64, columnDefinition = "CHAR(64)")
+    private String sha256;
+
+    @Column
+    private Integer mode;
+
+    public TemplateVersionFile(TemplateVersion templateVersion, String path, long size, String sha256, Integer mode) {
+        this.templateVersion = templateVersion;
+        this.path = path;
+        this.size = size;
+        this.sha256 = sha256;
+        this.mode = mode;
+    }
+}
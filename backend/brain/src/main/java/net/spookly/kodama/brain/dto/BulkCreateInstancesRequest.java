@@ -0,0 +1,27 @@
+package net.spookly.kodama.brain.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Body of {@code POST /api/instances/bulk}. Each entry is a regular create request; results keep the list order.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkCreateInstancesRequest {
+
+    public static final int MAX_INSTANCES = 500;
+
+    @NotEmpty
+    @Size(max = MAX_INSTANCES)
+    private List<@Valid CreateInstanceRequest> instances;
+}
@@ -0,0 +1,26 @@
+package net.spookly.kodama.brain.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Body of {@code POST /api/instances/bulk/stop} and {@code POST /api/instances/bulk/destroy}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkInstanceActionRequest {
+
+    @NotEmpty
+    @Size(max = BulkCreateInstancesRequest.MAX_INSTANCES)
+    private List<@NotNull UUID> instanceIds;
+}
@@ -0,0 +1,13 @@
+package net.spookly.kodama.brain.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class BulkInstanceResponse {
+
+    private final List<BulkInstanceResult> results;
+}
@@ -0,0 +1,24 @@
+package net.spookly.kodama.brain.dto;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one entry in a bulk instance request. {@code status} is the HTTP status the entry would have produced
+ * on its own: {@code 201} for a created instance, {@code 202} for a dispatched stop or destroy. {@code error} is set
+ * for anything else. {@code instance} is only set for created instances.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkInstanceResult {
+
+    private final UUID instanceId;
+    private final String name;
+    private final int status;
+    private final String error;
+    private final InstanceDto instance;
+}
@@ -1,5 +1,8 @@
 package net.spookly.kodama.brain.dto;
 
+import java.util.List;
+
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -22,4 +25,15 @@ public class CreateTemplateVersionRequest {
     private String s3Key;
 
     private String metadataJson;
+
+    /**
+     * Optional per-file manifest of the tarball. When present, nodes that already cache another version of the
+     * template download only the files whose content differs.
+     */
+    @Valid
+    private List<TemplateFileManifestEntry> files;
+
+    public CreateTemplateVersionRequest(String version, String checksum, String s3Key, String metadataJson) {
+        this(version, checksum, s3Key, metadataJson, null);
+    }
 }
@@ -0,0 +1,41 @@
+package net.spookly.kodama.brain.dto;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import net.spookly.kodama.brain.domain.instance.InstancePrepareTrace;
+import net.spookly.kodama.brain.dto.node.NodePreparePhase;
+
+@Getter
+@AllArgsConstructor
+@NoArgsConstructor
+public class PrepareTraceDto {
+
+    private UUID instanceId;
+    private String instanceName;
+    private UUID nodeId;
+    private String traceId;
+    private OffsetDateTime dispatchedAt;
+    private OffsetDateTime completedAt;
+    private long dispatchMillis;
+    private Long totalMillis;
+    private List<NodePreparePhase> phases;
+
+    public static PrepareTraceDto fromEntity(InstancePrepareTrace trace, List<NodePreparePhase> phases) {
+        return new PrepareTraceDto(
+                trace.getInstance().getId(),
+                trace.getInstance().getName(),
+                trace.getNode() == null ? null : trace.getNode().getId(),
+                trace.getTraceId(),
+                trace.getDispatchedAt(),
+                trace.getCompletedAt(),
+                trace.getDispatchMillis(),
+                trace.getTotalMillis(),
+                phases
+        );
+    }
+}
@@ -0,0 +1,35 @@
+package net.spookly.kodama.brain.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import net.spookly.kodama.brain.domain.template.TemplateVersionFile;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class TemplateFileManifestEntry {
+
+    @NotBlank
+    @Size(max = 1024)
+    private String path;
+
+    @PositiveOrZero
+    private long size;
+
+    @NotBlank
+    @Pattern(regexp = "[0-9a-f]{64}")
+    private String sha256;
+
+    private Integer mode;
+
+    public static TemplateFileManifestEntry fromEntity(TemplateVersionFile file) {
+        return new TemplateFileManifestEntry(file.getPath(), file.getSize(), file.getSha256(), file.getMode());
+    }
+}
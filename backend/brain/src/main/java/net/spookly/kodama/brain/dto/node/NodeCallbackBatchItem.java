@@ -0,0 +1,37 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.time.OffsetDateTime;
+import java.util.UUID;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One lifecycle callback in a batch. {@code event} is {@code prepared}, {@code running}, {@code stopped},
+ * {@code destroyed} or {@code failed}; {@code payload} is only read for {@code prepared}. {@code timestamp} is when
+ * the node observed the transition and defaults to the time the Brain applies it.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeCallbackBatchItem {
+
+    @NotNull
+    private UUID instanceId;
+
+    @NotBlank
+    @Size(max = 32)
+    private String event;
+
+    private OffsetDateTime timestamp;
+
+    @Valid
+    private NodePreparedCallbackRequest payload;
+}
@@ -0,0 +1,27 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Body of {@code POST /api/nodes/{nodeId}/instances/callbacks}. Callbacks are applied in list order.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodeCallbackBatchRequest {
+
+    public static final int MAX_CALLBACKS = 500;
+
+    @NotEmpty
+    @Size(max = MAX_CALLBACKS)
+    private List<@Valid NodeCallbackBatchItem> callbacks;
+}
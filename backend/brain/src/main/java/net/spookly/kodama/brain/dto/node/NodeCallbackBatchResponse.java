@@ -0,0 +1,13 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class NodeCallbackBatchResponse {
+
+    private final List<NodeCallbackBatchResult> results;
+}
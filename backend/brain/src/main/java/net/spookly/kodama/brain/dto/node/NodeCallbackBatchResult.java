@@ -0,0 +1,22 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of one callback in a batch. {@code status} is the HTTP status the single callback endpoint would have
+ * returned; {@code error} is set for anything other than {@code 200}.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NodeCallbackBatchResult {
+
+    private final UUID instanceId;
+    private final String event;
+    private final int status;
+    private final String error;
+}
@@ -0,0 +1,31 @@
+package net.spookly.kodama.brain.dto.node;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Time a node spent in one prepare phase, such as {@code cache-lookup}, {@code download}, {@code extract} or
+ * {@code merge}. A phase that ran several times (one download per layer) is reported once with its summed
+ * duration and {@code count}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodePreparePhase {
+
+    @NotBlank
+    @Size(max = 64)
+    private String name;
+
+    @PositiveOrZero
+    private long durationMillis;
+
+    @PositiveOrZero
+    private int count;
+}
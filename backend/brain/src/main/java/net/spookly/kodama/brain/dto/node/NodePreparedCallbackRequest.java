@@ -0,0 +1,28 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Optional body of the {@code /prepared} callback. {@code traceId} echoes the trace header of the prepare command;
+ * nodes that send no body are still accepted.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class NodePreparedCallbackRequest {
+
+    @Size(max = 64)
+    private String traceId;
+
+    @Valid
+    @Size(max = 32)
+    private List<NodePreparePhase> phases;
+}
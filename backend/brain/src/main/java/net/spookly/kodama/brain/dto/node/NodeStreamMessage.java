@@ -0,0 +1,55 @@
+package net.spookly.kodama.brain.dto.node;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One JSON text frame of the node command stream.
+ * <ul>
+ *     <li>{@code COMMAND}: {@code action} ({@code prepare}, {@code start}, ...), {@code instanceId}, optional
+ *     {@code traceId} and the same {@code payload} the HTTP command endpoint would receive.</li>
+ *     <li>{@code HEARTBEAT}: {@code payload} is a heartbeat request body.</li>
+ *     <li>{@code CALLBACK}: {@code event} ({@code prepared}, {@code running}, {@code stopped}, {@code destroyed},
+ *     {@code failed}), {@code instanceId} and, for {@code prepared}, an optional prepared callback body.</li>
+ *     <li>{@code ACK}: {@code status} is an HTTP status code; {@code error} explains a non-2xx status.</li>
+ * </ul>
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class NodeStreamMessage {
+
+    private NodeStreamMessageType type;
+
+    private String id;
+
+    private UUID instanceId;
+
+    private String action;
+
+    private String event;
+
+    private String traceId;
+
+    private Integer status;
+
+    private String error;
+
+    private JsonNode payload;
+
+    public static NodeStreamMessage command(String id, UUID instanceId, String action, String traceId, JsonNode payload) {
+        return new NodeStreamMessage(NodeStreamMessageType.COMMAND, id, instanceId, action, null, traceId, null, null, payload);
+    }
+
+    public static NodeStreamMessage ack(String id, int status, String error) {
+        return new NodeStreamMessage(NodeStreamMessageType.ACK, id, null, null, null, null, status, error, null);
+    }
+}
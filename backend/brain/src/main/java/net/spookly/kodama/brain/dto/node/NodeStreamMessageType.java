@@ -0,0 +1,12 @@
+package net.spookly.kodama.brain.dto.node;
+
+/**
+ * Frame types of the node command stream. The Brain sends {@link #COMMAND}; nodes send {@link #HEARTBEAT} and
+ * {@link #CALLBACK}. Either side answers the other's frames with an {@link #ACK} carrying the same {@code id}.
+ */
+public enum NodeStreamMessageType {
+    COMMAND,
+    ACK,
+    HEARTBEAT,
+    CALLBACK
+}
@@ -0,0 +1,19 @@
+package net.spookly.kodama.brain.repository;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import lombok.NonNull;
+import net.spookly.kodama.brain.domain.instance.InstancePrepareTrace;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface InstancePrepareTraceRepository extends JpaRepository<@NonNull InstancePrepareTrace, @NonNull UUID> {
+
+    Optional<InstancePrepareTrace> findByInstanceIdAndTraceId(UUID instanceId, String traceId);
+
+    Optional<InstancePrepareTrace> findFirstByInstanceIdAndCompletedAtIsNullOrderByDispatchedAtDesc(UUID instanceId);
+
+    List<InstancePrepareTrace> findAllByCompletedAtIsNotNullOrderByTotalMillisDesc(Pageable pageable);
+}
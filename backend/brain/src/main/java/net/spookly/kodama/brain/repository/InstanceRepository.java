@@ -1,6 +1,7 @@
 package net.spookly.kodama.brain.repository;
 
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -12,6 +13,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface InstanceRepository extends JpaRepository<@NonNull Instance, @NonNull UUID> {
     Optional<Instance> findByName(String name);
+    List<Instance> findAllByNameIn(Collection<String> names);
     long countByState(InstanceState state);
     List<Instance> findByStateAndUpdatedAtBefore(InstanceState state, OffsetDateTime updatedAt);
 }
@@ -0,0 +1,48 @@
+package net.spookly.kodama.brain.repository;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import lombok.NonNull;
+import net.spookly.kodama.brain.domain.node.NodeCommand;
+import net.spookly.kodama.brain.domain.node.NodeCommandStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface NodeCommandRepository extends JpaRepository<@NonNull NodeCommand, @NonNull UUID> {
+
+    @Query("select c.id from NodeCommand c where c.status = :status and c.nextAttemptAt <= :now order by c.nextAttemptAt asc")
+    List<UUID> findDueIds(
+            @Param("status") NodeCommandStatus status,
+            @Param("now") OffsetDateTime now,
+            Pageable pageable
+    );
+
+    List<NodeCommand> findAllByInstanceIdOrderByCreatedAtAsc(UUID instanceId);
+
+    @Query("select c.id from NodeCommand c where c.instance.id = :instanceId and c.status = :status order by c.createdAt asc")
+    List<UUID> findIdsByInstanceIdAndStatus(
+            @Param("instanceId") UUID instanceId,
+            @Param("status") NodeCommandStatus status,
+            Pageable pageable
+    );
+
+    @Query("select distinct c.instance.id from NodeCommand c where c.instance.id in :instanceIds and c.action = :action and c.status = :status")
+    List<UUID> findInstanceIdsWithCommand(
+            @Param("instanceIds") Collection<UUID> instanceIds,
+            @Param("action") String action,
+            @Param("status") NodeCommandStatus status
+    );
+
+    @Modifying
+    @Query("delete from NodeCommand c where c.status <> :pending and c.completedAt < :cutoff")
+    int deleteCompletedBefore(
+            @Param("pending") NodeCommandStatus pending,
+            @Param("cutoff") OffsetDateTime cutoff
+    );
+}
@@ -0,0 +1,14 @@
+package net.spookly.kodama.brain.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.NonNull;
+import net.spookly.kodama.brain.domain.template.TemplateVersion;
+import net.spookly.kodama.brain.domain.template.TemplateVersionFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface TemplateVersionFileRepository extends JpaRepository<@NonNull TemplateVersionFile, @NonNull UUID> {
+
+    List<TemplateVersionFile> findAllByTemplateVersionOrderByPathAsc(TemplateVersion templateVersion);
+}
@@ -1,5 +1,6 @@
 package net.spookly.kodama.brain.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -8,6 +9,8 @@ import lombok.NonNull;
 import net.spookly.kodama.brain.domain.template.Template;
 import net.spookly.kodama.brain.domain.template.TemplateVersion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface TemplateVersionRepository extends JpaRepository<@NonNull TemplateVersion, @NonNull UUID> {
 
@@ -16,4 +19,11 @@ public interface TemplateVersionRepository extends JpaRepository<@NonNull Templa
     List<TemplateVersion> findAllByTemplateOrderByCreatedAtDesc(Template template);
 
     Optional<TemplateVersion> findFirstByTemplateOrderByCreatedAtDesc(Template template);
+
+    /**
+     * Latest version of each given template in one query. Templates without versions are absent from the result.
+     */
+    @Query("select v from TemplateVersion v where v.template.id in :templateIds and v.createdAt = "
+            + "(select max(latest.createdAt) from TemplateVersion latest where latest.template = v.template)")
+    List<TemplateVersion> findLatestByTemplateIds(@Param("templateIds") Collection<UUID> templateIds);
 }
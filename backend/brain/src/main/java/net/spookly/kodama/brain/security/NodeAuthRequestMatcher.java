@@ -12,6 +12,8 @@ public final class NodeAuthRequestMatcher {
     private static final List<String> NODE_AUTH_PATHS = List.of(
             "/api/nodes/register",
             "/api/nodes/*/heartbeat",
+            "/api/nodes/*/command-stream",
+            "/api/nodes/*/instances/callbacks",
             "/api/nodes/*/instances/*/prepared",
             "/api/nodes/*/instances/*/running",
             "/api/nodes/*/instances/*/stopped",
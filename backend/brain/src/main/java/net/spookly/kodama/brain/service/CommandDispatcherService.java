@@ -1,15 +1,20 @@
 package net.spookly.kodama.brain.service;
 
 import java.net.URI;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import net.spookly.kodama.brain.config.NodeProperties;
 import net.spookly.kodama.brain.domain.instance.Instance;
 import net.spookly.kodama.brain.domain.instance.InstanceTemplateLayer;
 import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
 import net.spookly.kodama.brain.domain.template.TemplateVersion;
 import net.spookly.kodama.brain.dto.node.NodeInstanceCommandRequest;
 import net.spookly.kodama.brain.dto.node.NodePrepareInstanceLayer;
@@ -19,8 +24,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
@@ -29,29 +36,84 @@ import org.springframework.web.util.UriComponentsBuilder;
 @Service
 public class CommandDispatcherService {
 
+    /**
+     * Header carrying the prepare trace ID. Nodes echo it in their {@code /prepared} callback so the Brain can match
+     * the reported phase timings to the dispatch.
+     */
+    public static final String TRACE_ID_HEADER = "X-Kodama-Trace-Id";
+
+    static final String ACTION_PREPARE = "prepare";
+    static final String ACTION_START = "start";
+    static final String ACTION_STOP = "stop";
+    static final String ACTION_DESTROY = "destroy";
+
     private static final Logger logger = LoggerFactory.getLogger(CommandDispatcherService.class);
+    private static final int MAX_BACKOFF_SHIFT = 20;
 
     private final RestTemplate restTemplate;
     private final NodeProperties nodeProperties;
+    private final PrepareTraceService prepareTraceService;
+    private final NodeCircuitBreaker circuitBreaker;
+    private final NodeCommandStreamService commandStream;
 
-    public CommandDispatcherService(RestTemplate restTemplate, NodeProperties nodeProperties) {
+    public CommandDispatcherService(
+            RestTemplate restTemplate,
+            NodeProperties nodeProperties,
+            PrepareTraceService prepareTraceService,
+            NodeCircuitBreaker circuitBreaker,
+            NodeCommandStreamService commandStream
+    ) {
         this.restTemplate = restTemplate;
         this.nodeProperties = nodeProperties;
+        this.prepareTraceService = prepareTraceService;
+        this.circuitBreaker = circuitBreaker;
+        this.commandStream = commandStream;
     }
 
-    public void sendPrepareInstance(
+    /**
+     * Sends the prepare command and records its dispatch as the start of a prepare trace. Returns the trace ID sent
+     * in the {@value #TRACE_ID_HEADER} header.
+     */
+    public String sendPrepareInstance(
             Node node,
             Instance instance,
             List<InstanceTemplateLayer> layers,
             Map<String, String> variables
     ) {
-        Objects.requireNonNull(layers, "layers");
         UUID instanceId = requireInstanceId(instance);
+        NodePrepareInstanceRequest payload = buildPreparePayload(instance, layers, variables);
+        String traceId = UUID.randomUUID().toString();
+        OffsetDateTime dispatchedAt = OffsetDateTime.now(ZoneOffset.UTC);
+        long started = System.nanoTime();
+        sendCommand(node, instanceId, ACTION_PREPARE, payload, traceId);
+        long dispatchMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        prepareTraceService.recordDispatch(instance, node, traceId, dispatchedAt, dispatchMillis);
+        return traceId;
+    }
+
+    public void sendStartInstance(Node node, Instance instance) {
+        sendInstanceCommand(node, instance, ACTION_START);
+    }
+
+    public void sendStopInstance(Node node, Instance instance) {
+        sendInstanceCommand(node, instance, ACTION_STOP);
+    }
+
+    public void sendDestroyInstance(Node node, Instance instance) {
+        sendInstanceCommand(node, instance, ACTION_DESTROY);
+    }
+
+    NodePrepareInstanceRequest buildPreparePayload(
+            Instance instance,
+            List<InstanceTemplateLayer> layers,
+            Map<String, String> variables
+    ) {
+        Objects.requireNonNull(layers, "layers");
         List<NodePrepareInstanceLayer> payloadLayers = layers.stream()
                 .map(this::toPrepareLayer)
                 .toList();
-        NodePrepareInstanceRequest payload = new NodePrepareInstanceRequest(
-                instanceId,
+        return new NodePrepareInstanceRequest(
+                requireInstanceId(instance),
                 instance.getName(),
                 instance.getDisplayName(),
                 instance.getPortsJson(),
@@ -59,76 +121,154 @@ public class CommandDispatcherService {
                 variables == null ? instance.getVariablesJson() : null,
                 payloadLayers
         );
-        sendCommand(node, instance, "prepare", HttpMethod.POST, buildCommandUri(node, instanceId, "prepare"), payload);
     }
 
-    public void sendStartInstance(Node node, Instance instance) {
-        UUID instanceId = requireInstanceId(instance);
-        NodeInstanceCommandRequest payload = new NodeInstanceCommandRequest(instanceId, instance.getName());
-        sendCommand(node, instance, "start", HttpMethod.POST, buildCommandUri(node, instanceId, "start"), payload);
+    NodeInstanceCommandRequest buildCommandPayload(Instance instance) {
+        return new NodeInstanceCommandRequest(requireInstanceId(instance), instance.getName());
     }
 
-    public void sendStopInstance(Node node, Instance instance) {
-        UUID instanceId = requireInstanceId(instance);
-        NodeInstanceCommandRequest payload = new NodeInstanceCommandRequest(instanceId, instance.getName());
-        sendCommand(node, instance, "stop", HttpMethod.POST, buildCommandUri(node, instanceId, "stop"), payload);
+    /**
+     * Sends one command without retrying. Used by {@link NodeCommandOutboxService}, which schedules its own retries.
+     */
+    void sendOnce(NodeTarget target, UUID instanceId, String action, Object payload, String traceId) {
+        deliver(target, instanceId, action, payload, traceId);
     }
 
-    public void sendDestroyInstance(Node node, Instance instance) {
+    boolean isRetryable(Exception ex) {
+        if (ex instanceof ResourceAccessException) {
+            return true;
+        }
+        if (ex instanceof HttpStatusCodeException statusException) {
+            return statusException.getStatusCode().is5xxServerError();
+        }
+        return false;
+    }
+
+    /**
+     * Delay before retry number {@code attempt} (1-based): exponential from {@code node.command-retry-backoff-millis},
+     * capped at {@code node.command-retry-max-backoff-millis}, with the upper half randomized so that commands that
+     * failed together do not retry together.
+     */
+    long retryDelayMillis(int attempt) {
+        long base = Math.max(0, nodeProperties.getCommandRetryBackoffMillis());
+        if (base == 0) {
+            return 0;
+        }
+        long cap = Math.max(base, nodeProperties.getCommandRetryMaxBackoffMillis());
+        int shift = Math.min(Math.max(attempt - 1, 0), MAX_BACKOFF_SHIFT);
+        long exponential = Math.min(cap, base << shift);
+        long half = exponential / 2;
+        return half + ThreadLocalRandom.current().nextLong(exponential - half + 1);
+    }
+
+    private URI buildCommandUri(NodeTarget target, UUID instanceId, String action) {
+        String baseUrl = target.baseUrl();
+        if (baseUrl == null || baseUrl.isBlank()) {
+            throw new IllegalStateException("Node baseUrl is not configured for node " + target.id());
+        }
+        return UriComponentsBuilder.fromUriString(baseUrl)
+                .path("/api/instances/")
+                .path(instanceId.toString())
+                .path("/")
+                .path(action)
+                .build()
+                .toUri();
+    }
+
+    UUID requireInstanceId(Instance instance) {
+        UUID id = Objects.requireNonNull(instance, "instance").getId();
+        if (id == null) {
+            throw new IllegalStateException("Instance id is required to dispatch node commands");
+        }
+        return id;
+    }
+
+    private void sendInstanceCommand(Node node, Instance instance, String action) {
         UUID instanceId = requireInstanceId(instance);
-        NodeInstanceCommandRequest payload = new NodeInstanceCommandRequest(instanceId, instance.getName());
-        sendCommand(node, instance, "destroy", HttpMethod.POST, buildCommandUri(node, instanceId, "destroy"), payload);
+        sendCommand(node, instanceId, action, buildCommandPayload(instance), null);
     }
 
-    private void sendCommand(
-            Node node,
-            Instance instance,
-            String action,
-            HttpMethod method,
-            URI uri,
-            Object payload
-    ) {
+    private void sendCommand(Node node, UUID instanceId, String action, Object payload, String traceId) {
         int maxAttempts = Math.max(1, nodeProperties.getCommandMaxAttempts());
-        long backoffMillis = Math.max(0, nodeProperties.getCommandRetryBackoffMillis());
-        HttpEntity<?> request = createRequest(payload);
+        NodeTarget target = NodeTarget.of(node);
 
         for (int attempt = 1; attempt <= maxAttempts; attempt++) {
             try {
-                restTemplate.exchange(uri, method, request, Void.class);
+                deliver(target, instanceId, action, payload, traceId);
                 return;
             } catch (Exception ex) {
                 logger.warn(
-                        "Node command failed action={} nodeId={} instanceId={} attempt={}/{} uri={}",
+                        "Node command failed action={} nodeId={} instanceId={} attempt={}/{}",
                         action,
                         node.getId(),
-                        instance.getId(),
+                        instanceId,
                         attempt,
                         maxAttempts,
-                        uri,
                         ex
                 );
-                if (attempt >= maxAttempts || !shouldRetry(ex)) {
+                if (attempt >= maxAttempts || !isRetryable(ex) || ex instanceof NodeCircuitOpenException) {
                     throw ex;
                 }
-                sleepBackoff(backoffMillis);
+                sleepBackoff(retryDelayMillis(attempt));
             }
         }
     }
 
-    private HttpEntity<?> createRequest(Object payload) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        return payload == null ? new HttpEntity<>(headers) : new HttpEntity<>(payload, headers);
+    /**
+     * Sends one command over the node's command stream when it has one open, and as an HTTP request otherwise. Both
+     * paths go through the node's circuit breaker and fail with the same exception types.
+     */
+    private void deliver(NodeTarget target, UUID instanceId, String action, Object payload, String traceId) {
+        if (!circuitBreaker.tryAcquire(target.id(), target.status(), target.lastHeartbeatAt())) {
+            throw new NodeCircuitOpenException(target.id());
+        }
+        try {
+            if (!sendOverStream(target, instanceId, action, payload, traceId)) {
+                restTemplate.exchange(
+                        buildCommandUri(target, instanceId, action),
+                        HttpMethod.POST,
+                        createRequest(payload, traceId),
+                        Void.class
+                );
+            }
+        } catch (RuntimeException ex) {
+            // A 4xx still proves the node is reachable, so only retryable failures count against the circuit.
+            if (isRetryable(ex)) {
+                circuitBreaker.recordFailure(target.id());
+            } else {
+                circuitBreaker.recordSuccess(target.id());
+            }
+            throw ex;
+        }
+        circuitBreaker.recordSuccess(target.id());
     }
 
-    private boolean shouldRetry(Exception ex) {
-        if (ex instanceof ResourceAccessException) {
+    /**
+     * Returns {@code false} when the command has to go over HTTP: the node has no open stream, or it answered
+     * {@code 501} because it has no stream handler for the action, now or earlier on the same stream.
+     */
+    private boolean sendOverStream(NodeTarget target, UUID instanceId, String action, Object payload, String traceId) {
+        if (!commandStream.canSendCommand(target.id(), action)) {
+            return false;
+        }
+        try {
+            commandStream.sendCommand(target.id(), instanceId, action, payload, traceId);
             return true;
+        } catch (HttpServerErrorException ex) {
+            if (ex.getStatusCode().value() != HttpStatus.NOT_IMPLEMENTED.value()) {
+                throw ex;
+            }
+            return false;
         }
-        if (ex instanceof HttpStatusCodeException statusException) {
-            return statusException.getStatusCode().is5xxServerError();
+    }
+
+    private HttpEntity<?> createRequest(Object payload, String traceId) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        if (traceId != null) {
+            headers.set(TRACE_ID_HEADER, traceId);
         }
-        return false;
+        return payload == null ? new HttpEntity<>(headers) : new HttpEntity<>(payload, headers);
     }
 
     private void sleepBackoff(long backoffMillis) {
@@ -143,20 +283,6 @@ public class CommandDispatcherService {
         }
     }
 
-    private URI buildCommandUri(Node node, UUID instanceId, String action) {
-        String baseUrl = Objects.requireNonNull(node, "node").getBaseUrl();
-        if (baseUrl == null || baseUrl.isBlank()) {
-            throw new IllegalStateException("Node baseUrl is not configured for node " + node.getId());
-        }
-        return UriComponentsBuilder.fromUriString(baseUrl)
-                .path("/api/instances/")
-                .path(instanceId.toString())
-                .path("/")
-                .path(action)
-                .build()
-                .toUri();
-    }
-
     private NodePrepareInstanceLayer toPrepareLayer(InstanceTemplateLayer layer) {
         TemplateVersion version = layer.getTemplateVersion();
         return new NodePrepareInstanceLayer(
@@ -169,11 +295,14 @@ public class CommandDispatcherService {
         );
     }
 
-    private UUID requireInstanceId(Instance instance) {
-        UUID id = Objects.requireNonNull(instance, "instance").getId();
-        if (id == null) {
-            throw new IllegalStateException("Instance id is required to dispatch node commands");
+    /**
+     * The node fields needed to send a command, copied so that sends can run outside the loading transaction.
+     */
+    record NodeTarget(UUID id, String baseUrl, NodeStatus status, OffsetDateTime lastHeartbeatAt) {
+
+        static NodeTarget of(Node node) {
+            Objects.requireNonNull(node, "node");
+            return new NodeTarget(node.getId(), node.getBaseUrl(), node.getStatus(), node.getLastHeartbeatAt());
         }
-        return id;
     }
 }
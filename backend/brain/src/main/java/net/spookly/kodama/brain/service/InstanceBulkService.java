@@ -0,0 +1,144 @@
+package net.spookly.kodama.brain.service;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceEvent;
+import net.spookly.kodama.brain.domain.instance.InstanceEventType;
+import net.spookly.kodama.brain.domain.instance.InstanceState;
+import net.spookly.kodama.brain.domain.node.NodeCommandStatus;
+import net.spookly.kodama.brain.dto.BulkInstanceResult;
+import net.spookly.kodama.brain.repository.InstanceEventRepository;
+import net.spookly.kodama.brain.repository.InstanceRepository;
+import net.spookly.kodama.brain.repository.NodeCommandRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Stops and destroys many instances per call. The instances are loaded with one query, their events are saved
+ * together, and the node commands go through {@link NodeCommandOutboxService}, so they are only sent once the
+ * transaction commits and the caller never waits on a node.
+ */
+@Service
+@Transactional
+public class InstanceBulkService {
+
+    private final InstanceRepository instanceRepository;
+    private final InstanceEventRepository instanceEventRepository;
+    private final InstanceStateMachine instanceStateMachine;
+    private final NodeCommandRepository nodeCommandRepository;
+    private final NodeCommandOutboxService commandOutbox;
+
+    public InstanceBulkService(
+            InstanceRepository instanceRepository,
+            InstanceEventRepository instanceEventRepository,
+            InstanceStateMachine instanceStateMachine,
+            NodeCommandRepository nodeCommandRepository,
+            NodeCommandOutboxService commandOutbox
+    ) {
+        this.instanceRepository = instanceRepository;
+        this.instanceEventRepository = instanceEventRepository;
+        this.instanceStateMachine = instanceStateMachine;
+        this.nodeCommandRepository = nodeCommandRepository;
+        this.commandOutbox = commandOutbox;
+    }
+
+    /**
+     * Moves running instances to {@code STOPPING} and queues a stop command for each. Instances with a stop command
+     * still pending in the outbox are rejected.
+     */
+    public List<BulkInstanceResult> stopInstances(List<UUID> instanceIds) {
+        return apply(instanceIds, InstanceState.STOPPING, CommandDispatcherService.ACTION_STOP, (instance, now, events) -> {
+            events.add(instanceStateMachine.transitionDeferred(
+                    instance,
+                    InstanceState.STOPPING,
+                    InstanceEventType.STOP_DISPATCHED,
+                    now,
+                    null,
+                    null
+            ));
+            commandOutbox.enqueueStopInstance(instance.getNode(), instance);
+        });
+    }
+
+    /**
+     * Queues a destroy command for stopping and stopped instances. The state changes to {@code DESTROYED} when the
+     * node reports back, so until then a destroy still pending in the outbox is what rejects a repeated request.
+     */
+    public List<BulkInstanceResult> destroyInstances(List<UUID> instanceIds) {
+        return apply(instanceIds, InstanceState.DESTROYED, CommandDispatcherService.ACTION_DESTROY, (instance, now, events) -> {
+            events.add(new InstanceEvent(instance, now, InstanceEventType.DESTROY_DISPATCHED, null));
+            commandOutbox.enqueueDestroyInstance(instance.getNode(), instance);
+        });
+    }
+
+    private List<BulkInstanceResult> apply(
+            List<UUID> instanceIds,
+            InstanceState targetState,
+            String commandAction,
+            BulkAction action
+    ) {
+        Set<UUID> uniqueIds = new HashSet<>(instanceIds);
+        Map<UUID, Instance> instances = instanceRepository.findAllById(uniqueIds).stream()
+                .collect(Collectors.toMap(Instance::getId, instance -> instance));
+        Set<UUID> pending = new HashSet<>(nodeCommandRepository.findInstanceIdsWithCommand(
+                uniqueIds,
+                commandAction,
+                NodeCommandStatus.PENDING
+        ));
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        List<InstanceEvent> events = new ArrayList<>(instanceIds.size());
+        List<BulkInstanceResult> results = new ArrayList<>(instanceIds.size());
+        Set<UUID> seen = new HashSet<>();
+        for (UUID instanceId : instanceIds) {
+            if (!seen.add(instanceId)) {
+                results.add(reject(instanceId, null, HttpStatus.BAD_REQUEST, "Instance is listed more than once"));
+                continue;
+            }
+            Instance instance = instances.get(instanceId);
+            if (instance == null) {
+                results.add(reject(instanceId, null, HttpStatus.NOT_FOUND, "Instance not found"));
+                continue;
+            }
+            if (instance.getNode() == null) {
+                results.add(reject(instanceId, instance.getName(), HttpStatus.CONFLICT,
+                        "Instance is not assigned to a node"));
+                continue;
+            }
+            String invalidTransition = instanceStateMachine.describeInvalidTransition(instance.getState(), targetState);
+            if (invalidTransition != null) {
+                results.add(reject(instanceId, instance.getName(), HttpStatus.CONFLICT, invalidTransition));
+                continue;
+            }
+            if (pending.contains(instanceId)) {
+                results.add(reject(instanceId, instance.getName(), HttpStatus.CONFLICT,
+                        "A " + commandAction + " command is already pending for the instance"));
+                continue;
+            }
+
+            action.apply(instance, now, events);
+            results.add(new BulkInstanceResult(instanceId, instance.getName(), HttpStatus.ACCEPTED.value(), null, null));
+        }
+        instanceEventRepository.saveAll(events);
+        return results;
+    }
+
+    private BulkInstanceResult reject(UUID instanceId, String name, HttpStatus status, String error) {
+        return new BulkInstanceResult(instanceId, name, status.value(), error, null);
+    }
+
+    @FunctionalInterface
+    private interface BulkAction {
+        void apply(Instance instance, OffsetDateTime now, List<InstanceEvent> events);
+    }
+}
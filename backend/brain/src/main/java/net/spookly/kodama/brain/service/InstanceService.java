@@ -4,6 +4,7 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -23,9 +24,14 @@ import net.spookly.kodama.brain.domain.instance.InstanceTemplateLayer;
 import net.spookly.kodama.brain.domain.node.Node;
 import net.spookly.kodama.brain.domain.template.Template;
 import net.spookly.kodama.brain.domain.template.TemplateVersion;
+import net.spookly.kodama.brain.dto.BulkInstanceResult;
 import net.spookly.kodama.brain.dto.CreateInstanceRequest;
 import net.spookly.kodama.brain.dto.InstanceDto;
 import net.spookly.kodama.brain.dto.InstanceTemplateLayerRequest;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchItem;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchResult;
+import net.spookly.kodama.brain.dto.node.NodePreparePhase;
+import net.spookly.kodama.brain.dto.node.NodePreparedCallbackRequest;
 import net.spookly.kodama.brain.repository.InstanceEventRepository;
 import net.spookly.kodama.brain.repository.InstanceRepository;
 import net.spookly.kodama.brain.repository.InstanceTemplateLayerRepository;
@@ -49,6 +55,7 @@ public class InstanceService {
     private final TemplateRepository templateRepository;
     private final TemplateVersionRepository templateVersionRepository;
     private final NodeRepository nodeRepository;
+    private final PrepareTraceService prepareTraceService;
 
     public InstanceService(
             InstanceRepository instanceRepository,
@@ -58,7 +65,8 @@ public class InstanceService {
             ObjectMapper objectMapper,
             TemplateRepository templateRepository,
             TemplateVersionRepository templateVersionRepository,
-            NodeRepository nodeRepository
+            NodeRepository nodeRepository,
+            PrepareTraceService prepareTraceService
     ) {
         this.instanceRepository = instanceRepository;
         this.instanceTemplateLayerRepository = instanceTemplateLayerRepository;
@@ -68,6 +76,7 @@ public class InstanceService {
         this.templateRepository = templateRepository;
         this.templateVersionRepository = templateVersionRepository;
         this.nodeRepository = nodeRepository;
+        this.prepareTraceService = prepareTraceService;
     }
 
     @Transactional(readOnly = true)
@@ -97,45 +106,114 @@ public class InstanceService {
         });
 
         List<LayerDescriptor> layerDescriptors = validateAndNormalizeTemplateLayers(request.getTemplateLayers());
-        Map<LayerDescriptor, TemplateVersion> templateVersions = loadTemplateVersions(layerDescriptors);
-
-        Node node = null;
-        if (request.getNodeId() != null) {
-            node = nodeRepository.findById(request.getNodeId())
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Node not found"));
-        }
-
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
-        String variablesJson = resolveVariablesJson(request);
-        Instance instance = new Instance(
-                request.getName(),
-                request.getDisplayName(),
-                InstanceState.REQUESTED,
-                request.getRequestedBy(),
-                node,
-                request.getRegion(),
-                request.getTags(),
-                request.getDevModeAllowed(),
-                request.getPortsJson(),
-                variablesJson,
-                now,
+        PreparedInstance prepared = prepareInstance(
+                request,
+                layerDescriptors,
+                loadTemplateVersions(layerDescriptors),
+                loadNodes(List.of(request)),
                 now
         );
 
-        Instance savedInstance = instanceRepository.save(instance);
-        List<InstanceTemplateLayer> layers = buildLayers(savedInstance, layerDescriptors, templateVersions);
-        instanceTemplateLayerRepository.saveAll(layers);
+        Instance savedInstance = instanceRepository.save(prepared.instance());
+        instanceTemplateLayerRepository.saveAll(prepared.layers());
 
         InstanceEvent requestedEvent = new InstanceEvent(savedInstance, now, InstanceEventType.REQUEST_RECEIVED, null);
         instanceEventRepository.save(requestedEvent);
 
-        return InstanceDto.fromEntity(savedInstance, layers);
+        return InstanceDto.fromEntity(savedInstance, prepared.layers());
+    }
+
+    /**
+     * Creates many instances in one transaction. Names, template versions and nodes for the whole batch are loaded
+     * with one query each, and instances, layers and events are saved together so Hibernate writes them as JDBC
+     * batches. A request that cannot be created gets an error result and does not affect the others.
+     */
+    public List<BulkInstanceResult> createInstances(List<CreateInstanceRequest> requests) {
+        List<BulkInstanceResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<List<LayerDescriptor>> layerDescriptors = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                layerDescriptors.add(validateAndNormalizeTemplateLayers(requests.get(i).getTemplateLayers()));
+            } catch (ResponseStatusException ex) {
+                layerDescriptors.add(null);
+                results.set(i, rejectInstance(requests.get(i), ex));
+            }
+        }
+
+        TemplateVersionLookup templateVersions = loadTemplateVersions(layerDescriptors.stream()
+                .filter(Objects::nonNull)
+                .flatMap(List::stream)
+                .toList());
+        Map<UUID, Node> nodes = loadNodes(requests);
+        Set<String> takenNames = instanceRepository.findAllByNameIn(requests.stream()
+                        .map(CreateInstanceRequest::getName)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .map(Instance::getName)
+                .collect(Collectors.toCollection(HashSet::new));
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        List<PreparedInstance> preparedInstances = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        for (int i = 0; i < requests.size(); i++) {
+            if (results.get(i) != null) {
+                continue;
+            }
+            CreateInstanceRequest request = requests.get(i);
+            if (takenNames.contains(request.getName())) {
+                results.set(i, rejectInstance(request, new ResponseStatusException(
+                        HttpStatus.CONFLICT,
+                        "Instance with the same name already exists"
+                )));
+                continue;
+            }
+            try {
+                preparedInstances.set(i, prepareInstance(request, layerDescriptors.get(i), templateVersions, nodes, now));
+                takenNames.add(request.getName());
+            } catch (ResponseStatusException ex) {
+                results.set(i, rejectInstance(request, ex));
+            }
+        }
+
+        List<PreparedInstance> created = preparedInstances.stream().filter(Objects::nonNull).toList();
+        instanceRepository.saveAll(created.stream().map(PreparedInstance::instance).toList());
+        instanceTemplateLayerRepository.saveAll(created.stream().flatMap(prepared -> prepared.layers().stream()).toList());
+        instanceEventRepository.saveAll(created.stream()
+                .map(prepared -> new InstanceEvent(prepared.instance(), now, InstanceEventType.REQUEST_RECEIVED, null))
+                .toList());
+
+        for (int i = 0; i < requests.size(); i++) {
+            PreparedInstance prepared = preparedInstances.get(i);
+            if (prepared != null) {
+                Instance instance = prepared.instance();
+                results.set(i, new BulkInstanceResult(
+                        instance.getId(),
+                        instance.getName(),
+                        HttpStatus.CREATED.value(),
+                        null,
+                        InstanceDto.fromEntity(instance, prepared.layers())
+                ));
+            }
+        }
+        return results;
     }
 
     public void reportInstancePrepared(UUID nodeId, UUID instanceId) {
+        reportInstancePrepared(nodeId, instanceId, null, null);
+    }
+
+    public void reportInstancePrepared(UUID nodeId, UUID instanceId, String traceId, List<NodePreparePhase> phases) {
         Instance instance = loadInstanceForNode(nodeId, instanceId);
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
-        instanceStateMachine.transition(instance, InstanceState.STARTING, InstanceEventType.PREPARE_COMPLETED, now);
+        String payloadJson = prepareTraceService.complete(instance, traceId, phases, now);
+        instanceStateMachine.transition(
+                instance,
+                InstanceState.STARTING,
+                InstanceEventType.PREPARE_COMPLETED,
+                now,
+                null,
+                payloadJson
+        );
     }
 
     public void reportInstanceRunning(UUID nodeId, UUID instanceId) {
@@ -162,6 +240,84 @@ public class InstanceService {
         instanceStateMachine.transition(instance, InstanceState.FAILED, InstanceEventType.FAILURE_REPORTED, now, null);
     }
 
+    /**
+     * Applies a batch of lifecycle callbacks from one node in a single transaction. The instances are loaded with one
+     * query and the events are saved together, so Hibernate writes them as JDBC batches. A callback that cannot be
+     * applied gets an error result and does not affect the others.
+     */
+    public List<NodeCallbackBatchResult> reportInstanceCallbacks(UUID nodeId, List<NodeCallbackBatchItem> callbacks) {
+        if (!nodeRepository.existsById(nodeId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Node not found");
+        }
+        Set<UUID> instanceIds = callbacks.stream()
+                .map(NodeCallbackBatchItem::getInstanceId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<UUID, Instance> instances = instanceRepository.findAllById(instanceIds).stream()
+                .collect(Collectors.toMap(Instance::getId, instance -> instance));
+
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        List<InstanceEvent> events = new ArrayList<>(callbacks.size());
+        List<NodeCallbackBatchResult> results = new ArrayList<>(callbacks.size());
+        for (NodeCallbackBatchItem callback : callbacks) {
+            results.add(applyCallback(nodeId, callback, instances, now, events));
+        }
+        instanceEventRepository.saveAll(events);
+        return results;
+    }
+
+    private NodeCallbackBatchResult applyCallback(
+            UUID nodeId,
+            NodeCallbackBatchItem callback,
+            Map<UUID, Instance> instances,
+            OffsetDateTime now,
+            List<InstanceEvent> events
+    ) {
+        CallbackEvent event = CallbackEvent.fromName(callback.getEvent());
+        if (event == null) {
+            return rejectCallback(callback, HttpStatus.BAD_REQUEST, "Unknown callback event");
+        }
+        Instance instance = instances.get(callback.getInstanceId());
+        if (instance == null) {
+            return rejectCallback(callback, HttpStatus.NOT_FOUND, "Instance not found");
+        }
+        if (instance.getNode() == null || !nodeId.equals(instance.getNode().getId())) {
+            return rejectCallback(callback, HttpStatus.CONFLICT, "Instance is not assigned to the requested node");
+        }
+        String invalidTransition = instanceStateMachine.describeInvalidTransition(instance.getState(), event.targetState);
+        if (invalidTransition != null) {
+            return rejectCallback(callback, HttpStatus.CONFLICT, invalidTransition);
+        }
+
+        // Node clocks may run ahead; never record a transition in the future.
+        OffsetDateTime timestamp = callback.getTimestamp() == null || callback.getTimestamp().isAfter(now)
+                ? now
+                : callback.getTimestamp().withOffsetSameInstant(ZoneOffset.UTC);
+        String payloadJson = null;
+        if (event == CallbackEvent.PREPARED) {
+            NodePreparedCallbackRequest prepared = callback.getPayload();
+            payloadJson = prepareTraceService.complete(
+                    instance,
+                    prepared == null ? null : prepared.getTraceId(),
+                    prepared == null ? null : prepared.getPhases(),
+                    timestamp
+            );
+        }
+        events.add(instanceStateMachine.transitionDeferred(
+                instance,
+                event.targetState,
+                event.eventType,
+                timestamp,
+                null,
+                payloadJson
+        ));
+        return new NodeCallbackBatchResult(callback.getInstanceId(), callback.getEvent(), HttpStatus.OK.value(), null);
+    }
+
+    private NodeCallbackBatchResult rejectCallback(NodeCallbackBatchItem callback, HttpStatus status, String error) {
+        return new NodeCallbackBatchResult(callback.getInstanceId(), callback.getEvent(), status.value(), error);
+    }
+
     private Map<UUID, List<InstanceTemplateLayer>> findLayers(List<Instance> instances) {
         if (instances.isEmpty()) {
             return Map.of();
@@ -232,68 +388,85 @@ public class InstanceService {
                 .toList();
     }
 
-    private Map<LayerDescriptor, TemplateVersion> loadTemplateVersions(List<LayerDescriptor> layerDescriptors) {
-        Map<LayerDescriptor, TemplateVersion> resolved = new HashMap<>();
+    private PreparedInstance prepareInstance(
+            CreateInstanceRequest request,
+            List<LayerDescriptor> layerDescriptors,
+            TemplateVersionLookup templateVersions,
+            Map<UUID, Node> nodes,
+            OffsetDateTime now
+    ) {
+        Map<LayerDescriptor, TemplateVersion> resolvedVersions = templateVersions.resolve(layerDescriptors);
 
+        Node node = null;
+        if (request.getNodeId() != null) {
+            node = nodes.get(request.getNodeId());
+            if (node == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Node not found");
+            }
+        }
+
+        String variablesJson = resolveVariablesJson(request);
+        Instance instance = new Instance(
+                request.getName(),
+                request.getDisplayName(),
+                InstanceState.REQUESTED,
+                request.getRequestedBy(),
+                node,
+                request.getRegion(),
+                request.getTags(),
+                request.getDevModeAllowed(),
+                request.getPortsJson(),
+                variablesJson,
+                now,
+                now
+        );
+        return new PreparedInstance(instance, buildLayers(instance, layerDescriptors, resolvedVersions));
+    }
+
+    private BulkInstanceResult rejectInstance(CreateInstanceRequest request, ResponseStatusException ex) {
+        return new BulkInstanceResult(null, request.getName(), ex.getStatusCode().value(), ex.getReason(), null);
+    }
+
+    private Map<UUID, Node> loadNodes(List<CreateInstanceRequest> requests) {
+        Set<UUID> nodeIds = requests.stream()
+                .map(CreateInstanceRequest::getNodeId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        if (nodeIds.isEmpty()) {
+            return Map.of();
+        }
+        return nodeRepository.findAllById(nodeIds).stream()
+                .collect(Collectors.toMap(Node::getId, node -> node));
+    }
+
+    private TemplateVersionLookup loadTemplateVersions(Collection<LayerDescriptor> layerDescriptors) {
         Set<UUID> templateVersionIds = layerDescriptors.stream()
                 .map(LayerDescriptor::templateVersionId)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
 
-        Map<UUID, TemplateVersion> versionsById = templateVersionRepository.findAllById(templateVersionIds).stream()
-                .collect(Collectors.toMap(TemplateVersion::getId, v -> v));
-
-        if (versionsById.size() != templateVersionIds.size()) {
-            Set<UUID> missingIds = new HashSet<>(templateVersionIds);
-            missingIds.removeAll(versionsById.keySet());
-            UUID missing = missingIds.stream().findFirst().orElse(null);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Template version not found" + (missing == null ? "" : ": " + missing));
-        }
+        Map<UUID, TemplateVersion> versionsById = templateVersionIds.isEmpty()
+                ? Map.of()
+                : templateVersionRepository.findAllById(templateVersionIds).stream()
+                        .collect(Collectors.toMap(TemplateVersion::getId, v -> v));
 
         Set<UUID> templateIds = layerDescriptors.stream()
                 .filter(descriptor -> descriptor.templateVersionId() == null)
                 .map(LayerDescriptor::templateId)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toSet());
-
-        Map<UUID, Template> templatesById = templateRepository.findAllById(templateIds).stream()
-                .collect(Collectors.toMap(Template::getId, t -> t));
-
-        if (templatesById.size() != templateIds.size()) {
-            Set<UUID> missingIds = new HashSet<>(templateIds);
-            missingIds.removeAll(templatesById.keySet());
-            UUID missing = missingIds.stream().findFirst().orElse(null);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                    "Template not found" + (missing == null ? "" : ": " + missing));
-        }
-
-        Map<UUID, TemplateVersion> latestVersionsByTemplate = new HashMap<>();
-        for (UUID templateId : templateIds) {
-            Template template = templatesById.get(templateId);
-            TemplateVersion latest = templateVersionRepository.findFirstByTemplateOrderByCreatedAtDesc(template)
-                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
-                            "Template has no versions: " + templateId));
-            latestVersionsByTemplate.put(templateId, latest);
+        if (templateIds.isEmpty()) {
+            return new TemplateVersionLookup(versionsById, Set.of(), Map.of());
         }
 
-        for (LayerDescriptor descriptor : layerDescriptors) {
-            TemplateVersion version;
-            if (descriptor.templateVersionId() != null) {
-                version = versionsById.get(descriptor.templateVersionId());
-                if (descriptor.templateId() != null
-                        && !descriptor.templateId().equals(version.getTemplate().getId())) {
-                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
-                            "templateVersionId does not belong to templateId");
-                }
-            } else {
-                version = latestVersionsByTemplate.get(descriptor.templateId());
-            }
-
-            resolved.put(descriptor, version);
-        }
+        Set<UUID> existingTemplateIds = templateRepository.findAllById(templateIds).stream()
+                .map(Template::getId)
+                .collect(Collectors.toSet());
+        Map<UUID, TemplateVersion> latestVersionsByTemplate = templateVersionRepository
+                .findLatestByTemplateIds(templateIds).stream()
+                .collect(Collectors.toMap(v -> v.getTemplate().getId(), v -> v, (first, second) -> first));
 
-        return resolved;
+        return new TemplateVersionLookup(versionsById, existingTemplateIds, latestVersionsByTemplate);
     }
 
     private Instance loadInstanceForNode(UUID nodeId, UUID instanceId) {
@@ -312,4 +485,76 @@ public class InstanceService {
 
     private record LayerDescriptor(UUID templateVersionId, UUID templateId, int orderIndex) {
     }
+
+    private record PreparedInstance(Instance instance, List<InstanceTemplateLayer> layers) {
+    }
+
+    /**
+     * Template versions referenced by one or more create requests, loaded once so every request resolves its layers
+     * without further queries.
+     */
+    private record TemplateVersionLookup(
+            Map<UUID, TemplateVersion> versionsById,
+            Set<UUID> templateIds,
+            Map<UUID, TemplateVersion> latestVersionsByTemplate
+    ) {
+
+        Map<LayerDescriptor, TemplateVersion> resolve(List<LayerDescriptor> layerDescriptors) {
+            Map<LayerDescriptor, TemplateVersion> resolved = new HashMap<>();
+            for (LayerDescriptor descriptor : layerDescriptors) {
+                TemplateVersion version;
+                if (descriptor.templateVersionId() != null) {
+                    version = versionsById.get(descriptor.templateVersionId());
+                    if (version == null) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Template version not found: " + descriptor.templateVersionId());
+                    }
+                    if (descriptor.templateId() != null
+                            && !descriptor.templateId().equals(version.getTemplate().getId())) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "templateVersionId does not belong to templateId");
+                    }
+                } else {
+                    if (!templateIds.contains(descriptor.templateId())) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Template not found: " + descriptor.templateId());
+                    }
+                    version = latestVersionsByTemplate.get(descriptor.templateId());
+                    if (version == null) {
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                                "Template has no versions: " + descriptor.templateId());
+                    }
+                }
+                resolved.put(descriptor, version);
+            }
+            return resolved;
+        }
+    }
+
+    private enum CallbackEvent {
+        PREPARED("prepared", InstanceState.STARTING, InstanceEventType.PREPARE_COMPLETED),
+        RUNNING("running", InstanceState.RUNNING, InstanceEventType.START_COMPLETED),
+        STOPPED("stopped", InstanceState.STOPPED, InstanceEventType.STOP_COMPLETED),
+        DESTROYED("destroyed", InstanceState.DESTROYED, InstanceEventType.DESTROY_COMPLETED),
+        FAILED("failed", InstanceState.FAILED, InstanceEventType.FAILURE_REPORTED);
+
+        private final String callbackName;
+        private final InstanceState targetState;
+        private final InstanceEventType eventType;
+
+        CallbackEvent(String name, InstanceState targetState, InstanceEventType eventType) {
+            this.callbackName = name;
+            this.targetState = targetState;
+            this.eventType = eventType;
+        }
+
+        static CallbackEvent fromName(String name) {
+            for (CallbackEvent event : values()) {
+                if (event.callbackName.equals(name)) {
+                    return event;
+                }
+            }
+            return null;
+        }
+    }
 }
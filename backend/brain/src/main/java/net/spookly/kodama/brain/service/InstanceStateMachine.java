@@ -45,6 +45,35 @@ public class InstanceStateMachine {
             InstanceEventType eventType,
             OffsetDateTime timestamp,
             String failureReason
+    ) {
+        transition(instance, targetState, eventType, timestamp, failureReason, null);
+    }
+
+    public void transition(
+            Instance instance,
+            InstanceState targetState,
+            InstanceEventType eventType,
+            OffsetDateTime timestamp,
+            String failureReason,
+            String payloadJson
+    ) {
+        instanceEventRepository.save(
+                transitionDeferred(instance, targetState, eventType, timestamp, failureReason, payloadJson)
+        );
+    }
+
+    /**
+     * Like {@link #transition(Instance, InstanceState, InstanceEventType, OffsetDateTime, String, String)}, but
+     * returns the event instead of saving it, so that callers applying many transitions can save the events in one
+     * batch.
+     */
+    public InstanceEvent transitionDeferred(
+            Instance instance,
+            InstanceState targetState,
+            InstanceEventType eventType,
+            OffsetDateTime timestamp,
+            String failureReason,
+            String payloadJson
     ) {
         Objects.requireNonNull(instance, "instance");
         Objects.requireNonNull(targetState, "targetState");
@@ -58,7 +87,19 @@ public class InstanceStateMachine {
         }
 
         applyTransition(instance, targetState, timestamp, failureReason);
-        instanceEventRepository.save(new InstanceEvent(instance, timestamp, eventType, null));
+        return new InstanceEvent(instance, timestamp, eventType, payloadJson);
+    }
+
+    /**
+     * Returns why moving from {@code currentState} to {@code targetState} is not allowed, or {@code null} when it is.
+     */
+    public String describeInvalidTransition(InstanceState currentState, InstanceState targetState) {
+        try {
+            validateTransition(currentState, targetState);
+            return null;
+        } catch (InvalidInstanceStateTransitionException ex) {
+            return ex.getMessage();
+        }
     }
 
     private Map<InstanceState, Set<InstanceState>> buildAllowedTransitions() {
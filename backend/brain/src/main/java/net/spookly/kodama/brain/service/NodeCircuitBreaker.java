@@ -0,0 +1,122 @@
+package net.spookly.kodama.brain.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-node circuit breaker for node commands. After {@code node.command-circuit-failure-threshold} consecutive
+ * connection errors or 5xx responses, commands to the node fail fast for {@code node.command-circuit-open-seconds}
+ * instead of each waiting for a timeout. A single trial command is then let through; its outcome closes or reopens
+ * the circuit. A heartbeat received after the circuit opened allows the trial early, and nodes marked
+ * {@link NodeStatus#OFFLINE} by the heartbeat monitor are refused outright.
+ */
+@Component
+public class NodeCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCircuitBreaker.class);
+
+    private final NodeProperties nodeProperties;
+    private final Clock clock;
+    private final ConcurrentMap<UUID, Circuit> circuits = new ConcurrentHashMap<>();
+
+    @Autowired
+    public NodeCircuitBreaker(NodeProperties nodeProperties) {
+        this(nodeProperties, Clock.systemUTC());
+    }
+
+    NodeCircuitBreaker(NodeProperties nodeProperties, Clock clock) {
+        this.nodeProperties = nodeProperties;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns whether a command may be sent to the node now. Every permitted command must be followed by
+     * {@link #recordSuccess(UUID)} or {@link #recordFailure(UUID)}.
+     */
+    public boolean tryAcquire(UUID nodeId, NodeStatus status, OffsetDateTime lastHeartbeatAt) {
+        if (status == NodeStatus.OFFLINE) {
+            return false;
+        }
+        Circuit circuit = circuits.get(nodeId);
+        if (circuit == null) {
+            return true;
+        }
+        synchronized (circuit) {
+            if (circuit.openedAt == null) {
+                return true;
+            }
+            if (circuit.trialInFlight) {
+                return false;
+            }
+            Instant now = clock.instant();
+            Duration openFor = Duration.ofSeconds(nodeProperties.getCommandCircuitOpenSeconds());
+            boolean cooledDown = !now.isBefore(circuit.openedAt.plus(openFor));
+            boolean heartbeatSinceOpened = lastHeartbeatAt != null
+                    && lastHeartbeatAt.toInstant().isAfter(circuit.openedAt);
+            if (cooledDown || heartbeatSinceOpened) {
+                circuit.trialInFlight = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public void recordSuccess(UUID nodeId) {
+        Circuit circuit = circuits.remove(nodeId);
+        if (circuit != null && circuit.openedAt != null) {
+            logger.info("Closed node command circuit nodeId={}", nodeId);
+        }
+    }
+
+    public void recordFailure(UUID nodeId) {
+        Circuit circuit = circuits.computeIfAbsent(nodeId, id -> new Circuit());
+        synchronized (circuit) {
+            circuit.consecutiveFailures++;
+            if (circuit.trialInFlight) {
+                circuit.trialInFlight = false;
+                circuit.openedAt = clock.instant();
+                logger.warn("Reopened node command circuit after failed trial nodeId={}", nodeId);
+                return;
+            }
+            if (circuit.openedAt == null
+                    && circuit.consecutiveFailures >= nodeProperties.getCommandCircuitFailureThreshold()) {
+                circuit.openedAt = clock.instant();
+                logger.warn(
+                        "Opened node command circuit nodeId={} consecutiveFailures={} openSeconds={}",
+                        nodeId,
+                        circuit.consecutiveFailures,
+                        nodeProperties.getCommandCircuitOpenSeconds()
+                );
+            }
+        }
+    }
+
+    public boolean isOpen(UUID nodeId) {
+        Circuit circuit = circuits.get(nodeId);
+        if (circuit == null) {
+            return false;
+        }
+        synchronized (circuit) {
+            return circuit.openedAt != null;
+        }
+    }
+
+    private static final class Circuit {
+
+        private int consecutiveFailures;
+        private Instant openedAt;
+        private boolean trialInFlight;
+    }
+}
@@ -0,0 +1,16 @@
+package net.spookly.kodama.brain.service;
+
+import java.util.UUID;
+
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Thrown instead of sending a command to a node whose circuit is open or that is marked offline. Extends
+ * {@link ResourceAccessException} so callers treat it like the connection failure it stands in for.
+ */
+public class NodeCircuitOpenException extends ResourceAccessException {
+
+    public NodeCircuitOpenException(UUID nodeId) {
+        super("Node " + nodeId + " is unavailable; command not sent");
+    }
+}
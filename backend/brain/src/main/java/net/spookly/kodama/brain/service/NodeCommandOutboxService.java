@@ -0,0 +1,419 @@
+package net.spookly.kodama.brain.service;
+
+import java.net.URI;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceTemplateLayer;
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeCommand;
+import net.spookly.kodama.brain.domain.node.NodeCommandStatus;
+import net.spookly.kodama.brain.repository.NodeCommandRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Asynchronous counterpart of {@link CommandDispatcherService}. Commands are written to the {@code node_commands}
+ * outbox in the caller's transaction and sent on virtual threads once that transaction commits, so callers never
+ * wait on a node and a rolled back decision never reaches one. Sends are limited globally and per node, failed
+ * sends are retried after a jittered exponential delay without holding a thread, and pending rows left behind by a
+ * restart are picked up by {@link #dispatchDueCommands()}.
+ * <p>
+ * Commands of one instance are sent in the order they were queued: a command is only sent while it is the
+ * instance's oldest pending one, and delivering or failing a command schedules the next. A stop that is being
+ * retried therefore always reaches the node before a destroy queued after it.
+ * <p>
+ * Delivery is at least once: a Brain that stops between a node accepting a command and the row being marked
+ * delivered sends it again after the restart. Only one Brain instance may run the outbox.
+ */
+@Service
+public class NodeCommandOutboxService {
+
+    static final int DUE_BATCH_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCommandOutboxService.class);
+
+    private final NodeCommandRepository nodeCommandRepository;
+    private final CommandDispatcherService commandDispatcher;
+    private final PrepareTraceService prepareTraceService;
+    private final NodeProperties nodeProperties;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService retryTimer;
+    private final Semaphore sendPermits;
+    private final ConcurrentMap<UUID, Semaphore> nodeSendPermits = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, CompletableFuture<Void>> completions = new ConcurrentHashMap<>();
+    private final Set<UUID> scheduled = ConcurrentHashMap.newKeySet();
+
+    public NodeCommandOutboxService(
+            NodeCommandRepository nodeCommandRepository,
+            CommandDispatcherService commandDispatcher,
+            PrepareTraceService prepareTraceService,
+            NodeProperties nodeProperties,
+            ObjectMapper objectMapper,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.nodeCommandRepository = nodeCommandRepository;
+        this.commandDispatcher = commandDispatcher;
+        this.prepareTraceService = prepareTraceService;
+        this.nodeProperties = nodeProperties;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("node-command-", 0).factory());
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("node-command-retry")
+                .daemon(true)
+                .factory());
+        this.sendPermits = new Semaphore(Math.max(1, nodeProperties.getCommandMaxConcurrency()));
+    }
+
+    /**
+     * Queues a prepare command. The prepare trace is recorded once the node accepted it; its dispatch time includes
+     * the time spent in the outbox.
+     */
+    @Transactional
+    public CompletableFuture<Void> enqueuePrepareInstance(
+            Node node,
+            Instance instance,
+            List<InstanceTemplateLayer> layers,
+            Map<String, String> variables
+    ) {
+        Object payload = commandDispatcher.buildPreparePayload(instance, layers, variables);
+        String traceId = UUID.randomUUID().toString();
+        return enqueue(node, instance, CommandDispatcherService.ACTION_PREPARE, payload, traceId);
+    }
+
+    @Transactional
+    public CompletableFuture<Void> enqueueStartInstance(Node node, Instance instance) {
+        return enqueueInstanceCommand(node, instance, CommandDispatcherService.ACTION_START);
+    }
+
+    @Transactional
+    public CompletableFuture<Void> enqueueStopInstance(Node node, Instance instance) {
+        return enqueueInstanceCommand(node, instance, CommandDispatcherService.ACTION_STOP);
+    }
+
+    @Transactional
+    public CompletableFuture<Void> enqueueDestroyInstance(Node node, Instance instance) {
+        return enqueueInstanceCommand(node, instance, CommandDispatcherService.ACTION_DESTROY);
+    }
+
+    /**
+     * Schedules pending commands that are due, which after a restart includes everything the previous run left
+     * behind, and removes delivered and failed rows older than {@code node.command-outbox-retention-hours}.
+     */
+    @Scheduled(fixedDelayString = "#{@nodeProperties.commandOutboxPollIntervalSeconds * 1000}")
+    public void dispatchDueCommands() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        try {
+            List<UUID> due = transactionTemplate.execute(status -> nodeCommandRepository.findDueIds(
+                    NodeCommandStatus.PENDING,
+                    now,
+                    PageRequest.of(0, DUE_BATCH_SIZE)
+            ));
+            if (due != null) {
+                due.forEach(commandId -> schedule(commandId, 0));
+            }
+            OffsetDateTime cutoff = now.minusHours(nodeProperties.getCommandOutboxRetentionHours());
+            Integer removed = transactionTemplate.execute(status -> nodeCommandRepository.deleteCompletedBefore(
+                    NodeCommandStatus.PENDING,
+                    cutoff
+            ));
+            if (removed != null && removed > 0) {
+                logger.debug("Removed completed node commands count={} cutoff={}", removed, cutoff);
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Failed to dispatch due node commands", ex);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryTimer.shutdownNow();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(nodeProperties.getCommandTimeoutSeconds(), TimeUnit.SECONDS)) {
+                logger.warn("Node command senders did not stop in time; pending commands resume after restart");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Void> enqueueInstanceCommand(Node node, Instance instance, String action) {
+        return enqueue(node, instance, action, commandDispatcher.buildCommandPayload(instance), null);
+    }
+
+    private CompletableFuture<Void> enqueue(Node node, Instance instance, String action, Object payload, String traceId) {
+        Objects.requireNonNull(node, "node");
+        commandDispatcher.requireInstanceId(instance);
+        NodeCommand command = nodeCommandRepository.save(new NodeCommand(
+                node,
+                instance,
+                action,
+                toJson(payload),
+                traceId,
+                OffsetDateTime.now(ZoneOffset.UTC)
+        ));
+        UUID commandId = command.getId();
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        completions.put(commandId, completion);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            schedule(commandId, 0);
+            return completion;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    schedule(commandId, 0);
+                    return;
+                }
+                completions.remove(commandId);
+                completion.completeExceptionally(
+                        new IllegalStateException("Node command " + action + " was not committed"));
+            }
+        });
+        return completion;
+    }
+
+    private void schedule(UUID commandId, long delayMillis) {
+        if (!scheduled.add(commandId)) {
+            return;
+        }
+        try {
+            if (delayMillis <= 0) {
+                senders.execute(() -> deliver(commandId));
+            } else {
+                retryTimer.schedule(() -> submit(commandId), delayMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RejectedExecutionException ex) {
+            scheduled.remove(commandId);
+            logger.debug("Node command left pending during shutdown commandId={}", commandId);
+        }
+    }
+
+    private void submit(UUID commandId) {
+        try {
+            senders.execute(() -> deliver(commandId));
+        } catch (RejectedExecutionException ex) {
+            scheduled.remove(commandId);
+        }
+    }
+
+    private void deliver(UUID commandId) {
+        long retryDelayMillis = -1;
+        try {
+            PendingCommand command = transactionTemplate.execute(status -> nodeCommandRepository.findById(commandId)
+                    .map(PendingCommand::from)
+                    .orElse(null));
+            if (command == null) {
+                complete(commandId, new IllegalStateException("Node command " + commandId + " no longer exists"));
+                return;
+            }
+            if (command.status() != NodeCommandStatus.PENDING) {
+                complete(commandId, command.status() == NodeCommandStatus.DELIVERED
+                        ? null
+                        : new IllegalStateException("Node command " + commandId + " failed"));
+                return;
+            }
+            if (!commandId.equals(findFirstPendingId(command.instanceId()))) {
+                // Scheduled again once the earlier commands of the instance are delivered or failed.
+                logger.debug("Node command waits for an earlier command commandId={} instanceId={}",
+                        commandId, command.instanceId());
+                return;
+            }
+            Exception failure = send(command);
+            if (failure == null) {
+                markDelivered(commandId);
+                complete(commandId, null);
+                scheduleNext(command.instanceId());
+            } else {
+                retryDelayMillis = markFailedAttempt(command, failure);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            // The row stays pending and is picked up again by dispatchDueCommands.
+            logger.error("Failed to process node command commandId={}", commandId, ex);
+        } finally {
+            scheduled.remove(commandId);
+        }
+        if (retryDelayMillis >= 0) {
+            schedule(commandId, retryDelayMillis);
+        }
+    }
+
+    private Exception send(PendingCommand command) throws InterruptedException {
+        Semaphore nodePermits = nodeSendPermits.computeIfAbsent(
+                command.node().id(),
+                nodeId -> new Semaphore(Math.max(1, nodeProperties.getCommandMaxConcurrencyPerNode()))
+        );
+        // Take the node permit first so that commands queued behind a busy node do not hold global permits.
+        nodePermits.acquire();
+        try {
+            sendPermits.acquire();
+            try {
+                commandDispatcher.sendOnce(
+                        command.node(),
+                        command.instanceId(),
+                        command.action(),
+                        command.payloadJson(),
+                        command.traceId()
+                );
+                return null;
+            } catch (Exception ex) {
+                return ex;
+            } finally {
+                sendPermits.release();
+            }
+        } finally {
+            nodePermits.release();
+        }
+    }
+
+    private void markDelivered(UUID commandId) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        transactionTemplate.executeWithoutResult(status -> nodeCommandRepository.findById(commandId)
+                .ifPresent(command -> {
+                    command.markDelivered(now);
+                    if (CommandDispatcherService.ACTION_PREPARE.equals(command.getAction())
+                            && command.getTraceId() != null) {
+                        long dispatchMillis = Math.max(0, Duration.between(command.getCreatedAt(), now).toMillis());
+                        prepareTraceService.recordDispatch(
+                                command.getInstance(),
+                                command.getNode(),
+                                command.getTraceId(),
+                                command.getCreatedAt(),
+                                dispatchMillis
+                        );
+                    }
+                }));
+    }
+
+    /**
+     * Records a failed send and returns the delay before the next attempt, or {@code -1} when the command failed
+     * for good.
+     */
+    private long markFailedAttempt(PendingCommand command, Exception failure) {
+        int attempt = command.attempts() + 1;
+        int maxAttempts = Math.max(1, nodeProperties.getCommandOutboxMaxAttempts());
+        boolean retry = attempt < maxAttempts && commandDispatcher.isRetryable(failure);
+        long delayMillis = retry ? commandDispatcher.retryDelayMillis(attempt) : -1;
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        String error = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+        transactionTemplate.executeWithoutResult(status -> nodeCommandRepository.findById(command.id())
+                .ifPresent(row -> {
+                    if (retry) {
+                        row.markRetry(now.plus(Duration.ofMillis(delayMillis)), error);
+                    } else {
+                        row.markFailed(now, error);
+                    }
+                }));
+        logger.warn(
+                "Node command failed action={} nodeId={} instanceId={} attempt={}/{} retryInMillis={}",
+                command.action(),
+                command.node().id(),
+                command.instanceId(),
+                attempt,
+                maxAttempts,
+                delayMillis,
+                failure
+        );
+        if (!retry) {
+            complete(command.id(), failure);
+            scheduleNext(command.instanceId());
+        }
+        return delayMillis;
+    }
+
+    private UUID findFirstPendingId(UUID instanceId) {
+        List<UUID> ids = transactionTemplate.execute(status -> nodeCommandRepository.findIdsByInstanceIdAndStatus(
+                instanceId,
+                NodeCommandStatus.PENDING,
+                PageRequest.of(0, 1)
+        ));
+        return ids == null || ids.isEmpty() ? null : ids.getFirst();
+    }
+
+    private void scheduleNext(UUID instanceId) {
+        UUID nextId = findFirstPendingId(instanceId);
+        if (nextId != null) {
+            schedule(nextId, 0);
+        }
+    }
+
+    private void complete(UUID commandId, Throwable failure) {
+        CompletableFuture<Void> completion = completions.remove(commandId);
+        if (completion == null) {
+            return;
+        }
+        if (failure == null) {
+            completion.complete(null);
+        } else {
+            completion.completeExceptionally(failure);
+        }
+    }
+
+    private String toJson(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Failed to serialize node command payload", ex);
+        }
+    }
+
+    private record PendingCommand(
+            UUID id,
+            CommandDispatcherService.NodeTarget node,
+            UUID instanceId,
+            String action,
+            String payloadJson,
+            String traceId,
+            NodeCommandStatus status,
+            int attempts
+    ) {
+
+        static PendingCommand from(NodeCommand command) {
+            return new PendingCommand(
+                    command.getId(),
+                    CommandDispatcherService.NodeTarget.of(command.getNode()),
+                    command.getInstance().getId(),
+                    command.getAction(),
+                    command.getPayloadJson(),
+                    command.getTraceId(),
+                    command.getStatus(),
+                    command.getAttempts()
+            );
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package net.spookly.kodama.brain.service;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.dto.NodeHeartbeatRequest;
+import net.spookly.kodama.brain.dto.node.NodePreparedCallbackRequest;
+import net.spookly.kodama.brain.dto.node.NodeStreamMessage;
+import net.spookly.kodama.brain.dto.node.NodeStreamMessageType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+
+/**
+ * Brain side of the optional node command stream: one WebSocket per node, opened by the node, that carries
+ * commands to the node and heartbeats and lifecycle callbacks back. While a node is connected,
+ * {@link CommandDispatcherService} sends its commands here instead of over HTTP. Frames are
+ * {@link NodeStreamMessage}s; commands wait for the node's {@code ACK} just like an HTTP command waits for its
+ * response. Actions a node answers with {@code 501} are remembered per connection and go over HTTP from then on;
+ * the node agent currently has no stream command handlers, so in practice the stream carries heartbeats and
+ * callbacks only.
+ */
+@Service
+public class NodeCommandStreamService {
+
+    static final String EVENT_PREPARED = "prepared";
+    static final String EVENT_RUNNING = "running";
+    static final String EVENT_STOPPED = "stopped";
+    static final String EVENT_DESTROYED = "destroyed";
+    static final String EVENT_FAILED = "failed";
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeCommandStreamService.class);
+    private static final int SEND_TIME_LIMIT_MILLIS = 10_000;
+    private static final int SEND_BUFFER_LIMIT_BYTES = 4 * 1024 * 1024;
+
+    private final NodeService nodeService;
+    private final InstanceService instanceService;
+    private final NodeProperties nodeProperties;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final ConcurrentMap<UUID, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingAck> pendingAcks = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Set<String>> unsupportedActions = new ConcurrentHashMap<>();
+
+    public NodeCommandStreamService(
+            NodeService nodeService,
+            InstanceService instanceService,
+            NodeProperties nodeProperties,
+            ObjectMapper objectMapper,
+            Validator validator
+    ) {
+        this.nodeService = nodeService;
+        this.instanceService = instanceService;
+        this.nodeProperties = nodeProperties;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+    }
+
+    public boolean isConnected(UUID nodeId) {
+        WebSocketSession session = sessions.get(nodeId);
+        return session != null && session.isOpen();
+    }
+
+    /**
+     * Whether {@code action} should be sent over the stream of {@code nodeId}: the node is connected and has not
+     * answered {@code 501} for that action since it connected.
+     */
+    public boolean canSendCommand(UUID nodeId, String action) {
+        if (!isConnected(nodeId)) {
+            return false;
+        }
+        Set<String> unsupported = unsupportedActions.get(nodeId);
+        return unsupported == null || !unsupported.contains(action);
+    }
+
+    /**
+     * Registers the stream of {@code nodeId}. A node that reconnects replaces its previous stream, which is closed,
+     * and gets another chance to handle every action, since it may have been upgraded in between.
+     */
+    public void register(UUID nodeId, WebSocketSession session) {
+        WebSocketSession decorated = new ConcurrentWebSocketSessionDecorator(
+                session,
+                SEND_TIME_LIMIT_MILLIS,
+                SEND_BUFFER_LIMIT_BYTES
+        );
+        unsupportedActions.remove(nodeId);
+        WebSocketSession previous = sessions.put(nodeId, decorated);
+        if (previous != null && !previous.getId().equals(session.getId())) {
+            closeQuietly(previous);
+        }
+        logger.info("Node command stream connected nodeId={} sessionId={}", nodeId, session.getId());
+    }
+
+    public void unregister(UUID nodeId, WebSocketSession session) {
+        boolean removed = sessions.computeIfPresent(nodeId, (id, current) ->
+                current.getId().equals(session.getId()) ? null : current) == null;
+        if (!removed) {
+            return;
+        }
+        pendingAcks.values().removeIf(pending -> {
+            if (!pending.nodeId().equals(nodeId)) {
+                return false;
+            }
+            pending.ack().completeExceptionally(new ResourceAccessException("Node command stream closed"));
+            return true;
+        });
+        logger.info("Node command stream disconnected nodeId={} sessionId={}", nodeId, session.getId());
+    }
+
+    /**
+     * Sends a command over the node's stream and waits up to {@code node.command-timeout-seconds} for its
+     * acknowledgement. Failures are reported with the same exceptions as an HTTP command: a
+     * {@link ResourceAccessException} when the node cannot be reached or does not answer, and an
+     * {@link org.springframework.web.client.HttpStatusCodeException} when it rejects the command.
+     */
+    public void sendCommand(UUID nodeId, UUID instanceId, String action, Object payload, String traceId) {
+        WebSocketSession session = sessions.get(nodeId);
+        if (session == null || !session.isOpen()) {
+            throw new ResourceAccessException("Node " + nodeId + " has no open command stream");
+        }
+        String messageId = UUID.randomUUID().toString();
+        CompletableFuture<NodeStreamMessage> ack = new CompletableFuture<>();
+        pendingAcks.put(messageId, new PendingAck(nodeId, ack));
+        try {
+            send(session, NodeStreamMessage.command(messageId, instanceId, action, traceId, toTree(payload)));
+            NodeStreamMessage reply = ack.get(nodeProperties.getCommandTimeoutSeconds(), TimeUnit.SECONDS);
+            if (reply.getStatus() != null && reply.getStatus() == HttpStatus.NOT_IMPLEMENTED.value()) {
+                unsupportedActions.computeIfAbsent(nodeId, id -> ConcurrentHashMap.newKeySet()).add(action);
+                logger.info("Node command stream does not handle action nodeId={} action={}; using HTTP", nodeId, action);
+            }
+            throwIfRejected(reply);
+        } catch (IOException ex) {
+            throw new ResourceAccessException("Failed to send " + action + " over the command stream: " + ex.getMessage(), ex);
+        } catch (TimeoutException ex) {
+            throw new ResourceAccessException("Node " + nodeId + " did not acknowledge " + action + " in time");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof ResourceAccessException resourceAccessException) {
+                throw resourceAccessException;
+            }
+            throw new ResourceAccessException("Command stream failed: " + ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResourceAccessException("Interrupted while waiting for the node to acknowledge " + action);
+        } finally {
+            pendingAcks.remove(messageId);
+        }
+    }
+
+    /**
+     * Handles a frame received from {@code nodeId}. Heartbeats and callbacks are applied like their HTTP
+     * counterparts and answered with an {@code ACK}.
+     */
+    public void handleMessage(UUID nodeId, WebSocketSession session, NodeStreamMessage message) {
+        NodeStreamMessageType type = message.getType();
+        if (type == NodeStreamMessageType.ACK) {
+            completeAck(nodeId, message);
+            return;
+        }
+        int status;
+        String error = null;
+        try {
+            if (type == NodeStreamMessageType.HEARTBEAT) {
+                NodeHeartbeatRequest request = read(message.getPayload(), NodeHeartbeatRequest.class);
+                if (request == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Heartbeat payload is required");
+                }
+                validate(request);
+                nodeService.heartbeat(nodeId, request);
+            } else if (type == NodeStreamMessageType.CALLBACK) {
+                applyCallback(nodeId, message);
+            } else {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported frame type " + type);
+            }
+            status = HttpStatus.OK.value();
+        } catch (ResponseStatusException ex) {
+            status = ex.getStatusCode().value();
+            error = ex.getReason();
+        } catch (InvalidInstanceStateTransitionException ex) {
+            status = HttpStatus.CONFLICT.value();
+            error = ex.getMessage();
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to handle node stream frame nodeId={} type={} id={}", nodeId, type, message.getId(), ex);
+            status = HttpStatus.INTERNAL_SERVER_ERROR.value();
+            error = "Internal error";
+        }
+        if (message.getId() == null) {
+            return;
+        }
+        try {
+            send(sessions.getOrDefault(nodeId, session), NodeStreamMessage.ack(message.getId(), status, error));
+        } catch (IOException ex) {
+            logger.warn("Failed to acknowledge node stream frame nodeId={} id={}", nodeId, message.getId(), ex);
+        }
+    }
+
+    private void applyCallback(UUID nodeId, NodeStreamMessage message) {
+        UUID instanceId = message.getInstanceId();
+        String event = message.getEvent();
+        if (instanceId == null || event == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Callback requires instanceId and event");
+        }
+        switch (event) {
+            case EVENT_PREPARED -> {
+                NodePreparedCallbackRequest request = read(message.getPayload(), NodePreparedCallbackRequest.class);
+                if (request != null) {
+                    validate(request);
+                }
+                String traceId = request != null && request.getTraceId() != null
+                        ? request.getTraceId()
+                        : message.getTraceId();
+                instanceService.reportInstancePrepared(
+                        nodeId,
+                        instanceId,
+                        traceId,
+                        request == null ? null : request.getPhases()
+                );
+            }
+            case EVENT_RUNNING -> instanceService.reportInstanceRunning(nodeId, instanceId);
+            case EVENT_STOPPED -> instanceService.reportInstanceStopped(nodeId, instanceId);
+            case EVENT_DESTROYED -> instanceService.reportInstanceDestroyed(nodeId, instanceId);
+            case EVENT_FAILED -> instanceService.reportInstanceFailed(nodeId, instanceId);
+            default -> throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown callback event " + event);
+        }
+    }
+
+    private void completeAck(UUID nodeId, NodeStreamMessage message) {
+        PendingAck pending = message.getId() == null ? null : pendingAcks.get(message.getId());
+        if (pending == null || !pending.nodeId().equals(nodeId)) {
+            logger.debug("Ignoring unexpected node stream ack nodeId={} id={}", nodeId, message.getId());
+            return;
+        }
+        pending.ack().complete(message);
+    }
+
+    private void throwIfRejected(NodeStreamMessage reply) {
+        int status = reply.getStatus() == null ? HttpStatus.OK.value() : reply.getStatus();
+        HttpStatusCode statusCode = HttpStatusCode.valueOf(status);
+        if (!statusCode.isError()) {
+            return;
+        }
+        String statusText = reply.getError() == null ? "" : reply.getError();
+        if (statusCode.is4xxClientError()) {
+            throw HttpClientErrorException.create(statusCode, statusText, HttpHeaders.EMPTY, null, null);
+        }
+        throw HttpServerErrorException.create(statusCode, statusText, HttpHeaders.EMPTY, null, null);
+    }
+
+    private void send(WebSocketSession session, NodeStreamMessage message) throws IOException {
+        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(message)));
+    }
+
+    private JsonNode toTree(Object payload) {
+        if (payload == null) {
+            return null;
+        }
+        try {
+            return payload instanceof String json ? objectMapper.readTree(json) : objectMapper.valueToTree(payload);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Failed to serialize node command payload", ex);
+        }
+    }
+
+    private <T> T read(JsonNode payload, Class<T> type) {
+        if (payload == null || payload.isNull()) {
+            return null;
+        }
+        try {
+            return objectMapper.treeToValue(payload, type);
+        } catch (JsonProcessingException | IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid payload: " + ex.getOriginalMessage());
+        }
+    }
+
+    private void validate(Object request) {
+        Set<ConstraintViolation<Object>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<Object> violation = violations.iterator().next();
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    violation.getPropertyPath() + " " + violation.getMessage()
+            );
+        }
+    }
+
+    private void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.NORMAL.withReason("Replaced by a newer connection"));
+        } catch (IOException ex) {
+            logger.debug("Failed to close replaced node command stream sessionId={}", session.getId(), ex);
+        }
+    }
+
+    private record PendingAck(UUID nodeId, CompletableFuture<NodeStreamMessage> ack) {
+    }
+}
@@ -22,10 +22,16 @@ public class NodeHeartbeatMonitorService {
 
     private final NodeRepository nodeRepository;
     private final NodeProperties nodeProperties;
+    private final NodeSchedulingIndex nodeSchedulingIndex;
 
-    public NodeHeartbeatMonitorService(NodeRepository nodeRepository, NodeProperties nodeProperties) {
+    public NodeHeartbeatMonitorService(
+            NodeRepository nodeRepository,
+            NodeProperties nodeProperties,
+            NodeSchedulingIndex nodeSchedulingIndex
+    ) {
         this.nodeRepository = nodeRepository;
         this.nodeProperties = nodeProperties;
+        this.nodeSchedulingIndex = nodeSchedulingIndex;
     }
 
     @Scheduled(fixedDelayString = "#{@nodeProperties.heartbeatMonitorIntervalSeconds * 1000}")
@@ -47,6 +53,7 @@ public class NodeHeartbeatMonitorService {
                 nodeRepository.findByStatusNotAndLastHeartbeatAtBefore(NodeStatus.OFFLINE, cutoff);
         for (Node node : staleNodes) {
             node.markOffline();
+            nodeSchedulingIndex.update(node);
             logger.info(
                     "Marked node offline due to missed heartbeats nodeId={} nodeName={} lastHeartbeatAt={} timeoutSeconds={}",
                     node.getId(),
@@ -0,0 +1,275 @@
+package net.spookly.kodama.brain.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import net.spookly.kodama.brain.repository.NodeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-memory view of the nodes that can take an instance, so that scheduling never queries the database.
+ * <p>
+ * Only {@code ONLINE} nodes with a free slot are indexed. They are bucketed by region and dev mode, and each bucket
+ * is kept sorted by {@code usedSlots}, name and id, so the best node of a bucket is its first entry. Node tags are
+ * parsed once, when a node is indexed, into a bit set over an interned tag dictionary.
+ * <p>
+ * Updates cost {@code O(log n)} in the size of the node's bucket. Selection is not logarithmic: without tags it takes
+ * the first entry of each matching bucket, so it is {@code O(1)} with a region and dev mode given and {@code O(b)} over
+ * the {@code b} buckets otherwise. With tags it walks each matching bucket in order until a node has all of them,
+ * which is {@code O(n)} per bucket when few nodes carry the tags. Tags are not indexed, since a tag index would have
+ * to be intersected and then ordered by load on every selection.
+ * <p>
+ * {@link NodeService} and {@link NodeHeartbeatMonitorService} report every node change through {@link #update(Node)},
+ * which applies it once the surrounding transaction commits. The whole index is also reloaded from the database every
+ * {@code node.scheduling-index-refresh-seconds}, which picks up changes made by other Brain instances. Updates applied
+ * while a reload reads the database are recorded and replayed onto the reloaded index, so the reload never reverts
+ * them to the state it read.
+ */
+@Component
+public class NodeSchedulingIndex {
+
+    static final Comparator<Candidate> ORDERING = Comparator
+            .comparingInt(Candidate::usedSlots)
+            .thenComparing(Candidate::name)
+            .thenComparing(Candidate::id);
+
+    private static final Logger logger = LoggerFactory.getLogger(NodeSchedulingIndex.class);
+
+    private final NodeRepository nodeRepository;
+    private final ConcurrentMap<String, Integer> tagBits = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTagBit = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private volatile Buckets buckets = new Buckets();
+    // Updates applied since the running reload started, by node; null when no reload runs. Guarded by writeLock.
+    private Map<UUID, Candidate> reloadUpdates;
+
+    public NodeSchedulingIndex(NodeRepository nodeRepository) {
+        this.nodeRepository = nodeRepository;
+    }
+
+    /**
+     * Builds a standalone index over {@code nodes}, for callers that already hold the candidates.
+     */
+    static NodeSchedulingIndex of(Map<UUID, Node> nodes) {
+        NodeSchedulingIndex index = new NodeSchedulingIndex(null);
+        nodes.forEach((id, node) -> index.apply(id, index.toCandidate(id, node)));
+        return index;
+    }
+
+    @Scheduled(fixedDelayString = "#{@nodeProperties.schedulingIndexRefreshSeconds * 1000}")
+    @Transactional(readOnly = true)
+    public void reload() {
+        Map<UUID, Candidate> updates = new HashMap<>();
+        synchronized (writeLock) {
+            reloadUpdates = updates;
+        }
+        Buckets reloaded = new Buckets();
+        try {
+            for (Node node : nodeRepository.findAll()) {
+                Candidate candidate = toCandidate(node.getId(), node);
+                if (candidate != null) {
+                    reloaded.add(candidate);
+                }
+            }
+        } finally {
+            synchronized (writeLock) {
+                reloadUpdates = null;
+            }
+        }
+        synchronized (writeLock) {
+            updates.forEach(reloaded::replace);
+            buckets = reloaded;
+        }
+        logger.debug("Reloaded node scheduling index schedulableNodes={}", reloaded.candidates.size());
+    }
+
+    /**
+     * Records the current state of {@code node}. Inside a transaction the change is applied after commit, so a
+     * rolled back heartbeat or registration never reaches the index.
+     */
+    public void update(Node node) {
+        Objects.requireNonNull(node, "node");
+        UUID nodeId = Objects.requireNonNull(node.getId(), "node.id");
+        Candidate candidate = toCandidate(nodeId, node);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(nodeId, candidate);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(nodeId, candidate);
+            }
+        });
+    }
+
+    /**
+     * Returns the id of the best schedulable node matching the filters, or {@code null}. A {@code null} filter
+     * matches everything.
+     */
+    public UUID select(String region, String tags, Boolean devModeAllowed) {
+        String normalizedRegion = normalizeRegion(region);
+        BitSet requestedTags = requestedTagBits(tags);
+        if (requestedTags == null) {
+            return null;
+        }
+
+        Buckets current = buckets;
+        Candidate best = null;
+        if (normalizedRegion != null && devModeAllowed != null) {
+            best = firstMatch(current.byKey.get(new BucketKey(normalizedRegion, devModeAllowed)), requestedTags);
+        } else {
+            for (Map.Entry<BucketKey, NavigableSet<Candidate>> bucket : current.byKey.entrySet()) {
+                BucketKey key = bucket.getKey();
+                if ((normalizedRegion != null && !normalizedRegion.equals(key.region()))
+                        || (devModeAllowed != null && devModeAllowed != key.devMode())) {
+                    continue;
+                }
+                Candidate match = firstMatch(bucket.getValue(), requestedTags);
+                if (match != null && (best == null || ORDERING.compare(match, best) < 0)) {
+                    best = match;
+                }
+            }
+        }
+        return best == null ? null : best.id();
+    }
+
+    void apply(UUID nodeId, Candidate candidate) {
+        synchronized (writeLock) {
+            buckets.replace(nodeId, candidate);
+            if (reloadUpdates != null) {
+                reloadUpdates.put(nodeId, candidate);
+            }
+        }
+    }
+
+    private Candidate firstMatch(NavigableSet<Candidate> bucket, BitSet requestedTags) {
+        if (bucket == null) {
+            return null;
+        }
+        for (Candidate candidate : bucket) {
+            if (candidate.hasTags(requestedTags)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private Candidate toCandidate(UUID nodeId, Node node) {
+        if (node.getStatus() != NodeStatus.ONLINE || node.getUsedSlots() >= node.getCapacitySlots()) {
+            return null;
+        }
+        BitSet tags = new BitSet();
+        for (String tag : parseTags(node.getTags())) {
+            tags.set(tagBits.computeIfAbsent(tag, key -> nextTagBit.getAndIncrement()));
+        }
+        return new Candidate(nodeId, node.getName(), node.getRegion(), node.isDevMode(), node.getUsedSlots(), tags);
+    }
+
+    /**
+     * Returns the requested tags as bits, or {@code null} when a tag is unknown, since then no node can match.
+     */
+    private BitSet requestedTagBits(String rawTags) {
+        BitSet requested = new BitSet();
+        for (String tag : parseTags(rawTags)) {
+            Integer bit = tagBits.get(tag);
+            if (bit == null) {
+                return null;
+            }
+            requested.set(bit);
+        }
+        return requested;
+    }
+
+    private String normalizeRegion(String region) {
+        if (region == null) {
+            return null;
+        }
+        String trimmed = region.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static List<String> parseTags(String rawTags) {
+        if (rawTags == null || rawTags.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(rawTags.split(","))
+                .map(String::trim)
+                .filter(tag -> !tag.isEmpty())
+                .map(tag -> tag.toLowerCase(Locale.ROOT))
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Immutable snapshot of a schedulable node. {@code tags} is never modified after construction.
+     */
+    record Candidate(UUID id, String name, String region, boolean devMode, int usedSlots, BitSet tags) {
+
+        boolean hasTags(BitSet requestedTags) {
+            for (int bit = requestedTags.nextSetBit(0); bit >= 0; bit = requestedTags.nextSetBit(bit + 1)) {
+                if (!tags.get(bit)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private record BucketKey(String region, boolean devMode) {
+    }
+
+    /**
+     * Readers iterate the buckets without locking; writers hold {@code writeLock}.
+     */
+    private static final class Buckets {
+
+        private final ConcurrentMap<UUID, Candidate> candidates = new ConcurrentHashMap<>();
+        private final ConcurrentMap<BucketKey, NavigableSet<Candidate>> byKey = new ConcurrentHashMap<>();
+
+        void add(Candidate candidate) {
+            candidates.put(candidate.id(), candidate);
+            byKey.computeIfAbsent(
+                    new BucketKey(candidate.region(), candidate.devMode()),
+                    key -> new ConcurrentSkipListSet<>(ORDERING)
+            ).add(candidate);
+        }
+
+        void replace(UUID nodeId, Candidate candidate) {
+            Candidate previous = candidates.remove(nodeId);
+            if (previous != null) {
+                remove(previous);
+            }
+            if (candidate != null) {
+                add(candidate);
+            }
+        }
+
+        void remove(Candidate candidate) {
+            NavigableSet<Candidate> bucket = byKey.get(new BucketKey(candidate.region(), candidate.devMode()));
+            if (bucket != null) {
+                bucket.remove(candidate);
+            }
+        }
+    }
+}
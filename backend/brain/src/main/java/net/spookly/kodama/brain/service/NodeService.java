@@ -24,10 +24,16 @@ public class NodeService {
 
     private final NodeRepository nodeRepository;
     private final NodeProperties nodeProperties;
+    private final NodeSchedulingIndex nodeSchedulingIndex;
 
-    public NodeService(NodeRepository nodeRepository, NodeProperties nodeProperties) {
+    public NodeService(
+            NodeRepository nodeRepository,
+            NodeProperties nodeProperties,
+            NodeSchedulingIndex nodeSchedulingIndex
+    ) {
         this.nodeRepository = nodeRepository;
         this.nodeProperties = nodeProperties;
+        this.nodeSchedulingIndex = nodeSchedulingIndex;
     }
 
     public List<NodeDto> listNodes() {
@@ -37,12 +43,18 @@ public class NodeService {
                 .toList();
     }
 
+    @Transactional(readOnly = true)
+    public boolean nodeExists(UUID nodeId) {
+        return nodeId != null && nodeRepository.existsById(nodeId);
+    }
+
     public NodeRegistrationResponse registerNode(NodeRegistrationRequest request) {
         validateRegistration(request);
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
         Node node = nodeRepository.findByName(request.getName())
                 .map(existing -> refreshRegistration(existing, request, now))
                 .orElseGet(() -> createNode(request, now));
+        nodeSchedulingIndex.update(node);
 
         return new NodeRegistrationResponse(
                 node.getId(),
@@ -55,6 +67,7 @@ public class NodeService {
                 new ResponseStatusException(HttpStatus.NOT_FOUND, "Node not found"));
         validateHeartbeat(node, request);
         node.updateHeartbeat(request.getStatus(), request.getUsedSlots(), OffsetDateTime.now(ZoneOffset.UTC));
+        nodeSchedulingIndex.update(node);
         return NodeDto.fromEntity(node);
     }
 
@@ -0,0 +1,172 @@
+package net.spookly.kodama.brain.service;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstancePrepareTrace;
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.dto.PrepareTraceDto;
+import net.spookly.kodama.brain.dto.node.NodePreparePhase;
+import net.spookly.kodama.brain.repository.InstancePrepareTraceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Records where the time of a prepare goes: the Brain-side dispatch, the phases the node reports with its
+ * {@code /prepared} callback and the end-to-end duration in between. Traces are correlated by the trace ID sent in
+ * the {@value CommandDispatcherService#TRACE_ID_HEADER} header of the prepare command.
+ */
+@Service
+@Transactional
+public class PrepareTraceService {
+
+    static final String DISPATCH_PHASE = "dispatch";
+    static final String OTHER_PHASE = "other";
+    /**
+     * Phase names the node is known to send. Anything else is tagged {@value #OTHER_PHASE} so a node cannot create
+     * meters at will; the raw names are still kept in the trace.
+     */
+    static final Set<String> METRIC_PHASES =
+            Set.of(DISPATCH_PHASE, "cache-lookup", "download", "extract", "merge", "callback");
+    static final int MAX_SLOWEST_LIMIT = 200;
+
+    private static final Logger logger = LoggerFactory.getLogger(PrepareTraceService.class);
+    private static final TypeReference<List<NodePreparePhase>> PHASES_TYPE = new TypeReference<>() {
+    };
+
+    private final InstancePrepareTraceRepository prepareTraceRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Timer prepareDuration;
+
+    public PrepareTraceService(
+            InstancePrepareTraceRepository prepareTraceRepository,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry
+    ) {
+        this.prepareTraceRepository = prepareTraceRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.prepareDuration = Timer.builder("kodama.instances.prepare.duration")
+                .description("Time from dispatching a prepare command until the node reported prepared.")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    public void recordDispatch(
+            Instance instance,
+            Node node,
+            String traceId,
+            OffsetDateTime dispatchedAt,
+            long dispatchMillis
+    ) {
+        prepareTraceRepository.save(new InstancePrepareTrace(instance, node, traceId, dispatchedAt, dispatchMillis));
+        recordPhase(DISPATCH_PHASE, dispatchMillis);
+    }
+
+    /**
+     * Closes the trace of {@code instance} identified by {@code traceId}, or its latest open trace when the node did
+     * not echo one, and records the reported phases. Returns the {@code PREPARE_COMPLETED} event payload, or
+     * {@code null} when the callback carried no trace data.
+     */
+    public String complete(
+            Instance instance,
+            String traceId,
+            List<NodePreparePhase> phases,
+            OffsetDateTime completedAt
+    ) {
+        List<NodePreparePhase> reported = phases == null ? List.of() : phases;
+        reported.forEach(phase -> recordPhase(phase.getName(), phase.getDurationMillis()));
+
+        InstancePrepareTrace trace = findOpenTrace(instance, traceId);
+        if (trace != null) {
+            trace.complete(completedAt, reported.isEmpty() ? null : writeJson(reported));
+            prepareDuration.record(trace.getTotalMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (trace == null && traceId == null && reported.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("traceId", trace == null ? traceId : trace.getTraceId());
+        if (trace != null) {
+            payload.put("dispatchMillis", trace.getDispatchMillis());
+            payload.put("totalMillis", trace.getTotalMillis());
+        }
+        payload.put("phases", reported);
+        return writeJson(payload);
+    }
+
+    @Transactional(readOnly = true)
+    public List<PrepareTraceDto> findSlowest(int limit) {
+        if (limit < 1 || limit > MAX_SLOWEST_LIMIT) {
+            throw new ResponseStatusException(
+                    HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_SLOWEST_LIMIT
+            );
+        }
+        return prepareTraceRepository.findAllByCompletedAtIsNotNullOrderByTotalMillisDesc(PageRequest.of(0, limit))
+                .stream()
+                .map(trace -> PrepareTraceDto.fromEntity(trace, readPhases(trace.getPhasesJson())))
+                .toList();
+    }
+
+    private InstancePrepareTrace findOpenTrace(Instance instance, String traceId) {
+        Optional<InstancePrepareTrace> trace = traceId == null
+                ? prepareTraceRepository.findFirstByInstanceIdAndCompletedAtIsNullOrderByDispatchedAtDesc(instance.getId())
+                : prepareTraceRepository.findByInstanceIdAndTraceId(instance.getId(), traceId);
+        if (trace.isEmpty()) {
+            logger.debug("No prepare trace to complete instanceId={} traceId={}", instance.getId(), traceId);
+            return null;
+        }
+        if (trace.get().isCompleted()) {
+            logger.warn("Prepare trace already completed instanceId={} traceId={}", instance.getId(), traceId);
+            return null;
+        }
+        return trace.get();
+    }
+
+    private void recordPhase(String phase, long durationMillis) {
+        Timer.builder("kodama.instances.prepare.phase.duration")
+                .description("Time spent in one phase of a prepare.")
+                .tag("phase", phase != null && METRIC_PHASES.contains(phase) ? phase : OTHER_PHASE)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(durationMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private List<NodePreparePhase> readPhases(String phasesJson) {
+        if (phasesJson == null || phasesJson.isBlank()) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(phasesJson, PHASES_TYPE);
+        } catch (JsonProcessingException ex) {
+            logger.warn("Failed to read prepare trace phases", ex);
+            return List.of();
+        }
+    }
+
+    private String writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Failed to serialize prepare trace", ex);
+        }
+    }
+}
@@ -2,16 +2,21 @@ package net.spookly.kodama.brain.service;
 
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 import net.spookly.kodama.brain.domain.template.Template;
 import net.spookly.kodama.brain.domain.template.TemplateVersion;
+import net.spookly.kodama.brain.domain.template.TemplateVersionFile;
 import net.spookly.kodama.brain.dto.CreateTemplateRequest;
 import net.spookly.kodama.brain.dto.CreateTemplateVersionRequest;
 import net.spookly.kodama.brain.dto.TemplateDto;
+import net.spookly.kodama.brain.dto.TemplateFileManifestEntry;
 import net.spookly.kodama.brain.dto.TemplateVersionDto;
 import net.spookly.kodama.brain.repository.TemplateRepository;
+import net.spookly.kodama.brain.repository.TemplateVersionFileRepository;
 import net.spookly.kodama.brain.repository.TemplateVersionRepository;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
@@ -24,10 +29,16 @@ public class TemplateService {
 
     private final TemplateRepository templateRepository;
     private final TemplateVersionRepository templateVersionRepository;
+    private final TemplateVersionFileRepository templateVersionFileRepository;
 
-    public TemplateService(TemplateRepository templateRepository, TemplateVersionRepository templateVersionRepository) {
+    public TemplateService(
+            TemplateRepository templateRepository,
+            TemplateVersionRepository templateVersionRepository,
+            TemplateVersionFileRepository templateVersionFileRepository
+    ) {
         this.templateRepository = templateRepository;
         this.templateVersionRepository = templateVersionRepository;
+        this.templateVersionFileRepository = templateVersionFileRepository;
     }
 
     @Transactional(readOnly = true)
@@ -77,9 +88,24 @@ public class TemplateService {
         );
 
         TemplateVersion saved = templateVersionRepository.save(templateVersion);
+        if (request.getFiles() != null && !request.getFiles().isEmpty()) {
+            templateVersionFileRepository.saveAll(toVersionFiles(saved, request.getFiles()));
+        }
         return TemplateVersionDto.fromEntity(saved);
     }
 
+    @Transactional(readOnly = true)
+    public List<TemplateFileManifestEntry> getVersionManifest(UUID templateId, UUID versionId) {
+        Template template = getTemplateEntity(templateId);
+        TemplateVersion templateVersion = templateVersionRepository.findById(versionId)
+                .filter(version -> version.getTemplate().getId().equals(template.getId()))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Template version not found"));
+        return templateVersionFileRepository.findAllByTemplateVersionOrderByPathAsc(templateVersion)
+                .stream()
+                .map(TemplateFileManifestEntry::fromEntity)
+                .toList();
+    }
+
     @Transactional(readOnly = true)
     public List<TemplateVersionDto> listVersions(UUID templateId) {
         Template template = getTemplateEntity(templateId);
@@ -89,6 +115,31 @@ public class TemplateService {
                 .toList();
     }
 
+    private List<TemplateVersionFile> toVersionFiles(
+            TemplateVersion templateVersion,
+            List<TemplateFileManifestEntry> entries
+    ) {
+        Set<String> paths = new HashSet<>();
+        return entries.stream()
+                .map(entry -> {
+                    String path = entry.getPath();
+                    if (path.startsWith("/") || path.contains("\\") || List.of(path.split("/")).contains("..")) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid manifest path: " + path);
+                    }
+                    if (!paths.add(path)) {
+                        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Duplicate manifest path: " + path);
+                    }
+                    return new TemplateVersionFile(
+                            templateVersion,
+                            path,
+                            entry.getSize(),
+                            entry.getSha256(),
+                            entry.getMode()
+                    );
+                })
+                .toList();
+    }
+
     private Template getTemplateEntity(UUID id) {
         return templateRepository.findById(id)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Template not found"));
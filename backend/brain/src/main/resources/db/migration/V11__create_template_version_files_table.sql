@@ -0,0 +1,14 @@
+CREATE TABLE template_version_files (
+    id BINARY(16) NOT NULL,
+    template_version_id BINARY(16) NOT NULL,
+    path VARCHAR(1024) NOT NULL,
+    size BIGINT NOT NULL,
+    sha256 CHAR(64) NOT NULL,
+    mode INT NULL,
+    CONSTRAINT pk_template_version_files PRIMARY KEY (id),
+    CONSTRAINT fk_template_version_files_template_version FOREIGN KEY (template_version_id) REFERENCES template_versions (id) ON DELETE CASCADE
+) ENGINE=InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_unicode_ci;
+
+CREATE INDEX idx_template_version_files_template_version_id ON template_version_files (template_version_id);
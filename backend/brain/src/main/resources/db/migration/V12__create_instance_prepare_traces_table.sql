@@ -0,0 +1,20 @@
+CREATE TABLE instance_prepare_traces (
+    id BINARY(16) NOT NULL,
+    instance_id BINARY(16) NOT NULL,
+    node_id BINARY(16) NULL,
+    trace_id VARCHAR(64) NOT NULL,
+    dispatched_at DATETIME(6) NOT NULL,
+    dispatch_millis BIGINT NOT NULL,
+    completed_at DATETIME(6) NULL,
+    total_millis BIGINT NULL,
+    phases_json TEXT NULL,
+    CONSTRAINT pk_instance_prepare_traces PRIMARY KEY (id),
+    CONSTRAINT uq_instance_prepare_traces_trace_id UNIQUE (trace_id),
+    CONSTRAINT fk_instance_prepare_traces_instance FOREIGN KEY (instance_id) REFERENCES instances (id) ON DELETE CASCADE,
+    CONSTRAINT fk_instance_prepare_traces_node FOREIGN KEY (node_id) REFERENCES nodes (id) ON DELETE SET NULL
+) ENGINE=InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_unicode_ci;
+
+CREATE INDEX idx_instance_prepare_traces_instance_id ON instance_prepare_traces (instance_id);
+CREATE INDEX idx_instance_prepare_traces_total_millis ON instance_prepare_traces (total_millis);
@@ -0,0 +1,22 @@
+CREATE TABLE node_commands (
+    id BINARY(16) NOT NULL,
+    node_id BINARY(16) NOT NULL,
+    instance_id BINARY(16) NOT NULL,
+    action VARCHAR(32) NOT NULL,
+    payload_json TEXT NOT NULL,
+    trace_id VARCHAR(64) NULL,
+    status VARCHAR(32) NOT NULL,
+    attempts INT NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    next_attempt_at DATETIME(6) NOT NULL,
+    completed_at DATETIME(6) NULL,
+    last_error VARCHAR(1024) NULL,
+    CONSTRAINT pk_node_commands PRIMARY KEY (id),
+    CONSTRAINT fk_node_commands_node FOREIGN KEY (node_id) REFERENCES nodes (id) ON DELETE CASCADE,
+    CONSTRAINT fk_node_commands_instance FOREIGN KEY (instance_id) REFERENCES instances (id) ON DELETE CASCADE
+) ENGINE=InnoDB
+  DEFAULT CHARSET = utf8mb4
+  COLLATE = utf8mb4_unicode_ci;
+
+CREATE INDEX idx_node_commands_status_next_attempt_at ON node_commands (status, next_attempt_at);
+CREATE INDEX idx_node_commands_instance_id ON node_commands (instance_id);
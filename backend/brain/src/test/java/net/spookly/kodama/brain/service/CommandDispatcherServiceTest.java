@@ -1,6 +1,19 @@
 package net.spookly.kodama.brain.service;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
@@ -28,11 +41,14 @@ import net.spookly.kodama.brain.dto.node.NodePrepareInstanceLayer;
 import net.spookly.kodama.brain.dto.node.NodePrepareInstanceRequest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.RestTemplate;
 
 class CommandDispatcherServiceTest {
@@ -41,6 +57,8 @@ class CommandDispatcherServiceTest {
     private RestTemplate restTemplate;
     private MockRestServiceServer server;
     private NodeProperties nodeProperties;
+    private PrepareTraceService prepareTraceService;
+    private NodeCommandStreamService commandStream;
     private CommandDispatcherService dispatcher;
 
     @BeforeEach
@@ -49,7 +67,15 @@ class CommandDispatcherServiceTest {
         server = MockRestServiceServer.bindTo(restTemplate).build();
         nodeProperties = new NodeProperties();
         nodeProperties.setCommandRetryBackoffMillis(0);
-        dispatcher = new CommandDispatcherService(restTemplate, nodeProperties);
+        prepareTraceService = mock(PrepareTraceService.class);
+        commandStream = mock(NodeCommandStreamService.class);
+        dispatcher = new CommandDispatcherService(
+                restTemplate,
+                nodeProperties,
+                prepareTraceService,
+                new NodeCircuitBreaker(nodeProperties),
+                commandStream
+        );
     }
 
     @Test
@@ -83,11 +109,13 @@ class CommandDispatcherServiceTest {
         server.expect(requestTo("http://node-1.internal/api/instances/" + instanceId + "/prepare"))
                 .andExpect(method(HttpMethod.POST))
                 .andExpect(content().json(objectMapper.writeValueAsString(expected)))
+                .andExpect(header(CommandDispatcherService.TRACE_ID_HEADER, matchesPattern("[0-9a-f-]{36}")))
                 .andRespond(withSuccess());
 
-        dispatcher.sendPrepareInstance(node, instance, List.of(layer), variables);
+        String traceId = dispatcher.sendPrepareInstance(node, instance, List.of(layer), variables);
 
         server.verify();
+        verify(prepareTraceService).recordDispatch(same(instance), same(node), eq(traceId), any(), anyLong());
     }
 
     @Test
@@ -169,6 +197,85 @@ class CommandDispatcherServiceTest {
         server.verify();
     }
 
+    @Test
+    void failsFastOnceTheNodeCircuitIsOpen() {
+        nodeProperties.setCommandMaxAttempts(1);
+        nodeProperties.setCommandCircuitFailureThreshold(2);
+        UUID instanceId = UUID.randomUUID();
+        Node node = buildNode(UUID.randomUUID(), "http://node-1.internal");
+        Instance instance = buildInstance(instanceId, node);
+        server.expect(ExpectedCount.times(2), requestTo("http://node-1.internal/api/instances/" + instanceId + "/stop"))
+                .andRespond(withStatus(HttpStatus.BAD_GATEWAY));
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> dispatcher.sendStopInstance(node, instance))
+                    .isInstanceOf(HttpServerErrorException.class);
+        }
+        assertThatThrownBy(() -> dispatcher.sendStopInstance(node, instance))
+                .isInstanceOf(NodeCircuitOpenException.class);
+
+        server.verify();
+    }
+
+    @Test
+    void doesNotSendToOfflineNodes() {
+        Node node = buildNode(UUID.randomUUID(), "http://node-1.internal");
+        node.markOffline();
+        Instance instance = buildInstance(UUID.randomUUID(), node);
+
+        assertThatThrownBy(() -> dispatcher.sendStartInstance(node, instance))
+                .isInstanceOf(NodeCircuitOpenException.class);
+
+        server.verify();
+    }
+
+    @Test
+    void sendsOverTheCommandStreamWhenTheNodeIsConnected() {
+        UUID nodeId = UUID.randomUUID();
+        UUID instanceId = UUID.randomUUID();
+        Node node = buildNode(nodeId, "http://node-1.internal");
+        Instance instance = buildInstance(instanceId, node);
+        when(commandStream.canSendCommand(eq(nodeId), any())).thenReturn(true);
+
+        dispatcher.sendStopInstance(node, instance);
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(commandStream).sendCommand(eq(nodeId), eq(instanceId), eq("stop"), payload.capture(), isNull());
+        assertThat(payload.getValue()).isInstanceOf(NodeInstanceCommandRequest.class);
+        server.verify();
+    }
+
+    @Test
+    void fallsBackToHttpWhenTheStreamDoesNotHandleTheAction() {
+        UUID nodeId = UUID.randomUUID();
+        UUID instanceId = UUID.randomUUID();
+        Node node = buildNode(nodeId, "http://node-1.internal");
+        Instance instance = buildInstance(instanceId, node);
+        when(commandStream.canSendCommand(eq(nodeId), any())).thenReturn(true);
+        doThrow(HttpServerErrorException.create(HttpStatus.NOT_IMPLEMENTED, "", HttpHeaders.EMPTY, null, null))
+                .when(commandStream).sendCommand(eq(nodeId), eq(instanceId), eq("destroy"), any(), isNull());
+        server.expect(requestTo("http://node-1.internal/api/instances/" + instanceId + "/destroy"))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess());
+
+        dispatcher.sendDestroyInstance(node, instance);
+
+        server.verify();
+    }
+
+    @Test
+    void retryDelayGrowsExponentiallyWithJitterUpToTheCap() {
+        nodeProperties.setCommandRetryBackoffMillis(100);
+        nodeProperties.setCommandRetryMaxBackoffMillis(1_000);
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(dispatcher.retryDelayMillis(1)).isBetween(50L, 100L);
+            assertThat(dispatcher.retryDelayMillis(3)).isBetween(200L, 400L);
+            assertThat(dispatcher.retryDelayMillis(10)).isBetween(500L, 1_000L);
+            assertThat(dispatcher.retryDelayMillis(Integer.MAX_VALUE)).isBetween(500L, 1_000L);
+        }
+    }
+
     private Node buildNode(UUID nodeId, String baseUrl) {
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
         Node node = new Node(
@@ -0,0 +1,174 @@
+package net.spookly.kodama.brain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceEvent;
+import net.spookly.kodama.brain.domain.instance.InstanceEventType;
+import net.spookly.kodama.brain.domain.instance.InstanceState;
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeCommand;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import net.spookly.kodama.brain.dto.BulkInstanceResult;
+import net.spookly.kodama.brain.repository.InstanceEventRepository;
+import net.spookly.kodama.brain.repository.InstanceRepository;
+import net.spookly.kodama.brain.repository.NodeCommandRepository;
+import net.spookly.kodama.brain.repository.NodeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class InstanceBulkServiceTest {
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.4.0");
+
+    @DynamicPropertySource
+    static void configureDatasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysql::getJdbcUrl);
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+        registry.add("spring.datasource.driver-class-name", mysql::getDriverClassName);
+    }
+
+    @Autowired
+    private InstanceRepository instanceRepository;
+
+    @Autowired
+    private InstanceEventRepository instanceEventRepository;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private NodeCommandRepository nodeCommandRepository;
+
+    private NodeCommandOutboxService commandOutbox;
+    private InstanceBulkService bulkService;
+    private Node node;
+
+    @BeforeEach
+    void setUp() {
+        commandOutbox = mock(NodeCommandOutboxService.class);
+        bulkService = new InstanceBulkService(
+                instanceRepository,
+                instanceEventRepository,
+                new InstanceStateMachine(instanceEventRepository),
+                nodeCommandRepository,
+                commandOutbox
+        );
+        node = nodeRepository.save(new Node(
+                "node-bulk",
+                "eu-west-1",
+                NodeStatus.ONLINE,
+                false,
+                8,
+                2,
+                OffsetDateTime.now(ZoneOffset.UTC),
+                "1.0.0",
+                null,
+                "http://node.local"
+        ));
+    }
+
+    @Test
+    void stopInstancesStopsRunningInstancesAndReportsTheRest() {
+        Instance running = saveInstance("bulk-running", InstanceState.RUNNING, node);
+        Instance preparing = saveInstance("bulk-preparing", InstanceState.PREPARING, node);
+        Instance unassigned = saveInstance("bulk-unassigned", InstanceState.RUNNING, null);
+
+        List<BulkInstanceResult> results = bulkService.stopInstances(List.of(
+                running.getId(),
+                preparing.getId(),
+                unassigned.getId(),
+                UUID.randomUUID(),
+                running.getId()
+        ));
+
+        assertThat(results.stream().map(BulkInstanceResult::getStatus).toList())
+                .containsExactly(202, 409, 409, 404, 400);
+        assertThat(instanceRepository.findById(running.getId()).orElseThrow().getState())
+                .isEqualTo(InstanceState.STOPPING);
+        assertThat(instanceRepository.findById(preparing.getId()).orElseThrow().getState())
+                .isEqualTo(InstanceState.PREPARING);
+        assertThat(instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(running.getId()))
+                .extracting(InstanceEvent::getType)
+                .containsExactly(InstanceEventType.STOP_DISPATCHED);
+        verify(commandOutbox).enqueueStopInstance(node, running);
+        verifyNoMoreInteractions(commandOutbox);
+    }
+
+    @Test
+    void destroyInstancesQueuesDestroyForStoppedInstances() {
+        Instance stopped = saveInstance("bulk-stopped", InstanceState.STOPPED, node);
+        Instance running = saveInstance("bulk-still-running", InstanceState.RUNNING, node);
+
+        List<BulkInstanceResult> results = bulkService.destroyInstances(List.of(stopped.getId(), running.getId()));
+
+        assertThat(results.stream().map(BulkInstanceResult::getStatus).toList()).containsExactly(202, 409);
+        assertThat(instanceRepository.findById(stopped.getId()).orElseThrow().getState())
+                .isEqualTo(InstanceState.STOPPED);
+        assertThat(instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(stopped.getId()))
+                .extracting(InstanceEvent::getType)
+                .containsExactly(InstanceEventType.DESTROY_DISPATCHED);
+        verify(commandOutbox).enqueueDestroyInstance(node, stopped);
+        verifyNoMoreInteractions(commandOutbox);
+    }
+
+    @Test
+    void destroyInstancesRejectsInstancesWithPendingDestroy() {
+        Instance destroying = saveInstance("bulk-destroying", InstanceState.STOPPED, node);
+        Instance stopped = saveInstance("bulk-stopped-again", InstanceState.STOPPED, node);
+        nodeCommandRepository.save(new NodeCommand(
+                node,
+                destroying,
+                CommandDispatcherService.ACTION_DESTROY,
+                "{}",
+                null,
+                OffsetDateTime.now(ZoneOffset.UTC)
+        ));
+
+        List<BulkInstanceResult> results = bulkService.destroyInstances(List.of(destroying.getId(), stopped.getId()));
+
+        assertThat(results.stream().map(BulkInstanceResult::getStatus).toList()).containsExactly(409, 202);
+        assertThat(instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(destroying.getId())).isEmpty();
+        verify(commandOutbox).enqueueDestroyInstance(node, stopped);
+        verifyNoMoreInteractions(commandOutbox);
+    }
+
+    private Instance saveInstance(String name, InstanceState state, Node assignedNode) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        return instanceRepository.save(new Instance(
+                name,
+                name,
+                state,
+                null,
+                assignedNode,
+                null,
+                null,
+                null,
+                null,
+                null,
+                now,
+                now
+        ));
+    }
+}
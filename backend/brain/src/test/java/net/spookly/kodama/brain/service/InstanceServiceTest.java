@@ -19,16 +19,24 @@ import net.spookly.kodama.brain.domain.node.NodeStatus;
 import net.spookly.kodama.brain.domain.template.Template;
 import net.spookly.kodama.brain.domain.template.TemplateType;
 import net.spookly.kodama.brain.domain.template.TemplateVersion;
+import net.spookly.kodama.brain.dto.BulkInstanceResult;
 import net.spookly.kodama.brain.dto.CreateInstanceRequest;
 import net.spookly.kodama.brain.dto.InstanceDto;
 import net.spookly.kodama.brain.dto.InstanceTemplateLayerRequest;
+import net.spookly.kodama.brain.dto.PrepareTraceDto;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchItem;
+import net.spookly.kodama.brain.dto.node.NodeCallbackBatchResult;
+import net.spookly.kodama.brain.dto.node.NodePreparePhase;
 import net.spookly.kodama.brain.repository.InstanceEventRepository;
 import net.spookly.kodama.brain.repository.InstanceRepository;
 import net.spookly.kodama.brain.repository.InstanceTemplateLayerRepository;
 import net.spookly.kodama.brain.repository.NodeRepository;
 import net.spookly.kodama.brain.repository.TemplateRepository;
 import net.spookly.kodama.brain.repository.TemplateVersionRepository;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
@@ -47,7 +55,12 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 @Testcontainers
 @DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
-@Import({InstanceService.class, InstanceStateMachine.class, InstanceServiceTest.ObjectMapperTestConfig.class})
+@Import({
+        InstanceService.class,
+        InstanceStateMachine.class,
+        PrepareTraceService.class,
+        InstanceServiceTest.ObjectMapperTestConfig.class
+})
 class InstanceServiceTest {
 
     @Container
@@ -84,12 +97,23 @@ class InstanceServiceTest {
     @Autowired
     private NodeRepository nodeRepository;
 
+    @Autowired
+    private PrepareTraceService prepareTraceService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @TestConfiguration
     static class ObjectMapperTestConfig {
         @Bean
         ObjectMapper objectMapper() {
             return new ObjectMapper();
         }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
     }
 
     @Test
@@ -298,6 +322,61 @@ class InstanceServiceTest {
         assertThat(events.getLast().getType()).isEqualTo(InstanceEventType.PREPARE_COMPLETED);
     }
 
+    @Test
+    void reportPreparedCompletesTraceAndStoresPhases() throws Exception {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Node node = nodeRepository.save(new Node(
+                "node-traced",
+                "eu-west-1",
+                NodeStatus.ONLINE,
+                false,
+                4,
+                1,
+                now,
+                "1.0.0",
+                null,
+                "http://node.local"
+        ));
+        Instance instance = instanceRepository.save(new Instance(
+                "instance-traced",
+                "Traced Instance",
+                InstanceState.PREPARING,
+                REQUESTER_ID,
+                node,
+                null,
+                null,
+                null,
+                null,
+                null,
+                now,
+                now
+        ));
+        prepareTraceService.recordDispatch(instance, node, "trace-1", now.minusSeconds(5), 12);
+        List<NodePreparePhase> phases = List.of(
+                new NodePreparePhase("download", 3000, 2),
+                new NodePreparePhase("merge", 800, 1),
+                new NodePreparePhase("custom-step", 40, 1)
+        );
+
+        instanceService.reportInstancePrepared(node.getId(), instance.getId(), "trace-1", phases);
+
+        InstanceEvent event = instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(instance.getId()).getLast();
+        assertThat(event.getType()).isEqualTo(InstanceEventType.PREPARE_COMPLETED);
+        JsonNode payload = new ObjectMapper().readTree(event.getPayloadJson());
+        assertThat(payload.get("traceId").asText()).isEqualTo("trace-1");
+        assertThat(payload.get("totalMillis").asLong()).isGreaterThanOrEqualTo(5000);
+        assertThat(payload.get("phases")).hasSize(3);
+        assertThat(meterRegistry.find("kodama.instances.prepare.phase.duration").tag("phase", "other").timer())
+                .isNotNull();
+        assertThat(meterRegistry.find("kodama.instances.prepare.phase.duration").tag("phase", "custom-step").timer())
+                .isNull();
+
+        List<PrepareTraceDto> slowest = prepareTraceService.findSlowest(10);
+        assertThat(slowest).extracting(PrepareTraceDto::getTraceId).containsExactly("trace-1");
+        assertThat(slowest.getFirst().getPhases()).extracting(NodePreparePhase::getName)
+                .containsExactly("download", "merge", "custom-step");
+    }
+
     @Test
     void reportPreparedRejectsMismatchedNode() {
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
@@ -428,6 +507,112 @@ class InstanceServiceTest {
         assertThat(events.getLast().getType()).isEqualTo(InstanceEventType.DESTROY_COMPLETED);
     }
 
+    @Test
+    void createInstancesCreatesValidRequestsAndReportsFailuresPerItem() {
+        Template template = createTemplate("Bulk Template");
+        templateVersionRepository.save(new TemplateVersion(
+                template, "1.0.0", "checksum-1", "s3/key/1", null, OffsetDateTime.now(ZoneOffset.UTC).minusMinutes(5)));
+        TemplateVersion latest = templateVersionRepository.save(new TemplateVersion(
+                template, "1.1.0", "checksum-2", "s3/key/2", null, OffsetDateTime.now(ZoneOffset.UTC)));
+        instanceService.createInstance(new CreateInstanceRequest(
+                "bulk-existing",
+                List.of(new InstanceTemplateLayerRequest(latest.getId(), 0))
+        ));
+
+        InstanceTemplateLayerRequest byTemplate = new InstanceTemplateLayerRequest();
+        byTemplate.setTemplateId(template.getId());
+        List<CreateInstanceRequest> requests = List.of(
+                new CreateInstanceRequest("bulk-1", List.of(byTemplate)),
+                new CreateInstanceRequest("bulk-2", List.of(byTemplate)),
+                new CreateInstanceRequest("bulk-existing", List.of(byTemplate)),
+                new CreateInstanceRequest("bulk-1", List.of(byTemplate)),
+                new CreateInstanceRequest("bulk-missing", List.of(new InstanceTemplateLayerRequest(UUID.randomUUID(), 0)))
+        );
+
+        List<BulkInstanceResult> results = instanceService.createInstances(requests);
+
+        assertThat(results.stream().map(BulkInstanceResult::getStatus).toList())
+                .containsExactly(201, 201, 409, 409, 404);
+        assertThat(results.get(0).getInstance().getTemplateLayers().getFirst().getTemplateVersionId())
+                .isEqualTo(latest.getId());
+        assertThat(instanceRepository.findByName("bulk-2")).isPresent();
+        assertThat(instanceRepository.findByName("bulk-missing")).isEmpty();
+
+        UUID createdId = results.get(1).getInstanceId();
+        assertThat(instanceTemplateLayerRepository.findAllByInstanceId(createdId)).hasSize(1);
+        assertThat(instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(createdId))
+                .extracting(InstanceEvent::getType)
+                .containsExactly(InstanceEventType.REQUEST_RECEIVED);
+    }
+
+    @Test
+    void reportInstanceCallbacksAppliesEachCallbackAndReportsFailuresPerItem() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Node node = nodeRepository.save(new Node(
+                "node-batch",
+                "eu-west-1",
+                NodeStatus.ONLINE,
+                false,
+                4,
+                2,
+                now,
+                "1.0.0",
+                null,
+                "http://node.local"
+        ));
+        Instance preparing = saveInstance("instance-batch-preparing", InstanceState.PREPARING, node, now);
+        Instance stopping = saveInstance("instance-batch-stopping", InstanceState.STOPPING, node, now);
+        OffsetDateTime observedAt = now.minusSeconds(5);
+
+        List<NodeCallbackBatchResult> results = instanceService.reportInstanceCallbacks(node.getId(), List.of(
+                new NodeCallbackBatchItem(preparing.getId(), "prepared", observedAt, null),
+                new NodeCallbackBatchItem(preparing.getId(), "running", null, null),
+                new NodeCallbackBatchItem(stopping.getId(), "stopped", null, null),
+                new NodeCallbackBatchItem(stopping.getId(), "running", null, null),
+                new NodeCallbackBatchItem(UUID.randomUUID(), "stopped", null, null),
+                new NodeCallbackBatchItem(stopping.getId(), "rebooted", null, null)
+        ));
+
+        assertThat(results.stream().map(NodeCallbackBatchResult::getStatus).toList())
+                .containsExactly(200, 200, 200, 409, 404, 400);
+        assertThat(instanceRepository.findById(preparing.getId()).orElseThrow().getState())
+                .isEqualTo(InstanceState.RUNNING);
+        assertThat(instanceRepository.findById(stopping.getId()).orElseThrow().getState())
+                .isEqualTo(InstanceState.STOPPED);
+
+        List<InstanceEvent> events = instanceEventRepository.findAllByInstanceIdOrderByTimestampAsc(preparing.getId());
+        assertThat(events.stream().map(InstanceEvent::getType).toList())
+                .containsExactly(InstanceEventType.PREPARE_COMPLETED, InstanceEventType.START_COMPLETED);
+        assertThat(events.getFirst().getTimestamp()).isBefore(now);
+    }
+
+    @Test
+    void reportInstanceCallbacksRejectsUnknownNode() {
+        List<NodeCallbackBatchItem> callbacks = List.of(new NodeCallbackBatchItem(UUID.randomUUID(), "running", null, null));
+
+        assertThatThrownBy(() -> instanceService.reportInstanceCallbacks(UUID.randomUUID(), callbacks))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(ex -> ((ResponseStatusException) ex).getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private Instance saveInstance(String name, InstanceState state, Node node, OffsetDateTime now) {
+        return instanceRepository.save(new Instance(
+                name,
+                name,
+                state,
+                REQUESTER_ID,
+                node,
+                null,
+                null,
+                null,
+                null,
+                null,
+                now,
+                now
+        ));
+    }
+
     private Template createTemplate(String name) {
         OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
         return templateRepository.save(new Template(name, "desc", TemplateType.CUSTOM, now, REQUESTER_ID));
@@ -0,0 +1,129 @@
+package net.spookly.kodama.brain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class NodeCircuitBreakerTest {
+
+    private static final UUID NODE_ID = UUID.fromString("00000000-0000-0000-0000-000000000042");
+
+    private MutableClock clock;
+    private NodeCircuitBreaker circuitBreaker;
+    private OffsetDateTime lastHeartbeatAt;
+
+    @BeforeEach
+    void setUp() {
+        NodeProperties nodeProperties = new NodeProperties();
+        nodeProperties.setCommandCircuitFailureThreshold(3);
+        nodeProperties.setCommandCircuitOpenSeconds(30);
+        clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+        circuitBreaker = new NodeCircuitBreaker(nodeProperties, clock);
+        lastHeartbeatAt = OffsetDateTime.ofInstant(clock.instant(), ZoneOffset.UTC).minusSeconds(5);
+    }
+
+    @Test
+    void opensAfterConsecutiveFailuresAndLetsOneTrialThroughAfterCooldown() {
+        failTimes(3);
+
+        assertThat(circuitBreaker.isOpen(NODE_ID)).isTrue();
+        assertThat(tryAcquire()).isFalse();
+
+        clock.advance(Duration.ofSeconds(30));
+
+        assertThat(tryAcquire()).isTrue();
+        assertThat(tryAcquire()).isFalse();
+
+        circuitBreaker.recordSuccess(NODE_ID);
+
+        assertThat(circuitBreaker.isOpen(NODE_ID)).isFalse();
+        assertThat(tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedTrialReopensTheCircuit() {
+        failTimes(3);
+        clock.advance(Duration.ofSeconds(30));
+        assertThat(tryAcquire()).isTrue();
+
+        circuitBreaker.recordFailure(NODE_ID);
+
+        assertThat(tryAcquire()).isFalse();
+        clock.advance(Duration.ofSeconds(29));
+        assertThat(tryAcquire()).isFalse();
+    }
+
+    @Test
+    void successResetsTheFailureCount() {
+        failTimes(2);
+        circuitBreaker.recordSuccess(NODE_ID);
+        failTimes(2);
+
+        assertThat(circuitBreaker.isOpen(NODE_ID)).isFalse();
+    }
+
+    @Test
+    void heartbeatAfterOpeningAllowsAnEarlyTrial() {
+        failTimes(3);
+        clock.advance(Duration.ofSeconds(1));
+        lastHeartbeatAt = OffsetDateTime.ofInstant(clock.instant(), ZoneOffset.UTC);
+
+        assertThat(tryAcquire()).isTrue();
+    }
+
+    @Test
+    void refusesOfflineNodes() {
+        assertThat(circuitBreaker.tryAcquire(NODE_ID, NodeStatus.OFFLINE, lastHeartbeatAt)).isFalse();
+        assertThat(circuitBreaker.tryAcquire(NODE_ID, NodeStatus.UNKNOWN, lastHeartbeatAt)).isTrue();
+    }
+
+    private boolean tryAcquire() {
+        return circuitBreaker.tryAcquire(NODE_ID, NodeStatus.ONLINE, lastHeartbeatAt);
+    }
+
+    private void failTimes(int failures) {
+        for (int i = 0; i < failures; i++) {
+            assertThat(tryAcquire()).isTrue();
+            circuitBreaker.recordFailure(NODE_ID);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
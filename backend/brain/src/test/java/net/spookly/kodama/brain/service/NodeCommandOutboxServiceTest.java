@@ -0,0 +1,296 @@
+package net.spookly.kodama.brain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.domain.instance.Instance;
+import net.spookly.kodama.brain.domain.instance.InstanceState;
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeCommand;
+import net.spookly.kodama.brain.domain.node.NodeCommandStatus;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import net.spookly.kodama.brain.repository.InstanceRepository;
+import net.spookly.kodama.brain.repository.NodeCommandRepository;
+import net.spookly.kodama.brain.repository.NodeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.boot.jdbc.test.autoconfigure.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers
+@DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+// Commands are only sent after the enqueuing transaction commits, so tests must not run in a rolled back one.
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({
+        NodeCommandOutboxService.class,
+        CommandDispatcherService.class,
+        NodeCircuitBreaker.class,
+        PrepareTraceService.class,
+        NodeCommandOutboxServiceTest.OutboxTestConfig.class
+})
+class NodeCommandOutboxServiceTest {
+
+    @Container
+    private static final MySQLContainer<?> mysql = new MySQLContainer<>("mysql:8.4.0");
+
+    @DynamicPropertySource
+    static void configureDatasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", mysql::getJdbcUrl);
+        registry.add("spring.datasource.username", mysql::getUsername);
+        registry.add("spring.datasource.password", mysql::getPassword);
+        registry.add("spring.datasource.driver-class-name", mysql::getDriverClassName);
+    }
+
+    @Autowired
+    private NodeCommandOutboxService outboxService;
+
+    @Autowired
+    private NodeCommandRepository nodeCommandRepository;
+
+    @Autowired
+    private NodeRepository nodeRepository;
+
+    @Autowired
+    private InstanceRepository instanceRepository;
+
+    @Autowired
+    private RestTemplate restTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @MockitoBean
+    private NodeCommandStreamService commandStream;
+
+    private MockRestServiceServer server;
+
+    @TestConfiguration
+    static class OutboxTestConfig {
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RestTemplate restTemplate() {
+            return new RestTemplate();
+        }
+
+        @Bean
+        NodeProperties nodeProperties() {
+            NodeProperties properties = new NodeProperties();
+            properties.setCommandRetryBackoffMillis(5);
+            properties.setCommandRetryMaxBackoffMillis(20);
+            properties.setCommandOutboxMaxAttempts(3);
+            return properties;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        nodeCommandRepository.deleteAll();
+        instanceRepository.deleteAll();
+        nodeRepository.deleteAll();
+    }
+
+    @Test
+    void enqueueSendsCommandAfterCommitAndMarksItDelivered() throws Exception {
+        Instance instance = createInstance("outbox-start");
+        server.expect(requestTo(commandUri(instance, "start")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess());
+
+        CompletableFuture<Void> completion = outboxService.enqueueStartInstance(instance.getNode(), instance);
+
+        completion.get(10, TimeUnit.SECONDS);
+        server.verify();
+        NodeCommand command = singleCommand(instance);
+        assertThat(command.getStatus()).isEqualTo(NodeCommandStatus.DELIVERED);
+        assertThat(command.getAttempts()).isEqualTo(1);
+        assertThat(command.getCompletedAt()).isNotNull();
+    }
+
+    @Test
+    void retriesServerErrorsAndFailsAfterMaxAttempts() {
+        Instance instance = createInstance("outbox-retry");
+        server.expect(ExpectedCount.times(3), requestTo(commandUri(instance, "stop")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+
+        CompletableFuture<Void> completion = outboxService.enqueueStopInstance(instance.getNode(), instance);
+
+        assertThatThrownBy(() -> completion.get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(HttpServerErrorException.class);
+        server.verify();
+        NodeCommand command = singleCommand(instance);
+        assertThat(command.getStatus()).isEqualTo(NodeCommandStatus.FAILED);
+        assertThat(command.getAttempts()).isEqualTo(3);
+        assertThat(command.getLastError()).contains("503");
+    }
+
+    @Test
+    void commandsOfAnInstanceAreSentInOrderWhileTheFirstIsRetried() throws Exception {
+        Instance instance = createInstance("outbox-order");
+        MockRestServiceServer orderedServer = MockRestServiceServer.bindTo(restTemplate).build();
+        orderedServer.expect(ExpectedCount.times(2), requestTo(commandUri(instance, "stop")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withStatus(HttpStatus.SERVICE_UNAVAILABLE));
+        orderedServer.expect(requestTo(commandUri(instance, "stop")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess());
+        orderedServer.expect(requestTo(commandUri(instance, "destroy")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess());
+
+        CompletableFuture<Void> stop = outboxService.enqueueStopInstance(instance.getNode(), instance);
+        CompletableFuture<Void> destroy = outboxService.enqueueDestroyInstance(instance.getNode(), instance);
+
+        stop.get(10, TimeUnit.SECONDS);
+        destroy.get(10, TimeUnit.SECONDS);
+        orderedServer.verify();
+        assertThat(nodeCommandRepository.findAllByInstanceIdOrderByCreatedAtAsc(instance.getId()))
+                .extracting(NodeCommand::getAction, NodeCommand::getStatus)
+                .containsExactly(
+                        tuple("stop", NodeCommandStatus.DELIVERED),
+                        tuple("destroy", NodeCommandStatus.DELIVERED)
+                );
+    }
+
+    @Test
+    void rolledBackEnqueueIsNeverSent() {
+        Instance instance = createInstance("outbox-rollback");
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        CompletableFuture<Void> completion = transaction.execute(status -> {
+            status.setRollbackOnly();
+            return outboxService.enqueueDestroyInstance(instance.getNode(), instance);
+        });
+
+        assertThat(completion).isCompletedExceptionally();
+        assertThat(nodeCommandRepository.findAllByInstanceIdOrderByCreatedAtAsc(instance.getId())).isEmpty();
+        server.verify();
+    }
+
+    @Test
+    void dispatchDueCommandsSendsCommandsLeftPendingByAnEarlierRun() throws Exception {
+        Instance instance = createInstance("outbox-recovery");
+        OffsetDateTime earlier = OffsetDateTime.now(ZoneOffset.UTC).minusMinutes(1);
+        nodeCommandRepository.save(new NodeCommand(
+                instance.getNode(),
+                instance,
+                "start",
+                "{\"instanceId\":\"" + instance.getId() + "\",\"name\":\"outbox-recovery\"}",
+                null,
+                earlier
+        ));
+        server.expect(requestTo(commandUri(instance, "start")))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess());
+
+        outboxService.dispatchDueCommands();
+
+        awaitStatus(instance, NodeCommandStatus.DELIVERED);
+        server.verify();
+    }
+
+    private Instance createInstance(String name) {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        Node node = nodeRepository.save(new Node(
+                "node-" + name,
+                "eu-west-1",
+                NodeStatus.ONLINE,
+                false,
+                4,
+                0,
+                now,
+                "1.0.0",
+                null,
+                "http://" + name + ".internal"
+        ));
+        return instanceRepository.save(new Instance(
+                name,
+                name,
+                InstanceState.REQUESTED,
+                null,
+                node,
+                null,
+                null,
+                null,
+                null,
+                null,
+                now,
+                now
+        ));
+    }
+
+    private String commandUri(Instance instance, String action) {
+        return instance.getNode().getBaseUrl() + "/api/instances/" + instance.getId() + "/" + action;
+    }
+
+    private NodeCommand singleCommand(Instance instance) {
+        List<NodeCommand> commands = nodeCommandRepository.findAllByInstanceIdOrderByCreatedAtAsc(instance.getId());
+        assertThat(commands).hasSize(1);
+        return commands.getFirst();
+    }
+
+    private void awaitStatus(Instance instance, NodeCommandStatus expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            if (singleCommand(instance).getStatus() == expected) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        assertThat(singleCommand(instance).getStatus()).isEqualTo(expected);
+    }
+}
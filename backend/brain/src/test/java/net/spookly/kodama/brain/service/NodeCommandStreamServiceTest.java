@@ -0,0 +1,217 @@
+package net.spookly.kodama.brain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import net.spookly.kodama.brain.config.NodeProperties;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import net.spookly.kodama.brain.dto.NodeHeartbeatRequest;
+import net.spookly.kodama.brain.dto.node.NodeInstanceCommandRequest;
+import net.spookly.kodama.brain.dto.node.NodeStreamMessage;
+import net.spookly.kodama.brain.dto.node.NodeStreamMessageType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class NodeCommandStreamServiceTest {
+
+    private static final UUID NODE_ID = UUID.fromString("00000000-0000-0000-0000-000000000007");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<NodeStreamMessage> sent = new ArrayList<>();
+    private NodeService nodeService;
+    private InstanceService instanceService;
+    private WebSocketSession session;
+    private NodeCommandStreamService streamService;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        nodeService = mock(NodeService.class);
+        instanceService = mock(InstanceService.class);
+        NodeProperties nodeProperties = new NodeProperties();
+        nodeProperties.setCommandTimeoutSeconds(1);
+        streamService = new NodeCommandStreamService(
+                nodeService,
+                instanceService,
+                nodeProperties,
+                objectMapper,
+                Validation.buildDefaultValidatorFactory().getValidator()
+        );
+        session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session-1");
+        when(session.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            sent.add(objectMapper.readValue(message.getPayload(), NodeStreamMessage.class));
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    @Test
+    void sendCommandReturnsOnceTheNodeAcknowledges() throws Exception {
+        streamService.register(NODE_ID, session);
+        UUID instanceId = UUID.randomUUID();
+        acknowledgeCommandsWith(HttpStatus.ACCEPTED.value());
+
+        streamService.sendCommand(NODE_ID, instanceId, "start", new NodeInstanceCommandRequest(instanceId, "lobby"), "trace-1");
+
+        NodeStreamMessage command = sent.getFirst();
+        assertThat(command.getType()).isEqualTo(NodeStreamMessageType.COMMAND);
+        assertThat(command.getInstanceId()).isEqualTo(instanceId);
+        assertThat(command.getAction()).isEqualTo("start");
+        assertThat(command.getTraceId()).isEqualTo("trace-1");
+        assertThat(command.getPayload().get("name").asText()).isEqualTo("lobby");
+    }
+
+    @Test
+    void rejectedCommandSurfacesAsHttpStatusException() throws Exception {
+        streamService.register(NODE_ID, session);
+        acknowledgeCommandsWith(HttpStatus.CONFLICT.value());
+
+        assertThatThrownBy(() -> streamService.sendCommand(NODE_ID, UUID.randomUUID(), "stop", null, null))
+                .isInstanceOf(HttpClientErrorException.Conflict.class);
+    }
+
+    @Test
+    void actionsAnsweredWithNotImplementedAreSkippedUntilTheNodeReconnects() throws Exception {
+        streamService.register(NODE_ID, session);
+        acknowledgeCommandsWith(HttpStatus.NOT_IMPLEMENTED.value());
+
+        assertThatThrownBy(() -> streamService.sendCommand(NODE_ID, UUID.randomUUID(), "destroy", null, null))
+                .isInstanceOf(HttpServerErrorException.class);
+
+        assertThat(streamService.canSendCommand(NODE_ID, "destroy")).isFalse();
+        assertThat(streamService.canSendCommand(NODE_ID, "stop")).isTrue();
+        streamService.register(NODE_ID, session);
+        assertThat(streamService.canSendCommand(NODE_ID, "destroy")).isTrue();
+    }
+
+    @Test
+    void unacknowledgedCommandTimesOut() {
+        streamService.register(NODE_ID, session);
+
+        assertThatThrownBy(() -> streamService.sendCommand(NODE_ID, UUID.randomUUID(), "stop", null, null))
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void commandsFailOnceTheStreamCloses() {
+        streamService.register(NODE_ID, session);
+        streamService.unregister(NODE_ID, session);
+
+        assertThat(streamService.isConnected(NODE_ID)).isFalse();
+        assertThatThrownBy(() -> streamService.sendCommand(NODE_ID, UUID.randomUUID(), "stop", null, null))
+                .isInstanceOf(ResourceAccessException.class);
+    }
+
+    @Test
+    void reconnectReplacesAndClosesThePreviousStream() throws Exception {
+        WebSocketSession newer = mock(WebSocketSession.class);
+        when(newer.getId()).thenReturn("session-2");
+        when(newer.isOpen()).thenReturn(true);
+
+        streamService.register(NODE_ID, session);
+        streamService.register(NODE_ID, newer);
+        streamService.unregister(NODE_ID, session);
+
+        verify(session).close(any(CloseStatus.class));
+        assertThat(streamService.isConnected(NODE_ID)).isTrue();
+    }
+
+    @Test
+    void heartbeatFrameUpdatesTheNodeAndIsAcknowledged() {
+        streamService.register(NODE_ID, session);
+        NodeStreamMessage heartbeat = frame(NodeStreamMessageType.HEARTBEAT, "hb-1");
+        heartbeat.setPayload(objectMapper.valueToTree(new NodeHeartbeatRequest(NodeStatus.ONLINE, 2)));
+
+        streamService.handleMessage(NODE_ID, session, heartbeat);
+
+        verify(nodeService).heartbeat(eq(NODE_ID), any(NodeHeartbeatRequest.class));
+        assertAcknowledged("hb-1", HttpStatus.OK.value());
+    }
+
+    @Test
+    void callbackFrameReportsTheLifecycleEvent() {
+        streamService.register(NODE_ID, session);
+        UUID instanceId = UUID.randomUUID();
+        NodeStreamMessage callback = frame(NodeStreamMessageType.CALLBACK, "cb-1");
+        callback.setInstanceId(instanceId);
+        callback.setEvent("running");
+
+        streamService.handleMessage(NODE_ID, session, callback);
+
+        verify(instanceService).reportInstanceRunning(NODE_ID, instanceId);
+        assertAcknowledged("cb-1", HttpStatus.OK.value());
+    }
+
+    @Test
+    void invalidTransitionIsAcknowledgedAsConflict() {
+        streamService.register(NODE_ID, session);
+        UUID instanceId = UUID.randomUUID();
+        doThrow(new InvalidInstanceStateTransitionException("Cannot transition from REQUESTED to STOPPED"))
+                .when(instanceService).reportInstanceStopped(NODE_ID, instanceId);
+        NodeStreamMessage callback = frame(NodeStreamMessageType.CALLBACK, "cb-2");
+        callback.setInstanceId(instanceId);
+        callback.setEvent("stopped");
+
+        streamService.handleMessage(NODE_ID, session, callback);
+
+        assertAcknowledged("cb-2", HttpStatus.CONFLICT.value());
+    }
+
+    @Test
+    void unknownCallbackEventIsRejected() {
+        streamService.register(NODE_ID, session);
+        NodeStreamMessage callback = frame(NodeStreamMessageType.CALLBACK, "cb-3");
+        callback.setInstanceId(UUID.randomUUID());
+        callback.setEvent("exploded");
+
+        streamService.handleMessage(NODE_ID, session, callback);
+
+        assertAcknowledged("cb-3", HttpStatus.BAD_REQUEST.value());
+    }
+
+    private void acknowledgeCommandsWith(int status) throws Exception {
+        doAnswer(invocation -> {
+            TextMessage message = invocation.getArgument(0);
+            NodeStreamMessage command = objectMapper.readValue(message.getPayload(), NodeStreamMessage.class);
+            sent.add(command);
+            streamService.handleMessage(NODE_ID, session, NodeStreamMessage.ack(command.getId(), status, null));
+            return null;
+        }).when(session).sendMessage(any());
+    }
+
+    private NodeStreamMessage frame(NodeStreamMessageType type, String id) {
+        NodeStreamMessage message = new NodeStreamMessage();
+        message.setType(type);
+        message.setId(id);
+        return message;
+    }
+
+    private void assertAcknowledged(String id, int status) {
+        assertThat(sent).hasSize(1);
+        NodeStreamMessage ack = sent.getFirst();
+        assertThat(ack.getType()).isEqualTo(NodeStreamMessageType.ACK);
+        assertThat(ack.getId()).isEqualTo(id);
+        assertThat(ack.getStatus()).isEqualTo(status);
+    }
+}
@@ -45,7 +45,11 @@ class NodeHeartbeatMonitorServiceTest {
     void setUp() {
         NodeProperties nodeProperties = new NodeProperties();
         nodeProperties.setHeartbeatTimeoutSeconds(60);
-        monitorService = new NodeHeartbeatMonitorService(nodeRepository, nodeProperties);
+        monitorService = new NodeHeartbeatMonitorService(
+                nodeRepository,
+                nodeProperties,
+                new NodeSchedulingIndex(nodeRepository)
+        );
     }
 
     @Test
@@ -0,0 +1,121 @@
+package net.spookly.kodama.brain.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+
+import net.spookly.kodama.brain.domain.node.Node;
+import net.spookly.kodama.brain.domain.node.NodeStatus;
+import net.spookly.kodama.brain.repository.NodeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class NodeSchedulingIndexTest {
+
+    private final NodeSchedulingIndex index = new NodeSchedulingIndex(null);
+
+    @Test
+    void heartbeatsReorderNodesByUsedSlots() {
+        Node first = buildNode("node-a", "eu-west-1", false, 4, 1, null);
+        Node second = buildNode("node-b", "eu-west-1", false, 4, 2, null);
+        index.update(first);
+        index.update(second);
+
+        assertThat(index.select("eu-west-1", null, false)).isEqualTo(first.getId());
+
+        first.updateHeartbeat(NodeStatus.ONLINE, 3, OffsetDateTime.now(ZoneOffset.UTC));
+        index.update(first);
+
+        assertThat(index.select("eu-west-1", null, false)).isEqualTo(second.getId());
+    }
+
+    @Test
+    void offlineAndFullNodesAreNotSelected() {
+        Node offline = buildNode("node-offline", "eu-west-1", false, 4, 0, null);
+        Node full = buildNode("node-full", "eu-west-1", false, 2, 1, null);
+        index.update(offline);
+        index.update(full);
+
+        offline.markOffline();
+        index.update(offline);
+        full.updateHeartbeat(NodeStatus.ONLINE, 2, OffsetDateTime.now(ZoneOffset.UTC));
+        index.update(full);
+
+        assertThat(index.select(null, null, null)).isNull();
+    }
+
+    @Test
+    void selectsAcrossBucketsWhenRegionOrDevModeIsOpen() {
+        Node euDev = buildNode("node-eu-dev", "eu-west-1", true, 4, 1, null);
+        Node usProd = buildNode("node-us-prod", "us-east-1", false, 4, 0, null);
+        Node euProd = buildNode("node-eu-prod", "eu-west-1", false, 4, 2, null);
+        index.update(euDev);
+        index.update(usProd);
+        index.update(euProd);
+
+        assertThat(index.select(null, null, null)).isEqualTo(usProd.getId());
+        assertThat(index.select(" eu-west-1 ", null, null)).isEqualTo(euDev.getId());
+        assertThat(index.select("eu-west-1", null, false)).isEqualTo(euProd.getId());
+        assertThat(index.select(null, null, true)).isEqualTo(euDev.getId());
+    }
+
+    @Test
+    void matchesPreParsedTagsCaseInsensitively() {
+        Node plain = buildNode("node-plain", "eu-west-1", false, 4, 0, "primary");
+        Node tagged = buildNode("node-tagged", "eu-west-1", false, 4, 1, "Primary, SSD");
+        index.update(plain);
+        index.update(tagged);
+
+        assertThat(index.select(null, "ssd,primary", null)).isEqualTo(tagged.getId());
+        assertThat(index.select(null, "primary", null)).isEqualTo(plain.getId());
+        assertThat(index.select(null, "gpu", null)).isNull();
+    }
+
+    @Test
+    void updatesAppliedDuringReloadAreNotReverted() {
+        NodeRepository nodeRepository = mock(NodeRepository.class);
+        NodeSchedulingIndex reloadingIndex = new NodeSchedulingIndex(nodeRepository);
+        Node stale = buildNode("node-a", "eu-west-1", false, 4, 1, null);
+        Node current = buildNode("node-a", "eu-west-1", false, 4, 1, null);
+        ReflectionTestUtils.setField(current, "id", stale.getId());
+        current.markOffline();
+        when(nodeRepository.findAll()).thenAnswer(invocation -> {
+            // The node goes offline after the reload read it, but before the reloaded index is swapped in.
+            reloadingIndex.update(current);
+            return List.of(stale);
+        });
+
+        reloadingIndex.reload();
+
+        assertThat(reloadingIndex.select(null, null, null)).isNull();
+    }
+
+    private Node buildNode(
+            String name,
+            String region,
+            boolean devMode,
+            int capacitySlots,
+            int usedSlots,
+            String tags
+    ) {
+        Node node = new Node(
+                name,
+                region,
+                NodeStatus.ONLINE,
+                devMode,
+                capacitySlots,
+                usedSlots,
+                OffsetDateTime.now(ZoneOffset.UTC),
+                "1.0.0",
+                tags,
+                null
+        );
+        ReflectionTestUtils.setField(node, "id", UUID.randomUUID());
+        return node;
+    }
+}
@@ -33,7 +33,10 @@ import org.springframework.web.server.ResponseStatusException;
 @DataJpaTest(properties = "spring.jpa.hibernate.ddl-auto=validate")
 @AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
 @EnableConfigurationProperties(NodeProperties.class)
-@Import(NodeService.class)
+@Import({
+        NodeService.class,
+        NodeSchedulingIndex.class
+})
 class NodeServiceTest {
 
     @Container
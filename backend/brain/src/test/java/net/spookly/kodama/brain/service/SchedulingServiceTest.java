@@ -12,7 +12,7 @@ import org.junit.jupiter.api.Test;
 
 class SchedulingServiceTest {
 
-    private final SchedulingService schedulingService = new SchedulingService(null);
+    private final SchedulingService schedulingService = new SchedulingService(null, null);
 
     @Test
     void selectNodeFiltersByStatusAndCapacity() {
@@ -3,6 +3,7 @@ package net.spookly.kodama.brain.service;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.List;
 import java.util.UUID;
 
 import net.spookly.kodama.brain.domain.template.Template;
@@ -11,6 +12,7 @@ import net.spookly.kodama.brain.domain.template.TemplateVersion;
 import net.spookly.kodama.brain.dto.CreateTemplateRequest;
 import net.spookly.kodama.brain.dto.CreateTemplateVersionRequest;
 import net.spookly.kodama.brain.dto.TemplateDto;
+import net.spookly.kodama.brain.dto.TemplateFileManifestEntry;
 import net.spookly.kodama.brain.dto.TemplateVersionDto;
 import net.spookly.kodama.brain.repository.TemplateRepository;
 import net.spookly.kodama.brain.repository.TemplateVersionRepository;
@@ -97,6 +99,48 @@ class TemplateServiceTest {
         assertThat(persisted.getChecksum()).isEqualTo("checksum");
     }
 
+    @Test
+    void addVersionStoresFileManifest() {
+        TemplateDto templateDto = templateService.createTemplate(
+                new CreateTemplateRequest("TemplateWithManifest", "desc", TemplateType.CUSTOM, CREATOR_ID)
+        );
+        List<TemplateFileManifestEntry> files = List.of(
+                new TemplateFileManifestEntry("server.properties", 12, "a".repeat(64), 0644),
+                new TemplateFileManifestEntry("plugins/core.jar", 2048, "b".repeat(64), null)
+        );
+
+        TemplateVersionDto versionDto = templateService.addVersion(
+                templateDto.getId(),
+                new CreateTemplateVersionRequest("1.0.0", "checksum", "s3/path", null, files)
+        );
+
+        List<TemplateFileManifestEntry> manifest =
+                templateService.getVersionManifest(templateDto.getId(), versionDto.getId());
+        assertThat(manifest).extracting(TemplateFileManifestEntry::getPath)
+                .containsExactly("plugins/core.jar", "server.properties");
+        assertThat(manifest.get(1).getSha256()).isEqualTo("a".repeat(64));
+        assertThat(manifest.get(1).getMode()).isEqualTo(0644);
+    }
+
+    @Test
+    void addVersionRejectsManifestPathsOutsideTheTemplate() {
+        TemplateDto templateDto = templateService.createTemplate(
+                new CreateTemplateRequest("TemplateBadManifest", "desc", TemplateType.CUSTOM, CREATOR_ID)
+        );
+        CreateTemplateVersionRequest request = new CreateTemplateVersionRequest(
+                "1.0.0",
+                "checksum",
+                "s3/path",
+                null,
+                List.of(new TemplateFileManifestEntry("../escape.txt", 1, "c".repeat(64), null))
+        );
+
+        assertThatThrownBy(() -> templateService.addVersion(templateDto.getId(), request))
+                .isInstanceOf(ResponseStatusException.class)
+                .extracting(ex -> ((ResponseStatusException) ex).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
     @Test
     void addVersionRejectsDuplicateVersionForTemplate() {
         TemplateDto templateDto = templateService.createTemplate(
@@ -0,0 +1,165 @@
+package net.spookly.kodama.nodeagent.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+
+/**
+ * Deterministic template contents for benchmarks. File contents are half seeded random bytes and half repeated text,
+ * so compressed tarballs shrink to roughly half their size, like typical server templates with jars and configs.
+ */
+public final class SyntheticTemplates {
+
+    private static final byte[] TEXT = "motd=A Minecraft Server\nmax-players=20\nview-distance=10\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private SyntheticTemplates() {
+    }
+
+    public enum Shape {
+        /**
+         * Many small files, like plugin configs and world region metadata.
+         */
+        SMALL_FILES(2_000, 4 * 1024),
+        /**
+         * Few large files, like server jars and world regions.
+         */
+        LARGE_FILES(8, 4 * 1024 * 1024);
+
+        private final int files;
+        private final int fileSize;
+
+        Shape(int files, int fileSize) {
+            this.files = files;
+            this.fileSize = fileSize;
+        }
+
+        public int files() {
+            return files;
+        }
+
+        public int fileSize() {
+            return fileSize;
+        }
+    }
+
+    public enum Codec {
+        NONE(".tar"),
+        GZIP(".tar.gz"),
+        ZSTD(".tar.zst");
+
+        private final String suffix;
+
+        Codec(String suffix) {
+            this.suffix = suffix;
+        }
+
+        public String suffix() {
+            return suffix;
+        }
+    }
+
+    /**
+     * Builds a tarball with {@code shape}'s files, spread over 16 directories and compressed with {@code codec}.
+     */
+    public static byte[] tarball(Shape shape, Codec codec, long seed) {
+        Random random = new Random(seed);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream compressed = compress(buffer, codec);
+             TarArchiveOutputStream tar = new TarArchiveOutputStream(compressed)) {
+            tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            for (int index = 0; index < shape.files(); index++) {
+                byte[] contents = contents(random, shape.fileSize());
+                TarArchiveEntry entry = new TarArchiveEntry("dir-" + (index % 16) + "/file-" + index + ".dat");
+                entry.setMode(0644);
+                entry.setSize(contents.length);
+                tar.putArchiveEntry(entry);
+                tar.write(contents);
+                tar.closeArchiveEntry();
+            }
+            tar.finish();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Writes {@code files} files of {@code fileSize} bytes below {@code root}; {@code sharedFiles} of them use the
+     * same relative paths in every tree, so merging several trees overrides them.
+     */
+    public static void writeTree(Path root, String uniquePrefix, int files, int sharedFiles, int fileSize, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        for (int index = 0; index < files; index++) {
+            Path file = index < sharedFiles
+                    ? root.resolve("shared/dir-" + (index % 16)).resolve("file-" + index + ".dat")
+                    : root.resolve(uniquePrefix + "/dir-" + (index % 16)).resolve("file-" + index + ".dat");
+            Files.createDirectories(file.getParent());
+            Files.write(file, contents(random, fileSize));
+        }
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    public static void deleteRecursively(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static OutputStream compress(OutputStream target, Codec codec) throws IOException {
+        return switch (codec) {
+            case NONE -> target;
+            case GZIP -> new GzipCompressorOutputStream(target);
+            case ZSTD -> new ZstdCompressorOutputStream(target);
+        };
+    }
+
+    private static byte[] contents(Random random, int size) {
+        byte[] contents = new byte[size];
+        int randomBytes = size / 2;
+        byte[] noise = new byte[randomBytes];
+        random.nextBytes(noise);
+        System.arraycopy(noise, 0, contents, 0, randomBytes);
+        for (int index = randomBytes; index < size; index++) {
+            contents[index] = TEXT[index % TEXT.length];
+        }
+        return contents;
+    }
+}
@@ -0,0 +1,98 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up versions in a cache holding {@code cachedVersions} versions spread over ten templates. Hits and checksum
+ * mismatches are answered from the index; misses check the disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateCacheLookupBenchmark {
+
+    private static final String CHECKSUM = "a".repeat(64);
+    private static final String OTHER_CHECKSUM = "b".repeat(64);
+
+    @Param({"10", "1000", "10000"})
+    public int cachedVersions;
+
+    private Path root;
+    private TemplateCacheLookupService lookupService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("kodama-jmh-lookup");
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(root.resolve("cache").toString());
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        for (int index = 0; index < cachedVersions; index++) {
+            TemplateCachePaths paths = layout.resolveTemplateVersion(templateId(index), version(index));
+            Files.createDirectories(paths.contentsDir());
+            Files.writeString(paths.checksumFile(), CHECKSUM);
+        }
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        index.rebuild();
+        lookupService = new TemplateCacheLookupService(
+                layout,
+                index,
+                new TemplateCacheAccessTracker(),
+                new TemplateCacheMetrics(new SimpleMeterRegistry(), index)
+        );
+    }
+
+    @Benchmark
+    public TemplateCacheLookupResult hit() {
+        return lookupService.findCachedTemplate(templateId(cachedVersions / 2), version(cachedVersions / 2), CHECKSUM);
+    }
+
+    @Benchmark
+    public TemplateCacheLookupResult checksumMismatch() {
+        return lookupService.findCachedTemplate(
+                templateId(cachedVersions / 2),
+                version(cachedVersions / 2),
+                OTHER_CHECKSUM
+        );
+    }
+
+    @Benchmark
+    public TemplateCacheLookupResult miss() {
+        return lookupService.findCachedTemplate(templateId(0), "missing", CHECKSUM);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTemplates.deleteRecursively(root);
+    }
+
+    private static String templateId(int index) {
+        return "template-" + (index % 10);
+    }
+
+    private static String version(int index) {
+        return "1.0." + index;
+    }
+}
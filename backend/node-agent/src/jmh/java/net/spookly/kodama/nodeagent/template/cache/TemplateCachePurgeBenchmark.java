@@ -0,0 +1,102 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Purges a template with {@code versions} cached versions of {@code filesPerVersion} 4 KiB files each. Purges are
+ * destructive, so every iteration rebuilds the cache and measures a single purge.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class TemplateCachePurgeBenchmark {
+
+    private static final String TEMPLATE_ID = "bench";
+    private static final int FILE_SIZE = 4 * 1024;
+
+    @Param({"4"})
+    public int versions;
+
+    @Param({"100", "2000"})
+    public int filesPerVersion;
+
+    private Path root;
+    private TemplateCacheLayout layout;
+    private TemplateCacheIndex index;
+    private TemplateCacheManager cacheManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("kodama-jmh-purge");
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(root.resolve("cache").toString());
+        layout = new TemplateCacheLayout(config);
+        index = new TemplateCacheIndex(layout);
+        cacheManager = new TemplateCacheManager(layout, index, new TemplateObjectStore(config, layout), new TemplateVersionLocks(), new ObjectMapper());
+    }
+
+    @Setup(Level.Iteration)
+    public void populateCache() throws IOException {
+        for (int version = 0; version < versions; version++) {
+            TemplateCachePaths paths = layout.resolveTemplateVersion(TEMPLATE_ID, "1.0." + version);
+            SyntheticTemplates.writeTree(paths.contentsDir(), "v" + version, filesPerVersion, 0, FILE_SIZE, version);
+            Files.writeString(paths.checksumFile(), "a".repeat(64));
+            index.refresh(paths);
+        }
+    }
+
+    /**
+     * Deletes every version synchronously, as the purge endpoint does without background purging.
+     */
+    @Benchmark
+    public TemplateCachePurgeResult purgeTemplate() {
+        return cacheManager.purgeTemplate(TEMPLATE_ID);
+    }
+
+    /**
+     * Renames the versions into the trash directory, the part of a background purge the caller waits for.
+     */
+    @Benchmark
+    public TemplateCacheTrashResult moveTemplateToTrash() {
+        return cacheManager.moveTemplateToTrash(TEMPLATE_ID);
+    }
+
+    @Benchmark
+    public Object purgeOneVersion() {
+        return cacheManager.purgeVersion(TEMPLATE_ID, "1.0.0");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearCache() throws IOException {
+        cacheManager.purgeAll();
+        SyntheticTemplates.deleteRecursively(layout.getTrashRoot());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        SyntheticTemplates.deleteRecursively(root);
+    }
+}
@@ -0,0 +1,130 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates.Codec;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates.Shape;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.devmode.service.DevModeService;
+import net.spookly.kodama.nodeagent.template.storage.TemplateTarball;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Populates one template version from an in-memory tarball, covering decompression, tar parsing, hashing and file
+ * writes. Storage latency is excluded. The populated version is purged after every invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateExtractionBenchmark {
+
+    private static final String TEMPLATE_ID = "bench";
+    private static final String VERSION = "1.0.0";
+
+    @Param({"SMALL_FILES", "LARGE_FILES"})
+    public Shape shape;
+
+    @Param({"NONE", "GZIP", "ZSTD"})
+    public Codec codec;
+
+    /**
+     * {@code false} downloads to a temporary file and extracts it in a second pass.
+     */
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    @Param({"1", "4"})
+    public int writerThreads;
+
+    /**
+     * Decompresses on a separate thread; off by default to keep the matrix small.
+     */
+    @Param({"false"})
+    public boolean pipelined;
+
+    private Path root;
+    private String s3Key;
+    private String checksum;
+    private TemplateCachePopulateService populateService;
+    private TemplateCacheManager cacheManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("kodama-jmh-extraction");
+        byte[] tarball = SyntheticTemplates.tarball(shape, codec, 42);
+        s3Key = "templates/" + TEMPLATE_ID + "/" + VERSION + codec.suffix();
+        checksum = SyntheticTemplates.sha256Hex(tarball);
+
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(root.resolve("cache").toString());
+        config.getTemplateCachePopulate().setStreamingExtraction(streaming);
+        config.getTemplateCachePopulate().setWriterThreads(writerThreads);
+        config.getTemplateCachePopulate().setPipelinedDecompression(pipelined);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateCacheMetrics metrics = new TemplateCacheMetrics(new SimpleMeterRegistry(), index);
+        TemplateCacheLookupService lookupService =
+                new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics);
+        TemplateObjectStore objectStore = new TemplateObjectStore(config, layout);
+        TemplateVersionLocks versionLocks = new TemplateVersionLocks();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        populateService = new TemplateCachePopulateService(
+                layout,
+                lookupService,
+                (templateId, version, key) -> new TemplateTarball(
+                        templateId,
+                        version,
+                        key,
+                        tarball.length,
+                        new ByteArrayInputStream(tarball)
+                ),
+                objectMapper,
+                new DevModeService(config),
+                config,
+                objectStore,
+                metrics,
+                versionLocks
+        );
+        cacheManager = new TemplateCacheManager(layout, index, objectStore, versionLocks, objectMapper);
+    }
+
+    @Benchmark
+    public TemplateCacheLookupResult populate() {
+        return populateService.ensureCachedTemplate(TEMPLATE_ID, VERSION, checksum, s3Key);
+    }
+
+    @TearDown(Level.Invocation)
+    public void purgeVersion() {
+        cacheManager.purgeVersion(TEMPLATE_ID, VERSION);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        populateService.shutdown();
+        SyntheticTemplates.deleteRecursively(root);
+    }
+}
@@ -0,0 +1,107 @@
+package net.spookly.kodama.nodeagent.template.merge;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.benchmark.SyntheticTemplates;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.instance.workspace.InstanceWorkspaceLayout;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheIndex;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheLayout;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheManager;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCompositeCache;
+import net.spookly.kodama.nodeagent.template.cache.TemplateObjectStore;
+import net.spookly.kodama.nodeagent.template.cache.TemplateVersionLocks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Merges {@code layers} layers of {@code filesPerLayer} 4 KiB files into an empty workspace. A quarter of each
+ * layer's files use the same paths in every layer, so later layers override them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateLayerMergeBenchmark {
+
+    private static final String INSTANCE_ID = "bench-instance";
+    private static final int FILE_SIZE = 4 * 1024;
+
+    @Param({"1", "4", "8"})
+    public int layers;
+
+    @Param({"100", "1000"})
+    public int filesPerLayer;
+
+    @Param({"COPY", "HARDLINK"})
+    public TemplateMergeStrategy strategy;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path root;
+    private Path mergedDir;
+    private List<TemplateLayerSource> layerSources;
+    private TemplateLayerMergeService mergeService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("kodama-jmh-merge");
+        mergedDir = root.resolve("merged");
+        layerSources = new ArrayList<>();
+        for (int layer = 0; layer < layers; layer++) {
+            Path contentsDir = root.resolve("layers/layer-" + layer);
+            SyntheticTemplates.writeTree(contentsDir, "layer-" + layer, filesPerLayer, filesPerLayer / 4, FILE_SIZE, layer);
+            layerSources.add(new TemplateLayerSource("template-" + layer, "1.0.0", layer, contentsDir));
+        }
+
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(root.resolve("cache").toString());
+        config.setWorkspaceDir(root.resolve("workspaces").toString());
+        config.getTemplateMerge().setStrategy(strategy);
+        config.getTemplateMerge().setParallelism(parallelism);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCompositeCache compositeCache = new TemplateCompositeCache(
+                config,
+                layout,
+                new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(config, layout), new TemplateVersionLocks(), new ObjectMapper())
+        );
+        mergeService = new TemplateLayerMergeService(config, compositeCache, new InstanceWorkspaceLayout(config));
+    }
+
+    @Benchmark
+    public Path merge() {
+        mergeService.mergeLayers(INSTANCE_ID, mergedDir, layerSources);
+        return mergedDir;
+    }
+
+    @TearDown(Level.Invocation)
+    public void clearWorkspace() throws IOException {
+        SyntheticTemplates.deleteRecursively(mergedDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mergeService.shutdown();
+        SyntheticTemplates.deleteRecursively(root);
+    }
+}
@@ -3,6 +3,7 @@ package net.spookly.kodama.nodeagent.config;
 import java.util.ArrayList;
 import java.util.List;
 
+import net.spookly.kodama.nodeagent.template.merge.TemplateMergeStrategy;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 @ConfigurationProperties(prefix = "node-agent")
@@ -26,6 +27,16 @@ public class NodeConfig {
     private S3 s3 = new S3();
     private TemplateCacheCheck templateCacheCheck = new TemplateCacheCheck();
     private TemplateCacheLimits templateCacheLimits = new TemplateCacheLimits();
+    private TemplateCachePopulate templateCachePopulate = new TemplateCachePopulate();
+    private TemplateMerge templateMerge = new TemplateMerge();
+    private TemplateCompositeCache templateCompositeCache = new TemplateCompositeCache();
+    private TemplateCacheEviction templateCacheEviction = new TemplateCacheEviction();
+    private TemplateCacheIndex templateCacheIndex = new TemplateCacheIndex();
+    private TemplateCachePrefetch templateCachePrefetch = new TemplateCachePrefetch();
+    private TemplateObjectStore templateObjectStore = new TemplateObjectStore();
+    private TemplateDelta templateDelta = new TemplateDelta();
+    private TemplateCachePurge templateCachePurge = new TemplateCachePurge();
+    private CommandStream commandStream = new CommandStream();
 
     public void validate() {
         List<String> errors = new ArrayList<>();
@@ -55,6 +66,67 @@ public class NodeConfig {
                 errors.add("node-agent.template-cache-limits.max-entries must be greater than 0");
             }
         }
+        if (templateCachePopulate != null && templateCachePopulate.getWriterThreads() < 1) {
+            errors.add("node-agent.template-cache-populate.writer-threads must be at least 1");
+        }
+        if (templateMerge == null || templateMerge.getStrategy() == null) {
+            errors.add("node-agent.template-merge.strategy is required");
+        } else if (templateMerge.getParallelism() < 1) {
+            errors.add("node-agent.template-merge.parallelism must be at least 1");
+        }
+        if (templateCompositeCache == null) {
+            errors.add("node-agent.template-composite-cache is required");
+        } else if (templateCompositeCache.isEnabled() && templateCompositeCache.getMaxEntries() < 1) {
+            errors.add("node-agent.template-composite-cache.max-entries must be at least 1");
+        }
+        if (templateCacheEviction == null) {
+            errors.add("node-agent.template-cache-eviction is required");
+        } else if (templateCacheEviction.isEnabled()) {
+            if (templateCacheEviction.getMaxBytes() <= 0) {
+                errors.add("node-agent.template-cache-eviction.max-bytes must be greater than 0");
+            }
+            if (templateCacheEviction.getLowWatermarkBytes() <= 0
+                    || templateCacheEviction.getLowWatermarkBytes() > templateCacheEviction.getMaxBytes()) {
+                errors.add("node-agent.template-cache-eviction.low-watermark-bytes must be greater than 0 and at most max-bytes");
+            }
+            if (templateCacheEviction.getIntervalSeconds() <= 0) {
+                errors.add("node-agent.template-cache-eviction.interval-seconds must be greater than 0");
+            }
+        }
+        if (templateCacheIndex == null) {
+            errors.add("node-agent.template-cache-index is required");
+        }
+        if (templateCachePrefetch == null) {
+            errors.add("node-agent.template-cache-prefetch is required");
+        } else {
+            if (templateCachePrefetch.getConcurrency() < 1) {
+                errors.add("node-agent.template-cache-prefetch.concurrency must be at least 1");
+            }
+            if (templateCachePrefetch.getMaxPendingItems() < 1) {
+                errors.add("node-agent.template-cache-prefetch.max-pending-items must be at least 1");
+            }
+            if (templateCachePrefetch.getRetainedJobs() < 1) {
+                errors.add("node-agent.template-cache-prefetch.retained-jobs must be at least 1");
+            }
+        }
+        if (templateObjectStore == null) {
+            errors.add("node-agent.template-object-store is required");
+        }
+        if (templateDelta == null) {
+            errors.add("node-agent.template-delta is required");
+        } else if (templateDelta.isEnabled()) {
+            addIfBlank(errors, templateDelta.getFilesPrefix(), "node-agent.template-delta.files-prefix is required");
+        }
+        if (templateCachePurge == null) {
+            errors.add("node-agent.template-cache-purge is required");
+        } else if (templateCachePurge.getRetainedJobs() < 1) {
+            errors.add("node-agent.template-cache-purge.retained-jobs must be at least 1");
+        }
+        if (commandStream == null) {
+            errors.add("node-agent.command-stream is required");
+        } else if (commandStream.getReconnectMaxDelaySeconds() < 1) {
+            errors.add("node-agent.command-stream.reconnect-max-delay-seconds must be at least 1");
+        }
         if (!errors.isEmpty()) {
             throw new IllegalStateException("Invalid node-agent configuration:\n- " + String.join("\n- ", errors));
         }
@@ -210,6 +282,86 @@ public class NodeConfig {
         this.templateCacheLimits = templateCacheLimits == null ? new TemplateCacheLimits() : templateCacheLimits;
     }
 
+    public TemplateCachePopulate getTemplateCachePopulate() {
+        return templateCachePopulate;
+    }
+
+    public void setTemplateCachePopulate(TemplateCachePopulate templateCachePopulate) {
+        this.templateCachePopulate = templateCachePopulate == null ? new TemplateCachePopulate() : templateCachePopulate;
+    }
+
+    public TemplateMerge getTemplateMerge() {
+        return templateMerge;
+    }
+
+    public void setTemplateMerge(TemplateMerge templateMerge) {
+        this.templateMerge = templateMerge == null ? new TemplateMerge() : templateMerge;
+    }
+
+    public TemplateCacheEviction getTemplateCacheEviction() {
+        return templateCacheEviction;
+    }
+
+    public void setTemplateCacheEviction(TemplateCacheEviction templateCacheEviction) {
+        this.templateCacheEviction = templateCacheEviction == null ? new TemplateCacheEviction() : templateCacheEviction;
+    }
+
+    public TemplateCacheIndex getTemplateCacheIndex() {
+        return templateCacheIndex;
+    }
+
+    public void setTemplateCacheIndex(TemplateCacheIndex templateCacheIndex) {
+        this.templateCacheIndex = templateCacheIndex == null ? new TemplateCacheIndex() : templateCacheIndex;
+    }
+
+    public TemplateCachePrefetch getTemplateCachePrefetch() {
+        return templateCachePrefetch;
+    }
+
+    public void setTemplateCachePrefetch(TemplateCachePrefetch templateCachePrefetch) {
+        this.templateCachePrefetch = templateCachePrefetch == null ? new TemplateCachePrefetch() : templateCachePrefetch;
+    }
+
+    public TemplateObjectStore getTemplateObjectStore() {
+        return templateObjectStore;
+    }
+
+    public void setTemplateObjectStore(TemplateObjectStore templateObjectStore) {
+        this.templateObjectStore = templateObjectStore == null ? new TemplateObjectStore() : templateObjectStore;
+    }
+
+    public TemplateDelta getTemplateDelta() {
+        return templateDelta;
+    }
+
+    public void setTemplateDelta(TemplateDelta templateDelta) {
+        this.templateDelta = templateDelta == null ? new TemplateDelta() : templateDelta;
+    }
+
+    public TemplateCachePurge getTemplateCachePurge() {
+        return templateCachePurge;
+    }
+
+    public void setTemplateCachePurge(TemplateCachePurge templateCachePurge) {
+        this.templateCachePurge = templateCachePurge == null ? new TemplateCachePurge() : templateCachePurge;
+    }
+
+    public CommandStream getCommandStream() {
+        return commandStream;
+    }
+
+    public void setCommandStream(CommandStream commandStream) {
+        this.commandStream = commandStream == null ? new CommandStream() : commandStream;
+    }
+
+    public TemplateCompositeCache getTemplateCompositeCache() {
+        return templateCompositeCache;
+    }
+
+    public void setTemplateCompositeCache(TemplateCompositeCache templateCompositeCache) {
+        this.templateCompositeCache = templateCompositeCache == null ? new TemplateCompositeCache() : templateCompositeCache;
+    }
+
     public static class Auth {
 
         private String tokenPath;
@@ -248,6 +400,9 @@ public class NodeConfig {
         private String bucket;
         private String accessKey;
         private String secretKey;
+        private boolean rangedDownloadEnabled;
+        private long rangedDownloadPartSizeBytes = 64L * 1024 * 1024;
+        private int rangedDownloadConcurrency = 4;
 
         public String getEndpoint() {
             return endpoint;
@@ -288,6 +443,30 @@ public class NodeConfig {
         public void setSecretKey(String secretKey) {
             this.secretKey = secretKey;
         }
+
+        public boolean isRangedDownloadEnabled() {
+            return rangedDownloadEnabled;
+        }
+
+        public void setRangedDownloadEnabled(boolean rangedDownloadEnabled) {
+            this.rangedDownloadEnabled = rangedDownloadEnabled;
+        }
+
+        public long getRangedDownloadPartSizeBytes() {
+            return rangedDownloadPartSizeBytes;
+        }
+
+        public void setRangedDownloadPartSizeBytes(long rangedDownloadPartSizeBytes) {
+            this.rangedDownloadPartSizeBytes = rangedDownloadPartSizeBytes;
+        }
+
+        public int getRangedDownloadConcurrency() {
+            return rangedDownloadConcurrency;
+        }
+
+        public void setRangedDownloadConcurrency(int rangedDownloadConcurrency) {
+            this.rangedDownloadConcurrency = rangedDownloadConcurrency;
+        }
     }
 
     public static class TemplateCacheCheck {
@@ -351,4 +530,269 @@ public class NodeConfig {
             this.maxEntries = maxEntries;
         }
     }
+
+    public static class TemplateCachePopulate {
+
+        private boolean streamingExtraction;
+        private boolean pipelinedDecompression;
+        private int writerThreads = 1;
+
+        public boolean isStreamingExtraction() {
+            return streamingExtraction;
+        }
+
+        public void setStreamingExtraction(boolean streamingExtraction) {
+            this.streamingExtraction = streamingExtraction;
+        }
+
+        public boolean isPipelinedDecompression() {
+            return pipelinedDecompression;
+        }
+
+        public void setPipelinedDecompression(boolean pipelinedDecompression) {
+            this.pipelinedDecompression = pipelinedDecompression;
+        }
+
+        public int getWriterThreads() {
+            return writerThreads;
+        }
+
+        public void setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+        }
+    }
+
+    public static class TemplateMerge {
+
+        private TemplateMergeStrategy strategy = TemplateMergeStrategy.COPY;
+        private List<String> immutablePatterns = new ArrayList<>(List.of(
+                "**.jar",
+                "**.so",
+                "**.dll",
+                "**.dylib"
+        ));
+        private int parallelism = 1;
+
+        public TemplateMergeStrategy getStrategy() {
+            return strategy;
+        }
+
+        public void setStrategy(TemplateMergeStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        public List<String> getImmutablePatterns() {
+            return immutablePatterns;
+        }
+
+        public void setImmutablePatterns(List<String> immutablePatterns) {
+            this.immutablePatterns = immutablePatterns == null ? new ArrayList<>() : immutablePatterns;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    public static class TemplateCompositeCache {
+
+        private boolean enabled = false;
+        private int maxEntries = 8;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    public static class TemplateCacheEviction {
+
+        private boolean enabled = false;
+        private long maxBytes = 50L * 1024 * 1024 * 1024;
+        private long lowWatermarkBytes = 40L * 1024 * 1024 * 1024;
+        private long intervalSeconds = 300;
+        private long referenceMaxAgeSeconds = 3600;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public long getLowWatermarkBytes() {
+            return lowWatermarkBytes;
+        }
+
+        public void setLowWatermarkBytes(long lowWatermarkBytes) {
+            this.lowWatermarkBytes = lowWatermarkBytes;
+        }
+
+        public long getIntervalSeconds() {
+            return intervalSeconds;
+        }
+
+        public void setIntervalSeconds(long intervalSeconds) {
+            this.intervalSeconds = intervalSeconds;
+        }
+
+        public long getReferenceMaxAgeSeconds() {
+            return referenceMaxAgeSeconds;
+        }
+
+        public void setReferenceMaxAgeSeconds(long referenceMaxAgeSeconds) {
+            this.referenceMaxAgeSeconds = referenceMaxAgeSeconds;
+        }
+    }
+
+    public static class TemplateCacheIndex {
+
+        private boolean watchEnabled = false;
+
+        public boolean isWatchEnabled() {
+            return watchEnabled;
+        }
+
+        public void setWatchEnabled(boolean watchEnabled) {
+            this.watchEnabled = watchEnabled;
+        }
+    }
+
+    public static class TemplateCachePrefetch {
+
+        private int concurrency = 2;
+        private int maxPendingItems = 1000;
+        private int retainedJobs = 50;
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        public int getMaxPendingItems() {
+            return maxPendingItems;
+        }
+
+        public void setMaxPendingItems(int maxPendingItems) {
+            this.maxPendingItems = maxPendingItems;
+        }
+
+        public int getRetainedJobs() {
+            return retainedJobs;
+        }
+
+        public void setRetainedJobs(int retainedJobs) {
+            this.retainedJobs = retainedJobs;
+        }
+    }
+
+    public static class TemplateObjectStore {
+
+        private boolean enabled = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    public static class TemplateDelta {
+
+        private boolean enabled = false;
+        private String filesPrefix = "files/";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getFilesPrefix() {
+            return filesPrefix;
+        }
+
+        public void setFilesPrefix(String filesPrefix) {
+            this.filesPrefix = filesPrefix;
+        }
+    }
+
+    public static class TemplateCachePurge {
+
+        private boolean backgroundEnabled = false;
+        private int retainedJobs = 50;
+
+        public boolean isBackgroundEnabled() {
+            return backgroundEnabled;
+        }
+
+        public void setBackgroundEnabled(boolean backgroundEnabled) {
+            this.backgroundEnabled = backgroundEnabled;
+        }
+
+        public int getRetainedJobs() {
+            return retainedJobs;
+        }
+
+        public void setRetainedJobs(int retainedJobs) {
+            this.retainedJobs = retainedJobs;
+        }
+    }
+
+    /**
+     * WebSocket to the Brain. Without {@code NodeStreamCommandHandler} beans it currently carries heartbeats and
+     * callbacks only; commands are answered with {@code 501} and the Brain sends them over HTTP.
+     */
+    public static class CommandStream {
+
+        private boolean enabled = false;
+        private int reconnectMaxDelaySeconds = 30;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getReconnectMaxDelaySeconds() {
+            return reconnectMaxDelaySeconds;
+        }
+
+        public void setReconnectMaxDelaySeconds(int reconnectMaxDelaySeconds) {
+            this.reconnectMaxDelaySeconds = reconnectMaxDelaySeconds;
+        }
+    }
 }
@@ -11,6 +11,7 @@ import jakarta.annotation.PreDestroy;
 import net.spookly.kodama.nodeagent.config.NodeConfig;
 import net.spookly.kodama.nodeagent.registration.NodeAuthTokenReader;
 import net.spookly.kodama.nodeagent.registration.NodeRegistrationState;
+import net.spookly.kodama.nodeagent.stream.BrainCommandStreamClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -29,6 +30,7 @@ public class HeartbeatScheduler implements ApplicationListener<ApplicationReadyE
     private final NodeAuthTokenReader tokenReader;
     private final NodeHeartbeatClient heartbeatClient;
     private final NodeHeartbeatState heartbeatState;
+    private final BrainCommandStreamClient commandStreamClient;
     private final ScheduledExecutorService scheduler;
     private final AtomicBoolean started = new AtomicBoolean(false);
 
@@ -37,13 +39,15 @@ public class HeartbeatScheduler implements ApplicationListener<ApplicationReadyE
             NodeRegistrationState registrationState,
             NodeAuthTokenReader tokenReader,
             NodeHeartbeatClient heartbeatClient,
-            NodeHeartbeatState heartbeatState
+            NodeHeartbeatState heartbeatState,
+            BrainCommandStreamClient commandStreamClient
     ) {
         this.config = config;
         this.registrationState = registrationState;
         this.tokenReader = tokenReader;
         this.heartbeatClient = heartbeatClient;
         this.heartbeatState = heartbeatState;
+        this.commandStreamClient = commandStreamClient;
         this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
             Thread thread = new Thread(runnable, "node-heartbeat-scheduler");
             return thread;
@@ -82,6 +86,10 @@ public class HeartbeatScheduler implements ApplicationListener<ApplicationReadyE
             logger.debug("Skipping heartbeat because nodeId is not set.");
             return;
         }
+        NodeHeartbeatRequest request = buildRequest();
+        if (commandStreamClient.trySendHeartbeat(request)) {
+            return;
+        }
         URI endpoint;
         try {
             endpoint = buildHeartbeatEndpoint(config.getBrainBaseUrl(), nodeId);
@@ -89,7 +97,6 @@ public class HeartbeatScheduler implements ApplicationListener<ApplicationReadyE
             logger.warn("Skipping heartbeat due to invalid Brain base URL", ex);
             return;
         }
-        NodeHeartbeatRequest request = buildRequest();
         String authToken;
         try {
             authToken = tokenReader.readToken();
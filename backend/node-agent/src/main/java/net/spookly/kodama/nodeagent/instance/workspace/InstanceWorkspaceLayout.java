@@ -14,6 +14,7 @@ public class InstanceWorkspaceLayout {
     public static final String MERGED_DIR_NAME = "merged";
     public static final String LOGS_DIR_NAME = "logs";
     public static final String TEMP_DIR_NAME = "temp";
+    public static final String TEMPLATE_LAYERS_FILENAME = "template-layers.tsv";
 
     private final Path workspaceRoot;
     private final Path instancesRoot;
@@ -50,12 +51,14 @@ public class InstanceWorkspaceLayout {
         Path mergedDir = instanceRoot.resolve(MERGED_DIR_NAME);
         Path logsDir = instanceRoot.resolve(LOGS_DIR_NAME);
         Path tempDir = instanceRoot.resolve(TEMP_DIR_NAME);
+        Path templateLayersFile = instanceRoot.resolve(TEMPLATE_LAYERS_FILENAME);
         return new InstanceWorkspacePaths(
                 normalizedInstanceId,
                 instanceRoot,
                 mergedDir,
                 logsDir,
-                tempDir
+                tempDir,
+                templateLayersFile
         );
     }
 
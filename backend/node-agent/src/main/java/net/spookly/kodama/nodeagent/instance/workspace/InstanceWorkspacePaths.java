@@ -7,6 +7,7 @@ public record InstanceWorkspacePaths(
         Path instanceRoot,
         Path mergedDir,
         Path logsDir,
-        Path tempDir
+        Path tempDir,
+        Path templateLayersFile
 ) {
 }
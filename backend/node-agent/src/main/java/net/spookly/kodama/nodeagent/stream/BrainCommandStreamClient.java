@@ -0,0 +1,401 @@
+package net.spookly.kodama.nodeagent.stream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.heartbeat.NodeHeartbeatRequest;
+import net.spookly.kodama.nodeagent.registration.NodeAuthTokenReader;
+import net.spookly.kodama.nodeagent.registration.NodeRegistrationState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps one WebSocket open to the Brain ({@code /api/nodes/{nodeId}/command-stream}) when
+ * {@code node-agent.command-stream.enabled} is set. The Brain pushes instance commands over it, and the node sends
+ * heartbeats and lifecycle callbacks back, each acknowledged by the other side. The connection is re-opened with
+ * exponential backoff whenever it drops; while it is down, heartbeats fall back to HTTP.
+ */
+@Component
+public class BrainCommandStreamClient implements ApplicationListener<ApplicationReadyEvent> {
+
+    static final int STATUS_OK = 200;
+    static final int STATUS_BAD_REQUEST = 400;
+    static final int STATUS_INTERNAL_ERROR = 500;
+    static final int STATUS_NOT_IMPLEMENTED = 501;
+
+    private static final Logger logger = LoggerFactory.getLogger(BrainCommandStreamClient.class);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration ACK_TIMEOUT = Duration.ofSeconds(10);
+    private static final long INITIAL_RECONNECT_DELAY_MILLIS = 1_000;
+    private static final int MAX_RECONNECT_SHIFT = 16;
+
+    private final NodeConfig config;
+    private final NodeRegistrationState registrationState;
+    private final NodeAuthTokenReader tokenReader;
+    private final ObjectMapper objectMapper;
+    private final Map<String, NodeStreamCommandHandler> handlers;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService reconnectScheduler;
+    private final ExecutorService commandExecutor;
+    private final AtomicReference<WebSocket> webSocket = new AtomicReference<>();
+    private final ConcurrentMap<String, CompletableFuture<NodeStreamMessage>> pendingAcks = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicInteger reconnectAttempts = new AtomicInteger();
+    private final Object sendLock = new Object();
+    private CompletableFuture<?> sendChain = CompletableFuture.completedFuture(null);
+    private volatile boolean closed;
+
+    public BrainCommandStreamClient(
+            NodeConfig config,
+            NodeRegistrationState registrationState,
+            NodeAuthTokenReader tokenReader,
+            ObjectMapper objectMapper,
+            ObjectProvider<NodeStreamCommandHandler> handlers
+    ) {
+        this(config, registrationState, tokenReader, objectMapper, handlers.orderedStream().toList());
+    }
+
+    BrainCommandStreamClient(
+            NodeConfig config,
+            NodeRegistrationState registrationState,
+            NodeAuthTokenReader tokenReader,
+            ObjectMapper objectMapper,
+            List<NodeStreamCommandHandler> handlers
+    ) {
+        this.config = config;
+        this.registrationState = registrationState;
+        this.tokenReader = tokenReader;
+        this.objectMapper = objectMapper;
+        this.handlers = handlers.stream()
+                .collect(Collectors.toUnmodifiableMap(NodeStreamCommandHandler::action, Function.identity()));
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+        this.reconnectScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
+                new Thread(runnable, "brain-command-stream"));
+        this.commandExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (config.getCommandStream().isEnabled() && started.compareAndSet(false, true)) {
+            reconnectScheduler.execute(this::connect);
+        }
+    }
+
+    public boolean isConnected() {
+        return webSocket.get() != null;
+    }
+
+    /**
+     * Sends a heartbeat over the stream. Returns {@code false} when the stream is down or the Brain did not accept
+     * the heartbeat, in which case the caller should fall back to HTTP.
+     */
+    public boolean trySendHeartbeat(NodeHeartbeatRequest request) {
+        if (!isConnected()) {
+            return false;
+        }
+        NodeStreamMessage heartbeat = NodeStreamMessage.heartbeat(
+                UUID.randomUUID().toString(),
+                objectMapper.valueToTree(request)
+        );
+        try {
+            NodeStreamMessage ack = request(heartbeat).get(ACK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            if (isSuccess(ack)) {
+                return true;
+            }
+            logger.warn("Brain rejected heartbeat over command stream status={} error={}", ack.getStatus(), ack.getError());
+            return false;
+        } catch (ExecutionException | TimeoutException ex) {
+            logger.debug("Heartbeat over command stream failed", ex);
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reports an instance lifecycle event ({@code prepared}, {@code running}, {@code stopped}, {@code destroyed},
+     * {@code failed}) over the stream. The returned future completes once the Brain has applied it and fails with a
+     * {@link NodeCommandStreamException} when the stream is down or the Brain rejected the event.
+     */
+    public CompletableFuture<Void> sendCallback(UUID instanceId, String event, Object payload) {
+        if (!isConnected()) {
+            return CompletableFuture.failedFuture(new NodeCommandStreamException("Command stream is not connected"));
+        }
+        NodeStreamMessage callback = NodeStreamMessage.callback(
+                UUID.randomUUID().toString(),
+                instanceId,
+                event,
+                payload == null ? null : objectMapper.valueToTree(payload)
+        );
+        return request(callback).thenApply(ack -> {
+            if (!isSuccess(ack)) {
+                throw new NodeCommandStreamException(
+                        "Brain rejected " + event + " callback with status " + ack.getStatus() + ": " + ack.getError());
+            }
+            return null;
+        });
+    }
+
+    void onMessage(String text) {
+        NodeStreamMessage message;
+        try {
+            message = objectMapper.readValue(text, NodeStreamMessage.class);
+        } catch (JsonProcessingException ex) {
+            logger.warn("Dropping malformed command stream frame: {}", ex.getOriginalMessage());
+            return;
+        }
+        if (message.getType() == NodeStreamMessageType.ACK) {
+            CompletableFuture<NodeStreamMessage> pending = message.getId() == null ? null : pendingAcks.remove(message.getId());
+            if (pending != null) {
+                pending.complete(message);
+            }
+        } else if (message.getType() == NodeStreamMessageType.COMMAND) {
+            commandExecutor.execute(() -> executeCommand(message));
+        } else {
+            logger.debug("Ignoring command stream frame type={}", message.getType());
+        }
+    }
+
+    void attach(WebSocket socket) {
+        synchronized (sendLock) {
+            sendChain = CompletableFuture.completedFuture(null);
+        }
+        webSocket.set(socket);
+        reconnectAttempts.set(0);
+    }
+
+    private void executeCommand(NodeStreamMessage command) {
+        NodeStreamCommandHandler handler = command.getAction() == null ? null : handlers.get(command.getAction());
+        int status;
+        String error = null;
+        if (handler == null) {
+            status = STATUS_NOT_IMPLEMENTED;
+            error = "Unsupported action " + command.getAction();
+        } else {
+            try {
+                handler.handle(command.getInstanceId(), command.getPayload(), command.getTraceId());
+                status = STATUS_OK;
+            } catch (IllegalArgumentException ex) {
+                status = STATUS_BAD_REQUEST;
+                error = ex.getMessage();
+            } catch (Exception ex) {
+                logger.warn(
+                        "Command failed action={} instanceId={}",
+                        command.getAction(),
+                        command.getInstanceId(),
+                        ex
+                );
+                status = STATUS_INTERNAL_ERROR;
+                error = ex.getMessage();
+            }
+        }
+        send(NodeStreamMessage.ack(command.getId(), status, error)).exceptionally(ex -> {
+            logger.warn("Failed to acknowledge command id={}", command.getId(), ex);
+            return null;
+        });
+    }
+
+    private CompletableFuture<NodeStreamMessage> request(NodeStreamMessage message) {
+        CompletableFuture<NodeStreamMessage> ack = new CompletableFuture<>();
+        pendingAcks.put(message.getId(), ack);
+        send(message).whenComplete((ignored, ex) -> {
+            if (ex != null) {
+                ack.completeExceptionally(ex);
+            }
+        });
+        return ack.orTimeout(ACK_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, ex) -> pendingAcks.remove(message.getId()));
+    }
+
+    /**
+     * A WebSocket accepts one outstanding send at a time, so frames are chained behind each other.
+     */
+    private CompletableFuture<Void> send(NodeStreamMessage message) {
+        WebSocket socket = webSocket.get();
+        if (socket == null) {
+            return CompletableFuture.failedFuture(new NodeCommandStreamException("Command stream is not connected"));
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException ex) {
+            return CompletableFuture.failedFuture(new NodeCommandStreamException("Failed to serialize frame", ex));
+        }
+        synchronized (sendLock) {
+            CompletableFuture<Void> sent = sendChain
+                    .exceptionally(ex -> null)
+                    .thenCompose(ignored -> socket.sendText(json, true))
+                    .thenApply(ignored -> null);
+            sendChain = sent;
+            return sent;
+        }
+    }
+
+    private void connect() {
+        if (closed) {
+            return;
+        }
+        URI uri;
+        String authToken;
+        try {
+            UUID nodeId = resolveNodeId();
+            if (nodeId == null) {
+                logger.debug("Command stream waits for the node to be registered.");
+                scheduleReconnect();
+                return;
+            }
+            uri = buildStreamUri(config.getBrainBaseUrl(), nodeId);
+            authToken = tokenReader.readToken();
+        } catch (RuntimeException ex) {
+            logger.warn("Cannot open command stream", ex);
+            scheduleReconnect();
+            return;
+        }
+        WebSocket.Builder builder = httpClient.newWebSocketBuilder().connectTimeout(CONNECT_TIMEOUT);
+        String headerName = config.getAuth().getHeaderName();
+        if (authToken != null && !authToken.isBlank() && headerName != null && !headerName.isBlank()) {
+            builder.header(headerName, authToken);
+        }
+        builder.buildAsync(uri, new Listener()).whenComplete((socket, ex) -> {
+            if (ex != null) {
+                logger.warn("Failed to open command stream to {}: {}", uri, ex.getMessage());
+                scheduleReconnect();
+                return;
+            }
+            attach(socket);
+            logger.info("Command stream connected to {}", uri);
+            if (socket.isInputClosed()) {
+                onClosed(socket, "closed during handshake");
+            }
+        });
+    }
+
+    private void onClosed(WebSocket socket, String reason) {
+        if (!webSocket.compareAndSet(socket, null)) {
+            return;
+        }
+        logger.warn("Command stream closed: {}", reason);
+        pendingAcks.values().forEach(ack ->
+                ack.completeExceptionally(new NodeCommandStreamException("Command stream closed")));
+        pendingAcks.clear();
+        scheduleReconnect();
+    }
+
+    private void scheduleReconnect() {
+        if (closed) {
+            return;
+        }
+        long maxDelayMillis = TimeUnit.SECONDS.toMillis(config.getCommandStream().getReconnectMaxDelaySeconds());
+        int shift = Math.min(reconnectAttempts.getAndIncrement(), MAX_RECONNECT_SHIFT);
+        long delayMillis = Math.min(maxDelayMillis, INITIAL_RECONNECT_DELAY_MILLIS << shift);
+        reconnectScheduler.schedule(this::connect, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private UUID resolveNodeId() {
+        UUID nodeId = registrationState.getNodeId();
+        if (nodeId != null) {
+            return nodeId;
+        }
+        String configuredNodeId = config.getNodeId();
+        if (configuredNodeId == null || configuredNodeId.isBlank()) {
+            return null;
+        }
+        return UUID.fromString(configuredNodeId);
+    }
+
+    static URI buildStreamUri(String brainBaseUrl, UUID nodeId) {
+        if (brainBaseUrl == null || brainBaseUrl.isBlank()) {
+            throw new NodeCommandStreamException("Brain base URL is required for the command stream");
+        }
+        String trimmed = brainBaseUrl.endsWith("/") ? brainBaseUrl.substring(0, brainBaseUrl.length() - 1) : brainBaseUrl;
+        String webSocketBase;
+        if (trimmed.startsWith("https://")) {
+            webSocketBase = "wss://" + trimmed.substring("https://".length());
+        } else if (trimmed.startsWith("http://")) {
+            webSocketBase = "ws://" + trimmed.substring("http://".length());
+        } else {
+            webSocketBase = trimmed;
+        }
+        try {
+            return URI.create(webSocketBase + "/api/nodes/" + nodeId + "/command-stream");
+        } catch (IllegalArgumentException ex) {
+            throw new NodeCommandStreamException("Invalid Brain base URL: " + brainBaseUrl, ex);
+        }
+    }
+
+    private static boolean isSuccess(NodeStreamMessage ack) {
+        int status = ack.getStatus() == null ? STATUS_OK : ack.getStatus();
+        return status >= 200 && status < 300;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        WebSocket socket = webSocket.getAndSet(null);
+        if (socket != null) {
+            socket.sendClose(WebSocket.NORMAL_CLOSURE, "Node agent shutting down");
+        }
+        reconnectScheduler.shutdownNow();
+        commandExecutor.shutdownNow();
+        httpClient.shutdownNow();
+    }
+
+    private final class Listener implements WebSocket.Listener {
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+            buffer.append(data);
+            if (last) {
+                String text = buffer.toString();
+                buffer.setLength(0);
+                onMessage(text);
+            }
+            socket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+            onClosed(socket, statusCode + " " + reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket socket, Throwable error) {
+            onClosed(socket, String.valueOf(error));
+        }
+    }
+}
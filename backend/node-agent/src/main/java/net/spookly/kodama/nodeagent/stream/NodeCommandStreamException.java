@@ -0,0 +1,12 @@
+package net.spookly.kodama.nodeagent.stream;
+
+public class NodeCommandStreamException extends RuntimeException {
+
+    public NodeCommandStreamException(String message) {
+        super(message);
+    }
+
+    public NodeCommandStreamException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,17 @@
+package net.spookly.kodama.nodeagent.stream;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Executes one command action ({@code prepare}, {@code start}, {@code stop}, {@code destroy}) received over the
+ * Brain command stream. Returning normally acknowledges the command; an {@link IllegalArgumentException} is reported
+ * to the Brain as a rejected command (400) and any other exception as a failure (500).
+ */
+public interface NodeStreamCommandHandler {
+
+    String action();
+
+    void handle(UUID instanceId, JsonNode payload, String traceId) throws Exception;
+}
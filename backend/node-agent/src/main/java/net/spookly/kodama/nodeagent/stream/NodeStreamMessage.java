@@ -0,0 +1,127 @@
+package net.spookly.kodama.nodeagent.stream;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * One JSON text frame of the Brain command stream. Mirrors the Brain's {@code NodeStreamMessage}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class NodeStreamMessage {
+
+    private NodeStreamMessageType type;
+    private String id;
+    private UUID instanceId;
+    private String action;
+    private String event;
+    private String traceId;
+    private Integer status;
+    private String error;
+    private JsonNode payload;
+
+    public NodeStreamMessage() {
+    }
+
+    public static NodeStreamMessage ack(String id, int status, String error) {
+        NodeStreamMessage message = new NodeStreamMessage();
+        message.setType(NodeStreamMessageType.ACK);
+        message.setId(id);
+        message.setStatus(status);
+        message.setError(error);
+        return message;
+    }
+
+    public static NodeStreamMessage heartbeat(String id, JsonNode payload) {
+        NodeStreamMessage message = new NodeStreamMessage();
+        message.setType(NodeStreamMessageType.HEARTBEAT);
+        message.setId(id);
+        message.setPayload(payload);
+        return message;
+    }
+
+    public static NodeStreamMessage callback(String id, UUID instanceId, String event, JsonNode payload) {
+        NodeStreamMessage message = new NodeStreamMessage();
+        message.setType(NodeStreamMessageType.CALLBACK);
+        message.setId(id);
+        message.setInstanceId(instanceId);
+        message.setEvent(event);
+        message.setPayload(payload);
+        return message;
+    }
+
+    public NodeStreamMessageType getType() {
+        return type;
+    }
+
+    public void setType(NodeStreamMessageType type) {
+        this.type = type;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public UUID getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(UUID instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public void setAction(String action) {
+        this.action = action;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public void setEvent(String event) {
+        this.event = event;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public void setTraceId(String traceId) {
+        this.traceId = traceId;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public JsonNode getPayload() {
+        return payload;
+    }
+
+    public void setPayload(JsonNode payload) {
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,8 @@
+package net.spookly.kodama.nodeagent.stream;
+
+public enum NodeStreamMessageType {
+    COMMAND,
+    ACK,
+    HEARTBEAT,
+    CALLBACK
+}
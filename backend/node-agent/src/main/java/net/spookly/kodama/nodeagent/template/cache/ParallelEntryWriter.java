@@ -0,0 +1,140 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the writes of one archive extraction on a shared executor while the extracting thread keeps reading the
+ * archive. Buffered entry contents are bounded by {@code maxBufferedBytes}; each write also reserves a fixed
+ * overhead so that bursts of empty files cannot queue without limit. The first failing write fails the extraction.
+ */
+final class ParallelEntryWriter implements AutoCloseable {
+
+    private static final int PER_WRITE_OVERHEAD_BYTES = 4096;
+
+    private final Executor executor;
+    private final int maxBufferedBytes;
+    private final Semaphore bufferedBytes;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final Object idleMonitor = new Object();
+    private int pending;
+    private volatile boolean aborted;
+
+    ParallelEntryWriter(Executor executor, int maxBufferedBytes) {
+        this.executor = executor;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.bufferedBytes = new Semaphore(maxBufferedBytes);
+    }
+
+    /**
+     * Queues {@code write}, blocking while the buffered budget is exhausted. Rethrows the failure of an earlier
+     * write, if any.
+     */
+    void submit(int size, EntryWrite write) throws IOException {
+        rethrowFailure();
+        int permits = Math.min(maxBufferedBytes, size + PER_WRITE_OVERHEAD_BYTES);
+        try {
+            bufferedBytes.acquire(permits);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for template extraction writers");
+        }
+        synchronized (idleMonitor) {
+            pending++;
+        }
+        try {
+            executor.execute(() -> run(write, permits));
+        } catch (RejectedExecutionException ex) {
+            finished(permits);
+            throw new IOException("Template extraction writers are shut down", ex);
+        }
+    }
+
+    /**
+     * Waits until every queued write has completed and rethrows the first failure.
+     */
+    void awaitIdle() throws IOException {
+        synchronized (idleMonitor) {
+            while (pending > 0) {
+                try {
+                    idleMonitor.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for template extraction writers");
+                }
+            }
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Skips writes that have not started and waits for running ones, so the caller can safely delete the
+     * destination afterwards.
+     */
+    @Override
+    public void close() {
+        aborted = true;
+        boolean interrupted = false;
+        synchronized (idleMonitor) {
+            while (pending > 0) {
+                try {
+                    idleMonitor.wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run(EntryWrite write, int permits) {
+        try {
+            if (!aborted && failure.get() == null) {
+                write.write();
+            }
+        } catch (Throwable ex) {
+            failure.compareAndSet(null, ex);
+        } finally {
+            finished(permits);
+        }
+    }
+
+    private void finished(int permits) {
+        bufferedBytes.release(permits);
+        synchronized (idleMonitor) {
+            pending--;
+            if (pending == 0) {
+                idleMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        Throwable cause = failure.get();
+        if (cause == null) {
+            return;
+        }
+        if (cause instanceof IOException ioException) {
+            throw ioException;
+        }
+        if (cause instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        throw new IOException(cause);
+    }
+
+    @FunctionalInterface
+    interface EntryWrite {
+
+        void write() throws IOException;
+    }
+}
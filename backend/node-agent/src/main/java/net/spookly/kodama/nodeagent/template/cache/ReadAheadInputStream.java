@@ -0,0 +1,136 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads {@code source} on a dedicated thread into a small queue of chunks, so that whatever the source does per byte
+ * (network reads, hashing, decompression) runs concurrently with the consumer. Failures of the source are rethrown
+ * to the consumer. Closing this stream stops the reader but does not close {@code source}; the caller owns it. The
+ * source is no longer read once this stream has returned end of stream; after an early close the caller should only
+ * close it.
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final BlockingQueue<byte[]> chunks;
+    private final Thread reader;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private byte[] current;
+    private int position;
+    private boolean finished;
+
+    ReadAheadInputStream(InputStream source, int chunkSize, int maxChunks) {
+        this.chunks = new ArrayBlockingQueue<>(maxChunks);
+        this.reader = new Thread(() -> readAll(source, chunkSize), "template-read-ahead-" + THREAD_COUNTER.incrementAndGet());
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // A reader blocked in a network read only stops once the caller closes the source.
+        reader.interrupt();
+    }
+
+    /**
+     * Waits for the reader thread to stop after {@link #close()}. Only returns once a blocking read of the source
+     * has completed, so callers close the source first.
+     */
+    void awaitReader() {
+        try {
+            reader.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean nextChunk() throws IOException {
+        while (!finished && (current == null || position == current.length)) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for template data");
+            }
+            position = 0;
+            if (current == END_OF_STREAM) {
+                finished = true;
+            }
+        }
+        if (finished && failure != null) {
+            throw failure;
+        }
+        return !finished;
+    }
+
+    private void readAll(InputStream source, int chunkSize) {
+        try {
+            while (!closed) {
+                byte[] buffer = new byte[chunkSize];
+                int filled = source.readNBytes(buffer, 0, chunkSize);
+                if (filled == 0) {
+                    break;
+                }
+                if (!offer(filled == chunkSize ? buffer : Arrays.copyOf(buffer, filled))) {
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        } catch (RuntimeException ex) {
+            failure = new IOException(ex.getMessage(), ex);
+        }
+        offer(END_OF_STREAM);
+    }
+
+    private boolean offer(byte[] chunk) {
+        try {
+            while (!closed) {
+                if (chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,34 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.util.Locale;
+
+/**
+ * Compression formats accepted for template tarballs.
+ */
+enum TemplateArchiveCompression {
+    NONE,
+    GZIP,
+    ZSTD;
+
+    static TemplateArchiveCompression fromMagic(byte[] magic) {
+        if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1f && (magic[1] & 0xFF) == 0x8b) {
+            return GZIP;
+        }
+        if (magic.length >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xb5
+                && (magic[2] & 0xFF) == 0x2f && (magic[3] & 0xFF) == 0xfd) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+
+    static TemplateArchiveCompression fromKey(String s3Key) {
+        String lowerKey = s3Key.toLowerCase(Locale.ROOT);
+        if (lowerKey.endsWith(".gz") || lowerKey.endsWith(".tgz")) {
+            return GZIP;
+        }
+        if (lowerKey.endsWith(".zst") || lowerKey.endsWith(".tzst")) {
+            return ZSTD;
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,56 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records when cached template versions were last used. Accesses are kept in memory so cache hits stay free of
+ * filesystem writes, and are persisted as the checksum file's modification time when the evictor runs so recency
+ * survives a restart.
+ */
+@Component
+public class TemplateCacheAccessTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheAccessTracker.class);
+
+    private final Map<Path, Long> lastAccessByVersionRoot = new ConcurrentHashMap<>();
+
+    public void recordAccess(TemplateCachePaths paths) {
+        lastAccessByVersionRoot.put(paths.versionRoot(), System.currentTimeMillis());
+    }
+
+    public void forget(Path versionRoot) {
+        lastAccessByVersionRoot.remove(versionRoot);
+    }
+
+    /**
+     * Returns the last access time in epoch milliseconds, falling back to the persisted checksum file time.
+     */
+    public long lastAccessMillis(TemplateCachePaths paths) throws IOException {
+        Long recorded = lastAccessByVersionRoot.get(paths.versionRoot());
+        long persisted = Files.getLastModifiedTime(paths.checksumFile()).toMillis();
+        return recorded == null ? persisted : Math.max(recorded, persisted);
+    }
+
+    public void persist() {
+        for (Map.Entry<Path, Long> entry : lastAccessByVersionRoot.entrySet()) {
+            Path checksumFile = entry.getKey().resolve(TemplateCacheLayout.CHECKSUM_FILENAME);
+            try {
+                if (Files.isRegularFile(checksumFile)
+                        && Files.getLastModifiedTime(checksumFile).toMillis() < entry.getValue()) {
+                    Files.setLastModifiedTime(checksumFile, FileTime.fromMillis(entry.getValue()));
+                }
+            } catch (IOException ex) {
+                logger.debug("Failed to persist template cache access time. path={}", checksumFile, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+public record TemplateCacheEvictionResult(
+        long cachedBytes,
+        long remainingBytes,
+        int evictedVersions,
+        long evictedBytes
+) {
+}
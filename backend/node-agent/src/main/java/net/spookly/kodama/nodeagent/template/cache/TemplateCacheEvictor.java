@@ -0,0 +1,265 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.instance.workspace.InstanceWorkspaceLayout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the template cache under {@code node-agent.template-cache-eviction.max-bytes} by removing the least recently
+ * used versions until the cache is at or below the low watermark. Only {@code templates/} is counted; composites are
+ * bounded by their own entry limit. Versions listed in a workspace's {@code template-layers.tsv} written within the
+ * last {@code reference-max-age-seconds} are not evicted. Nothing removes those files when an instance goes away,
+ * and a workspace only reads the cache while it is merged, so older files no longer pin their versions.
+ */
+@Component
+public class TemplateCacheEvictor implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheEvictor.class);
+
+    private final NodeConfig.TemplateCacheEviction settings;
+    private final TemplateCacheLayout layout;
+    private final InstanceWorkspaceLayout workspaceLayout;
+    private final TemplateCacheManager cacheManager;
+    private final TemplateCacheAccessTracker accessTracker;
+    private final TemplateCacheMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    public TemplateCacheEvictor(
+            NodeConfig config,
+            TemplateCacheLayout layout,
+            InstanceWorkspaceLayout workspaceLayout,
+            TemplateCacheManager cacheManager,
+            TemplateCacheAccessTracker accessTracker,
+            TemplateCacheMetrics metrics
+    ) {
+        this.settings = Objects.requireNonNull(config, "config").getTemplateCacheEviction();
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.workspaceLayout = Objects.requireNonNull(workspaceLayout, "workspaceLayout");
+        this.cacheManager = Objects.requireNonNull(cacheManager, "cacheManager");
+        this.accessTracker = Objects.requireNonNull(accessTracker, "accessTracker");
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.scheduler = settings.isEnabled()
+                ? Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "template-cache-evictor"))
+                : null;
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (scheduler == null || !started.compareAndSet(false, true)) {
+            return;
+        }
+        long interval = settings.getIntervalSeconds();
+        scheduler.scheduleWithFixedDelay(this::runEviction, interval, interval, TimeUnit.SECONDS);
+        logger.info(
+                "Template cache eviction scheduled. maxBytes={} lowWatermarkBytes={} intervalSeconds={}",
+                settings.getMaxBytes(),
+                settings.getLowWatermarkBytes(),
+                interval
+        );
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public TemplateCacheEvictionResult evictIfNeeded() {
+        accessTracker.persist();
+        List<CachedVersion> versions = scanVersions();
+        long cachedBytes = 0;
+        for (CachedVersion version : versions) {
+            cachedBytes += version.bytes();
+        }
+        if (cachedBytes <= settings.getMaxBytes()) {
+            logger.debug("Template cache below eviction limit. cachedBytes={} maxBytes={}", cachedBytes, settings.getMaxBytes());
+            TemplateCacheEvictionResult result = new TemplateCacheEvictionResult(cachedBytes, cachedBytes, 0, 0);
+            metrics.recordEviction(result);
+            return result;
+        }
+
+        Set<String> referenced = findReferencedVersions();
+        versions.sort(Comparator.comparingLong(CachedVersion::lastAccessMillis));
+        long remainingBytes = cachedBytes;
+        long evictedBytes = 0;
+        int evictedVersions = 0;
+        for (CachedVersion version : versions) {
+            if (remainingBytes <= settings.getLowWatermarkBytes()) {
+                break;
+            }
+            if (referenced.contains(referenceKey(version.paths().templateId(), version.paths().version()))) {
+                continue;
+            }
+            Optional<TemplateCachePurgeResult> purged;
+            try {
+                purged = cacheManager.purgeVersion(version.paths().templateId(), version.paths().version());
+            } catch (TemplateCacheException ex) {
+                logger.warn(
+                        "Failed to evict template cache version. templateId={} version={}",
+                        version.paths().templateId(),
+                        version.paths().version(),
+                        ex
+                );
+                continue;
+            }
+            if (purged.isEmpty()) {
+                continue;
+            }
+            accessTracker.forget(version.paths().versionRoot());
+            // Purge results count only bytes actually freed, which is less than the version size when its files
+            // are shared through the object store.
+            long freedBytes = purged.get().deletedBytes();
+            remainingBytes -= freedBytes;
+            evictedBytes += freedBytes;
+            evictedVersions++;
+        }
+
+        if (remainingBytes > settings.getLowWatermarkBytes()) {
+            logger.warn(
+                    "Template cache still above low watermark after eviction; remaining versions are in use. remainingBytes={} lowWatermarkBytes={}",
+                    remainingBytes,
+                    settings.getLowWatermarkBytes()
+            );
+        }
+        logger.info(
+                "Template cache eviction completed. cachedBytes={} remainingBytes={} evictedVersions={} evictedBytes={}",
+                cachedBytes,
+                remainingBytes,
+                evictedVersions,
+                evictedBytes
+        );
+        TemplateCacheEvictionResult result =
+                new TemplateCacheEvictionResult(cachedBytes, remainingBytes, evictedVersions, evictedBytes);
+        metrics.recordEviction(result);
+        return result;
+    }
+
+    private void runEviction() {
+        try {
+            evictIfNeeded();
+        } catch (RuntimeException ex) {
+            logger.warn("Template cache eviction failed", ex);
+        }
+    }
+
+    private List<CachedVersion> scanVersions() {
+        Path templatesRoot = layout.getTemplatesRoot();
+        List<CachedVersion> versions = new ArrayList<>();
+        if (!Files.isDirectory(templatesRoot)) {
+            return versions;
+        }
+        Set<Object> seenFiles = new HashSet<>();
+        try (DirectoryStream<Path> templates = Files.newDirectoryStream(templatesRoot, Files::isDirectory)) {
+            for (Path templateRoot : templates) {
+                if (isHidden(templateRoot)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(templateRoot, Files::isDirectory)) {
+                    for (Path versionRoot : children) {
+                        if (isHidden(versionRoot)) {
+                            continue;
+                        }
+                        TemplateCachePaths paths = layout.resolveTemplateVersion(
+                                templateRoot.getFileName().toString(),
+                                versionRoot.getFileName().toString()
+                        );
+                        if (!Files.isDirectory(paths.contentsDir()) || !Files.isRegularFile(paths.checksumFile())) {
+                            continue;
+                        }
+                        versions.add(new CachedVersion(
+                                paths,
+                                sizeOf(versionRoot, seenFiles),
+                                accessTracker.lastAccessMillis(paths)
+                        ));
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to scan template cache under " + templatesRoot, ex);
+        }
+        return versions;
+    }
+
+    private Set<String> findReferencedVersions() {
+        Set<String> referenced = new HashSet<>();
+        Path instancesRoot = workspaceLayout.getInstancesRoot();
+        if (!Files.isDirectory(instancesRoot)) {
+            return referenced;
+        }
+        long cutoffMillis = System.currentTimeMillis() - settings.getReferenceMaxAgeSeconds() * 1_000;
+        try (DirectoryStream<Path> instances = Files.newDirectoryStream(instancesRoot, Files::isDirectory)) {
+            for (Path instanceRoot : instances) {
+                Path layersFile = instanceRoot.resolve(InstanceWorkspaceLayout.TEMPLATE_LAYERS_FILENAME);
+                if (!Files.isRegularFile(layersFile)
+                        || Files.getLastModifiedTime(layersFile).toMillis() < cutoffMillis) {
+                    continue;
+                }
+                for (String line : Files.readAllLines(layersFile, StandardCharsets.UTF_8)) {
+                    String[] fields = line.split("\t");
+                    if (fields.length >= 2) {
+                        referenced.add(referenceKey(fields[0], fields[1]));
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to read workspace template references under " + instancesRoot, ex);
+        }
+        return referenced;
+    }
+
+    /**
+     * Sums regular file sizes under {@code root}, counting each hardlinked file once across the whole scan.
+     */
+    private long sizeOf(Path root, Set<Object> seenFiles) throws IOException {
+        long[] total = {0L};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                Object fileKey = attrs.fileKey();
+                if (attrs.isRegularFile() && (fileKey == null || seenFiles.add(fileKey))) {
+                    total[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
+    }
+
+    private boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+
+    private String referenceKey(String templateId, String version) {
+        return templateId + "/" + version;
+    }
+
+    private record CachedVersion(TemplateCachePaths paths, long bytes, long lastAccessMillis) {
+    }
+}
@@ -0,0 +1,128 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory view of the cached template versions and their checksums, so cache hits need no filesystem access.
+ * Built from disk at startup and kept current by population, purge and eviction. Versions missing from the index
+ * are still probed on disk by {@link TemplateCacheLookupService}, which covers entries seeded by hand.
+ */
+@Component
+public class TemplateCacheIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheIndex.class);
+
+    private final TemplateCacheLayout layout;
+    private final ConcurrentMap<VersionKey, String> checksums = new ConcurrentHashMap<>();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public TemplateCacheIndex(TemplateCacheLayout layout) {
+        this.layout = Objects.requireNonNull(layout, "layout");
+    }
+
+    /**
+     * Replaces the index with the versions currently on disk. Hidden entries (locks, temp directories) are skipped.
+     */
+    public void rebuild() {
+        Path templatesRoot = layout.getTemplatesRoot();
+        Map<VersionKey, String> scanned = new HashMap<>();
+        if (Files.isDirectory(templatesRoot)) {
+            try (DirectoryStream<Path> templates = Files.newDirectoryStream(templatesRoot, Files::isDirectory)) {
+                for (Path templateRoot : templates) {
+                    String templateId = templateRoot.getFileName().toString();
+                    if (templateId.startsWith(".")) {
+                        continue;
+                    }
+                    try (DirectoryStream<Path> versions = Files.newDirectoryStream(templateRoot, Files::isDirectory)) {
+                        for (Path versionRoot : versions) {
+                            String version = versionRoot.getFileName().toString();
+                            if (version.startsWith(".")) {
+                                continue;
+                            }
+                            String checksum = readChecksum(layout.resolveTemplateVersion(templateId, version));
+                            if (checksum != null) {
+                                scanned.put(new VersionKey(templateId, version), checksum);
+                            }
+                        }
+                    }
+                }
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to index template cache under " + templatesRoot, ex);
+            }
+        }
+        checksums.keySet().retainAll(scanned.keySet());
+        checksums.putAll(scanned);
+        logger.info("Template cache index built. versions={} path={}", scanned.size(), templatesRoot);
+    }
+
+    /**
+     * Re-reads a single version from disk. Returns the cached checksum, or {@code null} when the version is absent.
+     * Callers do not hold the version lock, so an entry read before a concurrent removal is dropped again instead of
+     * outliving the files it points at.
+     */
+    public String refresh(TemplateCachePaths paths) {
+        long invalidationsBefore = invalidations.get();
+        String checksum = readChecksum(paths);
+        VersionKey key = new VersionKey(paths.templateId(), paths.version());
+        if (checksum == null) {
+            remove(paths);
+        } else {
+            checksums.put(key, checksum);
+            if (invalidations.get() != invalidationsBefore) {
+                checksums.remove(key, checksum);
+            }
+        }
+        return checksum;
+    }
+
+    public String findChecksum(String templateId, String version) {
+        return checksums.get(new VersionKey(templateId, version));
+    }
+
+    public void remove(TemplateCachePaths paths) {
+        invalidations.incrementAndGet();
+        checksums.remove(new VersionKey(paths.templateId(), paths.version()));
+    }
+
+    public void removeTemplate(String templateId) {
+        invalidations.incrementAndGet();
+        checksums.keySet().removeIf(key -> key.templateId().equals(templateId));
+    }
+
+    public void clear() {
+        invalidations.incrementAndGet();
+        checksums.clear();
+    }
+
+    public int size() {
+        return checksums.size();
+    }
+
+    private String readChecksum(TemplateCachePaths paths) {
+        if (!Files.isDirectory(paths.contentsDir()) || !Files.isRegularFile(paths.checksumFile())) {
+            return null;
+        }
+        try {
+            return Files.readString(paths.checksumFile(), StandardCharsets.UTF_8).trim();
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to read checksum file at " + paths.checksumFile(), ex);
+        }
+    }
+
+    private record VersionKey(String templateId, String version) {
+    }
+}
@@ -0,0 +1,194 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps {@link TemplateCacheIndex} in sync with versions added or removed under the templates root by something
+ * other than this node agent (another agent sharing the cache directory, or an operator). Enabled with
+ * {@code node-agent.template-cache-index.watch-enabled}.
+ */
+@Component
+public class TemplateCacheIndexWatcher implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheIndexWatcher.class);
+
+    private final boolean enabled;
+    private final TemplateCacheLayout layout;
+    private final TemplateCacheIndex index;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private volatile WatchService watchService;
+
+    public TemplateCacheIndexWatcher(NodeConfig config, TemplateCacheLayout layout, TemplateCacheIndex index) {
+        this.enabled = Objects.requireNonNull(config, "config").getTemplateCacheIndex().isWatchEnabled();
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.index = Objects.requireNonNull(index, "index");
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (!enabled || !started.compareAndSet(false, true)) {
+            return;
+        }
+        start();
+    }
+
+    void start() {
+        Path templatesRoot = layout.getTemplatesRoot();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            register(templatesRoot);
+            try (DirectoryStream<Path> templates = Files.newDirectoryStream(templatesRoot, Files::isDirectory)) {
+                for (Path templateRoot : templates) {
+                    if (!isHidden(templateRoot)) {
+                        register(templateRoot);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to watch template cache under " + templatesRoot, ex);
+        }
+        // Versions created between the startup scan and the registration above would otherwise be missed.
+        index.rebuild();
+
+        Thread thread = new Thread(this::watchLoop, "template-cache-index-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Template cache index watch started. path={}", templatesRoot);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        WatchService current = watchService;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        } catch (IOException ex) {
+            logger.warn("Failed to close template cache index watch service", ex);
+        }
+    }
+
+    private void watchLoop() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ClosedWatchServiceException ex) {
+                return;
+            }
+            try {
+                handleEvents(key);
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to apply template cache change to index; rebuilding", ex);
+                rebuildSafely();
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) {
+        Path dir = watchedDirs.get(key);
+        if (dir == null) {
+            return;
+        }
+        boolean templatesRootEvent = dir.equals(layout.getTemplatesRoot());
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                logger.info("Template cache watch overflowed; rebuilding index. path={}", dir);
+                rebuildSafely();
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (name == null || name.toString().startsWith(".")) {
+                continue;
+            }
+            if (templatesRootEvent) {
+                handleTemplateEvent(event.kind(), dir.resolve(name));
+            } else {
+                handleVersionEvent(event.kind(), dir.getFileName().toString(), name.toString());
+            }
+        }
+    }
+
+    private void handleTemplateEvent(WatchEvent.Kind<?> kind, Path templateRoot) {
+        String templateId = templateRoot.getFileName().toString();
+        if (kind == ENTRY_DELETE) {
+            index.removeTemplate(templateId);
+            return;
+        }
+        if (kind == ENTRY_CREATE && Files.isDirectory(templateRoot)) {
+            try {
+                register(templateRoot);
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to watch template cache directory " + templateRoot, ex);
+            }
+            // Versions may have landed before the registration took effect.
+            try (DirectoryStream<Path> versions = Files.newDirectoryStream(templateRoot, Files::isDirectory)) {
+                for (Path versionRoot : versions) {
+                    if (!isHidden(versionRoot)) {
+                        index.refresh(layout.resolveTemplateVersion(templateId, versionRoot.getFileName().toString()));
+                    }
+                }
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to scan template cache directory " + templateRoot, ex);
+            }
+        }
+    }
+
+    private void handleVersionEvent(WatchEvent.Kind<?> kind, String templateId, String version) {
+        TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+        if (kind == ENTRY_DELETE) {
+            index.remove(paths);
+        } else if (kind == ENTRY_CREATE) {
+            index.refresh(paths);
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+        watchedDirs.put(key, dir);
+    }
+
+    private void rebuildSafely() {
+        try {
+            index.rebuild();
+        } catch (TemplateCacheException ex) {
+            logger.warn("Failed to rebuild template cache index", ex);
+        }
+    }
+
+    private boolean isHidden(Path path) {
+        return path.getFileName().toString().startsWith(".");
+    }
+}
@@ -18,14 +18,17 @@ public class TemplateCacheInitializer implements ApplicationRunner {
     private static final Logger logger = LoggerFactory.getLogger(TemplateCacheInitializer.class);
 
     private final TemplateCacheLayout layout;
+    private final TemplateCacheIndex index;
 
-    public TemplateCacheInitializer(TemplateCacheLayout layout) {
+    public TemplateCacheInitializer(TemplateCacheLayout layout, TemplateCacheIndex index) {
         this.layout = layout;
+        this.index = index;
     }
 
     @Override
     public void run(ApplicationArguments args) {
         ensureCacheDirectories();
+        index.rebuild();
     }
 
     void ensureCacheDirectories() {
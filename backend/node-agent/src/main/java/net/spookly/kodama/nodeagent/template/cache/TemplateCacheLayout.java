@@ -14,9 +14,17 @@ public class TemplateCacheLayout {
     public static final String CONTENTS_DIR_NAME = "contents";
     public static final String CHECKSUM_FILENAME = "checksum.sha256";
     public static final String METADATA_FILENAME = "metadata.json";
+    public static final String MANIFEST_FILENAME = "manifest.json";
+    public static final String LOCK_FILE_SUFFIX = ".lock";
+    public static final String COMPOSITES_DIR_NAME = "composites";
+    public static final String STACK_FILENAME = "stack.tsv";
+    public static final String OBJECTS_DIR_NAME = "objects";
+    public static final String TRASH_DIR_NAME = ".trash";
 
     private final Path cacheRoot;
     private final Path templatesRoot;
+    private final Path compositesRoot;
+    private final Path objectsRoot;
 
     public TemplateCacheLayout(NodeConfig config) {
         if (config == null || config.getCacheDir() == null || config.getCacheDir().isBlank()) {
@@ -29,6 +37,8 @@ public class TemplateCacheLayout {
             throw new TemplateCacheException("Invalid node-agent.cache-dir: " + cacheDir, ex);
         }
         this.templatesRoot = cacheRoot.resolve(TEMPLATES_DIR_NAME);
+        this.compositesRoot = cacheRoot.resolve(COMPOSITES_DIR_NAME);
+        this.objectsRoot = cacheRoot.resolve(OBJECTS_DIR_NAME);
     }
 
     public Path getCacheRoot() {
@@ -39,6 +49,29 @@ public class TemplateCacheLayout {
         return templatesRoot;
     }
 
+    public Path getCompositesRoot() {
+        return compositesRoot;
+    }
+
+    public Path getObjectsRoot() {
+        return objectsRoot;
+    }
+
+    public Path getTrashRoot() {
+        return cacheRoot.resolve(TRASH_DIR_NAME);
+    }
+
+    /**
+     * Resolves a content-addressed object, fanned out by the first two characters of its id.
+     */
+    public Path resolveObject(String objectId) {
+        String normalizedObjectId = requireSegment("objectId", objectId);
+        if (normalizedObjectId.length() < 3) {
+            throw new IllegalArgumentException("objectId is too short");
+        }
+        return objectsRoot.resolve(normalizedObjectId.substring(0, 2)).resolve(normalizedObjectId);
+    }
+
     public Path resolveTemplateRoot(String templateId) {
         String normalizedTemplateId = requireSegment("templateId", templateId);
         return templatesRoot.resolve(normalizedTemplateId);
@@ -52,6 +85,7 @@ public class TemplateCacheLayout {
         Path contentsDir = versionRoot.resolve(CONTENTS_DIR_NAME);
         Path checksumFile = versionRoot.resolve(CHECKSUM_FILENAME);
         Path metadataFile = versionRoot.resolve(METADATA_FILENAME);
+        Path lockFile = templateRoot.resolve("." + normalizedVersion + LOCK_FILE_SUFFIX);
         return new TemplateCachePaths(
                 normalizedTemplateId,
                 normalizedVersion,
@@ -59,7 +93,19 @@ public class TemplateCacheLayout {
                 versionRoot,
                 contentsDir,
                 checksumFile,
-                metadataFile
+                metadataFile,
+                lockFile
+        );
+    }
+
+    public TemplateCompositePaths resolveComposite(String stackKey) {
+        String normalizedStackKey = requireSegment("stackKey", stackKey);
+        Path compositeRoot = compositesRoot.resolve(normalizedStackKey);
+        return new TemplateCompositePaths(
+                normalizedStackKey,
+                compositeRoot,
+                compositeRoot.resolve(CONTENTS_DIR_NAME),
+                compositeRoot.resolve(STACK_FILENAME)
         );
     }
 
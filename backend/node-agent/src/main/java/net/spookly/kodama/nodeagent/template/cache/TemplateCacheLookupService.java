@@ -1,10 +1,5 @@
 package net.spookly.kodama.nodeagent.template.cache;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -15,9 +10,20 @@ public class TemplateCacheLookupService {
     private static final Logger logger = LoggerFactory.getLogger(TemplateCacheLookupService.class);
 
     private final TemplateCacheLayout layout;
+    private final TemplateCacheIndex index;
+    private final TemplateCacheAccessTracker accessTracker;
+    private final TemplateCacheMetrics metrics;
 
-    public TemplateCacheLookupService(TemplateCacheLayout layout) {
+    public TemplateCacheLookupService(
+            TemplateCacheLayout layout,
+            TemplateCacheIndex index,
+            TemplateCacheAccessTracker accessTracker,
+            TemplateCacheMetrics metrics
+    ) {
         this.layout = layout;
+        this.index = index;
+        this.accessTracker = accessTracker;
+        this.metrics = metrics;
     }
 
     public TemplateCacheLookupResult findCachedTemplate(String templateId, String version, String expectedChecksum) {
@@ -29,6 +35,18 @@ public class TemplateCacheLookupService {
             String version,
             String expectedChecksum,
             boolean bypassCache
+    ) {
+        long startedAt = System.nanoTime();
+        TemplateCacheLookupResult result = lookup(templateId, version, expectedChecksum, bypassCache);
+        metrics.recordLookup(result, System.nanoTime() - startedAt);
+        return result;
+    }
+
+    private TemplateCacheLookupResult lookup(
+            String templateId,
+            String version,
+            String expectedChecksum,
+            boolean bypassCache
     ) {
         String normalizedExpected = requireChecksum(expectedChecksum);
         TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
@@ -50,7 +68,32 @@ public class TemplateCacheLookupService {
             return result;
         }
 
-        if (!Files.isDirectory(paths.contentsDir()) || !Files.isRegularFile(paths.checksumFile())) {
+        String cachedChecksum = index.findChecksum(paths.templateId(), paths.version());
+        if (cachedChecksum == null) {
+            return lookupOnDisk(paths, normalizedExpected);
+        }
+        return compareChecksum(paths, normalizedExpected, cachedChecksum);
+    }
+
+    /**
+     * Looks the version up on disk, ignoring and refreshing the index. Used where another agent sharing the cache
+     * directory may have changed the version, such as under the population lock.
+     */
+    TemplateCacheLookupResult findCachedTemplateOnDisk(String templateId, String version, String expectedChecksum) {
+        String normalizedExpected = requireChecksum(expectedChecksum);
+        return lookupOnDisk(layout.resolveTemplateVersion(templateId, version), normalizedExpected);
+    }
+
+    /**
+     * Drops a version from the index before it is deleted or replaced on disk.
+     */
+    void invalidate(TemplateCachePaths paths) {
+        index.remove(paths);
+    }
+
+    private TemplateCacheLookupResult lookupOnDisk(TemplateCachePaths paths, String normalizedExpected) {
+        String cachedChecksum = index.refresh(paths);
+        if (cachedChecksum == null) {
             TemplateCacheLookupResult result = TemplateCacheLookupResult.miss(
                     paths.templateId(),
                     paths.version(),
@@ -67,8 +110,14 @@ public class TemplateCacheLookupService {
             );
             return result;
         }
+        return compareChecksum(paths, normalizedExpected, cachedChecksum);
+    }
 
-        String cachedChecksum = readChecksum(paths.checksumFile());
+    private TemplateCacheLookupResult compareChecksum(
+            TemplateCachePaths paths,
+            String normalizedExpected,
+            String cachedChecksum
+    ) {
         if (!cachedChecksum.equals(normalizedExpected)) {
             TemplateCacheLookupResult result = TemplateCacheLookupResult.miss(
                     paths.templateId(),
@@ -95,7 +144,8 @@ public class TemplateCacheLookupService {
                 paths.contentsDir(),
                 cachedChecksum
         );
-        logger.info(
+        accessTracker.recordAccess(paths);
+        logger.debug(
                 "Template cache hit. templateId={}, version={}",
                 paths.templateId(),
                 paths.version()
@@ -109,12 +159,4 @@ public class TemplateCacheLookupService {
         }
         return expectedChecksum.trim();
     }
-
-    private String readChecksum(Path checksumFile) {
-        try {
-            return Files.readString(checksumFile, StandardCharsets.UTF_8).trim();
-        } catch (IOException ex) {
-            throw new TemplateCacheException("Failed to read checksum file at " + checksumFile, ex);
-        }
-    }
 }
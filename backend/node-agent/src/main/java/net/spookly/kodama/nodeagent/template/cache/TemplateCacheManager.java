@@ -1,14 +1,27 @@
 package net.spookly.kodama.nodeagent.template.cache;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -17,42 +30,91 @@ import org.springframework.stereotype.Component;
 public class TemplateCacheManager {
 
     private static final Logger logger = LoggerFactory.getLogger(TemplateCacheManager.class);
+    private static final TypeReference<List<TemplateFileManifestEntry>> MANIFEST_TYPE = new TypeReference<>() {
+    };
 
     private final TemplateCacheLayout layout;
+    private final TemplateCacheIndex index;
+    private final TemplateObjectStore objectStore;
+    private final TemplateVersionLocks versionLocks;
+    private final ObjectMapper objectMapper;
 
-    public TemplateCacheManager(TemplateCacheLayout layout) {
+    public TemplateCacheManager(
+            TemplateCacheLayout layout,
+            TemplateCacheIndex index,
+            TemplateObjectStore objectStore,
+            TemplateVersionLocks versionLocks,
+            ObjectMapper objectMapper
+    ) {
         this.layout = Objects.requireNonNull(layout, "layout");
+        this.index = Objects.requireNonNull(index, "index");
+        this.objectStore = Objects.requireNonNull(objectStore, "objectStore");
+        this.versionLocks = Objects.requireNonNull(versionLocks, "versionLocks");
+        this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
     }
 
     public TemplateCachePurgeResult purgeAll() {
         Path templatesRoot = layout.getTemplatesRoot();
         ensureTemplatesRoot(templatesRoot);
         TemplateCachePurgeResult total = new TemplateCachePurgeResult(0, 0, 0);
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(templatesRoot)) {
-            for (Path child : stream) {
-                ensureWithinTemplatesRoot(templatesRoot, child);
-                TemplateCachePurgeResult result = deleteRecursively(child);
-                total = total.add(result);
+        for (Path child : listChildren(templatesRoot)) {
+            ensureWithinRoot(templatesRoot, child);
+            if (!Files.isDirectory(child)) {
+                total = total.add(deleteRecursively(templatesRoot, child));
+                continue;
+            }
+            total = total.add(purgeTemplateVersions(child.getFileName().toString()));
+        }
+        Path compositesRoot = layout.getCompositesRoot();
+        if (Files.isDirectory(compositesRoot)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(compositesRoot)) {
+                for (Path child : stream) {
+                    total = total.add(deleteRecursively(compositesRoot, child));
+                }
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to purge template composites under " + compositesRoot, ex);
+            }
+        }
+        Path objectsRoot = layout.getObjectsRoot();
+        if (!total.skippedTemplates().isEmpty()) {
+            // A template that is still being populated may link to any object, so only unreferenced ones go.
+            total = total.add(objectStore.sweep());
+        } else if (Files.isDirectory(objectsRoot)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(objectsRoot)) {
+                for (Path child : stream) {
+                    total = total.add(deleteRecursively(objectsRoot, child));
+                }
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to purge template objects under " + objectsRoot, ex);
             }
-        } catch (IOException ex) {
-            throw new TemplateCacheException("Failed to purge template cache under " + templatesRoot, ex);
         }
         logger.info(
-                "Template cache purge completed. scope=all removedFiles={} removedDirectories={} removedBytes={}",
+                "Template cache purge completed. scope=all removedFiles={} removedDirectories={} removedBytes={} skippedTemplates={}",
                 total.deletedFiles(),
                 total.deletedDirectories(),
-                total.deletedBytes()
+                total.deletedBytes(),
+                total.skippedTemplates()
         );
         return total;
     }
 
+    /**
+     * Removes every version of a template and the composites built from it. When one of its versions is being
+     * populated or purged nothing is removed and the template is listed in {@code skippedTemplates}.
+     */
     public TemplateCachePurgeResult purgeTemplate(String templateId) {
         String normalizedTemplateId = requireTemplateId(templateId);
         Path templatesRoot = layout.getTemplatesRoot();
         ensureTemplatesRoot(templatesRoot);
         Path templateRoot = layout.resolveTemplateRoot(normalizedTemplateId);
-        ensureWithinTemplatesRoot(templatesRoot, templateRoot);
-        TemplateCachePurgeResult result = deleteRecursively(templateRoot);
+        ensureWithinRoot(templatesRoot, templateRoot);
+        TemplateCachePurgeResult result = purgeTemplateVersions(normalizedTemplateId);
+        if (!result.skippedTemplates().isEmpty()) {
+            return result;
+        }
+        result = result
+                .add(purgeCompositesContaining(normalizedTemplateId, null))
+                .add(objectStore.sweep());
         logger.info(
                 "Template cache purge completed. scope=template templateId={} removedFiles={} removedDirectories={} removedBytes={}",
                 normalizedTemplateId,
@@ -63,6 +125,331 @@ public class TemplateCacheManager {
         return result;
     }
 
+    /**
+     * Moves every cached template, composite and object into the trash directory and returns the moved entries.
+     * The cache is empty for readers once this returns; {@link #deleteTrashEntry(Path)} frees the space later.
+     * Templates with a version that is being populated or purged are left in place and reported as skipped. The
+     * objects stay in place then too, and only a {@link #sweepObjects()} can remove the ones nothing links to.
+     */
+    public TemplateCacheTrashResult moveAllToTrash() {
+        Path templatesRoot = layout.getTemplatesRoot();
+        ensureTemplatesRoot(templatesRoot);
+        List<Path> trashed = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        for (Path child : listChildren(templatesRoot)) {
+            if (!Files.isDirectory(child)) {
+                trashed.add(moveToTrash(templatesRoot, child));
+                continue;
+            }
+            TemplateCacheTrashResult result = moveTemplateVersionsToTrash(child.getFileName().toString());
+            trashed.addAll(result.entries());
+            skipped.addAll(result.skippedTemplates());
+        }
+        trashed.addAll(moveChildrenToTrash(layout.getCompositesRoot()));
+        if (skipped.isEmpty()) {
+            trashed.addAll(moveChildrenToTrash(layout.getObjectsRoot()));
+        }
+        logger.info("Template cache moved to trash. scope=all entries={} skippedTemplates={}", trashed.size(), skipped);
+        return new TemplateCacheTrashResult(trashed, skipped);
+    }
+
+    /**
+     * Moves one template and the composites built from it into the trash directory and returns the moved entries.
+     * When one of its versions is being populated or purged nothing is moved and the template is reported as skipped.
+     */
+    public TemplateCacheTrashResult moveTemplateToTrash(String templateId) {
+        String normalizedTemplateId = requireTemplateId(templateId);
+        Path templatesRoot = layout.getTemplatesRoot();
+        ensureTemplatesRoot(templatesRoot);
+        Path templateRoot = layout.resolveTemplateRoot(normalizedTemplateId);
+        ensureWithinRoot(templatesRoot, templateRoot);
+        TemplateCacheTrashResult result = moveTemplateVersionsToTrash(normalizedTemplateId);
+        if (result.hasSkipped()) {
+            return result;
+        }
+        List<Path> trashed = new ArrayList<>(result.entries());
+        for (Path composite : findCompositesContaining(normalizedTemplateId, null)) {
+            trashed.add(moveToTrash(layout.getCompositesRoot(), composite));
+        }
+        logger.info(
+                "Template cache moved to trash. scope=template templateId={} entries={}",
+                normalizedTemplateId,
+                trashed.size()
+        );
+        return new TemplateCacheTrashResult(trashed, List.of());
+    }
+
+    /**
+     * Deletes an entry previously moved into the trash directory.
+     */
+    public TemplateCachePurgeResult deleteTrashEntry(Path entry) {
+        return deleteRecursively(layout.getTrashRoot(), entry);
+    }
+
+    public TemplateCachePurgeResult sweepObjects() {
+        return objectStore.sweep();
+    }
+
+    /**
+     * Removes one cached template version and the composites built from it, holding the version's lock. Returns
+     * empty when a population or purge holds the version, in which case it was left in place.
+     */
+    public Optional<TemplateCachePurgeResult> purgeVersion(String templateId, String version) {
+        TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+        Path templatesRoot = layout.getTemplatesRoot();
+        if (!Files.exists(paths.versionRoot())) {
+            return Optional.of(new TemplateCachePurgeResult(0, 0, 0));
+        }
+        Optional<TemplateVersionLocks.Lock> lock = versionLocks.tryLock(paths);
+        if (lock.isEmpty()) {
+            return Optional.empty();
+        }
+        try (TemplateVersionLocks.Lock ignored = lock.get()) {
+            index.remove(paths);
+            // Only the objects this version links to can become unreferenced, so the rest of the store is not walked.
+            List<TemplateFileManifestEntry> manifest = readManifest(paths);
+            List<Path> linkedObjects =
+                    manifest == null ? null : objectStore.findLinkedObjects(paths.contentsDir(), manifest);
+            TemplateCachePurgeResult result = deleteRecursively(templatesRoot, paths.versionRoot())
+                    .add(purgeCompositesContaining(paths.templateId(), paths.version()))
+                    .add(linkedObjects == null ? objectStore.sweep() : objectStore.sweep(linkedObjects));
+            // Lookups refresh the index without the lock; drop anything they read back while the files were going.
+            index.remove(paths);
+            logger.info(
+                    "Template cache purge completed. scope=version templateId={} version={} removedFiles={} removedDirectories={} removedBytes={}",
+                    paths.templateId(),
+                    paths.version(),
+                    result.deletedFiles(),
+                    result.deletedDirectories(),
+                    result.deletedBytes()
+            );
+            return Optional.of(result);
+        }
+    }
+
+    /**
+     * Removes a single merged composite. Used by composite eviction; callers must not hold the composite open.
+     */
+    public TemplateCachePurgeResult purgeComposite(String stackKey) {
+        TemplateCompositePaths paths = layout.resolveComposite(stackKey);
+        return deleteRecursively(layout.getCompositesRoot(), paths.compositeRoot());
+    }
+
+    /**
+     * Deletes every version of a template while holding all of their locks, then the template root once it is
+     * empty. Leaves the template in place and reports it as skipped when a population or purge holds one of the
+     * versions.
+     */
+    private TemplateCachePurgeResult purgeTemplateVersions(String templateId) {
+        Path templatesRoot = layout.getTemplatesRoot();
+        Path templateRoot = layout.resolveTemplateRoot(templateId);
+        Optional<Map<TemplateCachePaths, TemplateVersionLocks.Lock>> heldLocks = tryLockVersions(templateId);
+        if (heldLocks.isEmpty()) {
+            return TemplateCachePurgeResult.skipped(templateId);
+        }
+        Map<TemplateCachePaths, TemplateVersionLocks.Lock> locks = heldLocks.get();
+        TemplateCachePurgeResult result = new TemplateCachePurgeResult(0, 0, 0);
+        try {
+            for (TemplateCachePaths paths : locks.keySet()) {
+                index.remove(paths);
+                result = result.add(deleteRecursively(templatesRoot, paths.versionRoot()));
+                index.remove(paths);
+            }
+        } finally {
+            locks.values().forEach(TemplateVersionLocks.Lock::close);
+        }
+        if (deleteIfEmpty(templateRoot)) {
+            result = result.add(new TemplateCachePurgeResult(0, 1, 0));
+        }
+        return result;
+    }
+
+    /**
+     * Moves every version of a template into one trash entry while holding all of their locks. The lock files stay
+     * in place, so other agents waiting on them are not handed a file that was moved away. Leaves the template in
+     * place and reports it as skipped when a population or purge holds one of the versions.
+     */
+    private TemplateCacheTrashResult moveTemplateVersionsToTrash(String templateId) {
+        Path templateRoot = layout.resolveTemplateRoot(templateId);
+        Optional<Map<TemplateCachePaths, TemplateVersionLocks.Lock>> heldLocks = tryLockVersions(templateId);
+        if (heldLocks.isEmpty()) {
+            return new TemplateCacheTrashResult(List.of(), List.of(templateId));
+        }
+        Map<TemplateCachePaths, TemplateVersionLocks.Lock> locks = heldLocks.get();
+        Path entry = null;
+        try {
+            for (TemplateCachePaths paths : locks.keySet()) {
+                index.remove(paths);
+                if (!Files.exists(paths.versionRoot())) {
+                    continue;
+                }
+                if (entry == null) {
+                    entry = createTrashEntry(templateId);
+                }
+                move(paths.versionRoot(), entry.resolve(paths.version()));
+                index.remove(paths);
+            }
+        } finally {
+            locks.values().forEach(TemplateVersionLocks.Lock::close);
+        }
+        deleteIfEmpty(templateRoot);
+        return new TemplateCacheTrashResult(entry == null ? List.of() : List.of(entry), List.of());
+    }
+
+    /**
+     * Takes the lock of every version of a template, found from its version directories and lock files. Returns
+     * empty, holding nothing, as soon as one of them is held elsewhere.
+     */
+    private Optional<Map<TemplateCachePaths, TemplateVersionLocks.Lock>> tryLockVersions(String templateId) {
+        Path templateRoot = layout.resolveTemplateRoot(templateId);
+        Set<String> versions = new TreeSet<>();
+        if (Files.isDirectory(templateRoot)) {
+            for (Path child : listChildren(templateRoot)) {
+                String name = child.getFileName().toString();
+                if (name.startsWith(".") && name.endsWith(TemplateCacheLayout.LOCK_FILE_SUFFIX)) {
+                    versions.add(name.substring(1, name.length() - TemplateCacheLayout.LOCK_FILE_SUFFIX.length()));
+                } else if (!name.startsWith(".") && Files.isDirectory(child)) {
+                    versions.add(name);
+                }
+            }
+        }
+        Map<TemplateCachePaths, TemplateVersionLocks.Lock> locks = new LinkedHashMap<>();
+        for (String version : versions) {
+            TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+            Optional<TemplateVersionLocks.Lock> lock = versionLocks.tryLock(paths);
+            if (lock.isEmpty()) {
+                locks.values().forEach(TemplateVersionLocks.Lock::close);
+                logger.info("Skipped template cache purge while a version is in use. templateId={} version={}",
+                        templateId, version);
+                return Optional.empty();
+            }
+            locks.put(paths, lock.get());
+        }
+        return Optional.of(locks);
+    }
+
+    private boolean deleteIfEmpty(Path directory) {
+        try {
+            return Files.deleteIfExists(directory);
+        } catch (DirectoryNotEmptyException ex) {
+            return false;
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to delete cache path " + directory, ex);
+        }
+    }
+
+    /**
+     * The version's manifest, or null when it has none (it was cached without the object store) or it is unreadable.
+     */
+    private List<TemplateFileManifestEntry> readManifest(TemplateCachePaths paths) {
+        Path manifestFile = paths.versionRoot().resolve(TemplateCacheLayout.MANIFEST_FILENAME);
+        if (!Files.isRegularFile(manifestFile)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(manifestFile.toFile(), MANIFEST_TYPE);
+        } catch (IOException ex) {
+            logger.debug("Ignoring unreadable template manifest {}", manifestFile, ex);
+            return null;
+        }
+    }
+
+    private TemplateCachePurgeResult purgeCompositesContaining(String templateId, String version) {
+        TemplateCachePurgeResult total = new TemplateCachePurgeResult(0, 0, 0);
+        for (Path composite : findCompositesContaining(templateId, version)) {
+            total = total.add(deleteRecursively(layout.getCompositesRoot(), composite));
+        }
+        return total;
+    }
+
+    private List<Path> findCompositesContaining(String templateId, String version) {
+        Path compositesRoot = layout.getCompositesRoot();
+        List<Path> matches = new ArrayList<>();
+        if (!Files.isDirectory(compositesRoot)) {
+            return matches;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(compositesRoot)) {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                if (name.startsWith(".")) {
+                    continue;
+                }
+                Path stackFile = child.resolve(TemplateCacheLayout.STACK_FILENAME);
+                if (!Files.isRegularFile(stackFile) || stackContains(stackFile, templateId, version)) {
+                    matches.add(child);
+                }
+            }
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to purge template composites under " + compositesRoot, ex);
+        }
+        return matches;
+    }
+
+    private List<Path> moveChildrenToTrash(Path root) {
+        List<Path> trashed = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return trashed;
+        }
+        for (Path child : listChildren(root)) {
+            trashed.add(moveToTrash(root, child));
+        }
+        return trashed;
+    }
+
+    private List<Path> listChildren(Path root) {
+        List<Path> children = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            stream.forEach(children::add);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to list template cache entries under " + root, ex);
+        }
+        return children;
+    }
+
+    /**
+     * Renames {@code path} into the trash directory. The trash lives under the cache root, so the rename is atomic
+     * and takes constant time regardless of the size of the tree.
+     */
+    private Path moveToTrash(Path allowedRoot, Path path) {
+        ensureWithinRoot(allowedRoot, path);
+        Path trashRoot = layout.getTrashRoot();
+        Path target = trashRoot.resolve(UUID.randomUUID() + "-" + path.getFileName());
+        try {
+            Files.createDirectories(trashRoot);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to create template cache trash at " + trashRoot, ex);
+        }
+        move(path, target);
+        return target;
+    }
+
+    private Path createTrashEntry(String name) {
+        Path entry = layout.getTrashRoot().resolve(UUID.randomUUID() + "-" + name);
+        try {
+            return Files.createDirectories(entry);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to create template cache trash at " + entry, ex);
+        }
+    }
+
+    private void move(Path path, Path target) {
+        try {
+            Files.move(path, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to move template cache path " + path + " to trash", ex);
+        }
+    }
+
+    private boolean stackContains(Path stackFile, String templateId, String version) throws IOException {
+        for (String line : Files.readAllLines(stackFile, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals(templateId) && (version == null || (fields.length > 1 && fields[1].equals(version)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void ensureTemplatesRoot(Path templatesRoot) {
         try {
             Files.createDirectories(templatesRoot);
@@ -71,19 +458,21 @@ public class TemplateCacheManager {
         }
     }
 
-    private TemplateCachePurgeResult deleteRecursively(Path root) {
+    private TemplateCachePurgeResult deleteRecursively(Path allowedRoot, Path root) {
         if (root == null || !Files.exists(root)) {
             return new TemplateCachePurgeResult(0, 0, 0);
         }
-        ensureWithinTemplatesRoot(layout.getTemplatesRoot(), root);
+        ensureWithinRoot(allowedRoot, root);
         PurgeAccumulator accumulator = new PurgeAccumulator();
         try {
             Files.walkFileTree(root, new SimpleFileVisitor<>() {
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                     long size = attrs == null ? safeSize(file) : attrs.size();
+                    // Only the last link frees disk space; shared objects are counted when the store sweeps them.
+                    boolean lastLink = attrs == null || !attrs.isRegularFile() || objectStore.linkCount(file) <= 1;
                     Files.deleteIfExists(file);
-                    accumulator.addFile(size);
+                    accumulator.addFile(lastLink ? size : 0L);
                     return FileVisitResult.CONTINUE;
                 }
 
@@ -107,11 +496,11 @@ public class TemplateCacheManager {
         return Files.isRegularFile(file) ? Files.size(file) : 0L;
     }
 
-    private void ensureWithinTemplatesRoot(Path templatesRoot, Path candidate) {
-        if (templatesRoot == null || candidate == null) {
+    private void ensureWithinRoot(Path allowedRoot, Path candidate) {
+        if (allowedRoot == null || candidate == null) {
             throw new TemplateCacheException("Template cache purge path cannot be null");
         }
-        Path normalizedRoot = templatesRoot.toAbsolutePath().normalize();
+        Path normalizedRoot = allowedRoot.toAbsolutePath().normalize();
         Path normalizedCandidate = candidate.toAbsolutePath().normalize();
         if (!normalizedCandidate.startsWith(normalizedRoot)) {
             throw new TemplateCacheException(
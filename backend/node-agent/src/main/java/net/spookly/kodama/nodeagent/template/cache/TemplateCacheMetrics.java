@@ -0,0 +1,161 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.spookly.kodama.nodeagent.trace.PrepareTrace;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer meters for the template cache, exposed through {@code /actuator/metrics} and
+ * {@code /actuator/prometheus}. Download, extraction and population times are recorded separately so a slow
+ * prepare can be attributed to storage, decompression or disk. Lookup, download and extraction times are also added
+ * to the {@link PrepareTrace} open on the calling thread.
+ */
+@Component
+public class TemplateCacheMetrics {
+
+    static final String SOURCE_TARBALL = "tarball";
+    static final String SOURCE_FILE = "file";
+    static final String SOURCE_DELTA = "delta";
+    static final String SOURCE_CACHE = "cache";
+
+    private final MeterRegistry registry;
+    private final Counter hits;
+    private final Map<TemplateCacheMissReason, Counter> misses = new EnumMap<>(TemplateCacheMissReason.class);
+    private final Timer extractionDuration;
+    private final DistributionSummary extractionEntries;
+    private final DistributionSummary extractionBytes;
+    private final Counter evictedVersions;
+    private final Counter evictedBytes;
+    private final AtomicLong cachedBytes = new AtomicLong(-1);
+
+    public TemplateCacheMetrics(MeterRegistry registry, TemplateCacheIndex index) {
+        this.registry = Objects.requireNonNull(registry, "registry");
+        Objects.requireNonNull(index, "index");
+        this.hits = Counter.builder("kodama.template.cache.lookups")
+                .description("Template cache lookups by result and miss reason.")
+                .tag("result", "hit")
+                .tag("reason", "NONE")
+                .register(registry);
+        for (TemplateCacheMissReason reason : TemplateCacheMissReason.values()) {
+            misses.put(reason, Counter.builder("kodama.template.cache.lookups")
+                    .description("Template cache lookups by result and miss reason.")
+                    .tag("result", "miss")
+                    .tag("reason", reason.name())
+                    .register(registry));
+        }
+        this.extractionDuration = Timer.builder("kodama.template.cache.extraction.duration")
+                .description("Time spent decompressing and writing a template archive.")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.extractionEntries = DistributionSummary.builder("kodama.template.cache.extraction.entries")
+                .description("Archive entries per extracted template.")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.extractionBytes = DistributionSummary.builder("kodama.template.cache.extraction.bytes")
+                .description("Uncompressed bytes per extracted template.")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.evictedVersions = Counter.builder("kodama.template.cache.evicted.versions")
+                .description("Template versions removed by the evictor.")
+                .register(registry);
+        this.evictedBytes = Counter.builder("kodama.template.cache.evicted.bytes")
+                .description("Bytes freed by the evictor.")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("kodama.template.cache.versions", index, TemplateCacheIndex::size)
+                .description("Template versions in the cache index.")
+                .register(registry);
+        Gauge.builder("kodama.template.cache.size", cachedBytes, TemplateCacheMetrics::knownOrNaN)
+                .description("Bytes in the template cache as of the last evictor scan.")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    void recordLookup(TemplateCacheLookupResult result, long durationNanos) {
+        PrepareTrace.record(PrepareTrace.PHASE_CACHE_LOOKUP, durationNanos);
+        if (result.isCacheHit()) {
+            hits.increment();
+            return;
+        }
+        misses.get(result.missReason()).increment();
+        if (result.missReason() == TemplateCacheMissReason.CHECKSUM_MISMATCH) {
+            recordChecksumMismatch(SOURCE_CACHE);
+        }
+    }
+
+    /**
+     * Records a finished download from template storage. {@code source} is {@link #SOURCE_TARBALL} for full
+     * tarballs and {@link #SOURCE_FILE} for single files fetched by delta population.
+     */
+    void recordDownload(String source, long bytes, long durationNanos) {
+        PrepareTrace.record(PrepareTrace.PHASE_DOWNLOAD, durationNanos);
+        DistributionSummary.builder("kodama.template.cache.download.bytes")
+                .description("Bytes downloaded from template storage per request.")
+                .baseUnit("bytes")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+        Timer.builder("kodama.template.cache.download.duration")
+                .description("Time spent downloading from template storage per request.")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordExtraction(long entries, long bytes, long durationNanos) {
+        PrepareTrace.record(PrepareTrace.PHASE_EXTRACT, durationNanos);
+        extractionEntries.record(entries);
+        extractionBytes.record(bytes);
+        extractionDuration.record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records a whole population attempt, from the first storage request until the version is published or
+     * discarded. {@code source} is {@link #SOURCE_TARBALL} or {@link #SOURCE_DELTA}.
+     */
+    void recordPopulation(String source, boolean success, long durationNanos) {
+        Timer.builder("kodama.template.cache.populate.duration")
+                .description("Time spent populating a template version.")
+                .tag("source", source)
+                .tag("outcome", success ? "success" : "failure")
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts content that did not match its expected SHA-256: {@link #SOURCE_CACHE} for a cached version with a
+     * different checksum, {@link #SOURCE_TARBALL} or {@link #SOURCE_FILE} for downloads.
+     */
+    void recordChecksumMismatch(String source) {
+        Counter.builder("kodama.template.cache.checksum.mismatches")
+                .description("Template content that did not match its expected checksum.")
+                .tag("source", source)
+                .register(registry)
+                .increment();
+    }
+
+    void recordEviction(TemplateCacheEvictionResult result) {
+        cachedBytes.set(result.remainingBytes());
+        evictedVersions.increment(result.evictedVersions());
+        evictedBytes.increment(result.evictedBytes());
+    }
+
+    private static double knownOrNaN(AtomicLong value) {
+        long current = value.get();
+        return current < 0 ? Double.NaN : current;
+    }
+}
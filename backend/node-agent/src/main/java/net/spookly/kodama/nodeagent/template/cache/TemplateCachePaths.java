@@ -9,6 +9,7 @@ public record TemplateCachePaths(
         Path versionRoot,
         Path contentsDir,
         Path checksumFile,
-        Path metadataFile
+        Path metadataFile,
+        Path lockFile
 ) {
 }
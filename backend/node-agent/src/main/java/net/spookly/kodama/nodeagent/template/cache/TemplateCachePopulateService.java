@@ -1,8 +1,10 @@
 package net.spookly.kodama.nodeagent.template.cache;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -10,6 +12,7 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
@@ -20,21 +23,38 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import jakarta.annotation.PreDestroy;
 import net.spookly.kodama.nodeagent.config.NodeConfig;
 import net.spookly.kodama.nodeagent.devmode.service.DevModeService;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageClient;
+import net.spookly.kodama.nodeagent.template.storage.TemplateStorageException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateTarball;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -43,6 +63,14 @@ import org.springframework.stereotype.Component;
 public class TemplateCachePopulateService {
 
     private static final Logger logger = LoggerFactory.getLogger(TemplateCachePopulateService.class);
+    private static final int READ_AHEAD_CHUNK_BYTES = 256 * 1024;
+    private static final int READ_AHEAD_MAX_CHUNKS = 8;
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+    private static final int PARALLEL_WRITE_MAX_ENTRY_BYTES = 1024 * 1024;
+    private static final int PARALLEL_WRITE_MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+    private static final TypeReference<List<TemplateFileManifestEntry>> MANIFEST_TYPE = new TypeReference<>() {
+    };
 
     private final TemplateCacheLayout layout;
     private final TemplateCacheLookupService lookupService;
@@ -50,6 +78,14 @@ public class TemplateCachePopulateService {
     private final ObjectMapper objectMapper;
     private final DevModeService devModeService;
     private final NodeConfig.TemplateCacheLimits cacheLimits;
+    private final NodeConfig.TemplateCachePopulate populateSettings;
+    private final NodeConfig.TemplateDelta deltaSettings;
+    private final TemplateObjectStore objectStore;
+    private final TemplateCacheMetrics metrics;
+    private final ExecutorService writerExecutor;
+    private final ConcurrentMap<PopulationKey, CompletableFuture<TemplateCacheLookupResult>> inFlightPopulations =
+            new ConcurrentHashMap<>();
+    private final TemplateVersionLocks versionLocks;
 
     public TemplateCachePopulateService(
             TemplateCacheLayout layout,
@@ -57,7 +93,10 @@ public class TemplateCachePopulateService {
             TemplateStorageClient storageClient,
             ObjectMapper objectMapper,
             DevModeService devModeService,
-            NodeConfig config
+            NodeConfig config,
+            TemplateObjectStore objectStore,
+            TemplateCacheMetrics metrics,
+            TemplateVersionLocks versionLocks
     ) {
         this.layout = Objects.requireNonNull(layout, "layout");
         this.lookupService = Objects.requireNonNull(lookupService, "lookupService");
@@ -65,6 +104,21 @@ public class TemplateCachePopulateService {
         this.objectMapper = Objects.requireNonNull(objectMapper, "objectMapper");
         this.devModeService = Objects.requireNonNull(devModeService, "devModeService");
         this.cacheLimits = Objects.requireNonNull(config, "config").getTemplateCacheLimits();
+        this.populateSettings = config.getTemplateCachePopulate();
+        this.deltaSettings = config.getTemplateDelta();
+        this.objectStore = Objects.requireNonNull(objectStore, "objectStore");
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+        this.versionLocks = Objects.requireNonNull(versionLocks, "versionLocks");
+        int writerThreads = populateSettings.getWriterThreads();
+        this.writerExecutor =
+                writerThreads > 1 ? Executors.newFixedThreadPool(writerThreads, new ExtractionThreadFactory()) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (writerExecutor != null) {
+            writerExecutor.shutdownNow();
+        }
     }
 
     public TemplateCacheLookupResult ensureCachedTemplate(
@@ -72,6 +126,22 @@ public class TemplateCachePopulateService {
             String version,
             String checksum,
             String s3Key
+    ) {
+        return ensureCachedTemplate(templateId, version, checksum, s3Key, null);
+    }
+
+    /**
+     * Like {@link #ensureCachedTemplate(String, String, String, String)}, but when
+     * {@code node-agent.template-delta.enabled} is set and {@code manifest} lists the version's files, a miss is
+     * populated by reusing identical files from other cached versions of the template and downloading only the
+     * rest. Falls back to the full tarball when nothing can be reused or the delta fails.
+     */
+    public TemplateCacheLookupResult ensureCachedTemplate(
+            String templateId,
+            String version,
+            String checksum,
+            String s3Key,
+            List<TemplateFileManifestEntry> manifest
     ) {
         String normalizedChecksum = requireValue("checksum", checksum);
         String normalizedS3Key = requireValue("s3Key", s3Key);
@@ -87,77 +157,462 @@ public class TemplateCachePopulateService {
         }
 
         TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
-        deleteExistingCache(paths);
-        populateCache(paths, normalizedChecksum, normalizedS3Key);
+        PopulationKey key = new PopulationKey(
+                paths.templateId(),
+                paths.version(),
+                normalizedChecksum.toLowerCase(Locale.ROOT)
+        );
+        CompletableFuture<TemplateCacheLookupResult> flight = new CompletableFuture<>();
+        CompletableFuture<TemplateCacheLookupResult> inProgress = inFlightPopulations.putIfAbsent(key, flight);
+        if (inProgress != null) {
+            logger.info(
+                    "Waiting for in-flight template cache population. templateId={}, version={}",
+                    paths.templateId(),
+                    paths.version()
+            );
+            return awaitPopulation(paths, inProgress);
+        }
+
+        try {
+            TemplateCacheLookupResult result =
+                    populateExclusively(paths, normalizedChecksum, normalizedS3Key, manifest, bypassCache);
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlightPopulations.remove(key, flight);
+        }
+    }
+
+    /**
+     * Populates the version while holding its {@link TemplateVersionLocks version lock}, so agents sharing the cache
+     * directory never delete or replace a version another agent is still writing. The cache is re-checked once the
+     * lock is held because another holder may have finished the same population in the meantime.
+     */
+    private TemplateCacheLookupResult populateExclusively(
+            TemplateCachePaths paths,
+            String checksum,
+            String s3Key,
+            List<TemplateFileManifestEntry> manifest,
+            boolean bypassCache
+    ) {
+        try (TemplateVersionLocks.Lock ignored = versionLocks.lock(paths)) {
+            if (!bypassCache) {
+                TemplateCacheLookupResult current = lookupService.findCachedTemplateOnDisk(
+                        paths.templateId(),
+                        paths.version(),
+                        checksum
+                );
+                if (current.isCacheHit()) {
+                    return current;
+                }
+            }
+
+            deleteExistingCache(paths);
+            populateCache(paths, checksum, s3Key, manifest);
 
-        TemplateCacheLookupResult result = lookupService.findCachedTemplate(templateId, version, normalizedChecksum);
-        if (!result.isCacheHit()) {
+            // Checked under the lock so that a purge cannot remove the version between population and lookup.
+            TemplateCacheLookupResult result =
+                    lookupService.findCachedTemplateOnDisk(paths.templateId(), paths.version(), checksum);
+            if (!result.isCacheHit()) {
+                throw new TemplateCacheException(
+                        "Template cache population failed for templateId=" + paths.templateId() + " version=" + paths.version()
+                );
+            }
+            return result;
+        }
+    }
+
+    private TemplateCacheLookupResult awaitPopulation(
+            TemplateCachePaths paths,
+            CompletableFuture<TemplateCacheLookupResult> inProgress
+    ) {
+        try {
+            return inProgress.join();
+        } catch (CompletionException | CancellationException ex) {
+            Throwable cause = ex.getCause() == null ? ex : ex.getCause();
             throw new TemplateCacheException(
                     "Template cache population failed for templateId=" + paths.templateId() + " version=" + paths.version()
+                            + ": " + cause.getMessage(),
+                    cause
             );
         }
-        return result;
     }
 
-    private void populateCache(TemplateCachePaths paths, String checksum, String s3Key) {
-        try {
-            Files.createDirectories(paths.templateRoot());
-        } catch (IOException ex) {
-            throw new TemplateCacheException("Failed to create template cache root at " + paths.templateRoot(), ex);
+    private void populateCache(
+            TemplateCachePaths paths,
+            String checksum,
+            String s3Key,
+            List<TemplateFileManifestEntry> manifest
+    ) {
+        if (deltaSettings.isEnabled() && manifest != null && !manifest.isEmpty()) {
+            try {
+                if (populateFromDelta(paths, checksum, s3Key, manifest)) {
+                    return;
+                }
+            } catch (TemplateCacheException | TemplateStorageException ex) {
+                logger.warn(
+                        "Template delta population failed; downloading full tarball. templateId={}, version={}",
+                        paths.templateId(),
+                        paths.version(),
+                        ex
+                );
+            }
         }
+        populateFromTarball(paths, checksum, s3Key);
+    }
 
+    private void populateFromTarball(TemplateCachePaths paths, String checksum, String s3Key) {
+        long startedAt = System.nanoTime();
         Path tarballFile = null;
         Path tempVersionRoot = null;
         boolean moved = false;
+        boolean succeeded = false;
         try {
-            tarballFile = Files.createTempFile(paths.templateRoot(), "template-", ".tar");
             tempVersionRoot = Files.createTempDirectory(paths.templateRoot(), ".cache-");
             Path tempContentsDir = tempVersionRoot.resolve(TemplateCacheLayout.CONTENTS_DIR_NAME);
             Files.createDirectories(tempContentsDir);
+            Map<Path, String> fileDigests =
+                    objectStore.isEnabled() || deltaSettings.isEnabled() ? new ConcurrentHashMap<>() : null;
 
-            DownloadResult downloadResult = downloadTarball(paths, s3Key, tarballFile);
-            validateDownload(paths, downloadResult, checksum);
-            extractTarball(s3Key, tarballFile, tempContentsDir);
+            if (populateSettings.isStreamingExtraction()) {
+                DownloadResult downloadResult = downloadAndExtract(paths, s3Key, tempContentsDir, fileDigests);
+                validateDownload(paths, downloadResult, checksum);
+            } else {
+                tarballFile = Files.createTempFile(paths.templateRoot(), "template-", ".tar");
+                DownloadResult downloadResult = storageClient.isRangedDownloadEnabled()
+                        ? downloadTarballRanged(paths, s3Key, tarballFile)
+                        : downloadTarball(paths, s3Key, tarballFile);
+                validateDownload(paths, downloadResult, checksum);
+                extractTarball(s3Key, tarballFile, tempContentsDir, fileDigests);
+            }
+            List<TemplateFileManifestEntry> manifest = null;
+            if (fileDigests != null) {
+                internContents(paths, tempContentsDir, fileDigests);
+                manifest = toManifest(tempContentsDir, fileDigests);
+            }
 
-            writeChecksum(tempVersionRoot.resolve(TemplateCacheLayout.CHECKSUM_FILENAME), checksum);
-            writeMetadata(
-                    tempVersionRoot.resolve(TemplateCacheLayout.METADATA_FILENAME),
-                    new TemplateCacheMetadata(paths.templateId(), paths.version(), checksum, s3Key, OffsetDateTime.now())
+            moved = publish(paths, tempVersionRoot, checksum, s3Key, manifest);
+            succeeded = true;
+        } catch (IOException ex) {
+            throw new TemplateCacheException(
+                    "Failed to populate template cache for templateId=" + paths.templateId() + " version=" + paths.version(),
+                    ex
             );
-
-            try {
-                moveToFinalLocation(tempVersionRoot, paths.versionRoot());
-                moved = true;
-            } catch (FileAlreadyExistsException ex) {
-                logger.info(
-                        "Template cache already populated by another worker. templateId={}, version={}",
-                        paths.templateId(),
-                        paths.version()
-                );
+        } finally {
+            metrics.recordPopulation(TemplateCacheMetrics.SOURCE_TARBALL, succeeded, System.nanoTime() - startedAt);
+            deleteIfExists(tarballFile);
+            if (!moved) {
+                deleteRecursively(tempVersionRoot);
             }
+        }
+    }
 
-            if (moved) {
-                logger.info(
-                        "Template cache populated. templateId={}, version={}, checksum={}",
-                        paths.templateId(),
-                        paths.version(),
-                        checksum
-                );
+    /**
+     * Assembles the version from its manifest: files whose content is already stored locally (as an object-store
+     * object or in another cached version of the template) are linked or copied, and only the remaining files are
+     * downloaded from {@code <files-prefix><sha256>}, each verified against its size and digest. Returns false
+     * without touching the cache when nothing could be reused, since per-file downloads would then cost more than
+     * the tarball.
+     */
+    private boolean populateFromDelta(
+            TemplateCachePaths paths,
+            String checksum,
+            String s3Key,
+            List<TemplateFileManifestEntry> manifest
+    ) {
+        Map<String, Path> cachedFiles = findCachedFiles(paths);
+        if (manifest.stream().noneMatch(entry -> findLocalSource(entry, cachedFiles) != null)) {
+            return false;
+        }
+        if (manifest.size() > cacheLimits.getMaxEntries()) {
+            throw new TemplateCacheException("Template manifest exceeds max entry count of " + cacheLimits.getMaxEntries());
+        }
+
+        long startedAt = System.nanoTime();
+        Path tempVersionRoot = null;
+        boolean moved = false;
+        boolean succeeded = false;
+        try {
+            tempVersionRoot = Files.createTempDirectory(paths.templateRoot(), ".cache-");
+            Path tempContentsDir = tempVersionRoot.resolve(TemplateCacheLayout.CONTENTS_DIR_NAME);
+            Files.createDirectories(tempContentsDir);
+            Map<Path, String> fileDigests = new HashMap<>();
+            Set<Path> seenPaths = new HashSet<>();
+            long totalBytes = 0;
+            long reusedFiles = 0;
+            long reusedBytes = 0;
+
+            for (TemplateFileManifestEntry entry : manifest) {
+                validateManifestEntry(entry);
+                Path target = resolveEntryPath(tempContentsDir, entry.path());
+                if (target.equals(tempContentsDir) || !seenPaths.add(target)) {
+                    throw new TemplateCacheException("Template manifest contains invalid or duplicate path: " + entry.path());
+                }
+                totalBytes += entry.size();
+                if (totalBytes > cacheLimits.getMaxExtractedBytes()) {
+                    throw new TemplateCacheException(
+                            "Template manifest exceeds max extracted bytes of " + cacheLimits.getMaxExtractedBytes()
+                    );
+                }
+                Files.createDirectories(target.getParent());
+                if (reuseLocalFile(entry, findLocalSource(entry, cachedFiles), target)) {
+                    reusedFiles++;
+                    reusedBytes += entry.size();
+                } else {
+                    downloadManifestFile(paths, entry, target);
+                }
+                if (entry.mode() != null) {
+                    applyPermissions(target, entry.mode());
+                }
+                fileDigests.put(target, entry.sha256());
             }
+
+            internContents(paths, tempContentsDir, fileDigests);
+            moved = publish(paths, tempVersionRoot, checksum, s3Key, toManifest(tempContentsDir, fileDigests));
+            succeeded = true;
+            logger.info(
+                    "Template delta applied. templateId={}, version={}, files={}, reusedFiles={}, reusedBytes={}, downloadedBytes={}",
+                    paths.templateId(),
+                    paths.version(),
+                    manifest.size(),
+                    reusedFiles,
+                    reusedBytes,
+                    totalBytes - reusedBytes
+            );
+            return true;
         } catch (IOException ex) {
             throw new TemplateCacheException(
-                    "Failed to populate template cache for templateId=" + paths.templateId() + " version=" + paths.version(),
+                    "Failed to apply template delta for templateId=" + paths.templateId() + " version=" + paths.version(),
                     ex
             );
         } finally {
-            deleteIfExists(tarballFile);
+            metrics.recordPopulation(TemplateCacheMetrics.SOURCE_DELTA, succeeded, System.nanoTime() - startedAt);
             if (!moved) {
                 deleteRecursively(tempVersionRoot);
             }
         }
     }
 
+    /**
+     * Maps content digests to files of the other cached versions of the template, as recorded in their manifests.
+     */
+    private Map<String, Path> findCachedFiles(TemplateCachePaths paths) {
+        Map<String, Path> cachedFiles = new HashMap<>();
+        if (!Files.isDirectory(paths.templateRoot())) {
+            return cachedFiles;
+        }
+        try (var versions = Files.list(paths.templateRoot())) {
+            for (Path versionRoot : versions.toList()) {
+                String name = versionRoot.getFileName().toString();
+                if (name.startsWith(".") || versionRoot.equals(paths.versionRoot()) || !Files.isDirectory(versionRoot)) {
+                    continue;
+                }
+                Path contentsDir = versionRoot.resolve(TemplateCacheLayout.CONTENTS_DIR_NAME);
+                for (TemplateFileManifestEntry entry : readManifest(versionRoot.resolve(TemplateCacheLayout.MANIFEST_FILENAME))) {
+                    if (entry.sha256() != null && entry.path() != null) {
+                        cachedFiles.putIfAbsent(entry.sha256(), contentsDir.resolve(entry.path()).normalize());
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            logger.debug("Failed to scan cached versions for template delta. templateId={}", paths.templateId(), ex);
+        }
+        return cachedFiles;
+    }
+
+    private List<TemplateFileManifestEntry> readManifest(Path manifestFile) {
+        if (!Files.isRegularFile(manifestFile)) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(manifestFile.toFile(), MANIFEST_TYPE);
+        } catch (IOException ex) {
+            logger.debug("Ignoring unreadable template manifest {}", manifestFile, ex);
+            return List.of();
+        }
+    }
+
+    private Path findLocalSource(TemplateFileManifestEntry entry, Map<String, Path> cachedFiles) {
+        if (entry == null || entry.sha256() == null) {
+            return null;
+        }
+        if (entry.mode() != null) {
+            Optional<Path> object = objectStore.findObject(entry.sha256(), entry.mode());
+            if (object.isPresent()) {
+                return object.get();
+            }
+        }
+        return cachedFiles.get(entry.sha256());
+    }
+
+    /**
+     * Places a locally stored copy of {@code entry} at {@code target}. Objects are hardlinked since they already
+     * carry the entry's mode; files of other versions are copied. Returns false when the source vanished or no
+     * longer matches, in which case the caller downloads the file instead.
+     */
+    private boolean reuseLocalFile(TemplateFileManifestEntry entry, Path source, Path target) throws IOException {
+        if (source == null) {
+            return false;
+        }
+        try {
+            if (Files.size(source) != entry.size()) {
+                return false;
+            }
+            if (source.startsWith(layout.getObjectsRoot())) {
+                Files.createLink(target, source);
+            } else {
+                Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+        } catch (NoSuchFileException ex) {
+            // Purged or swept while the delta was being applied.
+            return false;
+        }
+        // Workspaces merged with the HARDLINK strategy share inodes with the cache and may have changed the file in
+        // place, so the placed copy is verified before the version is published under the tarball checksum.
+        if (!sha256(target).equals(entry.sha256())) {
+            Files.delete(target);
+            logger.warn("Cached template file was modified in place; downloading it instead. source={}", source);
+            return false;
+        }
+        return true;
+    }
+
+    private void downloadManifestFile(TemplateCachePaths paths, TemplateFileManifestEntry entry, Path target)
+            throws IOException {
+        String key = deltaSettings.getFilesPrefix() + entry.sha256();
+        MessageDigest digest = createSha256Digest();
+        long startedAt = System.nanoTime();
+        long written = 0;
+        try (TemplateTarball file = storageClient.getTemplateTarball(paths.templateId(), paths.version(), key);
+             InputStream inputStream = new DigestInputStream(file.getInputStream(), digest);
+             OutputStream outputStream = new BufferedOutputStream(
+                     Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)
+             )) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                written += read;
+                if (written > entry.size()) {
+                    break;
+                }
+                outputStream.write(buffer, 0, read);
+            }
+        }
+        metrics.recordDownload(TemplateCacheMetrics.SOURCE_FILE, written, System.nanoTime() - startedAt);
+        if (written != entry.size() || !toHexLower(digest.digest()).equals(entry.sha256())) {
+            metrics.recordChecksumMismatch(TemplateCacheMetrics.SOURCE_FILE);
+            throw new TemplateCacheException(
+                    "Template file does not match manifest for templateId=" + paths.templateId()
+                            + " version=" + paths.version()
+                            + " path=" + entry.path()
+            );
+        }
+    }
+
+    private void validateManifestEntry(TemplateFileManifestEntry entry) {
+        if (entry == null || entry.path() == null || entry.size() < 0
+                || entry.sha256() == null || !SHA256_HEX.matcher(entry.sha256()).matches()) {
+            throw new TemplateCacheException("Template manifest contains an invalid entry: " + entry);
+        }
+    }
+
+    private void internContents(TemplateCachePaths paths, Path contentsDir, Map<Path, String> fileDigests) {
+        if (!objectStore.isEnabled()) {
+            return;
+        }
+        TemplateObjectInternResult interned = objectStore.intern(contentsDir, fileDigests);
+        logger.info(
+                "Template contents deduplicated. templateId={}, version={}, files={}, reusedFiles={}, reusedBytes={}",
+                paths.templateId(),
+                paths.version(),
+                interned.files(),
+                interned.reusedFiles(),
+                interned.reusedBytes()
+        );
+    }
+
+    private List<TemplateFileManifestEntry> toManifest(Path contentsDir, Map<Path, String> fileDigests)
+            throws IOException {
+        List<TemplateFileManifestEntry> manifest = new ArrayList<>(fileDigests.size());
+        for (Map.Entry<Path, String> entry : fileDigests.entrySet()) {
+            Path file = entry.getKey();
+            String path = contentsDir.relativize(file).toString().replace('\\', '/');
+            manifest.add(new TemplateFileManifestEntry(path, Files.size(file), entry.getValue(), readMode(file)));
+        }
+        manifest.sort(Comparator.comparing(TemplateFileManifestEntry::path));
+        return manifest;
+    }
+
+    /**
+     * Permission bits of {@code file}, or null when the filesystem has no POSIX permissions.
+     */
+    private Integer readMode(Path file) throws IOException {
+        PosixFileAttributeView attributeView = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (attributeView == null) {
+            return null;
+        }
+        Set<PosixFilePermission> permissions = attributeView.readAttributes().permissions();
+        int mode = 0;
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if (permissions.contains(permission)) {
+                mode |= 1 << (8 - permission.ordinal());
+            }
+        }
+        return mode;
+    }
+
+    private String sha256(Path file) throws IOException {
+        MessageDigest digest = createSha256Digest();
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(file), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return toHexLower(digest.digest());
+    }
+
+    /**
+     * Writes the version's checksum, metadata and optional manifest into {@code tempVersionRoot} and moves it into
+     * place. Returns false when another worker published the version first.
+     */
+    private boolean publish(
+            TemplateCachePaths paths,
+            Path tempVersionRoot,
+            String checksum,
+            String s3Key,
+            List<TemplateFileManifestEntry> manifest
+    ) throws IOException {
+        writeChecksum(tempVersionRoot.resolve(TemplateCacheLayout.CHECKSUM_FILENAME), checksum);
+        writeMetadata(
+                tempVersionRoot.resolve(TemplateCacheLayout.METADATA_FILENAME),
+                new TemplateCacheMetadata(paths.templateId(), paths.version(), checksum, s3Key, OffsetDateTime.now())
+        );
+        if (manifest != null) {
+            objectMapper.writeValue(tempVersionRoot.resolve(TemplateCacheLayout.MANIFEST_FILENAME).toFile(), manifest);
+        }
+
+        try {
+            moveToFinalLocation(tempVersionRoot, paths.versionRoot());
+        } catch (FileAlreadyExistsException ex) {
+            logger.info(
+                    "Template cache already populated by another worker. templateId={}, version={}",
+                    paths.templateId(),
+                    paths.version()
+            );
+            return false;
+        }
+        logger.info(
+                "Template cache populated. templateId={}, version={}, checksum={}",
+                paths.templateId(),
+                paths.version(),
+                checksum
+        );
+        return true;
+    }
+
     private DownloadResult downloadTarball(TemplateCachePaths paths, String s3Key, Path tarballFile) throws IOException {
+        long startedAt = System.nanoTime();
         try (TemplateTarball tarball = storageClient.getTemplateTarball(paths.templateId(), paths.version(), s3Key);
              InputStream inputStream = tarball.getInputStream();
              OutputStream outputStream = new BufferedOutputStream(
@@ -166,12 +621,53 @@ public class TemplateCachePopulateService {
             MessageDigest digest = createSha256Digest();
             try (DigestInputStream digestInputStream = new DigestInputStream(inputStream, digest)) {
                 long bytesWritten = digestInputStream.transferTo(outputStream);
+                metrics.recordDownload(TemplateCacheMetrics.SOURCE_TARBALL, bytesWritten, System.nanoTime() - startedAt);
                 String checksum = toHexLower(digest.digest());
                 return new DownloadResult(checksum, bytesWritten, tarball.getContentLength());
             }
         }
     }
 
+    private DownloadResult downloadTarballRanged(TemplateCachePaths paths, String s3Key, Path tarballFile)
+            throws IOException {
+        long startedAt = System.nanoTime();
+        long contentLength = storageClient.downloadTemplateTarball(paths.templateId(), paths.version(), s3Key, tarballFile);
+        metrics.recordDownload(TemplateCacheMetrics.SOURCE_TARBALL, Files.size(tarballFile), System.nanoTime() - startedAt);
+        MessageDigest digest = createSha256Digest();
+        try (DigestInputStream digestInputStream = new DigestInputStream(Files.newInputStream(tarballFile), digest)) {
+            long bytesWritten = digestInputStream.transferTo(OutputStream.nullOutputStream());
+            String checksum = toHexLower(digest.digest());
+            return new DownloadResult(checksum, bytesWritten, contentLength);
+        }
+    }
+
+    /**
+     * Hashes and extracts the storage stream in a single pass. The digest is only known once the stream is
+     * exhausted, so the caller must validate the result and discard the extracted contents on mismatch.
+     */
+    private DownloadResult downloadAndExtract(
+            TemplateCachePaths paths,
+            String s3Key,
+            Path destinationDir,
+            Map<Path, String> fileDigests
+    ) throws IOException {
+        MessageDigest digest = createSha256Digest();
+        long startedAt = System.nanoTime();
+        try (TemplateTarball tarball = storageClient.getTemplateTarball(paths.templateId(), paths.version(), s3Key);
+             HashingInputStream hashingInputStream = new HashingInputStream(tarball.getInputStream(), digest);
+             BufferedInputStream bufferedInputStream = new BufferedInputStream(hashingInputStream)) {
+            extractArchive(s3Key, bufferedInputStream, destinationDir, fileDigests);
+            // The download overlaps extraction here, so its duration includes the extraction time.
+            metrics.recordDownload(
+                    TemplateCacheMetrics.SOURCE_TARBALL,
+                    hashingInputStream.getCount(),
+                    System.nanoTime() - startedAt
+            );
+            String checksum = toHexLower(digest.digest());
+            return new DownloadResult(checksum, hashingInputStream.getCount(), tarball.getContentLength());
+        }
+    }
+
     private void validateDownload(TemplateCachePaths paths, DownloadResult downloadResult, String expectedChecksum) {
         if (downloadResult.contentLength() > 0 && downloadResult.bytesWritten() != downloadResult.contentLength()) {
             throw new TemplateCacheException(
@@ -183,6 +679,7 @@ public class TemplateCachePopulateService {
         }
         String normalizedExpected = expectedChecksum.trim().toLowerCase(Locale.ROOT);
         if (!downloadResult.checksum().equals(normalizedExpected)) {
+            metrics.recordChecksumMismatch(TemplateCacheMetrics.SOURCE_TARBALL);
             throw new TemplateCacheException(
                     "Template tarball checksum mismatch for templateId=" + paths.templateId()
                             + " version=" + paths.version()
@@ -207,17 +704,43 @@ public class TemplateCachePopulateService {
         return builder.toString();
     }
 
-    private void extractTarball(String s3Key, Path tarballFile, Path destinationDir) throws IOException {
+    private void extractTarball(String s3Key, Path tarballFile, Path destinationDir, Map<Path, String> fileDigests)
+            throws IOException {
         try (InputStream fileInputStream = Files.newInputStream(tarballFile);
-             BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream);
-             InputStream archiveStream = wrapIfGzip(s3Key, bufferedInputStream);
-             TarArchiveInputStream tarInputStream = new TarArchiveInputStream(archiveStream)) {
+             BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream)) {
+            extractArchive(s3Key, bufferedInputStream, destinationDir, fileDigests);
+        }
+    }
+
+    /**
+     * Extracts the archive into {@code destinationDir}. When {@code fileDigests} is non-null, the SHA-256 of every
+     * extracted file is recorded in it for the object store and the version manifest.
+     */
+    private void extractArchive(
+            String s3Key,
+            BufferedInputStream bufferedInputStream,
+            Path destinationDir,
+            Map<Path, String> fileDigests
+    ) throws IOException {
+        long startedAt = System.nanoTime();
+        InputStream archiveStream = openDecompressor(s3Key, bufferedInputStream);
+        ReadAheadInputStream readAhead = populateSettings.isPipelinedDecompression()
+                ? new ReadAheadInputStream(archiveStream, READ_AHEAD_CHUNK_BYTES, READ_AHEAD_MAX_CHUNKS)
+                : null;
+        ParallelEntryWriter writer = writerExecutor == null
+                ? null
+                : new ParallelEntryWriter(writerExecutor, PARALLEL_WRITE_MAX_BUFFERED_BYTES);
+        boolean drained = false;
+        try {
+            TarArchiveInputStream tarInputStream = new TarArchiveInputStream(readAhead == null ? archiveStream : readAhead);
 
             long maxExtractedBytes = cacheLimits.getMaxExtractedBytes();
             long maxEntries = cacheLimits.getMaxEntries();
             long extractedBytes = 0;
             long entryCount = 0;
             Map<Path, Integer> directoryModes = new HashMap<>();
+            Set<Path> createdDirs = new HashSet<>();
+            Set<Path> writtenFiles = new HashSet<>();
 
             TarArchiveEntry entry;
             while ((entry = tarInputStream.getNextTarEntry()) != null) {
@@ -227,7 +750,7 @@ public class TemplateCachePopulateService {
                 }
                 if (entry.isDirectory()) {
                     Path dirPath = resolveEntryPath(destinationDir, entry.getName());
-                    Files.createDirectories(dirPath);
+                    createDirectories(dirPath, createdDirs);
                     directoryModes.put(dirPath, entry.getMode());
                     continue;
                 }
@@ -235,7 +758,7 @@ public class TemplateCachePopulateService {
                     throw new TemplateCacheException("Template tarball contains unsupported link entry: " + entry.getName());
                 }
                 Path entryPath = resolveEntryPath(destinationDir, entry.getName());
-                Files.createDirectories(entryPath.getParent());
+                createDirectories(entryPath.getParent(), createdDirs);
                 long entrySize = entry.getSize();
                 if (entrySize > 0 && extractedBytes + entrySize > maxExtractedBytes) {
                     throw new TemplateCacheException(
@@ -243,9 +766,22 @@ public class TemplateCachePopulateService {
                                     + " while extracting " + entry.getName()
                     );
                 }
-                try (OutputStream outputStream = new BufferedOutputStream(
-                        Files.newOutputStream(entryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
-                )) {
+                if (writer != null && !writtenFiles.add(entryPath)) {
+                    // A repeated entry replaces the earlier one, so that write has to land first.
+                    writer.awaitIdle();
+                }
+                if (writer != null && entrySize >= 0 && entrySize <= PARALLEL_WRITE_MAX_ENTRY_BYTES) {
+                    byte[] content = tarInputStream.readNBytes((int) entrySize);
+                    if (content.length != entrySize) {
+                        throw new TemplateCacheException("Template tarball is truncated at " + entry.getName());
+                    }
+                    extractedBytes += content.length;
+                    int mode = entry.getMode();
+                    writer.submit(content.length, () -> writeEntry(entryPath, content, mode, fileDigests));
+                    continue;
+                }
+                MessageDigest fileDigest = fileDigests == null ? null : createSha256Digest();
+                try (OutputStream outputStream = openEntryOutput(entryPath, fileDigest)) {
                     extractedBytes = copyEntryWithLimit(
                             tarInputStream,
                             outputStream,
@@ -254,33 +790,93 @@ public class TemplateCachePopulateService {
                             entry.getName()
                     );
                 }
+                if (fileDigest != null) {
+                    fileDigests.put(entryPath, toHexLower(fileDigest.digest()));
+                }
                 applyPermissions(entryPath, entry.getMode());
             }
 
+            if (writer != null) {
+                writer.awaitIdle();
+            }
             applyDirectoryPermissions(directoryModes);
+            // Tar readers stop at the end-of-archive marker; consume trailing padding so digests cover every byte.
+            // The read-ahead thread must reach the end first, since it is the only reader of the source until then.
+            if (readAhead != null) {
+                readAhead.transferTo(OutputStream.nullOutputStream());
+            }
+            drained = true;
+            bufferedInputStream.transferTo(OutputStream.nullOutputStream());
+            metrics.recordExtraction(entryCount, extractedBytes, System.nanoTime() - startedAt);
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+            if (readAhead != null) {
+                readAhead.close();
+                if (!drained) {
+                    // Unblocks a read-ahead thread waiting on the network before the decompressor is released.
+                    bufferedInputStream.close();
+                    readAhead.awaitReader();
+                }
+            }
+            if (archiveStream != bufferedInputStream) {
+                archiveStream.close();
+            }
         }
     }
 
-    private InputStream wrapIfGzip(String s3Key, BufferedInputStream bufferedInputStream) throws IOException {
-        if (isGzipTarball(s3Key, bufferedInputStream)) {
-            return new GzipCompressorInputStream(bufferedInputStream);
+    /**
+     * Writes a fully buffered entry; runs on an extraction writer thread.
+     */
+    private void writeEntry(Path entryPath, byte[] content, int mode, Map<Path, String> fileDigests) throws IOException {
+        Files.write(entryPath, content);
+        if (fileDigests != null) {
+            fileDigests.put(entryPath, toHexLower(createSha256Digest().digest(content)));
         }
-        return bufferedInputStream;
+        applyPermissions(entryPath, mode);
     }
 
-    private boolean isGzipTarball(String s3Key, BufferedInputStream bufferedInputStream) throws IOException {
-        String lowerKey = s3Key.toLowerCase(Locale.ROOT);
-        if (lowerKey.endsWith(".tar.gz") || lowerKey.endsWith(".tgz") || lowerKey.endsWith(".gz")) {
-            return true;
-        }
-        if (!bufferedInputStream.markSupported()) {
-            return false;
+    private void createDirectories(Path dir, Set<Path> createdDirs) throws IOException {
+        if (!createdDirs.contains(dir)) {
+            Files.createDirectories(dir);
+            createdDirs.add(dir);
         }
-        bufferedInputStream.mark(2);
-        int first = bufferedInputStream.read();
-        int second = bufferedInputStream.read();
+    }
+
+    private OutputStream openEntryOutput(Path entryPath, MessageDigest fileDigest) throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(
+                Files.newOutputStream(entryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING),
+                COPY_BUFFER_BYTES
+        );
+        return fileDigest == null ? outputStream : new DigestOutputStream(outputStream, fileDigest);
+    }
+
+    /**
+     * Wraps the tarball in a decompressor chosen by its leading magic bytes, falling back to the S3 key suffix.
+     * Gzip streams may consist of several members (as written by {@code pigz --independent} or {@code bgzip}).
+     */
+    private InputStream openDecompressor(String s3Key, BufferedInputStream bufferedInputStream) throws IOException {
+        TemplateArchiveCompression compression = detectCompression(s3Key, bufferedInputStream);
+        return switch (compression) {
+            case GZIP -> new GzipCompressorInputStream(bufferedInputStream, true);
+            case ZSTD -> {
+                if (!ZstdUtils.isZstdCompressionAvailable()) {
+                    throw new TemplateCacheException("Zstandard template tarball requires zstd-jni: " + s3Key);
+                }
+                yield new ZstdCompressorInputStream(bufferedInputStream);
+            }
+            case NONE -> bufferedInputStream;
+        };
+    }
+
+    private TemplateArchiveCompression detectCompression(String s3Key, BufferedInputStream bufferedInputStream)
+            throws IOException {
+        bufferedInputStream.mark(4);
+        byte[] magic = bufferedInputStream.readNBytes(4);
         bufferedInputStream.reset();
-        return first == 0x1f && second == 0x8b;
+        TemplateArchiveCompression detected = TemplateArchiveCompression.fromMagic(magic);
+        return detected != TemplateArchiveCompression.NONE ? detected : TemplateArchiveCompression.fromKey(s3Key);
     }
 
     private Path resolveEntryPath(Path destinationDir, String entryName) {
@@ -301,7 +897,7 @@ public class TemplateCachePopulateService {
             long maxExtractedBytes,
             String entryName
     ) throws IOException {
-        byte[] buffer = new byte[8192];
+        byte[] buffer = new byte[COPY_BUFFER_BYTES];
         int read;
         while ((read = tarInputStream.read(buffer)) != -1) {
             outputStream.write(buffer, 0, read);
@@ -405,6 +1001,7 @@ public class TemplateCachePopulateService {
     }
 
     private void deleteExistingCache(TemplateCachePaths paths) {
+        lookupService.invalidate(paths);
         if (Files.exists(paths.versionRoot())) {
             deleteRecursively(paths.versionRoot());
         }
@@ -442,6 +1039,18 @@ public class TemplateCachePopulateService {
         return value.trim();
     }
 
+    private static final class ExtractionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "template-extract-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     private record TemplateCacheMetadata(
             String templateId,
             String version,
@@ -451,6 +1060,67 @@ public class TemplateCachePopulateService {
     ) {
     }
 
+    private record PopulationKey(String templateId, String version, String checksum) {
+    }
+
     private record DownloadResult(String checksum, long bytesWritten, long contentLength) {
     }
+
+    /**
+     * Hashes and counts every byte read from the wrapped stream. Skips are served by reading so that bytes
+     * skipped by the archive reader still contribute to the digest.
+     */
+    private static final class HashingInputStream extends FilterInputStream {
+
+        private final MessageDigest digest;
+        private long count;
+
+        private HashingInputStream(InputStream inputStream, MessageDigest digest) {
+            super(inputStream);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                digest.update((byte) value);
+                count++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                digest.update(buffer, offset, read);
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[8192];
+            long remaining = n;
+            while (remaining > 0) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    break;
+                }
+                remaining -= read;
+            }
+            return n - remaining;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.util.List;
+
+/**
+ * A template version to warm into the cache. Items with a higher {@code priority} are populated first. When
+ * {@code files} carries the version's manifest, the version may be assembled from already cached files.
+ */
+public record TemplateCachePrefetchItem(
+        String templateId,
+        String version,
+        String checksum,
+        String s3Key,
+        int priority,
+        List<TemplateFileManifestEntry> files
+) {
+
+    public TemplateCachePrefetchItem(String templateId, String version, String checksum, String s3Key, int priority) {
+        this(templateId, version, checksum, s3Key, priority, null);
+    }
+}
@@ -0,0 +1,10 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+public record TemplateCachePrefetchItemStatus(
+        String templateId,
+        String version,
+        int priority,
+        TemplateCachePrefetchState state,
+        String error
+) {
+}
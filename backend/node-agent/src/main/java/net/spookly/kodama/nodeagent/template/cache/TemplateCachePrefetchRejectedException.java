@@ -0,0 +1,11 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+/**
+ * Thrown when a prefetch request would exceed {@code node-agent.template-cache-prefetch.max-pending-items}.
+ */
+public class TemplateCachePrefetchRejectedException extends TemplateCacheException {
+
+    public TemplateCachePrefetchRejectedException(String message) {
+        super(message);
+    }
+}
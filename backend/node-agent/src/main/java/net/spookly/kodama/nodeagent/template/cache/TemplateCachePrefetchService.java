@@ -0,0 +1,257 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Warms template versions into the cache in the background. Items run on a fixed pool of
+ * {@code node-agent.template-cache-prefetch.concurrency} threads, highest priority first and in submission order
+ * within a priority. Each submission is tracked as a job whose progress can be queried until it ages out.
+ */
+@Component
+public class TemplateCachePrefetchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCachePrefetchService.class);
+
+    private final TemplateCacheLayout layout;
+    private final TemplateCachePopulateService populateService;
+    private final NodeConfig.TemplateCachePrefetch settings;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, PrefetchJob> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<String> jobOrder = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pendingItems = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+
+    public TemplateCachePrefetchService(
+            TemplateCacheLayout layout,
+            TemplateCachePopulateService populateService,
+            NodeConfig config
+    ) {
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.populateService = Objects.requireNonNull(populateService, "populateService");
+        this.settings = Objects.requireNonNull(config, "config").getTemplateCachePrefetch();
+        int concurrency = settings.getConcurrency();
+        this.executor = new ThreadPoolExecutor(
+                concurrency,
+                concurrency,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                new PrefetchThreadFactory()
+        );
+        // A thread started on demand runs its first task directly, skipping the priority order of the queue.
+        executor.prestartAllCoreThreads();
+    }
+
+    public TemplateCachePrefetchStatus submit(List<TemplateCachePrefetchItem> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("templates must not be empty");
+        }
+        List<PrefetchEntry> entries = new ArrayList<>(items.size());
+        for (TemplateCachePrefetchItem item : items) {
+            entries.add(new PrefetchEntry(validate(item)));
+        }
+        reservePending(entries.size());
+
+        PrefetchJob job = new PrefetchJob(UUID.randomUUID().toString(), OffsetDateTime.now(), entries);
+        jobs.put(job.id(), job);
+        jobOrder.addLast(job.id());
+        trimJobs();
+        for (PrefetchEntry entry : entries) {
+            executor.execute(new PrefetchTask(entry, sequence.getAndIncrement()));
+        }
+        logger.info(
+                "Template cache prefetch submitted. prefetchId={} items={} pendingItems={}",
+                job.id(),
+                entries.size(),
+                pendingItems.get()
+        );
+        return job.status();
+    }
+
+    public Optional<TemplateCachePrefetchStatus> findStatus(String prefetchId) {
+        if (prefetchId == null) {
+            return Optional.empty();
+        }
+        PrefetchJob job = jobs.get(prefetchId);
+        return job == null ? Optional.empty() : Optional.of(job.status());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private TemplateCachePrefetchItem validate(TemplateCachePrefetchItem item) {
+        if (item == null) {
+            throw new IllegalArgumentException("template entry must not be null");
+        }
+        TemplateCachePaths paths = layout.resolveTemplateVersion(item.templateId(), item.version());
+        return new TemplateCachePrefetchItem(
+                paths.templateId(),
+                paths.version(),
+                requireValue("checksum", item.checksum()),
+                requireValue("s3Key", item.s3Key()),
+                item.priority(),
+                item.files()
+        );
+    }
+
+    private void reservePending(int count) {
+        while (true) {
+            int current = pendingItems.get();
+            if (current + count > settings.getMaxPendingItems()) {
+                throw new TemplateCachePrefetchRejectedException(
+                        "Template cache prefetch queue is full (pendingItems=" + current
+                                + ", maxPendingItems=" + settings.getMaxPendingItems() + ")"
+                );
+            }
+            if (pendingItems.compareAndSet(current, current + count)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest finished jobs beyond {@code retained-jobs}. Jobs with queued or running items are kept.
+     */
+    private synchronized void trimJobs() {
+        int excess = jobOrder.size() - settings.getRetainedJobs();
+        Iterator<String> iterator = jobOrder.iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            String id = iterator.next();
+            PrefetchJob job = jobs.get(id);
+            if (job == null || job.isComplete()) {
+                iterator.remove();
+                jobs.remove(id);
+                excess--;
+            }
+        }
+    }
+
+    private void runEntry(PrefetchEntry entry) {
+        TemplateCachePrefetchItem item = entry.item();
+        entry.state = TemplateCachePrefetchState.RUNNING;
+        try {
+            populateService.ensureCachedTemplate(
+                    item.templateId(),
+                    item.version(),
+                    item.checksum(),
+                    item.s3Key(),
+                    item.files()
+            );
+            entry.state = TemplateCachePrefetchState.CACHED;
+            logger.debug(
+                    "Template cache prefetch item cached. templateId={} version={}",
+                    item.templateId(),
+                    item.version()
+            );
+        } catch (RuntimeException ex) {
+            entry.error = ex.getMessage();
+            entry.state = TemplateCachePrefetchState.FAILED;
+            logger.warn(
+                    "Template cache prefetch item failed. templateId={} version={}",
+                    item.templateId(),
+                    item.version(),
+                    ex
+            );
+        } finally {
+            pendingItems.decrementAndGet();
+        }
+    }
+
+    private String requireValue(String name, String value) {
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(name + " is required");
+        }
+        return value.trim();
+    }
+
+    private static final class PrefetchEntry {
+
+        private final TemplateCachePrefetchItem item;
+        private volatile TemplateCachePrefetchState state = TemplateCachePrefetchState.QUEUED;
+        private volatile String error;
+
+        private PrefetchEntry(TemplateCachePrefetchItem item) {
+            this.item = item;
+        }
+
+        private TemplateCachePrefetchItem item() {
+            return item;
+        }
+
+        private TemplateCachePrefetchItemStatus status() {
+            return new TemplateCachePrefetchItemStatus(item.templateId(), item.version(), item.priority(), state, error);
+        }
+    }
+
+    private record PrefetchJob(String id, OffsetDateTime submittedAt, List<PrefetchEntry> entries) {
+
+        private TemplateCachePrefetchStatus status() {
+            List<TemplateCachePrefetchItemStatus> items = new ArrayList<>(entries.size());
+            for (PrefetchEntry entry : entries) {
+                items.add(entry.status());
+            }
+            return new TemplateCachePrefetchStatus(id, submittedAt, items);
+        }
+
+        private boolean isComplete() {
+            return status().isComplete();
+        }
+    }
+
+    private final class PrefetchTask implements Runnable, Comparable<PrefetchTask> {
+
+        private final PrefetchEntry entry;
+        private final long sequence;
+
+        private PrefetchTask(PrefetchEntry entry, long sequence) {
+            this.entry = entry;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            runEntry(entry);
+        }
+
+        @Override
+        public int compareTo(PrefetchTask other) {
+            int byPriority = Integer.compare(other.entry.item().priority(), entry.item().priority());
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class PrefetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "template-cache-prefetch-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+public enum TemplateCachePrefetchState {
+    QUEUED,
+    RUNNING,
+    CACHED,
+    FAILED
+}
@@ -0,0 +1,21 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public record TemplateCachePrefetchStatus(
+        String prefetchId,
+        OffsetDateTime submittedAt,
+        List<TemplateCachePrefetchItemStatus> items
+) {
+
+    public long count(TemplateCachePrefetchState state) {
+        return items.stream().filter(item -> item.state() == state).count();
+    }
+
+    public boolean isComplete() {
+        return items.stream().allMatch(item ->
+                item.state() == TemplateCachePrefetchState.CACHED || item.state() == TemplateCachePrefetchState.FAILED
+        );
+    }
+}
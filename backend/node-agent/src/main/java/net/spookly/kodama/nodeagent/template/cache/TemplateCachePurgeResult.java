@@ -1,15 +1,45 @@
 package net.spookly.kodama.nodeagent.template.cache;
 
-public record TemplateCachePurgeResult(long deletedFiles, long deletedDirectories, long deletedBytes) {
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Counts removed by a purge. {@code skippedTemplates} lists the templates left in place because one of their versions
+ * was being populated or purged at the time.
+ */
+public record TemplateCachePurgeResult(
+        long deletedFiles,
+        long deletedDirectories,
+        long deletedBytes,
+        List<String> skippedTemplates
+) {
+
+    public TemplateCachePurgeResult {
+        skippedTemplates = skippedTemplates == null ? List.of() : List.copyOf(skippedTemplates);
+    }
+
+    public TemplateCachePurgeResult(long deletedFiles, long deletedDirectories, long deletedBytes) {
+        this(deletedFiles, deletedDirectories, deletedBytes, List.of());
+    }
+
+    public static TemplateCachePurgeResult skipped(String templateId) {
+        return new TemplateCachePurgeResult(0, 0, 0, List.of(templateId));
+    }
 
     public TemplateCachePurgeResult add(TemplateCachePurgeResult other) {
         if (other == null) {
             return this;
         }
+        List<String> skipped = skippedTemplates;
+        if (!other.skippedTemplates().isEmpty()) {
+            skipped = new ArrayList<>(skippedTemplates);
+            skipped.addAll(other.skippedTemplates());
+        }
         return new TemplateCachePurgeResult(
                 deletedFiles + other.deletedFiles(),
                 deletedDirectories + other.deletedDirectories(),
-                deletedBytes + other.deletedBytes()
+                deletedBytes + other.deletedBytes(),
+                skipped
         );
     }
 }
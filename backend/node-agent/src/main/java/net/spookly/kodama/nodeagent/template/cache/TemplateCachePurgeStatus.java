@@ -0,0 +1,22 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+public record TemplateCachePurgeStatus(
+        String purgeId,
+        String scope,
+        String templateId,
+        TemplateCachePurgeState state,
+        int trashedEntries,
+        List<String> skippedTemplates,
+        TemplateCachePurgeResult result,
+        OffsetDateTime submittedAt,
+        OffsetDateTime completedAt,
+        String error
+) {
+
+    public boolean isComplete() {
+        return state == TemplateCachePurgeState.COMPLETED || state == TemplateCachePurgeState.FAILED;
+    }
+}
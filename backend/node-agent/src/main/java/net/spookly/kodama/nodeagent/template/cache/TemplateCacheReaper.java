@@ -0,0 +1,240 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Purges the template cache without blocking the caller on the delete. The targets are renamed into
+ * {@code <cache-dir>/.trash}, which takes constant time and hides them from lookups immediately, and a single
+ * low-priority thread deletes the trash afterwards. Each purge is tracked as a job whose byte counts can be queried
+ * once the reaper has finished. Trash left behind by a restart is reaped when the application is ready.
+ */
+@Component
+public class TemplateCacheReaper implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCacheReaper.class);
+
+    private final TemplateCacheLayout layout;
+    private final TemplateCacheManager cacheManager;
+    private final NodeConfig.TemplateCachePurge settings;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, PurgeJob> jobs = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<String> jobOrder = new ConcurrentLinkedDeque<>();
+
+    public TemplateCacheReaper(TemplateCacheLayout layout, TemplateCacheManager cacheManager, NodeConfig config) {
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.cacheManager = Objects.requireNonNull(cacheManager, "cacheManager");
+        this.settings = Objects.requireNonNull(config, "config").getTemplateCachePurge();
+        // The thread only exists while there is trash to delete.
+        this.executor = new ThreadPoolExecutor(
+                0,
+                1,
+                30L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ReaperThreadFactory()
+        );
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        reapLeftovers();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isBackgroundEnabled() {
+        return settings.isBackgroundEnabled();
+    }
+
+    public TemplateCachePurgeStatus purgeAll() {
+        TemplateCacheTrashResult trashed = cacheManager.moveAllToTrash();
+        // Objects are only trashed when no template was skipped; otherwise the unreferenced ones are swept.
+        return schedule("all", null, trashed, trashed.hasSkipped());
+    }
+
+    public TemplateCachePurgeStatus purgeTemplate(String templateId) {
+        TemplateCacheTrashResult trashed = cacheManager.moveTemplateToTrash(templateId);
+        return schedule("template", templateId.trim(), trashed, !trashed.hasSkipped());
+    }
+
+    public Optional<TemplateCachePurgeStatus> findStatus(String purgeId) {
+        if (purgeId == null) {
+            return Optional.empty();
+        }
+        PurgeJob job = jobs.get(purgeId);
+        return job == null ? Optional.empty() : Optional.of(job.status());
+    }
+
+    /**
+     * Deletes whatever is still in the trash directory, for example after the agent stopped mid-purge.
+     */
+    public void reapLeftovers() {
+        Path trashRoot = layout.getTrashRoot();
+        if (!Files.isDirectory(trashRoot)) {
+            return;
+        }
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(trashRoot)) {
+            stream.forEach(leftovers::add);
+        } catch (IOException ex) {
+            logger.warn("Failed to list template cache trash. path={}", trashRoot, ex);
+            return;
+        }
+        if (!leftovers.isEmpty()) {
+            logger.info("Reaping leftover template cache trash. entries={}", leftovers.size());
+            schedule("trash", null, new TemplateCacheTrashResult(leftovers, List.of()), true);
+        }
+    }
+
+    private TemplateCachePurgeStatus schedule(
+            String scope,
+            String templateId,
+            TemplateCacheTrashResult trashed,
+            boolean sweepObjects
+    ) {
+        PurgeJob job = new PurgeJob(UUID.randomUUID().toString(), scope, templateId, trashed, OffsetDateTime.now());
+        jobs.put(job.id, job);
+        jobOrder.addLast(job.id);
+        trimJobs();
+        executor.execute(() -> reap(job, sweepObjects));
+        logger.info(
+                "Template cache purge scheduled. purgeId={} scope={} templateId={} trashedEntries={} skippedTemplates={}",
+                job.id,
+                scope,
+                templateId,
+                trashed.entries().size(),
+                trashed.skippedTemplates()
+        );
+        return job.status();
+    }
+
+    private void reap(PurgeJob job, boolean sweepObjects) {
+        job.state = TemplateCachePurgeState.RUNNING;
+        TemplateCachePurgeResult total = new TemplateCachePurgeResult(0, 0, 0);
+        try {
+            for (Path entry : job.trashed.entries()) {
+                total = total.add(cacheManager.deleteTrashEntry(entry));
+            }
+            if (sweepObjects) {
+                total = total.add(cacheManager.sweepObjects());
+            }
+            job.finish(TemplateCachePurgeState.COMPLETED, total, null);
+            logger.info(
+                    "Template cache purge completed. purgeId={} scope={} removedFiles={} removedDirectories={} removedBytes={}",
+                    job.id,
+                    job.scope,
+                    total.deletedFiles(),
+                    total.deletedDirectories(),
+                    total.deletedBytes()
+            );
+        } catch (RuntimeException ex) {
+            job.finish(TemplateCachePurgeState.FAILED, total, ex.getMessage());
+            logger.warn("Template cache purge failed. purgeId={} scope={}", job.id, job.scope, ex);
+        }
+    }
+
+    /**
+     * Drops the oldest finished jobs beyond {@code retained-jobs}. Jobs that are still reaping are kept.
+     */
+    private synchronized void trimJobs() {
+        int excess = jobOrder.size() - settings.getRetainedJobs();
+        Iterator<String> iterator = jobOrder.iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            String id = iterator.next();
+            PurgeJob job = jobs.get(id);
+            if (job == null || job.status().isComplete()) {
+                iterator.remove();
+                jobs.remove(id);
+                excess--;
+            }
+        }
+    }
+
+    private static final class PurgeJob {
+
+        private final String id;
+        private final String scope;
+        private final String templateId;
+        private final TemplateCacheTrashResult trashed;
+        private final OffsetDateTime submittedAt;
+        private volatile TemplateCachePurgeState state = TemplateCachePurgeState.PENDING;
+        private volatile TemplateCachePurgeResult result;
+        private volatile OffsetDateTime completedAt;
+        private volatile String error;
+
+        private PurgeJob(
+                String id,
+                String scope,
+                String templateId,
+                TemplateCacheTrashResult trashed,
+                OffsetDateTime submittedAt
+        ) {
+            this.id = id;
+            this.scope = scope;
+            this.templateId = templateId;
+            this.trashed = trashed;
+            this.submittedAt = submittedAt;
+        }
+
+        private void finish(TemplateCachePurgeState finalState, TemplateCachePurgeResult finalResult, String failure) {
+            result = finalResult;
+            error = failure;
+            completedAt = OffsetDateTime.now();
+            state = finalState;
+        }
+
+        private TemplateCachePurgeStatus status() {
+            return new TemplateCachePurgeStatus(
+                    id,
+                    scope,
+                    templateId,
+                    state,
+                    trashed.entries().size(),
+                    trashed.skippedTemplates(),
+                    result,
+                    submittedAt,
+                    completedAt,
+                    error
+            );
+        }
+    }
+
+    private static final class ReaperThreadFactory implements ThreadFactory {
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "template-cache-reaper");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+}
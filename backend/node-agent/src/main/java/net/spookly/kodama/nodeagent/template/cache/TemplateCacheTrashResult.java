@@ -0,0 +1,20 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Entries moved into the trash directory by a purge, and the templates left in place because one of their versions
+ * was being populated or purged at the time.
+ */
+public record TemplateCacheTrashResult(List<Path> entries, List<String> skippedTemplates) {
+
+    public TemplateCacheTrashResult {
+        entries = entries == null ? List.of() : List.copyOf(entries);
+        skippedTemplates = skippedTemplates == null ? List.of() : List.copyOf(skippedTemplates);
+    }
+
+    public boolean hasSkipped() {
+        return !skippedTemplates.isEmpty();
+    }
+}
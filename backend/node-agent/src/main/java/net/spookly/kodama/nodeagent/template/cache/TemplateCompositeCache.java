@@ -0,0 +1,209 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Optional;
+
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches fully merged layer stacks under {@link TemplateCacheLayout#getCompositesRoot()}, keyed by a hash of the
+ * ordered (templateId, version, checksum) tuples. Recency is tracked through the stack file's modification time,
+ * which is refreshed on every hit and used for LRU eviction.
+ */
+@Component
+public class TemplateCompositeCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateCompositeCache.class);
+    private static final String STAGING_PREFIX = ".staging-";
+
+    private final TemplateCacheLayout layout;
+    private final TemplateCacheManager cacheManager;
+    private final boolean enabled;
+    private final int maxEntries;
+
+    public TemplateCompositeCache(NodeConfig config, TemplateCacheLayout layout, TemplateCacheManager cacheManager) {
+        NodeConfig.TemplateCompositeCache settings = Objects.requireNonNull(config, "config").getTemplateCompositeCache();
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.cacheManager = Objects.requireNonNull(cacheManager, "cacheManager");
+        this.enabled = settings.isEnabled();
+        this.maxEntries = Math.max(1, settings.getMaxEntries());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String stackKey(List<TemplateStackEntry> stack) {
+        if (stack == null || stack.isEmpty()) {
+            throw new IllegalArgumentException("template stack is required");
+        }
+        MessageDigest digest = newDigest();
+        for (TemplateStackEntry entry : stack) {
+            digest.update(stackLine(entry).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the contents of a cached composite and marks it as recently used.
+     */
+    public Optional<Path> findComposite(String stackKey) {
+        TemplateCompositePaths paths = layout.resolveComposite(stackKey);
+        if (!Files.isDirectory(paths.contentsDir()) || !Files.isRegularFile(paths.stackFile())) {
+            return Optional.empty();
+        }
+        try {
+            Files.setLastModifiedTime(paths.stackFile(), FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ex) {
+            // The composite was evicted or purged between the check and the touch.
+            return Optional.empty();
+        }
+        return Optional.of(paths.contentsDir());
+    }
+
+    /**
+     * Creates an empty staging directory that a merge can write a composite into before it is committed.
+     */
+    public Path createStagingDir() {
+        Path compositesRoot = layout.getCompositesRoot();
+        try {
+            Files.createDirectories(compositesRoot);
+            return Files.createTempDirectory(compositesRoot, STAGING_PREFIX);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to create template composite staging directory under " + compositesRoot, ex);
+        }
+    }
+
+    public Path stagingContentsDir(Path stagingDir) {
+        return stagingDir.resolve(TemplateCacheLayout.CONTENTS_DIR_NAME);
+    }
+
+    /**
+     * Publishes a staged composite under its stack key and evicts the least recently used composites above the
+     * configured limit. If another merge already published the same stack, the staged copy is discarded.
+     */
+    public Path commitComposite(String stackKey, List<TemplateStackEntry> stack, Path stagingDir) {
+        TemplateCompositePaths paths = layout.resolveComposite(stackKey);
+        try {
+            writeStackFile(stagingDir.resolve(TemplateCacheLayout.STACK_FILENAME), stack);
+            moveIntoPlace(stagingDir, paths.compositeRoot());
+            logger.info("Template composite cached. stackKey={} layers={}", stackKey, stack.size());
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException ex) {
+            logger.debug("Template composite already cached by a concurrent merge. stackKey={}", stackKey);
+            discardStagingDir(stagingDir);
+        } catch (IOException ex) {
+            discardStagingDir(stagingDir);
+            throw new TemplateCacheException("Failed to commit template composite " + stackKey, ex);
+        }
+        evictLeastRecentlyUsed(stackKey);
+        return paths.contentsDir();
+    }
+
+    public void discardStagingDir(Path stagingDir) {
+        Path compositesRoot = layout.getCompositesRoot();
+        if (stagingDir == null || !stagingDir.toAbsolutePath().normalize().startsWith(compositesRoot)) {
+            return;
+        }
+        try (var stream = Files.walk(stagingDir)) {
+            for (Path path : stream.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException ex) {
+            logger.warn("Failed to remove template composite staging directory. path={}", stagingDir, ex);
+        }
+    }
+
+    private void evictLeastRecentlyUsed(String keepStackKey) {
+        Path compositesRoot = layout.getCompositesRoot();
+        List<CompositeEntry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(compositesRoot)) {
+            for (Path child : stream) {
+                String name = child.getFileName().toString();
+                Path stackFile = child.resolve(TemplateCacheLayout.STACK_FILENAME);
+                if (name.startsWith(".") || !Files.isRegularFile(stackFile)) {
+                    continue;
+                }
+                entries.add(new CompositeEntry(name, Files.getLastModifiedTime(stackFile)));
+            }
+        } catch (IOException ex) {
+            logger.warn("Failed to list template composites for eviction. path={}", compositesRoot, ex);
+            return;
+        }
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        entries.sort(Comparator.comparing(CompositeEntry::lastAccess));
+        int excess = entries.size() - maxEntries;
+        for (CompositeEntry entry : entries) {
+            if (excess == 0) {
+                break;
+            }
+            if (entry.stackKey().equals(keepStackKey)) {
+                continue;
+            }
+            try {
+                TemplateCachePurgeResult result = cacheManager.purgeComposite(entry.stackKey());
+                logger.info(
+                        "Template composite evicted. stackKey={} removedBytes={}",
+                        entry.stackKey(),
+                        result.deletedBytes()
+                );
+            } catch (TemplateCacheException ex) {
+                logger.warn("Failed to evict template composite. stackKey={}", entry.stackKey(), ex);
+            }
+            excess--;
+        }
+    }
+
+    private void moveIntoPlace(Path stagingDir, Path compositeRoot) throws IOException {
+        try {
+            Files.move(stagingDir, compositeRoot, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(stagingDir, compositeRoot);
+        }
+    }
+
+    private void writeStackFile(Path stackFile, List<TemplateStackEntry> stack) throws IOException {
+        List<String> lines = new ArrayList<>(stack.size());
+        for (TemplateStackEntry entry : stack) {
+            lines.add(stackLine(entry));
+        }
+        Files.write(stackFile, lines, StandardCharsets.UTF_8);
+    }
+
+    private String stackLine(TemplateStackEntry entry) {
+        return entry.templateId() + "\t" + entry.version() + "\t" + entry.checksum().trim().toLowerCase(Locale.ROOT);
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new TemplateCacheException("SHA-256 digest not available", ex);
+        }
+    }
+
+    private record CompositeEntry(String stackKey, FileTime lastAccess) {
+    }
+}
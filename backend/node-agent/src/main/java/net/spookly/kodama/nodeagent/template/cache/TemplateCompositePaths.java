@@ -0,0 +1,11 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.nio.file.Path;
+
+public record TemplateCompositePaths(
+        String stackKey,
+        Path compositeRoot,
+        Path contentsDir,
+        Path stackFile
+) {
+}
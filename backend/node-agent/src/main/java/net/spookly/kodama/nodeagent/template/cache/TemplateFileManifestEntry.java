@@ -0,0 +1,8 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+/**
+ * One regular file of a template version as published by the Brain. {@code path} is relative to the contents
+ * directory, {@code sha256} is the lowercase hex digest of the file and {@code mode} its optional permission bits.
+ */
+public record TemplateFileManifestEntry(String path, long size, String sha256, Integer mode) {
+}
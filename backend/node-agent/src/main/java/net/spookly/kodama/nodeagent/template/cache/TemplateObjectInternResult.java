@@ -0,0 +1,4 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+public record TemplateObjectInternResult(long files, long reusedFiles, long reusedBytes) {
+}
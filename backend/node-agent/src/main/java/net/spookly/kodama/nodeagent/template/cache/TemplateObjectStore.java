@@ -0,0 +1,273 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Content-addressed store under {@code <cacheDir>/objects}. Each distinct file (by SHA-256 and permission bits) is
+ * kept once, and every cached version's {@code contents/} files are hardlinks to it. The filesystem link count is
+ * the reference count: an object whose only remaining link is its store entry is unreferenced and is removed by
+ * {@link #sweep()}.
+ */
+@Component
+public class TemplateObjectStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateObjectStore.class);
+    private static final String LINK_COUNT_ATTRIBUTE = "unix:nlink";
+
+    private final TemplateCacheLayout layout;
+    private final boolean linkCountSupported;
+    private final boolean enabled;
+
+    public TemplateObjectStore(NodeConfig config, TemplateCacheLayout layout) {
+        this.layout = Objects.requireNonNull(layout, "layout");
+        this.linkCountSupported = FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+        boolean requested = Objects.requireNonNull(config, "config").getTemplateObjectStore().isEnabled();
+        if (requested && !linkCountSupported) {
+            logger.warn("Template object store requested but file link counts are unavailable; store disabled");
+        }
+        this.enabled = requested && linkCountSupported;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Replaces every regular file under {@code contentsDir} with a hardlink to its object, adding objects that are
+     * not stored yet. {@code knownDigests} may hold SHA-256 hex digests computed during extraction; other files are
+     * hashed here. Must only be called on verified contents that are not yet visible to readers.
+     */
+    public TemplateObjectInternResult intern(Path contentsDir, Map<Path, String> knownDigests) {
+        if (!enabled) {
+            return new TemplateObjectInternResult(0, 0, 0);
+        }
+        long[] totals = new long[3];
+        try {
+            Files.walkFileTree(contentsDir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (!attrs.isRegularFile()) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    String digest = knownDigests == null ? null : knownDigests.get(file);
+                    if (digest == null) {
+                        digest = sha256(file);
+                    }
+                    totals[0]++;
+                    if (linkToObject(file, objectId(file, digest))) {
+                        totals[1]++;
+                        totals[2] += attrs.size();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to add template contents to object store from " + contentsDir, ex);
+        }
+        return new TemplateObjectInternResult(totals[0], totals[1], totals[2]);
+    }
+
+    /**
+     * Stored object holding content {@code sha256} with permission bits {@code mode}, if there is one. The object
+     * may still be removed by a concurrent {@link #sweep()}, so callers linking to it must handle its absence.
+     */
+    public Optional<Path> findObject(String sha256, int mode) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Path object = layout.resolveObject(sha256 + "-" + Integer.toOctalString(mode & 0777));
+        return Files.isRegularFile(object) ? Optional.of(object) : Optional.empty();
+    }
+
+    /**
+     * Deletes objects no cached version, composite or workspace links to any more.
+     */
+    public TemplateCachePurgeResult sweep() {
+        Path objectsRoot = layout.getObjectsRoot();
+        if (!linkCountSupported || !Files.isDirectory(objectsRoot)) {
+            return new TemplateCachePurgeResult(0, 0, 0);
+        }
+        long[] totals = new long[2];
+        try {
+            Files.walkFileTree(objectsRoot, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    sweepObject(file, attrs, totals);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to sweep template object store under " + objectsRoot, ex);
+        }
+        return sweepResult(totals);
+    }
+
+    /**
+     * Like {@link #sweep()}, but only checks {@code objects}, as returned by {@link #findLinkedObjects}.
+     */
+    public TemplateCachePurgeResult sweep(Collection<Path> objects) {
+        if (!linkCountSupported || objects.isEmpty()) {
+            return new TemplateCachePurgeResult(0, 0, 0);
+        }
+        long[] totals = new long[2];
+        for (Path object : objects) {
+            try {
+                BasicFileAttributes attrs =
+                        Files.readAttributes(object, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                sweepObject(object, attrs, totals);
+            } catch (NoSuchFileException ex) {
+                // Already swept.
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to sweep template object " + object, ex);
+            }
+        }
+        return sweepResult(totals);
+    }
+
+    /**
+     * Objects that the files of {@code contentsDir} listed in {@code manifest} are linked to. A version's objects
+     * are collected before it is deleted, so that {@link #sweep(Collection)} afterwards only checks those.
+     */
+    public List<Path> findLinkedObjects(Path contentsDir, List<TemplateFileManifestEntry> manifest) {
+        List<Path> objects = new ArrayList<>();
+        if (!linkCountSupported) {
+            return objects;
+        }
+        for (TemplateFileManifestEntry entry : manifest) {
+            if (entry.path() == null || entry.sha256() == null) {
+                continue;
+            }
+            Path file = contentsDir.resolve(entry.path()).normalize();
+            try {
+                if (!file.startsWith(contentsDir) || !Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)
+                        || linkCount(file) < 2) {
+                    continue;
+                }
+                Path object = layout.resolveObject(objectId(file, entry.sha256()));
+                if (Files.exists(object) && Files.isSameFile(object, file)) {
+                    objects.add(object);
+                }
+            } catch (NoSuchFileException | IllegalArgumentException ex) {
+                // Missing file or malformed manifest entry; nothing to sweep for it.
+            } catch (IOException ex) {
+                throw new TemplateCacheException("Failed to resolve template object for " + file, ex);
+            }
+        }
+        return objects;
+    }
+
+    private void sweepObject(Path object, BasicFileAttributes attrs, long[] totals) throws IOException {
+        if (attrs.isRegularFile() && linkCount(object) == 1 && Files.deleteIfExists(object)) {
+            totals[0]++;
+            totals[1] += attrs.size();
+        }
+    }
+
+    private TemplateCachePurgeResult sweepResult(long[] totals) {
+        if (totals[0] > 0) {
+            logger.info("Template object store swept. removedObjects={} removedBytes={}", totals[0], totals[1]);
+        }
+        return new TemplateCachePurgeResult(totals[0], 0, totals[1]);
+    }
+
+    /**
+     * Number of hardlinks to {@code file}, or 1 when the filesystem does not report link counts.
+     */
+    int linkCount(Path file) throws IOException {
+        if (!linkCountSupported) {
+            return 1;
+        }
+        return (Integer) Files.getAttribute(file, LINK_COUNT_ATTRIBUTE, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Points {@code file} at its object. Returns true when an existing object was reused.
+     */
+    private boolean linkToObject(Path file, String objectId) throws IOException {
+        Path object = layout.resolveObject(objectId);
+        Files.createDirectories(object.getParent());
+        // Two attempts: a concurrent sweep may delete the object between the existence check and the link.
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (!Files.exists(object)) {
+                try {
+                    Files.createLink(object, file);
+                    return false;
+                } catch (FileAlreadyExistsException ex) {
+                    // Another population stored the same content first.
+                }
+            }
+            Path temp = file.resolveSibling("." + UUID.randomUUID() + ".link");
+            try {
+                Files.createLink(temp, object);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        }
+        logger.debug("Template object store skipped file after concurrent removal. path={}", file);
+        return false;
+    }
+
+    private String objectId(Path file, String digest) throws IOException {
+        PosixFileAttributeView view = Files.getFileAttributeView(file, PosixFileAttributeView.class);
+        if (view == null) {
+            return digest;
+        }
+        int mode = 0;
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        for (PosixFilePermission permission : PosixFilePermission.values()) {
+            if (permissions.contains(permission)) {
+                mode |= 1 << (8 - permission.ordinal());
+            }
+        }
+        // Hardlinks share permission bits, so files that differ only in mode need separate objects.
+        return digest + "-" + Integer.toOctalString(mode);
+    }
+
+    private String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new TemplateCacheException("SHA-256 digest is not available", ex);
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
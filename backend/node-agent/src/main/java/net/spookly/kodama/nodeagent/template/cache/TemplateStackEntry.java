@@ -0,0 +1,8 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+public record TemplateStackEntry(
+        String templateId,
+        String version,
+        String checksum
+) {
+}
@@ -0,0 +1,209 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per-version locks over {@code <templateRoot>/.<version>.lock}. A version is held by at most one thread of this
+ * JVM, through an in-memory lock, and by at most one agent sharing the cache directory, through a {@link FileLock}
+ * on the lock file. Population, eviction and purges all lock through here.
+ * <p>
+ * The in-memory lock is dropped and the lock file deleted when the last user of a version leaves. Before deleting
+ * the file, the holder writes a byte into it; another agent that was waiting on the deleted file sees the non-empty
+ * file once it gets the lock, and retries on the current one.
+ */
+@Component
+public class TemplateVersionLocks {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateVersionLocks.class);
+
+    private final ConcurrentMap<Path, LocalLock> localLocks = new ConcurrentHashMap<>();
+
+    /**
+     * Blocks until the caller holds the version. Creates the template root when it does not exist.
+     */
+    public Lock lock(TemplateCachePaths paths) {
+        LocalLock localLock = join(paths.lockFile());
+        localLock.lock.acquireUninterruptibly();
+        Lock held = null;
+        try {
+            while (held == null) {
+                FileChannel channel = openChannel(paths);
+                try {
+                    FileLock fileLock = channel.lock();
+                    if (channel.size() == 0) {
+                        held = new Lock(paths.lockFile(), localLock, channel, fileLock);
+                    }
+                } finally {
+                    if (held == null) {
+                        closeQuietly(channel);
+                    }
+                }
+            }
+            return held;
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to lock template cache at " + paths.lockFile(), ex);
+        } finally {
+            if (held == null) {
+                localLock.lock.release();
+                leave(paths.lockFile(), localLock, null);
+            }
+        }
+    }
+
+    /**
+     * Takes the version without waiting. Returns empty when a population or purge of this agent or of another agent
+     * sharing the cache directory holds it.
+     */
+    public Optional<Lock> tryLock(TemplateCachePaths paths) {
+        LocalLock localLock = join(paths.lockFile());
+        if (!localLock.lock.tryAcquire()) {
+            leave(paths.lockFile(), localLock, null);
+            return Optional.empty();
+        }
+        Lock held = null;
+        try {
+            while (held == null) {
+                FileChannel channel = openChannel(paths);
+                try {
+                    FileLock fileLock = channel.tryLock();
+                    if (fileLock == null) {
+                        return Optional.empty();
+                    }
+                    if (channel.size() == 0) {
+                        held = new Lock(paths.lockFile(), localLock, channel, fileLock);
+                    }
+                } finally {
+                    if (held == null) {
+                        closeQuietly(channel);
+                    }
+                }
+            }
+            return Optional.of(held);
+        } catch (IOException ex) {
+            throw new TemplateCacheException("Failed to lock template cache at " + paths.lockFile(), ex);
+        } finally {
+            if (held == null) {
+                localLock.lock.release();
+                leave(paths.lockFile(), localLock, null);
+            }
+        }
+    }
+
+    /**
+     * Number of versions with a holder or waiter in this JVM.
+     */
+    int size() {
+        return localLocks.size();
+    }
+
+    private LocalLock join(Path lockFile) {
+        return localLocks.compute(lockFile, (path, current) -> {
+            LocalLock localLock = current == null ? new LocalLock() : current;
+            localLock.users++;
+            return localLock;
+        });
+    }
+
+    /**
+     * Drops the caller from the users of {@code lockFile}. The last user removes the in-memory lock and, when it
+     * holds the version through {@code heldChannel}, retires the lock file in the same step, so no new user of this
+     * JVM can open the old file.
+     */
+    private void leave(Path lockFile, LocalLock localLock, FileChannel heldChannel) {
+        localLocks.compute(lockFile, (path, current) -> {
+            if (--localLock.users > 0) {
+                return current;
+            }
+            if (heldChannel != null) {
+                retire(lockFile, heldChannel);
+            }
+            return null;
+        });
+    }
+
+    private FileChannel openChannel(TemplateCachePaths paths) throws IOException {
+        Files.createDirectories(paths.templateRoot());
+        return FileChannel.open(paths.lockFile(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Deletes the lock file while its lock is still held and marks the deleted file as retired for agents that
+     * opened it before.
+     */
+    private void retire(Path lockFile, FileChannel channel) {
+        try {
+            if (Files.deleteIfExists(lockFile)) {
+                channel.write(ByteBuffer.wrap(new byte[] {1}));
+            }
+        } catch (IOException ex) {
+            logger.debug("Failed to delete template cache lock file {}", lockFile, ex);
+        }
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.debug("Failed to close template cache lock file", ex);
+        }
+    }
+
+    private static final class LocalLock {
+
+        // Not reentrant, so a thread that already holds the version cannot take its file lock twice.
+        private final Semaphore lock = new Semaphore(1);
+        // Holders plus waiters; only changed inside ConcurrentMap#compute.
+        private int users;
+    }
+
+    /**
+     * A held version. Closing it releases the version.
+     */
+    public final class Lock implements AutoCloseable {
+
+        private final Path lockFile;
+        private final LocalLock localLock;
+        private final FileChannel channel;
+        private final FileLock fileLock;
+        private boolean released;
+
+        private Lock(Path lockFile, LocalLock localLock, FileChannel channel, FileLock fileLock) {
+            this.lockFile = lockFile;
+            this.localLock = localLock;
+            this.channel = channel;
+            this.fileLock = fileLock;
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            try {
+                leave(lockFile, localLock, channel);
+                fileLock.release();
+            } catch (IOException ex) {
+                logger.debug("Failed to release template cache lock {}", lockFile, ex);
+            } finally {
+                closeQuietly(channel);
+                localLock.lock.release();
+            }
+        }
+    }
+}
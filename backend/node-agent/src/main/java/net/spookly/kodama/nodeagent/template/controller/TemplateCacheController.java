@@ -1,10 +1,22 @@
 package net.spookly.kodama.nodeagent.template.controller;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.spookly.kodama.nodeagent.template.cache.TemplateCacheManager;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchItem;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchRejectedException;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchService;
 import net.spookly.kodama.nodeagent.template.cache.TemplateCachePurgeResult;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePurgeStatus;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheReaper;
+import net.spookly.kodama.nodeagent.template.dto.TemplateCachePrefetchRequest;
+import net.spookly.kodama.nodeagent.template.dto.TemplateCachePrefetchResponse;
 import net.spookly.kodama.nodeagent.template.dto.TemplateCachePurgeRequest;
 import net.spookly.kodama.nodeagent.template.dto.TemplateCachePurgeResponse;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -17,9 +29,17 @@ import org.springframework.web.server.ResponseStatusException;
 public class TemplateCacheController {
 
     private final TemplateCacheManager cacheManager;
+    private final TemplateCachePrefetchService prefetchService;
+    private final TemplateCacheReaper reaper;
 
-    public TemplateCacheController(TemplateCacheManager cacheManager) {
+    public TemplateCacheController(
+            TemplateCacheManager cacheManager,
+            TemplateCachePrefetchService prefetchService,
+            TemplateCacheReaper reaper
+    ) {
         this.cacheManager = cacheManager;
+        this.prefetchService = prefetchService;
+        this.reaper = reaper;
     }
 
     @PostMapping("/purge")
@@ -30,14 +50,75 @@ public class TemplateCacheController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "templateId must not be blank");
         }
         try {
+            if (reaper.isBackgroundEnabled()) {
+                if (templateId == null) {
+                    return TemplateCachePurgeResponse.fromStatus(reaper.purgeAll());
+                }
+                TemplateCachePurgeStatus status = reaper.purgeTemplate(templateId);
+                rejectIfSkipped(templateId, status.skippedTemplates());
+                return TemplateCachePurgeResponse.fromStatus(status);
+            }
             if (templateId == null) {
                 TemplateCachePurgeResult result = cacheManager.purgeAll();
                 return TemplateCachePurgeResponse.forAll(result);
             }
             TemplateCachePurgeResult result = cacheManager.purgeTemplate(templateId);
+            rejectIfSkipped(templateId, result.skippedTemplates());
             return TemplateCachePurgeResponse.forTemplate(templateId.trim(), result);
         } catch (IllegalArgumentException ex) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
         }
     }
+
+    @GetMapping("/purge/{purgeId}")
+    public TemplateCachePurgeResponse purgeStatus(@PathVariable String purgeId) {
+        return reaper.findStatus(purgeId)
+                .map(TemplateCachePurgeResponse::fromStatus)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown purgeId " + purgeId));
+    }
+
+    @PostMapping("/prefetch")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public TemplateCachePrefetchResponse prefetch(@RequestBody(required = false) TemplateCachePrefetchRequest request) {
+        if (request == null || request.templates() == null || request.templates().isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "templates must not be empty");
+        }
+        List<TemplateCachePrefetchItem> items = new ArrayList<>(request.templates().size());
+        for (TemplateCachePrefetchRequest.Template template : request.templates()) {
+            if (template == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "template entry must not be null");
+            }
+            items.add(new TemplateCachePrefetchItem(
+                    template.templateId(),
+                    template.version(),
+                    template.checksum(),
+                    template.s3Key(),
+                    template.priority() == null ? 0 : template.priority(),
+                    template.files()
+            ));
+        }
+        try {
+            return TemplateCachePrefetchResponse.fromStatus(prefetchService.submit(items));
+        } catch (IllegalArgumentException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage(), ex);
+        } catch (TemplateCachePrefetchRejectedException ex) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage(), ex);
+        }
+    }
+
+    @GetMapping("/prefetch/{prefetchId}")
+    public TemplateCachePrefetchResponse prefetchStatus(@PathVariable String prefetchId) {
+        return prefetchService.findStatus(prefetchId)
+                .map(TemplateCachePrefetchResponse::fromStatus)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown prefetchId " + prefetchId));
+    }
+
+    private static void rejectIfSkipped(String templateId, List<String> skippedTemplates) {
+        if (!skippedTemplates.isEmpty()) {
+            throw new ResponseStatusException(
+                    HttpStatus.CONFLICT,
+                    "Template " + templateId.trim() + " is being populated or purged; retry the purge later"
+            );
+        }
+    }
 }
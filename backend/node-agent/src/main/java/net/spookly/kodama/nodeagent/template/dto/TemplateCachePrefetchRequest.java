@@ -0,0 +1,18 @@
+package net.spookly.kodama.nodeagent.template.dto;
+
+import java.util.List;
+
+import net.spookly.kodama.nodeagent.template.cache.TemplateFileManifestEntry;
+
+public record TemplateCachePrefetchRequest(List<Template> templates) {
+
+    public record Template(
+            String templateId,
+            String version,
+            String checksum,
+            String s3Key,
+            Integer priority,
+            List<TemplateFileManifestEntry> files
+    ) {
+    }
+}
@@ -0,0 +1,33 @@
+package net.spookly.kodama.nodeagent.template.dto;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchItemStatus;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchState;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePrefetchStatus;
+
+public record TemplateCachePrefetchResponse(
+        String prefetchId,
+        OffsetDateTime submittedAt,
+        boolean complete,
+        long queued,
+        long running,
+        long cached,
+        long failed,
+        List<TemplateCachePrefetchItemStatus> templates
+) {
+
+    public static TemplateCachePrefetchResponse fromStatus(TemplateCachePrefetchStatus status) {
+        return new TemplateCachePrefetchResponse(
+                status.prefetchId(),
+                status.submittedAt(),
+                status.isComplete(),
+                status.count(TemplateCachePrefetchState.QUEUED),
+                status.count(TemplateCachePrefetchState.RUNNING),
+                status.count(TemplateCachePrefetchState.CACHED),
+                status.count(TemplateCachePrefetchState.FAILED),
+                status.items()
+        );
+    }
+}
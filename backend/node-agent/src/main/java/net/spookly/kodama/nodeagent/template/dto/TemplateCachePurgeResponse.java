@@ -1,13 +1,27 @@
 package net.spookly.kodama.nodeagent.template.dto;
 
+import java.util.List;
+
 import net.spookly.kodama.nodeagent.template.cache.TemplateCachePurgeResult;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePurgeState;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCachePurgeStatus;
 
+/**
+ * Result of a cache purge. Background purges return right after the targets were moved to the trash, with
+ * {@code state} {@code PENDING} and zero counts; the counts are filled in by {@code GET /api/cache/purge/{purgeId}}
+ * once the reaper has finished. {@code skippedTemplates} lists the templates left in place because one of their
+ * versions was being populated or purged.
+ */
 public record TemplateCachePurgeResponse(
         String scope,
         String templateId,
         long deletedFiles,
         long deletedDirectories,
-        long deletedBytes
+        long deletedBytes,
+        List<String> skippedTemplates,
+        String purgeId,
+        TemplateCachePurgeState state,
+        String error
 ) {
 
     public static TemplateCachePurgeResponse forAll(TemplateCachePurgeResult result) {
@@ -18,20 +32,41 @@ public record TemplateCachePurgeResponse(
         return fromResult("template", templateId, result);
     }
 
+    public static TemplateCachePurgeResponse fromStatus(TemplateCachePurgeStatus status) {
+        TemplateCachePurgeResult safeResult = safe(status.result());
+        return new TemplateCachePurgeResponse(
+                status.scope(),
+                status.templateId(),
+                safeResult.deletedFiles(),
+                safeResult.deletedDirectories(),
+                safeResult.deletedBytes(),
+                status.skippedTemplates(),
+                status.purgeId(),
+                status.state(),
+                status.error()
+        );
+    }
+
     private static TemplateCachePurgeResponse fromResult(
             String scope,
             String templateId,
             TemplateCachePurgeResult result
     ) {
-        TemplateCachePurgeResult safeResult = result == null
-                ? new TemplateCachePurgeResult(0, 0, 0)
-                : result;
+        TemplateCachePurgeResult safeResult = safe(result);
         return new TemplateCachePurgeResponse(
                 scope,
                 templateId,
                 safeResult.deletedFiles(),
                 safeResult.deletedDirectories(),
-                safeResult.deletedBytes()
+                safeResult.deletedBytes(),
+                safeResult.skippedTemplates(),
+                null,
+                TemplateCachePurgeState.COMPLETED,
+                null
         );
     }
+
+    private static TemplateCachePurgeResult safe(TemplateCachePurgeResult result) {
+        return result == null ? new TemplateCachePurgeResult(0, 0, 0) : result;
+    }
 }
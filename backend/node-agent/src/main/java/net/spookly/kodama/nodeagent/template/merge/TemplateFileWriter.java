@@ -0,0 +1,180 @@
+package net.spookly.kodama.nodeagent.template.merge;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Places a single layer file into the merged workspace according to the configured {@link TemplateMergeStrategy}.
+ * Reflinks are batched and cloned through GNU {@code cp --reflink=auto}, so {@link #flush()} must be called once
+ * the layer has been walked.
+ */
+final class TemplateFileWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TemplateFileWriter.class);
+    private static final int REFLINK_BATCH_SIZE = 512;
+
+    private final TemplateMergeStrategy strategy;
+    private final List<PathMatcher> immutableMatchers;
+    private final Path sourceRoot;
+    private final Path targetRoot;
+    private final AtomicBoolean reflinkUnavailable;
+    private final AtomicBoolean hardlinkFallbackLogged;
+    private final List<Path> pendingReflinks = new ArrayList<>();
+
+    TemplateFileWriter(
+            TemplateMergeStrategy strategy,
+            List<PathMatcher> immutableMatchers,
+            Path sourceRoot,
+            Path targetRoot,
+            AtomicBoolean reflinkUnavailable,
+            AtomicBoolean hardlinkFallbackLogged
+    ) {
+        this.strategy = strategy;
+        this.immutableMatchers = immutableMatchers;
+        this.sourceRoot = sourceRoot;
+        this.targetRoot = targetRoot;
+        this.reflinkUnavailable = reflinkUnavailable;
+        this.hardlinkFallbackLogged = hardlinkFallbackLogged;
+    }
+
+    boolean defersWrites() {
+        return strategy == TemplateMergeStrategy.REFLINK && !reflinkUnavailable.get();
+    }
+
+    void writeFile(Path source, Path target) throws IOException {
+        switch (strategy) {
+            case COPY -> copy(source, target);
+            case HARDLINK -> link(source, target);
+            case HARDLINK_IMMUTABLE -> {
+                if (isImmutable(source)) {
+                    link(source, target);
+                } else {
+                    copy(source, target);
+                }
+            }
+            case REFLINK -> {
+                if (reflinkUnavailable.get()) {
+                    copy(source, target);
+                    return;
+                }
+                pendingReflinks.add(sourceRoot.relativize(source));
+                if (pendingReflinks.size() >= REFLINK_BATCH_SIZE) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    void flush() throws IOException {
+        if (pendingReflinks.isEmpty()) {
+            return;
+        }
+        List<Path> batch = new ArrayList<>(pendingReflinks);
+        pendingReflinks.clear();
+        if (!reflinkUnavailable.get() && cloneWithCp(batch)) {
+            return;
+        }
+        for (Path relative : batch) {
+            copy(sourceRoot.resolve(relative), targetRoot.resolve(relative));
+        }
+    }
+
+    private boolean cloneWithCp(List<Path> batch) throws IOException {
+        List<String> command = new ArrayList<>(batch.size() + 8);
+        command.add("cp");
+        command.add("--reflink=auto");
+        command.add("--preserve=mode,timestamps");
+        command.add("--remove-destination");
+        command.add("--parents");
+        command.add("--");
+        for (Path relative : batch) {
+            command.add(relative.toString());
+        }
+        command.add(targetRoot.toString());
+
+        Process process;
+        try {
+            process = new ProcessBuilder(command)
+                    .directory(sourceRoot.toFile())
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException ex) {
+            disableReflink("cp could not be started: " + ex.getMessage());
+            return false;
+        }
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        int exitCode;
+        try {
+            exitCode = process.waitFor();
+        } catch (InterruptedException ex) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new TemplateLayerMergeException("Interrupted while cloning template files into " + targetRoot, ex);
+        }
+        if (exitCode != 0) {
+            disableReflink("cp exited with " + exitCode + ": " + output);
+            return false;
+        }
+        return true;
+    }
+
+    private void disableReflink(String reason) {
+        if (reflinkUnavailable.compareAndSet(false, true)) {
+            logger.warn("Reflink merge unavailable, falling back to file copies. reason={}", reason);
+        }
+    }
+
+    private boolean isImmutable(Path source) {
+        Path relative = sourceRoot.relativize(source);
+        for (PathMatcher matcher : immutableMatchers) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void link(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            if (hardlinkFallbackLogged.compareAndSet(false, true)) {
+                logger.warn("Hardlinking template files failed, falling back to copies. source={} target={}", source, target, ex);
+            }
+            copy(source, target);
+        }
+    }
+
+    private void copy(Path source, Path target) throws IOException {
+        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        copyPermissions(source, target);
+    }
+
+    static void copyPermissions(Path source, Path target) throws IOException {
+        PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (sourceView != null && targetView != null) {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(source);
+            Files.setPosixFilePermissions(target, permissions);
+            return;
+        }
+        if (Files.isExecutable(source)) {
+            target.toFile().setExecutable(true, false);
+        }
+    }
+}
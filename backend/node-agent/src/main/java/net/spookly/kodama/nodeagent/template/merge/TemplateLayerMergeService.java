@@ -1,22 +1,34 @@
 package net.spookly.kodama.nodeagent.template.merge;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.PathMatcher;
 import java.io.UncheckedIOException;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.PosixFileAttributeView;
-import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.annotation.PreDestroy;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.instance.workspace.InstanceWorkspaceLayout;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCompositeCache;
+import net.spookly.kodama.nodeagent.template.cache.TemplateStackEntry;
+import net.spookly.kodama.nodeagent.trace.PrepareTrace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -25,6 +37,38 @@ import org.springframework.stereotype.Component;
 public class TemplateLayerMergeService {
 
     private static final Logger logger = LoggerFactory.getLogger(TemplateLayerMergeService.class);
+    private static final int WRITE_BATCH_SIZE = 256;
+    private static final String COMPOSITE_TEMPLATE_ID = "composite";
+
+    private final TemplateMergeStrategy strategy;
+    private final List<PathMatcher> immutableMatchers;
+    private final AtomicBoolean reflinkUnavailable = new AtomicBoolean();
+    private final AtomicBoolean hardlinkFallbackLogged = new AtomicBoolean();
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final TemplateCompositeCache compositeCache;
+    private final InstanceWorkspaceLayout workspaceLayout;
+
+    public TemplateLayerMergeService(
+            NodeConfig config,
+            TemplateCompositeCache compositeCache,
+            InstanceWorkspaceLayout workspaceLayout
+    ) {
+        NodeConfig.TemplateMerge settings = Objects.requireNonNull(config, "config").getTemplateMerge();
+        this.compositeCache = Objects.requireNonNull(compositeCache, "compositeCache");
+        this.workspaceLayout = Objects.requireNonNull(workspaceLayout, "workspaceLayout");
+        this.strategy = settings.getStrategy() == null ? TemplateMergeStrategy.COPY : settings.getStrategy();
+        this.immutableMatchers = compileMatchers(settings.getImmutablePatterns());
+        this.parallelism = Math.max(1, settings.getParallelism());
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new MergeThreadFactory()) : null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
 
     public void mergeLayers(String instanceId, Path mergedDir, List<TemplateLayerSource> layers) {
         String normalizedInstanceId = requireValue("instanceId", instanceId);
@@ -33,29 +77,104 @@ public class TemplateLayerMergeService {
 
         resetDirectory(targetDir, "merged workspace");
         logger.info(
-                "Merging template layers into workspace. instanceId={} layers={} path={}",
+                "Merging template layers into workspace. instanceId={} layers={} strategy={} parallelism={} path={}",
                 normalizedInstanceId,
                 orderedLayers.size(),
+                strategy,
+                parallelism,
                 targetDir
         );
 
-        for (TemplateLayerSource layer : orderedLayers) {
-            logger.info(
-                    "Applying template layer orderIndex={} templateId={} version={}",
-                    layer.orderIndex(),
-                    layer.templateId(),
-                    layer.version()
-            );
-            mergeLayerContents(layer, targetDir);
-        }
+        long startedAt = System.nanoTime();
+        // Recorded before the merge reads the cache so the evictor skips these versions while they are merged. The
+        // caller populated them earlier, so an eviction in between still fails the merge and the prepare is retried.
+        recordTemplateLayers(normalizedInstanceId, orderedLayers);
+        List<TemplateStackEntry> stack = compositeCache.isEnabled() ? toStack(orderedLayers) : null;
+        TemplateMergePlan plan = stack == null
+                ? merge(orderedLayers, targetDir)
+                : mergeFromComposite(normalizedInstanceId, stack, orderedLayers, targetDir);
+        PrepareTrace.record(PrepareTrace.PHASE_MERGE, System.nanoTime() - startedAt);
 
         logger.info(
-                "Template merge complete. instanceId={} layersApplied={}",
+                "Template merge complete. instanceId={} layersApplied={} filesWritten={}",
                 normalizedInstanceId,
-                orderedLayers.size()
+                orderedLayers.size(),
+                plan.fileCount()
         );
     }
 
+    private TemplateMergePlan mergeFromComposite(
+            String instanceId,
+            List<TemplateStackEntry> stack,
+            List<TemplateLayerSource> orderedLayers,
+            Path targetDir
+    ) {
+        String stackKey = compositeCache.stackKey(stack);
+        Optional<Path> cached = compositeCache.findComposite(stackKey);
+        Path compositeContents = cached.orElseGet(() -> buildComposite(stackKey, stack, orderedLayers));
+        try {
+            TemplateMergePlan plan = merge(
+                    List.of(new TemplateLayerSource(COMPOSITE_TEMPLATE_ID, stackKey, 0, compositeContents)),
+                    targetDir
+            );
+            logger.info(
+                    "Template composite materialized. instanceId={} stackKey={} cacheHit={}",
+                    instanceId,
+                    stackKey,
+                    cached.isPresent()
+            );
+            return plan;
+        } catch (TemplateLayerMergeException ex) {
+            // The composite can be evicted or purged while it is being read; merge the layers directly instead.
+            logger.warn("Template composite unusable, merging layers directly. instanceId={} stackKey={}", instanceId, stackKey, ex);
+            resetDirectory(targetDir, "merged workspace");
+            return merge(orderedLayers, targetDir);
+        }
+    }
+
+    private Path buildComposite(String stackKey, List<TemplateStackEntry> stack, List<TemplateLayerSource> orderedLayers) {
+        Path stagingDir = compositeCache.createStagingDir();
+        try {
+            merge(orderedLayers, compositeCache.stagingContentsDir(stagingDir));
+        } catch (RuntimeException ex) {
+            compositeCache.discardStagingDir(stagingDir);
+            throw ex;
+        }
+        return compositeCache.commitComposite(stackKey, stack, stagingDir);
+    }
+
+    private void recordTemplateLayers(String instanceId, List<TemplateLayerSource> orderedLayers) {
+        Path layersFile = workspaceLayout.resolveWorkspace(instanceId).templateLayersFile();
+        List<String> lines = new ArrayList<>(orderedLayers.size());
+        for (TemplateLayerSource layer : orderedLayers) {
+            String checksum = layer.checksum() == null ? "" : layer.checksum().trim();
+            lines.add(layer.templateId().trim() + "\t" + layer.version().trim() + "\t" + checksum);
+        }
+        try {
+            Files.createDirectories(layersFile.getParent());
+            Files.write(layersFile, lines, StandardCharsets.UTF_8);
+        } catch (IOException ex) {
+            logger.warn("Failed to record template layers for workspace. instanceId={} path={}", instanceId, layersFile, ex);
+        }
+    }
+
+    private List<TemplateStackEntry> toStack(List<TemplateLayerSource> orderedLayers) {
+        List<TemplateStackEntry> stack = new ArrayList<>(orderedLayers.size());
+        for (TemplateLayerSource layer : orderedLayers) {
+            if (layer.checksum() == null || layer.checksum().isBlank()) {
+                return null;
+            }
+            stack.add(new TemplateStackEntry(layer.templateId().trim(), layer.version().trim(), layer.checksum()));
+        }
+        return stack;
+    }
+
+    private TemplateMergePlan merge(List<TemplateLayerSource> orderedLayers, Path targetDir) {
+        TemplateMergePlan plan = buildPlan(orderedLayers);
+        writePlan(plan, orderedLayers, targetDir);
+        return plan;
+    }
+
     private List<TemplateLayerSource> normalizeLayers(List<TemplateLayerSource> layers) {
         if (layers == null || layers.isEmpty()) {
             throw new TemplateLayerMergeException("template layers are required");
@@ -81,19 +200,148 @@ public class TemplateLayerMergeService {
         return ordered;
     }
 
-    private void mergeLayerContents(TemplateLayerSource layer, Path targetDir) {
-        Path sourceDir = layer.contentsDir().toAbsolutePath().normalize();
+    private TemplateMergePlan buildPlan(List<TemplateLayerSource> orderedLayers) {
+        List<Callable<TemplateMergePlan.LayerScan>> scans = new ArrayList<>(orderedLayers.size());
+        for (TemplateLayerSource layer : orderedLayers) {
+            logger.info(
+                    "Applying template layer orderIndex={} templateId={} version={}",
+                    layer.orderIndex(),
+                    layer.templateId(),
+                    layer.version()
+            );
+            Path sourceDir = layer.contentsDir().toAbsolutePath().normalize();
+            scans.add(() -> {
+                try {
+                    return TemplateMergePlan.scan(sourceDir);
+                } catch (IOException ex) {
+                    throw layerFailure(layer, ex);
+                }
+            });
+        }
+        TemplateMergePlan plan = new TemplateMergePlan();
+        for (TemplateMergePlan.LayerScan scan : runAll(scans)) {
+            plan.apply(scan);
+        }
+        return plan;
+    }
+
+    private void writePlan(TemplateMergePlan plan, List<TemplateLayerSource> orderedLayers, Path targetDir) {
         try {
-            Files.walkFileTree(sourceDir, new MergeFileVisitor(sourceDir, targetDir));
+            for (TemplateMergePlan.PlanEntry directory : plan.directories()) {
+                Files.createDirectories(resolveTarget(targetDir, directory.key()));
+            }
         } catch (IOException ex) {
-            throw new TemplateLayerMergeException(
-                    "Failed to merge template contents for templateId=" + layer.templateId()
-                            + " version=" + layer.version(),
-                    ex
-            );
+            throw new TemplateLayerMergeException("Failed to create merged directory tree at " + targetDir, ex);
+        }
+
+        // The tree already exists, so every batch is independent and can be written concurrently.
+        List<Callable<Void>> batches = new ArrayList<>();
+        List<List<TemplateMergePlan.PlanEntry>> filesByLayer = plan.filesByLayer();
+        for (int position = 0; position < orderedLayers.size(); position++) {
+            List<TemplateMergePlan.PlanEntry> files = filesByLayer.get(position);
+            TemplateLayerSource layer = orderedLayers.get(position);
+            Path sourceRoot = plan.layerRoots().get(position);
+            for (int start = 0; start < files.size(); start += WRITE_BATCH_SIZE) {
+                List<TemplateMergePlan.PlanEntry> batch = files.subList(start, Math.min(files.size(), start + WRITE_BATCH_SIZE));
+                batches.add(() -> {
+                    writeBatch(layer, sourceRoot, targetDir, batch);
+                    return null;
+                });
+            }
+        }
+        runAll(batches);
+
+        // Directory permissions may revoke write access, so they are applied once every file has landed.
+        try {
+            for (TemplateMergePlan.PlanEntry directory : plan.directoriesDeepestFirst()) {
+                TemplateFileWriter.copyPermissions(directory.source(), resolveTarget(targetDir, directory.key()));
+            }
+        } catch (IOException ex) {
+            throw new TemplateLayerMergeException("Failed to apply directory permissions at " + targetDir, ex);
+        }
+    }
+
+    private void writeBatch(
+            TemplateLayerSource layer,
+            Path sourceRoot,
+            Path targetDir,
+            List<TemplateMergePlan.PlanEntry> files
+    ) {
+        TemplateFileWriter writer = new TemplateFileWriter(
+                strategy,
+                immutableMatchers,
+                sourceRoot,
+                targetDir,
+                reflinkUnavailable,
+                hardlinkFallbackLogged
+        );
+        try {
+            for (TemplateMergePlan.PlanEntry file : files) {
+                writer.writeFile(file.source(), resolveTarget(targetDir, file.key()));
+            }
+            writer.flush();
+        } catch (IOException ex) {
+            throw layerFailure(layer, ex);
+        }
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (executor == null || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        List<Future<T>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TemplateLayerMergeException("Interrupted while merging template layers", ex);
+        }
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new TemplateLayerMergeException("Interrupted while merging template layers", ex);
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new TemplateLayerMergeException("Failed to merge template layers", ex.getCause());
+            }
+        }
+        return results;
+    }
+
+    private <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new TemplateLayerMergeException("Failed to merge template layers", ex);
         }
     }
 
+    private Path resolveTarget(Path targetRoot, String relativeKey) {
+        Path target = targetRoot.resolve(relativeKey).normalize();
+        if (!target.startsWith(targetRoot)) {
+            throw new TemplateLayerMergeException("Template entry escapes workspace: " + relativeKey);
+        }
+        return target;
+    }
+
+    private TemplateLayerMergeException layerFailure(TemplateLayerSource layer, IOException ex) {
+        return new TemplateLayerMergeException(
+                "Failed to merge template contents for templateId=" + layer.templateId()
+                        + " version=" + layer.version(),
+                ex
+        );
+    }
+
     private void resetDirectory(Path dir, String label) {
         try {
             if (Files.exists(dir)) {
@@ -123,6 +371,19 @@ public class TemplateLayerMergeService {
         }
     }
 
+    private List<PathMatcher> compileMatchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns == null) {
+            return matchers;
+        }
+        for (String pattern : patterns) {
+            if (pattern != null && !pattern.isBlank()) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+            }
+        }
+        return matchers;
+    }
+
     private String requireValue(String label, String value) {
         if (value == null || value.isBlank()) {
             throw new TemplateLayerMergeException(label + " is required");
@@ -130,94 +391,15 @@ public class TemplateLayerMergeService {
         return value.trim();
     }
 
-    private static class MergeFileVisitor extends SimpleFileVisitor<Path> {
-
-        private final Path sourceRoot;
-        private final Path targetRoot;
+    private static final class MergeThreadFactory implements ThreadFactory {
 
-        private MergeFileVisitor(Path sourceRoot, Path targetRoot) {
-            this.sourceRoot = sourceRoot;
-            this.targetRoot = targetRoot;
-        }
-
-        @Override
-        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-            Path targetDir = resolveTarget(dir);
-            ensureDirectory(targetDir);
-            return FileVisitResult.CONTINUE;
-        }
+        private final AtomicInteger counter = new AtomicInteger();
 
         @Override
-        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-            Path targetFile = resolveTarget(file);
-            Files.createDirectories(targetFile.getParent());
-            ensureFileTarget(targetFile);
-            Files.copy(file, targetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
-            copyPermissions(file, targetFile);
-            return FileVisitResult.CONTINUE;
-        }
-
-        @Override
-        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-            if (exc != null) {
-                throw exc;
-            }
-            Path targetDir = resolveTarget(dir);
-            copyPermissions(dir, targetDir);
-            return FileVisitResult.CONTINUE;
-        }
-
-        private Path resolveTarget(Path sourcePath) {
-            Path relative = sourceRoot.relativize(sourcePath);
-            Path target = targetRoot.resolve(relative).normalize();
-            if (!target.startsWith(targetRoot)) {
-                throw new TemplateLayerMergeException("Template entry escapes workspace: " + relative);
-            }
-            return target;
-        }
-
-        private void ensureDirectory(Path targetDir) throws IOException {
-            if (Files.exists(targetDir) && !Files.isDirectory(targetDir)) {
-                Files.delete(targetDir);
-            }
-            Files.createDirectories(targetDir);
-        }
-
-        private void ensureFileTarget(Path targetFile) throws IOException {
-            if (Files.exists(targetFile) && Files.isDirectory(targetFile)) {
-                deleteRecursively(targetFile);
-            }
-        }
-
-        private void deleteRecursively(Path root) throws IOException {
-            if (!Files.exists(root)) {
-                return;
-            }
-            try (var stream = Files.walk(root)) {
-                stream.sorted(Comparator.reverseOrder())
-                        .forEach(path -> {
-                            try {
-                                Files.deleteIfExists(path);
-                            } catch (IOException ex) {
-                                throw new UncheckedIOException(ex);
-                            }
-                        });
-            } catch (UncheckedIOException ex) {
-                throw ex.getCause();
-            }
-        }
-
-        private void copyPermissions(Path source, Path target) throws IOException {
-            PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
-            PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
-            if (sourceView != null && targetView != null) {
-                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(source);
-                Files.setPosixFilePermissions(target, permissions);
-                return;
-            }
-            if (Files.isExecutable(source)) {
-                target.toFile().setExecutable(true, false);
-            }
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "template-merge-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
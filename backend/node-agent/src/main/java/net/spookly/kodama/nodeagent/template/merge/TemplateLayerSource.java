@@ -2,10 +2,19 @@ package net.spookly.kodama.nodeagent.template.merge;
 
 import java.nio.file.Path;
 
+/**
+ * A cached template version to merge. {@code checksum} identifies the cached contents and is required for the
+ * merged stack to be reused from the composite cache; layers without it are always merged from scratch.
+ */
 public record TemplateLayerSource(
         String templateId,
         String version,
         int orderIndex,
-        Path contentsDir
+        Path contentsDir,
+        String checksum
 ) {
+
+    public TemplateLayerSource(String templateId, String version, int orderIndex, Path contentsDir) {
+        this(templateId, version, orderIndex, contentsDir, null);
+    }
 }
@@ -0,0 +1,150 @@
+package net.spookly.kodama.nodeagent.template.merge;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Resolves the final owner of every path across an ordered layer stack before anything is written.
+ * Later layers win; a file replaces an earlier directory together with everything below it, and a directory
+ * replaces an earlier file. Directory entries keep the attributes of the last layer that contained them.
+ */
+final class TemplateMergePlan {
+
+    private final List<Path> layerRoots = new ArrayList<>();
+    private final NavigableMap<String, PlanEntry> entries = new TreeMap<>();
+
+    /**
+     * Walks a layer's contents into a scan that can be applied to a plan. Scans are independent of each other
+     * and may run concurrently.
+     */
+    static LayerScan scan(Path sourceRoot) throws IOException {
+        List<ScannedEntry> scanned = new ArrayList<>();
+        Files.walkFileTree(sourceRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                scanned.add(new ScannedEntry(toKey(sourceRoot.relativize(dir)), dir, true));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                scanned.add(new ScannedEntry(toKey(sourceRoot.relativize(file)), file, false));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return new LayerScan(sourceRoot, scanned);
+    }
+
+    /**
+     * Applies a layer scan on top of the layers applied so far. Scans must be applied in layer order.
+     */
+    void apply(LayerScan scan) {
+        int layerPosition = layerRoots.size();
+        layerRoots.add(scan.sourceRoot());
+        for (ScannedEntry entry : scan.entries()) {
+            PlanEntry existing = entries.get(entry.key());
+            if (!entry.directory() && existing != null && existing.directory()) {
+                entries.subMap(entry.key() + "/", true, entry.key() + "0", false).clear();
+            }
+            entries.put(entry.key(), new PlanEntry(entry.key(), entry.source(), entry.directory(), layerPosition));
+        }
+    }
+
+    List<Path> layerRoots() {
+        return layerRoots;
+    }
+
+    /**
+     * Directories in creation order (parents before children).
+     */
+    List<PlanEntry> directories() {
+        List<PlanEntry> directories = new ArrayList<>();
+        for (PlanEntry entry : entries.values()) {
+            if (entry.directory()) {
+                directories.add(entry);
+            }
+        }
+        return directories;
+    }
+
+    /**
+     * Directories in permission order (children before parents), so restrictive modes are applied last.
+     */
+    List<PlanEntry> directoriesDeepestFirst() {
+        List<PlanEntry> directories = directories();
+        directories.sort(Comparator.comparingInt(PlanEntry::depth).reversed());
+        return directories;
+    }
+
+    /**
+     * Winning files grouped by the layer that owns them, in layer order.
+     */
+    List<List<PlanEntry>> filesByLayer() {
+        List<List<PlanEntry>> grouped = new ArrayList<>(layerRoots.size());
+        for (int i = 0; i < layerRoots.size(); i++) {
+            grouped.add(new ArrayList<>());
+        }
+        for (PlanEntry entry : entries.values()) {
+            if (!entry.directory()) {
+                grouped.get(entry.layerPosition()).add(entry);
+            }
+        }
+        return grouped;
+    }
+
+    int fileCount() {
+        int count = 0;
+        for (PlanEntry entry : entries.values()) {
+            if (!entry.directory()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String toKey(Path relative) {
+        StringBuilder key = new StringBuilder();
+        for (Path name : relative) {
+            String segment = name.toString();
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (!key.isEmpty()) {
+                key.append('/');
+            }
+            key.append(segment);
+        }
+        return key.toString();
+    }
+
+    record LayerScan(Path sourceRoot, List<ScannedEntry> entries) {
+    }
+
+    record ScannedEntry(String key, Path source, boolean directory) {
+    }
+
+    record PlanEntry(String key, Path source, boolean directory, int layerPosition) {
+
+        int depth() {
+            if (key.isEmpty()) {
+                return 0;
+            }
+            int depth = 1;
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) == '/') {
+                    depth++;
+                }
+            }
+            return depth;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.spookly.kodama.nodeagent.template.merge;
+
+public enum TemplateMergeStrategy {
+    /**
+     * Copy every file into the workspace.
+     */
+    COPY,
+    /**
+     * Hardlink every cached file into the workspace. The workspace file and the cached file are the same inode, so
+     * anything the instance writes in place (world regions, player data, plugin databases) silently changes the
+     * cached version, and with the object store enabled every other version linked to the same object. Cached files
+     * are not re-verified on lookup. Only use this for templates whose files are never written in place.
+     */
+    HARDLINK,
+    /**
+     * Clone files copy-on-write where the filesystem supports it, otherwise copy them.
+     */
+    REFLINK,
+    /**
+     * Hardlink only files matching the configured immutable patterns and copy everything else. Unlike
+     * {@link #HARDLINK}, a file that the instance rewrites in place is a private copy unless it was explicitly
+     * declared immutable, so unexpected writers cannot corrupt the cache.
+     */
+    HARDLINK_IMMUTABLE
+}
@@ -1,6 +1,40 @@
 package net.spookly.kodama.nodeagent.template.storage;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 public interface TemplateStorageClient {
 
     TemplateTarball getTemplateTarball(String templateId, String version, String s3Key);
+
+    /**
+     * Whether {@link #downloadTemplateTarball(String, String, String, Path)} should be preferred over streaming
+     * the tarball through {@link #getTemplateTarball(String, String, String)}.
+     */
+    default boolean isRangedDownloadEnabled() {
+        return false;
+    }
+
+    /**
+     * Downloads the tarball directly into {@code targetFile} and returns the object length reported by storage.
+     * The default streams {@link #getTemplateTarball(String, String, String)} into the file and returns the number
+     * of bytes copied when storage reports no length; clients with parallel downloads override it.
+     */
+    default long downloadTemplateTarball(String templateId, String version, String s3Key, Path targetFile) {
+        try (TemplateTarball tarball = getTemplateTarball(templateId, version, s3Key);
+             OutputStream outputStream = Files.newOutputStream(
+                     targetFile,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING
+             )) {
+            long copied = tarball.getInputStream().transferTo(outputStream);
+            return tarball.getContentLength() > 0 ? tarball.getContentLength() : copied;
+        } catch (IOException ex) {
+            throw new TemplateStorageException("Failed to write template tarball " + s3Key + " to " + targetFile, ex);
+        }
+    }
 }
@@ -0,0 +1,17 @@
+package net.spookly.kodama.nodeagent.template.storage.s3;
+
+public record S3RangedDownloadSettings(boolean enabled, long partSizeBytes, int concurrency) {
+
+    public S3RangedDownloadSettings {
+        if (enabled && partSizeBytes <= 0) {
+            throw new IllegalArgumentException("partSizeBytes must be greater than 0");
+        }
+        if (enabled && concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1");
+        }
+    }
+
+    public static S3RangedDownloadSettings disabled() {
+        return new S3RangedDownloadSettings(false, 0, 0);
+    }
+}
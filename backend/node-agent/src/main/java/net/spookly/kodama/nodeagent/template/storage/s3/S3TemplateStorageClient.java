@@ -1,60 +1,219 @@
 package net.spookly.kodama.nodeagent.template.storage.s3;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
 import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
 import io.minio.errors.ErrorResponseException;
 import io.minio.messages.ErrorResponse;
-import lombok.RequiredArgsConstructor;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageClient;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageObjectNotFoundException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageTimeoutException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateTarball;
+import okhttp3.Headers;
 import okhttp3.Response;
 
-@RequiredArgsConstructor
 public class S3TemplateStorageClient implements TemplateStorageClient {
 
+    private static final int COPY_BUFFER_SIZE = 256 * 1024;
+
     private final MinioClient minioClient;
     private final String bucket;
+    private final S3RangedDownloadSettings rangedDownload;
+
+    public S3TemplateStorageClient(MinioClient minioClient, String bucket) {
+        this(minioClient, bucket, S3RangedDownloadSettings.disabled());
+    }
+
+    public S3TemplateStorageClient(MinioClient minioClient, String bucket, S3RangedDownloadSettings rangedDownload) {
+        this.minioClient = minioClient;
+        this.bucket = bucket;
+        this.rangedDownload = rangedDownload == null ? S3RangedDownloadSettings.disabled() : rangedDownload;
+    }
 
     @Override
     public TemplateTarball getTemplateTarball(String templateId, String version, String s3Key) {
-        if (s3Key == null || s3Key.isBlank()) {
-            throw new IllegalArgumentException("s3Key is required to fetch a template tarball");
-        }
+        requireKey(s3Key);
         try {
             GetObjectArgs request = GetObjectArgs.builder()
                     .bucket(bucket)
                     .object(s3Key)
                     .build();
-            return new TemplateTarball(templateId, version, s3Key, -1, minioClient.getObject(request));
-        } catch (ErrorResponseException ex) {
-            if (isNotFound(ex)) {
-                throw new TemplateStorageObjectNotFoundException(
-                        "Template tarball not found in S3 bucket " + bucket + " with key " + s3Key,
-                        ex
-                );
+            GetObjectResponse response = minioClient.getObject(request);
+            return new TemplateTarball(templateId, version, s3Key, resolveContentLength(response), response);
+        } catch (Exception ex) {
+            throw mapException(ex, s3Key);
+        }
+    }
+
+    @Override
+    public boolean isRangedDownloadEnabled() {
+        return rangedDownload.enabled();
+    }
+
+    /**
+     * Stats the object and fetches it as concurrent byte ranges, writing each range at its offset in
+     * {@code targetFile}. Objects no larger than one part are fetched with a single GET.
+     */
+    @Override
+    public long downloadTemplateTarball(String templateId, String version, String s3Key, Path targetFile) {
+        requireKey(s3Key);
+        long size = statObjectSize(s3Key);
+        long partSize = rangedDownload.partSizeBytes();
+        int partCount = (int) Math.max(1, (size + partSize - 1) / partSize);
+        int threads = Math.min(partCount, rangedDownload.concurrency());
+
+        try (FileChannel channel = FileChannel.open(
+                targetFile,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING
+        )) {
+            if (partCount == 1) {
+                long written = downloadRange(s3Key, channel, 0, size);
+                verifyLength(s3Key, size, written);
+                return size;
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads, new RangeThreadFactory());
+            try {
+                List<Future<Long>> parts = new ArrayList<>(partCount);
+                for (int part = 0; part < partCount; part++) {
+                    long offset = part * partSize;
+                    long length = Math.min(partSize, size - offset);
+                    parts.add(executor.submit(() -> downloadRange(s3Key, channel, offset, length)));
+                }
+                long written = 0;
+                for (Future<Long> part : parts) {
+                    written += awaitPart(part, s3Key);
+                }
+                verifyLength(s3Key, size, written);
+                return size;
+            } finally {
+                executor.shutdownNow();
             }
+        } catch (IOException ex) {
             throw new TemplateStorageException(
-                    "Failed to fetch template tarball from S3 bucket " + bucket + " with key " + s3Key,
+                    "Failed to write template tarball from S3 bucket " + bucket + " with key " + s3Key + " to " + targetFile,
                     ex
             );
+        }
+    }
+
+    private long statObjectSize(String s3Key) {
+        try {
+            StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(s3Key)
+                    .build());
+            return stat.size();
         } catch (Exception ex) {
-            if (isTimeout(ex)) {
-                throw new TemplateStorageTimeoutException(
-                        "Timed out fetching template tarball from S3 bucket " + bucket + " with key " + s3Key,
-                        ex
-                );
+            throw mapException(ex, s3Key);
+        }
+    }
+
+    private long downloadRange(String s3Key, FileChannel channel, long offset, long length) {
+        GetObjectArgs.Builder request = GetObjectArgs.builder()
+                .bucket(bucket)
+                .object(s3Key);
+        if (length > 0) {
+            request.offset(offset).length(length);
+        }
+        try (InputStream inputStream = minioClient.getObject(request.build())) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            long position = offset;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    position += channel.write(chunk, position);
+                }
             }
+            return position - offset;
+        } catch (Exception ex) {
+            throw mapException(ex, s3Key);
+        }
+    }
+
+    private long awaitPart(Future<Long> part, String s3Key) {
+        try {
+            return part.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new TemplateStorageException(
-                    "Failed to fetch template tarball from S3 bucket " + bucket + " with key " + s3Key,
+                    "Interrupted fetching template tarball from S3 bucket " + bucket + " with key " + s3Key,
+                    ex
+            );
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof TemplateStorageException storageException) {
+                throw storageException;
+            }
+            throw mapException(ex.getCause(), s3Key);
+        }
+    }
+
+    private void verifyLength(String s3Key, long expected, long actual) {
+        if (expected != actual) {
+            throw new TemplateStorageException(
+                    "Template tarball length mismatch for key " + s3Key + " expected=" + expected + " actual=" + actual
+            );
+        }
+    }
+
+    private long resolveContentLength(GetObjectResponse response) {
+        Headers headers = response == null ? null : response.headers();
+        String contentLength = headers == null ? null : headers.get("Content-Length");
+        if (contentLength == null || contentLength.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentLength.trim());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private void requireKey(String s3Key) {
+        if (s3Key == null || s3Key.isBlank()) {
+            throw new IllegalArgumentException("s3Key is required to fetch a template tarball");
+        }
+    }
+
+    private TemplateStorageException mapException(Throwable ex, String s3Key) {
+        if (ex instanceof ErrorResponseException errorResponseException && isNotFound(errorResponseException)) {
+            return new TemplateStorageObjectNotFoundException(
+                    "Template tarball not found in S3 bucket " + bucket + " with key " + s3Key,
                     ex
             );
         }
+        if (!(ex instanceof ErrorResponseException) && isTimeout(ex)) {
+            return new TemplateStorageTimeoutException(
+                    "Timed out fetching template tarball from S3 bucket " + bucket + " with key " + s3Key,
+                    ex
+            );
+        }
+        return new TemplateStorageException(
+                "Failed to fetch template tarball from S3 bucket " + bucket + " with key " + s3Key,
+                ex
+        );
     }
 
     private boolean isNotFound(ErrorResponseException ex) {
@@ -86,4 +245,15 @@ public class S3TemplateStorageClient implements TemplateStorageClient {
         return false;
     }
 
+    private static final class RangeThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "s3-ranged-download-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
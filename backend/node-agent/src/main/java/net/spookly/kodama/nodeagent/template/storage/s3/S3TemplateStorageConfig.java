@@ -25,7 +25,12 @@ public class S3TemplateStorageConfig {
         NodeConfig.S3 s3 = config.getS3();
         validateS3Config(s3);
         MinioClient minioClient = buildMinioClient(s3);
-        return new S3TemplateStorageClient(minioClient, s3.getBucket());
+        S3RangedDownloadSettings rangedDownload = new S3RangedDownloadSettings(
+                s3.isRangedDownloadEnabled(),
+                s3.getRangedDownloadPartSizeBytes(),
+                s3.getRangedDownloadConcurrency()
+        );
+        return new S3TemplateStorageClient(minioClient, s3.getBucket(), rangedDownload);
     }
 
     private MinioClient buildMinioClient(NodeConfig.S3 s3) {
@@ -62,6 +67,14 @@ public class S3TemplateStorageConfig {
         addIfBlank(errors, s3.getBucket(), "node-agent.s3.bucket is required");
         addIfBlank(errors, s3.getAccessKey(), "node-agent.s3.access-key is required");
         addIfBlank(errors, s3.getSecretKey(), "node-agent.s3.secret-key is required");
+        if (s3.isRangedDownloadEnabled()) {
+            if (s3.getRangedDownloadPartSizeBytes() <= 0) {
+                errors.add("node-agent.s3.ranged-download-part-size-bytes must be greater than 0");
+            }
+            if (s3.getRangedDownloadConcurrency() < 1) {
+                errors.add("node-agent.s3.ranged-download-concurrency must be at least 1");
+            }
+        }
         if (!errors.isEmpty()) {
             throw new IllegalStateException("Invalid S3 configuration:\n- " + String.join("\n- ", errors));
         }
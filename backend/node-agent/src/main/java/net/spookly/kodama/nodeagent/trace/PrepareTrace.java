@@ -0,0 +1,129 @@
+package net.spookly.kodama.nodeagent.trace;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+
+/**
+ * Phase timings of one instance prepare, bound to the thread running it. The prepare entry point opens a trace with
+ * the ID the Brain sent in the {@value #TRACE_ID_HEADER} header; the template cache and merge code add phase
+ * durations through {@link #record(String, long)} without knowing whether a trace is open. The collected
+ * {@link #phases()} are reported back with the {@code /prepared} callback.
+ *
+ * <p>Work started on other threads (prefetches, background population) is not attributed to the trace.
+ */
+public final class PrepareTrace implements AutoCloseable {
+
+    public static final String TRACE_ID_HEADER = "X-Kodama-Trace-Id";
+    public static final String MDC_KEY = "traceId";
+
+    public static final String PHASE_CACHE_LOOKUP = "cache-lookup";
+    public static final String PHASE_DOWNLOAD = "download";
+    public static final String PHASE_EXTRACT = "extract";
+    public static final String PHASE_MERGE = "merge";
+
+    private static final ThreadLocal<PrepareTrace> CURRENT = new ThreadLocal<>();
+
+    private final String traceId;
+    private final long startedAt;
+    private final PrepareTrace previous;
+    private final String previousMdcTraceId;
+    private final Map<String, PhaseTotals> phases = new LinkedHashMap<>();
+    private boolean closed;
+
+    private PrepareTrace(String traceId, PrepareTrace previous, String previousMdcTraceId) {
+        this.traceId = traceId;
+        this.startedAt = System.nanoTime();
+        this.previous = previous;
+        this.previousMdcTraceId = previousMdcTraceId;
+    }
+
+    /**
+     * Opens a trace on the current thread. Use with try-with-resources; closing restores whatever trace was open
+     * before.
+     */
+    public static PrepareTrace begin(String traceId) {
+        String normalized = Objects.requireNonNull(traceId, "traceId").trim();
+        if (normalized.isEmpty()) {
+            throw new IllegalArgumentException("traceId is required");
+        }
+        PrepareTrace trace = new PrepareTrace(normalized, CURRENT.get(), MDC.get(MDC_KEY));
+        CURRENT.set(trace);
+        MDC.put(MDC_KEY, normalized);
+        return trace;
+    }
+
+    public static Optional<PrepareTrace> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Adds {@code durationNanos} to {@code phase} of the trace open on the current thread. Does nothing when no
+     * trace is open.
+     */
+    public static void record(String phase, long durationNanos) {
+        PrepareTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(phase, durationNanos);
+        }
+    }
+
+    public String traceId() {
+        return traceId;
+    }
+
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * Returns the recorded phases in the order they were first seen, with summed durations.
+     */
+    public synchronized List<PrepareTracePhase> phases() {
+        return phases.entrySet().stream()
+                .map(entry -> new PrepareTracePhase(
+                        entry.getKey(),
+                        TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos),
+                        entry.getValue().count
+                ))
+                .toList();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (CURRENT.get() != this) {
+            return;
+        }
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+        if (previousMdcTraceId == null) {
+            MDC.remove(MDC_KEY);
+        } else {
+            MDC.put(MDC_KEY, previousMdcTraceId);
+        }
+    }
+
+    private synchronized void add(String phase, long durationNanos) {
+        PhaseTotals totals = phases.computeIfAbsent(Objects.requireNonNull(phase, "phase"), key -> new PhaseTotals());
+        totals.nanos += Math.max(0, durationNanos);
+        totals.count++;
+    }
+
+    private static final class PhaseTotals {
+
+        private long nanos;
+        private int count;
+    }
+}
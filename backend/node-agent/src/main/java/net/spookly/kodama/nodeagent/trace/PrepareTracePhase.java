@@ -0,0 +1,7 @@
+package net.spookly.kodama.nodeagent.trace;
+
+/**
+ * Summed time of one prepare phase; {@code count} is how often the phase ran, e.g. one download per layer.
+ */
+public record PrepareTracePhase(String name, long durationMillis, int count) {
+}
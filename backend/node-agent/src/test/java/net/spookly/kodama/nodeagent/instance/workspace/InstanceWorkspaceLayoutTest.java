@@ -29,6 +29,7 @@ class InstanceWorkspaceLayoutTest {
         assertThat(paths.mergedDir()).isEqualTo(expectedInstanceRoot.resolve("merged"));
         assertThat(paths.logsDir()).isEqualTo(expectedInstanceRoot.resolve("logs"));
         assertThat(paths.tempDir()).isEqualTo(expectedInstanceRoot.resolve("temp"));
+        assertThat(paths.templateLayersFile()).isEqualTo(expectedInstanceRoot.resolve("template-layers.tsv"));
     }
 
     @Test
@@ -0,0 +1,222 @@
+package net.spookly.kodama.nodeagent.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.heartbeat.NodeHeartbeatRequest;
+import net.spookly.kodama.nodeagent.heartbeat.NodeStatus;
+import net.spookly.kodama.nodeagent.registration.NodeAuthTokenReader;
+import net.spookly.kodama.nodeagent.registration.NodeRegistrationState;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BrainCommandStreamClientTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> handled = new CopyOnWriteArrayList<>();
+    private FakeWebSocket socket;
+    private BrainCommandStreamClient client;
+
+    @BeforeEach
+    void setUp() {
+        NodeConfig config = new NodeConfig();
+        NodeStreamCommandHandler start = new NodeStreamCommandHandler() {
+            @Override
+            public String action() {
+                return "start";
+            }
+
+            @Override
+            public void handle(UUID instanceId, JsonNode payload, String traceId) {
+                if (payload == null) {
+                    throw new IllegalArgumentException("payload is required");
+                }
+                handled.add(instanceId + ":" + payload.get("name").asText() + ":" + traceId);
+            }
+        };
+        client = new BrainCommandStreamClient(
+                config,
+                new NodeRegistrationState(),
+                new NodeAuthTokenReader(config),
+                objectMapper,
+                List.of(start)
+        );
+        socket = new FakeWebSocket();
+        client.attach(socket);
+    }
+
+    @Test
+    void commandIsHandledAndAcknowledged() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+        client.onMessage("{\"type\":\"COMMAND\",\"id\":\"c-1\",\"instanceId\":\"" + instanceId
+                + "\",\"action\":\"start\",\"traceId\":\"t-1\",\"payload\":{\"name\":\"lobby\"}}");
+
+        NodeStreamMessage ack = socket.nextFrame();
+        assertThat(ack.getType()).isEqualTo(NodeStreamMessageType.ACK);
+        assertThat(ack.getId()).isEqualTo("c-1");
+        assertThat(ack.getStatus()).isEqualTo(BrainCommandStreamClient.STATUS_OK);
+        assertThat(handled).containsExactly(instanceId + ":lobby:t-1");
+    }
+
+    @Test
+    void rejectedAndUnknownCommandsAreAcknowledgedWithErrors() throws Exception {
+        client.onMessage("{\"type\":\"COMMAND\",\"id\":\"c-2\",\"instanceId\":\"" + UUID.randomUUID()
+                + "\",\"action\":\"start\"}");
+        NodeStreamMessage rejected = socket.nextFrame();
+        assertThat(rejected.getStatus()).isEqualTo(BrainCommandStreamClient.STATUS_BAD_REQUEST);
+        assertThat(rejected.getError()).isEqualTo("payload is required");
+
+        client.onMessage("{\"type\":\"COMMAND\",\"id\":\"c-3\",\"action\":\"explode\"}");
+        NodeStreamMessage unknown = socket.nextFrame();
+        assertThat(unknown.getId()).isEqualTo("c-3");
+        assertThat(unknown.getStatus()).isEqualTo(BrainCommandStreamClient.STATUS_NOT_IMPLEMENTED);
+    }
+
+    @Test
+    void callbackCompletesWhenTheBrainAcknowledges() throws Exception {
+        UUID instanceId = UUID.randomUUID();
+
+        CompletableFuture<Void> result = client.sendCallback(instanceId, "running", null);
+
+        NodeStreamMessage callback = socket.nextFrame();
+        assertThat(callback.getType()).isEqualTo(NodeStreamMessageType.CALLBACK);
+        assertThat(callback.getInstanceId()).isEqualTo(instanceId);
+        assertThat(callback.getEvent()).isEqualTo("running");
+        client.onMessage("{\"type\":\"ACK\",\"id\":\"" + callback.getId() + "\",\"status\":200}");
+        result.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void rejectedCallbackFails() throws Exception {
+        CompletableFuture<Void> result = client.sendCallback(UUID.randomUUID(), "stopped", null);
+
+        NodeStreamMessage callback = socket.nextFrame();
+        client.onMessage("{\"type\":\"ACK\",\"id\":\"" + callback.getId() + "\",\"status\":409,\"error\":\"conflict\"}");
+
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(NodeCommandStreamException.class);
+    }
+
+    @Test
+    void heartbeatIsSentOverTheStreamWhenConnected() throws Exception {
+        NodeHeartbeatRequest request = new NodeHeartbeatRequest();
+        request.setStatus(NodeStatus.ONLINE);
+        request.setUsedSlots(3);
+        socket.autoAcknowledge = true;
+
+        assertThat(client.trySendHeartbeat(request)).isTrue();
+
+        NodeStreamMessage heartbeat = socket.nextFrame();
+        assertThat(heartbeat.getType()).isEqualTo(NodeStreamMessageType.HEARTBEAT);
+        assertThat(heartbeat.getPayload().get("usedSlots").asInt()).isEqualTo(3);
+    }
+
+    @Test
+    void disconnectedClientFallsBack() {
+        BrainCommandStreamClient disconnected = new BrainCommandStreamClient(
+                new NodeConfig(),
+                new NodeRegistrationState(),
+                new NodeAuthTokenReader(new NodeConfig()),
+                objectMapper,
+                List.of()
+        );
+
+        assertThat(disconnected.isConnected()).isFalse();
+        assertThat(disconnected.trySendHeartbeat(new NodeHeartbeatRequest())).isFalse();
+        assertThat(disconnected.sendCallback(UUID.randomUUID(), "running", null).isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    void streamUriUsesWebSocketScheme() {
+        UUID nodeId = UUID.fromString("00000000-0000-0000-0000-000000000001");
+
+        assertThat(BrainCommandStreamClient.buildStreamUri("https://brain.example.com/", nodeId))
+                .isEqualTo(URI.create("wss://brain.example.com/api/nodes/" + nodeId + "/command-stream"));
+        assertThat(BrainCommandStreamClient.buildStreamUri("http://localhost:8080", nodeId))
+                .isEqualTo(URI.create("ws://localhost:8080/api/nodes/" + nodeId + "/command-stream"));
+    }
+
+    private final class FakeWebSocket implements WebSocket {
+
+        private final LinkedBlockingQueue<NodeStreamMessage> frames = new LinkedBlockingQueue<>();
+        private volatile boolean autoAcknowledge;
+
+        NodeStreamMessage nextFrame() throws InterruptedException {
+            NodeStreamMessage frame = frames.poll(5, TimeUnit.SECONDS);
+            assertThat(frame).isNotNull();
+            return frame;
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendText(CharSequence data, boolean last) {
+            try {
+                NodeStreamMessage frame = objectMapper.readValue(data.toString(), NodeStreamMessage.class);
+                frames.add(frame);
+                if (autoAcknowledge && frame.getType() != NodeStreamMessageType.ACK) {
+                    client.onMessage("{\"type\":\"ACK\",\"id\":\"" + frame.getId() + "\",\"status\":200}");
+                }
+            } catch (Exception ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendBinary(ByteBuffer data, boolean last) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPing(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendPong(ByteBuffer message) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public CompletableFuture<WebSocket> sendClose(int statusCode, String reason) {
+            return CompletableFuture.completedFuture(this);
+        }
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public String getSubprotocol() {
+            return "";
+        }
+
+        @Override
+        public boolean isOutputClosed() {
+            return false;
+        }
+
+        @Override
+        public boolean isInputClosed() {
+            return false;
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ReadAheadInputStreamTest {
+
+    @Test
+    void deliversSourceBytesInOrder() throws Exception {
+        byte[] data = new byte[100_000];
+        new Random(7).nextBytes(data);
+
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(new ByteArrayInputStream(data), 4096, 2)) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(data);
+            assertThat(inputStream.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void rethrowsSourceFailureAfterDeliveredBytes() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("connection reset");
+            }
+        };
+        InputStream source = new SequenceInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3}), failing);
+
+        try (ReadAheadInputStream inputStream = new ReadAheadInputStream(source, 2, 4)) {
+            assertThat(inputStream.read()).isEqualTo(1);
+            assertThat(inputStream.read()).isEqualTo(2);
+            assertThatThrownBy(inputStream::readAllBytes)
+                    .isInstanceOf(IOException.class)
+                    .hasMessageContaining("connection reset");
+        }
+    }
+}
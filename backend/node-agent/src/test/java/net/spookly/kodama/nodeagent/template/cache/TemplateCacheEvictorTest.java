@@ -0,0 +1,133 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.instance.workspace.InstanceWorkspaceLayout;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCacheEvictorTest {
+
+    private static final String CONTENT = "x".repeat(100);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void leavesCacheAloneBelowLimit() throws Exception {
+        NodeConfig config = createConfig(1_000, 500);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        createVersion(layout, "starter", "1.0.0", 3_000);
+
+        TemplateCacheEvictionResult result = createEvictor(config, layout, new TemplateCacheAccessTracker()).evictIfNeeded();
+
+        assertThat(result.evictedVersions()).isZero();
+        assertThat(result.cachedBytes()).isEqualTo(103);
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").versionRoot())).isTrue();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedVersionsDownToLowWatermark() throws Exception {
+        NodeConfig config = createConfig(250, 110);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        createVersion(layout, "starter", "1.0.0", 3_000);
+        createVersion(layout, "starter", "2.0.0", 2_000);
+        createVersion(layout, "lobby", "1.0.0", 1_000);
+
+        TemplateCacheEvictionResult result = createEvictor(config, layout, new TemplateCacheAccessTracker()).evictIfNeeded();
+
+        assertThat(result.cachedBytes()).isEqualTo(309);
+        assertThat(result.evictedVersions()).isEqualTo(2);
+        assertThat(result.remainingBytes()).isEqualTo(103);
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").versionRoot())).isFalse();
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "2.0.0").versionRoot())).isFalse();
+        assertThat(Files.exists(layout.resolveTemplateVersion("lobby", "1.0.0").versionRoot())).isTrue();
+    }
+
+    @Test
+    void keepsVersionsReferencedByWorkspacesAndRecentlyAccessed() throws Exception {
+        NodeConfig config = createConfig(250, 210);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        createVersion(layout, "starter", "1.0.0", 4_000);
+        createVersion(layout, "starter", "2.0.0", 3_000);
+        createVersion(layout, "lobby", "1.0.0", 2_000);
+        InstanceWorkspaceLayout workspaceLayout = new InstanceWorkspaceLayout(config);
+        Path layersFile = workspaceLayout.resolveWorkspace("instance-1").templateLayersFile();
+        Files.createDirectories(layersFile.getParent());
+        Files.writeString(layersFile, "starter\t1.0.0\tabc\n");
+        TemplateCacheAccessTracker accessTracker = new TemplateCacheAccessTracker();
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        new TemplateCacheLookupService(layout, index, accessTracker, new TemplateCacheMetrics(new SimpleMeterRegistry(), index))
+                .findCachedTemplate("starter", "2.0.0", "abc");
+
+        TemplateCacheEvictionResult result = createEvictor(config, layout, accessTracker).evictIfNeeded();
+
+        assertThat(result.evictedVersions()).isEqualTo(1);
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").versionRoot())).isTrue();
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "2.0.0").versionRoot())).isTrue();
+        assertThat(Files.exists(layout.resolveTemplateVersion("lobby", "1.0.0").versionRoot())).isFalse();
+    }
+
+    @Test
+    void ignoresWorkspaceReferencesOlderThanMaxAge() throws Exception {
+        NodeConfig config = createConfig(150, 110);
+        config.getTemplateCacheEviction().setReferenceMaxAgeSeconds(600);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        createVersion(layout, "starter", "1.0.0", 3_000);
+        createVersion(layout, "lobby", "1.0.0", 2_000);
+        InstanceWorkspaceLayout workspaceLayout = new InstanceWorkspaceLayout(config);
+        Path layersFile = workspaceLayout.resolveWorkspace("instance-gone").templateLayersFile();
+        Files.createDirectories(layersFile.getParent());
+        Files.writeString(layersFile, "starter\t1.0.0\tabc\n");
+        Files.setLastModifiedTime(layersFile, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000));
+
+        TemplateCacheEvictionResult result = createEvictor(config, layout, new TemplateCacheAccessTracker()).evictIfNeeded();
+
+        assertThat(result.evictedVersions()).isEqualTo(1);
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").versionRoot())).isFalse();
+        assertThat(Files.exists(layout.resolveTemplateVersion("lobby", "1.0.0").versionRoot())).isTrue();
+    }
+
+    private TemplateCacheEvictor createEvictor(
+            NodeConfig config,
+            TemplateCacheLayout layout,
+            TemplateCacheAccessTracker accessTracker
+    ) {
+        return new TemplateCacheEvictor(
+                config,
+                layout,
+                new InstanceWorkspaceLayout(config),
+                new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(config, layout), new TemplateVersionLocks(), new ObjectMapper()),
+                accessTracker,
+                new TemplateCacheMetrics(new SimpleMeterRegistry(), new TemplateCacheIndex(layout))
+        );
+    }
+
+    private NodeConfig createConfig(long maxBytes, long lowWatermarkBytes) {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        config.setWorkspaceDir(tempDir.resolve("workspace-root").toString());
+        config.getTemplateCacheEviction().setMaxBytes(maxBytes);
+        config.getTemplateCacheEviction().setLowWatermarkBytes(lowWatermarkBytes);
+        return config;
+    }
+
+    private void createVersion(TemplateCacheLayout layout, String templateId, String version, long ageSeconds)
+            throws Exception {
+        TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.contentsDir().resolve("content.txt"), CONTENT);
+        Files.writeString(paths.checksumFile(), "abc");
+        Files.setLastModifiedTime(
+                paths.checksumFile(),
+                FileTime.fromMillis(System.currentTimeMillis() - ageSeconds * 1_000)
+        );
+    }
+}
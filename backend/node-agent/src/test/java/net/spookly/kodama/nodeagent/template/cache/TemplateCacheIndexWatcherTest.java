@@ -0,0 +1,54 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCacheIndexWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tracksVersionsAddedAndRemovedOnDisk() throws Exception {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        Files.createDirectories(layout.getTemplatesRoot());
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateCacheIndexWatcher watcher = new TemplateCacheIndexWatcher(config, layout, index);
+        watcher.start();
+        try {
+            TemplateCachePaths paths = layout.resolveTemplateVersion("starter", "1.0.0");
+            Path staging = layout.getTemplatesRoot().resolve(".staging");
+            Files.createDirectories(staging.resolve("contents"));
+            Files.writeString(staging.resolve(paths.checksumFile().getFileName()), "abc123");
+            Files.createDirectories(paths.templateRoot());
+            Files.move(staging, paths.versionRoot());
+
+            awaitTrue(() -> "abc123".equals(index.findChecksum("starter", "1.0.0")));
+
+            TemplateCacheManager manager = new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(config, layout), new TemplateVersionLocks(), new ObjectMapper());
+            manager.purgeAll();
+
+            awaitTrue(() -> index.size() == 0);
+        } finally {
+            watcher.shutdown();
+        }
+    }
+
+    private void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
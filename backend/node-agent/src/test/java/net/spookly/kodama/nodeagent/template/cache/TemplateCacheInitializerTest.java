@@ -21,10 +21,27 @@ class TemplateCacheInitializerTest {
         config.setCacheDir(tempDir.resolve("cache-root").toString());
 
         TemplateCacheLayout layout = new TemplateCacheLayout(config);
-        TemplateCacheInitializer initializer = new TemplateCacheInitializer(layout);
+        TemplateCacheInitializer initializer = new TemplateCacheInitializer(layout, new TemplateCacheIndex(layout));
 
         initializer.run(new DefaultApplicationArguments(new String[0]));
 
         assertThat(Files.isDirectory(layout.getTemplatesRoot())).isTrue();
     }
+
+    @Test
+    void indexesExistingCacheEntriesOnStartup() throws Exception {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCachePaths paths = layout.resolveTemplateVersion("starter", "1.0.0");
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.checksumFile(), "abc123\n");
+        Files.createDirectories(paths.templateRoot().resolve(".cache-123"));
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+
+        new TemplateCacheInitializer(layout, index).run(new DefaultApplicationArguments(new String[0]));
+
+        assertThat(index.size()).isEqualTo(1);
+        assertThat(index.findChecksum("starter", "1.0.0")).isEqualTo("abc123");
+    }
 }
@@ -31,6 +31,21 @@ class TemplateCacheLayoutTest {
         assertThat(paths.contentsDir()).isEqualTo(expectedVersionRoot.resolve("contents"));
         assertThat(paths.checksumFile()).isEqualTo(expectedVersionRoot.resolve("checksum.sha256"));
         assertThat(paths.metadataFile()).isEqualTo(expectedVersionRoot.resolve("metadata.json"));
+        assertThat(paths.lockFile()).isEqualTo(layout.getTemplatesRoot().resolve("starter").resolve(".1.2.3.lock"));
+    }
+
+    @Test
+    void resolvesCompositePathsOutsideTemplatesRoot() {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCompositePaths paths = layout.resolveComposite("abc123");
+
+        assertThat(layout.getCompositesRoot()).isEqualTo(layout.getCacheRoot().resolve("composites"));
+        assertThat(paths.compositeRoot()).isEqualTo(layout.getCompositesRoot().resolve("abc123"));
+        assertThat(paths.contentsDir()).isEqualTo(paths.compositeRoot().resolve("contents"));
+        assertThat(paths.stackFile()).isEqualTo(paths.compositeRoot().resolve("stack.tsv"));
     }
 
     @Test
@@ -6,7 +6,11 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.trace.PrepareTrace;
+import net.spookly.kodama.nodeagent.trace.PrepareTracePhase;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -32,6 +36,21 @@ class TemplateCacheLookupServiceTest {
         assertThat(result.cachedChecksum()).isEqualTo("abc123");
     }
 
+    @Test
+    void recordsLookupInOpenPrepareTrace() {
+        TemplateCacheLookupService service = createService();
+
+        try (PrepareTrace trace = PrepareTrace.begin("trace-1")) {
+            service.findCachedTemplate("starter", "1.2.3", "abc123");
+            service.findCachedTemplate("starter", "1.2.4", "abc123");
+
+            assertThat(trace.phases()).hasSize(1);
+            PrepareTracePhase phase = trace.phases().getFirst();
+            assertThat(phase.name()).isEqualTo(PrepareTrace.PHASE_CACHE_LOOKUP);
+            assertThat(phase.count()).isEqualTo(2);
+        }
+    }
+
     @Test
     void returnsMissWhenChecksumDiffers() throws Exception {
         TemplateCacheLookupService service = createService();
@@ -102,6 +121,41 @@ class TemplateCacheLookupServiceTest {
         assertThat(result.missReason()).isEqualTo(TemplateCacheMissReason.DEV_MODE_BYPASS);
     }
 
+    @Test
+    void servesRepeatedLookupsFromIndex() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateCacheLookupService service = new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics(index));
+        TemplateCachePaths paths = layout.resolveTemplateVersion("starter", "1.2.3");
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.checksumFile(), "abc123");
+
+        assertThat(service.findCachedTemplate("starter", "1.2.3", "abc123").isCacheHit()).isTrue();
+        Files.writeString(paths.checksumFile(), "def456");
+
+        assertThat(service.findCachedTemplate("starter", "1.2.3", "abc123").isCacheHit()).isTrue();
+        assertThat(service.findCachedTemplateOnDisk("starter", "1.2.3", "abc123").missReason())
+                .isEqualTo(TemplateCacheMissReason.CHECKSUM_MISMATCH);
+        assertThat(index.findChecksum("starter", "1.2.3")).isEqualTo("def456");
+    }
+
+    @Test
+    void purgeRemovesVersionFromIndex() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateCacheLookupService service = new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics(index));
+        TemplateCachePaths paths = layout.resolveTemplateVersion("starter", "1.2.3");
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.checksumFile(), "abc123");
+        index.rebuild();
+
+        new TemplateCacheManager(layout, index, new TemplateObjectStore(new NodeConfig(), layout), new TemplateVersionLocks(), new ObjectMapper()).purgeTemplate("starter");
+
+        assertThat(index.size()).isZero();
+        assertThat(service.findCachedTemplate("starter", "1.2.3", "abc123").missReason())
+                .isEqualTo(TemplateCacheMissReason.NOT_FOUND);
+    }
+
     @Test
     void rejectsBlankExpectedChecksum() {
         TemplateCacheLookupService service = createService();
@@ -112,7 +166,13 @@ class TemplateCacheLookupServiceTest {
     }
 
     private TemplateCacheLookupService createService() {
-        return new TemplateCacheLookupService(createLayout());
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        return new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics(index));
+    }
+
+    private TemplateCacheMetrics metrics(TemplateCacheIndex index) {
+        return new TemplateCacheMetrics(new SimpleMeterRegistry(), index);
     }
 
     private TemplateCacheLayout createLayout() {
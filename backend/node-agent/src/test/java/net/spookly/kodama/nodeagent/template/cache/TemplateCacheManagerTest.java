@@ -6,6 +6,7 @@ import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import net.spookly.kodama.nodeagent.config.NodeConfig;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -18,7 +19,7 @@ class TemplateCacheManagerTest {
     @Test
     void purgeAllRemovesAllTemplatesAndPreservesRoot() throws Exception {
         TemplateCacheLayout layout = createLayout();
-        TemplateCacheManager manager = new TemplateCacheManager(layout);
+        TemplateCacheManager manager = createManager(layout);
 
         createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
         createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
@@ -37,7 +38,7 @@ class TemplateCacheManagerTest {
     @Test
     void purgeTemplateRemovesOnlyRequestedTemplate() throws Exception {
         TemplateCacheLayout layout = createLayout();
-        TemplateCacheManager manager = new TemplateCacheManager(layout);
+        TemplateCacheManager manager = createManager(layout);
 
         createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
         createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
@@ -51,15 +52,52 @@ class TemplateCacheManagerTest {
         assertThat(Files.exists(layout.resolveTemplateRoot("survival"))).isTrue();
     }
 
+    @Test
+    void purgesSkipTemplatesWithLockedVersions() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateVersionLocks versionLocks = new TemplateVersionLocks();
+        TemplateCacheManager manager = createManager(layout, versionLocks);
+
+        createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
+        createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
+        TemplateCachePaths populating = layout.resolveTemplateVersion("starter", "1.1.0");
+
+        try (TemplateVersionLocks.Lock ignored = versionLocks.lock(populating)) {
+            TemplateCachePurgeResult templateResult = manager.purgeTemplate("starter");
+            assertThat(templateResult.deletedFiles()).isZero();
+            assertThat(templateResult.skippedTemplates()).containsExactly("starter");
+            TemplateCacheTrashResult trashResult = manager.moveTemplateToTrash("starter");
+            assertThat(trashResult.entries()).isEmpty();
+            assertThat(trashResult.skippedTemplates()).containsExactly("starter");
+            assertThat(manager.purgeAll().skippedTemplates()).containsExactly("starter");
+
+            assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").contentsDir())).isTrue();
+            assertThat(Files.exists(layout.resolveTemplateRoot("survival"))).isFalse();
+        }
+
+        TemplateCacheTrashResult trashResult = manager.moveTemplateToTrash("starter");
+        assertThat(trashResult.entries()).hasSize(1);
+        assertThat(trashResult.skippedTemplates()).isEmpty();
+        assertThat(Files.exists(layout.resolveTemplateRoot("starter"))).isFalse();
+    }
+
     @Test
     void purgeTemplateRejectsInvalidTemplateId() {
-        TemplateCacheManager manager = new TemplateCacheManager(createLayout());
+        TemplateCacheManager manager = createManager(createLayout());
 
         assertThatThrownBy(() -> manager.purgeTemplate("../escape"))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessageContaining("templateId");
     }
 
+    private TemplateCacheManager createManager(TemplateCacheLayout layout) {
+        return createManager(layout, new TemplateVersionLocks());
+    }
+
+    private TemplateCacheManager createManager(TemplateCacheLayout layout, TemplateVersionLocks versionLocks) {
+        return new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(new NodeConfig(), layout), versionLocks, new ObjectMapper());
+    }
+
     private TemplateCacheLayout createLayout() {
         NodeConfig config = new NodeConfig();
         config.setCacheDir(tempDir.resolve("cache-root").toString());
@@ -3,8 +3,10 @@ package net.spookly.kodama.nodeagent.template.cache;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -13,17 +15,29 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import net.spookly.kodama.nodeagent.config.NodeConfig;
 import net.spookly.kodama.nodeagent.devmode.service.DevModeService;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageClient;
+import net.spookly.kodama.nodeagent.template.storage.TemplateStorageObjectNotFoundException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateTarball;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdUtils;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -33,6 +47,8 @@ class TemplateCachePopulateServiceTest {
     @TempDir
     Path tempDir;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @Test
     void populatesCacheFromTarball() throws Exception {
         byte[] tarballBytes = createTarball(Map.of(
@@ -71,6 +87,15 @@ class TemplateCachePopulateServiceTest {
         );
         assertThat(second.isCacheHit()).isTrue();
         assertThat(storageClient.getFetchCount()).isEqualTo(1);
+        assertThat(meterRegistry.get("kodama.template.cache.lookups").tag("reason", "NOT_FOUND").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("kodama.template.cache.lookups").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("kodama.template.cache.download.bytes").tag("source", "tarball").summary().totalAmount())
+                .isEqualTo(tarballBytes.length);
+        assertThat(meterRegistry.get("kodama.template.cache.extraction.entries").summary().totalAmount()).isEqualTo(2);
+        assertThat(meterRegistry.get("kodama.template.cache.populate.duration").tag("outcome", "success").timer().count())
+                .isEqualTo(1);
     }
 
     @Test
@@ -145,16 +170,473 @@ class TemplateCachePopulateServiceTest {
                 .hasMessageContaining("max entry count");
     }
 
+    @Test
+    void populatesCacheWithStreamingExtraction() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of(
+                "server.properties", "motd=streamed",
+                "plugins/readme.txt", "plugins"
+        ));
+        String checksum = sha256Hex(tarballBytes);
+        InMemoryTemplateStorageClient storageClient = new InMemoryTemplateStorageClient(tarballBytes);
+        NodeConfig config = createConfig();
+        config.getTemplateCachePopulate().setStreamingExtraction(true);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+
+        TemplateCacheLookupResult result = service.ensureCachedTemplate(
+                "starter",
+                "1.3.0",
+                checksum,
+                "templates/starter/1.3.0.tar"
+        );
+
+        assertThat(result.isCacheHit()).isTrue();
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties")))
+                .isEqualTo("motd=streamed");
+        assertThat(Files.readString(result.contentsDir().resolve("plugins/readme.txt")))
+                .isEqualTo("plugins");
+        try (var stream = Files.list(layout.resolveTemplateRoot("starter"))) {
+            assertThat(stream.map(path -> path.getFileName().toString()).filter(name -> !name.startsWith(".")))
+                    .containsExactly("1.3.0");
+        }
+    }
+
+    @Test
+    void extractsMultiMemberGzipWithPipelinedDecompression() throws Exception {
+        byte[] tarball = createTarball(Map.of(
+                "server.properties", "motd=gzip",
+                "plugins/readme.txt", "x".repeat(100_000)
+        ));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        int split = tarball.length / 2;
+        compressed.write(gzip(tarball, 0, split));
+        compressed.write(gzip(tarball, split, tarball.length - split));
+        byte[] tarballBytes = compressed.toByteArray();
+        NodeConfig config = createConfig();
+        config.getTemplateCachePopulate().setStreamingExtraction(true);
+        config.getTemplateCachePopulate().setPipelinedDecompression(true);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service =
+                createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        // The key has no compression suffix, so gzip must be detected from the magic bytes.
+        TemplateCacheLookupResult result =
+                service.ensureCachedTemplate("starter", "1.4.0", sha256Hex(tarballBytes), "templates/starter/1.4.0");
+
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties"))).isEqualTo("motd=gzip");
+        assertThat(Files.size(result.contentsDir().resolve("plugins/readme.txt"))).isEqualTo(100_000);
+    }
+
+    @Test
+    void extractsZstdTarball() throws Exception {
+        Assumptions.assumeTrue(ZstdUtils.isZstdCompressionAvailable());
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ZstdCompressorOutputStream zstdOutput = new ZstdCompressorOutputStream(compressed)) {
+            zstdOutput.write(createTarball(Map.of("server.properties", "motd=zstd")));
+        }
+        byte[] tarballBytes = compressed.toByteArray();
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service =
+                createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        TemplateCacheLookupResult result =
+                service.ensureCachedTemplate("starter", "1.5.0", sha256Hex(tarballBytes), "templates/starter/1.5.0.tar.zst");
+
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties"))).isEqualTo("motd=zstd");
+    }
+
+    @Test
+    void extractsWithParallelWritersPreservingEntryOrderAndModes() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(outputStream)) {
+            for (int i = 0; i < 200; i++) {
+                writeTarEntry(tarOutput, "config/file-" + i + ".txt", "value-" + i, 0644);
+            }
+            writeTarEntry(tarOutput, "server.jar", "j".repeat(2 * 1024 * 1024), 0644);
+            writeTarEntry(tarOutput, "start.sh", "#!/bin/sh", 0755);
+            writeTarEntry(tarOutput, "config/file-7.txt", "replaced", 0644);
+            tarOutput.finish();
+        }
+        byte[] tarballBytes = outputStream.toByteArray();
+        NodeConfig config = createConfig();
+        config.getTemplateCachePopulate().setWriterThreads(4);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service =
+                createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        try {
+            TemplateCacheLookupResult result =
+                    service.ensureCachedTemplate("starter", "1.6.0", sha256Hex(tarballBytes), "templates/starter/1.6.0.tar");
+
+            Path contents = result.contentsDir();
+            assertThat(Files.readString(contents.resolve("config/file-199.txt"))).isEqualTo("value-199");
+            assertThat(Files.readString(contents.resolve("config/file-7.txt"))).isEqualTo("replaced");
+            assertThat(Files.size(contents.resolve("server.jar"))).isEqualTo(2 * 1024 * 1024);
+            Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+            assertThat(Files.getPosixFilePermissions(contents.resolve("start.sh")))
+                    .contains(PosixFilePermission.OWNER_EXECUTE);
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void parallelWritersStillEnforceExtractedBytesLimit() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of("a.txt", "x".repeat(600), "b.txt", "y".repeat(600)));
+        NodeConfig config = createConfig();
+        config.getTemplateCachePopulate().setWriterThreads(4);
+        config.getTemplateCacheLimits().setMaxExtractedBytes(1_000);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service =
+                createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        try {
+            assertThatThrownBy(() -> service.ensureCachedTemplate("starter", "1.7.0", sha256Hex(tarballBytes), "starter.tar"))
+                    .isInstanceOf(TemplateCacheException.class)
+                    .hasMessageContaining("max extracted bytes");
+            assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.7.0").versionRoot())).isFalse();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void streamingExtractionDiscardsContentsOnChecksumMismatch() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of(
+                "server.properties", "motd=tampered"
+        ));
+        InMemoryTemplateStorageClient storageClient = new InMemoryTemplateStorageClient(tarballBytes);
+        NodeConfig config = createConfig();
+        config.getTemplateCachePopulate().setStreamingExtraction(true);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+
+        assertThatThrownBy(() -> service.ensureCachedTemplate(
+                "starter",
+                "1.3.1",
+                sha256Hex("other".getBytes(StandardCharsets.UTF_8)),
+                "templates/starter/1.3.1.tar"
+        )).isInstanceOf(TemplateCacheException.class)
+                .hasMessageContaining("checksum mismatch");
+
+        assertThat(meterRegistry.get("kodama.template.cache.checksum.mismatches").tag("source", "tarball").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("kodama.template.cache.populate.duration").tag("outcome", "failure").timer().count())
+                .isEqualTo(1);
+        try (var stream = Files.list(layout.resolveTemplateRoot("starter"))) {
+            assertThat(stream.filter(path -> !path.getFileName().toString().startsWith(".")).count()).isZero();
+        }
+    }
+
+    @Test
+    void coalescesConcurrentPopulationsOfSameVersion() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of(
+                "server.properties", "motd=shared"
+        ));
+        String checksum = sha256Hex(tarballBytes);
+        BlockingTemplateStorageClient storageClient = new BlockingTemplateStorageClient(tarballBytes);
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TemplateCacheLookupResult>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> service.ensureCachedTemplate(
+                        "starter",
+                        "1.4.0",
+                        checksum,
+                        "templates/starter/1.4.0.tar"
+                )));
+            }
+            assertThat(storageClient.awaitFirstFetch()).isTrue();
+            Thread.sleep(200);
+            storageClient.release();
+
+            for (Future<TemplateCacheLookupResult> result : results) {
+                assertThat(result.get(10, TimeUnit.SECONDS).isCacheHit()).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(storageClient.getFetchCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictionAndPopulationOfSameVersionTakeTurns() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of("server.properties", "motd=evicted"));
+        String checksum = sha256Hex(tarballBytes);
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateVersionLocks versionLocks = new TemplateVersionLocks();
+        TemplateCachePopulateService service = createService(
+                new InMemoryTemplateStorageClient(tarballBytes),
+                layout,
+                config,
+                index,
+                versionLocks
+        );
+        TemplateCacheManager manager =
+                new TemplateCacheManager(layout, index, new TemplateObjectStore(config, layout), versionLocks, new ObjectMapper());
+        service.ensureCachedTemplate("starter", "1.0.0", checksum, "starter.tar");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger evictions = new AtomicInteger();
+        try {
+            Future<?> populations = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 50; i++) {
+                    assertThat(service.ensureCachedTemplate("starter", "1.0.0", checksum, "starter.tar").isCacheHit())
+                            .isTrue();
+                }
+                return null;
+            });
+            Future<?> purges = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 50; i++) {
+                    if (manager.purgeVersion("starter", "1.0.0").isPresent()) {
+                        evictions.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+            start.countDown();
+
+            populations.get(30, TimeUnit.SECONDS);
+            purges.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(evictions.get()).isPositive();
+        assertThat(versionLocks.size()).isZero();
+        TemplateCacheLookupResult result = service.ensureCachedTemplate("starter", "1.0.0", checksum, "starter.tar");
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties"))).isEqualTo("motd=evicted");
+    }
+
+    @Test
+    void hardlinksIdenticalFilesAcrossVersionsWhenObjectStoreIsEnabled() throws Exception {
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        byte[] tarballBytes = createTarball(Map.of(
+                "server.jar", "jar-bytes",
+                "server.properties", "motd=hello"
+        ));
+        String checksum = sha256Hex(tarballBytes);
+        NodeConfig config = createConfig();
+        config.getTemplateObjectStore().setEnabled(true);
+        config.getTemplateCachePopulate().setStreamingExtraction(true);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        TemplateCacheLookupResult first = service.ensureCachedTemplate("starter", "1.0.0", checksum, "starter.tar");
+        TemplateCacheLookupResult second = service.ensureCachedTemplate("starter", "2.0.0", checksum, "starter.tar");
+
+        assertThat(Files.isSameFile(
+                first.contentsDir().resolve("server.jar"),
+                second.contentsDir().resolve("server.jar")
+        )).isTrue();
+        assertThat(Files.readString(second.contentsDir().resolve("server.properties"))).isEqualTo("motd=hello");
+        try (var objects = Files.walk(layout.getObjectsRoot())) {
+            assertThat(objects.filter(Files::isRegularFile).count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void deltaDownloadsOnlyChangedFiles() throws Exception {
+        byte[] firstTarball = createTarball(Map.of("server.jar", "jar-bytes", "server.properties", "motd=hello"));
+        byte[] changed = "motd=updated".getBytes(StandardCharsets.UTF_8);
+        NodeConfig config = createConfig();
+        config.getTemplateDelta().setEnabled(true);
+        TemplateCacheLayout layout = createLayout(config);
+        KeyedTemplateStorageClient storageClient = new KeyedTemplateStorageClient(Map.of(
+                "starter-1.tar", firstTarball,
+                "files/" + sha256Hex(changed), changed
+        ));
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+        service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(firstTarball), "starter-1.tar");
+
+        TemplateCacheLookupResult result = service.ensureCachedTemplate(
+                "starter",
+                "2.0.0",
+                "second-checksum",
+                "starter-2.tar",
+                List.of(
+                        new TemplateFileManifestEntry("server.jar", 9, sha256Hex("jar-bytes".getBytes(StandardCharsets.UTF_8)), 0644),
+                        new TemplateFileManifestEntry("server.properties", changed.length, sha256Hex(changed), 0644)
+                )
+        );
+
+        assertThat(result.isCacheHit()).isTrue();
+        assertThat(storageClient.requestedKeys()).containsExactly("starter-1.tar", "files/" + sha256Hex(changed));
+        assertThat(Files.readString(result.contentsDir().resolve("server.jar"))).isEqualTo("jar-bytes");
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties"))).isEqualTo("motd=updated");
+        assertThat(Files.exists(layout.resolveTemplateVersion("starter", "2.0.0").versionRoot()
+                .resolve(TemplateCacheLayout.MANIFEST_FILENAME))).isTrue();
+    }
+
+    @Test
+    void deltaFallsBackToTarballWhenFileDoesNotMatchManifest() throws Exception {
+        byte[] firstTarball = createTarball(Map.of("server.jar", "jar-bytes"));
+        byte[] secondTarball = createTarball(Map.of("server.jar", "jar-bytes", "plugin.jar", "plugin"));
+        String pluginSha = sha256Hex("plugin".getBytes(StandardCharsets.UTF_8));
+        NodeConfig config = createConfig();
+        config.getTemplateDelta().setEnabled(true);
+        TemplateCacheLayout layout = createLayout(config);
+        KeyedTemplateStorageClient storageClient = new KeyedTemplateStorageClient(Map.of(
+                "starter-1.tar", firstTarball,
+                "starter-2.tar", secondTarball,
+                "files/" + pluginSha, "tampered".getBytes(StandardCharsets.UTF_8)
+        ));
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+        service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(firstTarball), "starter-1.tar");
+
+        TemplateCacheLookupResult result = service.ensureCachedTemplate(
+                "starter",
+                "2.0.0",
+                sha256Hex(secondTarball),
+                "starter-2.tar",
+                List.of(
+                        new TemplateFileManifestEntry("server.jar", 9, sha256Hex("jar-bytes".getBytes(StandardCharsets.UTF_8)), null),
+                        new TemplateFileManifestEntry("plugin.jar", 6, pluginSha, null)
+                )
+        );
+
+        assertThat(storageClient.requestedKeys()).containsExactly("starter-1.tar", "files/" + pluginSha, "starter-2.tar");
+        assertThat(Files.readString(result.contentsDir().resolve("plugin.jar"))).isEqualTo("plugin");
+    }
+
+    @Test
+    void deltaFallsBackToTarballWhenFileIsMissingFromStorage() throws Exception {
+        byte[] firstTarball = createTarball(Map.of("server.jar", "jar-bytes"));
+        byte[] secondTarball = createTarball(Map.of("server.jar", "jar-bytes", "plugin.jar", "plugin"));
+        String pluginSha = sha256Hex("plugin".getBytes(StandardCharsets.UTF_8));
+        NodeConfig config = createConfig();
+        config.getTemplateDelta().setEnabled(true);
+        TemplateCacheLayout layout = createLayout(config);
+        KeyedTemplateStorageClient storageClient = new KeyedTemplateStorageClient(Map.of(
+                "starter-1.tar", firstTarball,
+                "starter-2.tar", secondTarball
+        ));
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+        service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(firstTarball), "starter-1.tar");
+
+        TemplateCacheLookupResult result = service.ensureCachedTemplate(
+                "starter",
+                "2.0.0",
+                sha256Hex(secondTarball),
+                "starter-2.tar",
+                List.of(
+                        new TemplateFileManifestEntry("server.jar", 9, sha256Hex("jar-bytes".getBytes(StandardCharsets.UTF_8)), 0644),
+                        new TemplateFileManifestEntry("plugin.jar", 6, pluginSha, 0644)
+                )
+        );
+
+        assertThat(result.isCacheHit()).isTrue();
+        assertThat(storageClient.requestedKeys()).containsExactly("starter-1.tar", "files/" + pluginSha, "starter-2.tar");
+        assertThat(Files.readString(result.contentsDir().resolve("plugin.jar"))).isEqualTo("plugin");
+    }
+
+    @Test
+    void rangedDownloadFallsBackToStreamingCopyForPlainClients() throws Exception {
+        byte[] tarballBytes = createTarball(Map.of("server.properties", "motd=hello"));
+        InMemoryTemplateStorageClient plainClient = new InMemoryTemplateStorageClient(tarballBytes);
+        TemplateStorageClient storageClient = new TemplateStorageClient() {
+            @Override
+            public TemplateTarball getTemplateTarball(String templateId, String version, String s3Key) {
+                return plainClient.getTemplateTarball(templateId, version, s3Key);
+            }
+
+            @Override
+            public boolean isRangedDownloadEnabled() {
+                return true;
+            }
+        };
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+
+        TemplateCacheLookupResult result =
+                service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(tarballBytes), "starter.tar");
+
+        assertThat(Files.readString(result.contentsDir().resolve("server.properties"))).isEqualTo("motd=hello");
+        assertThat(plainClient.getFetchCount()).isEqualTo(1);
+    }
+
+    @Test
+    void deltaDownloadsCachedFileThatWasModifiedInPlace() throws Exception {
+        byte[] firstTarball = createTarball(Map.of("server.jar", "jar-bytes"));
+        byte[] jar = "jar-bytes".getBytes(StandardCharsets.UTF_8);
+        NodeConfig config = createConfig();
+        config.getTemplateDelta().setEnabled(true);
+        TemplateCacheLayout layout = createLayout(config);
+        KeyedTemplateStorageClient storageClient = new KeyedTemplateStorageClient(Map.of(
+                "starter-1.tar", firstTarball,
+                "files/" + sha256Hex(jar), jar
+        ));
+        TemplateCachePopulateService service = createService(storageClient, layout, config);
+        TemplateCacheLookupResult first =
+                service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(firstTarball), "starter-1.tar");
+        // Same size, different content, as left behind by an instance writing through a hardlinked workspace.
+        Files.writeString(first.contentsDir().resolve("server.jar"), "jar-BYTES");
+
+        TemplateCacheLookupResult result = service.ensureCachedTemplate(
+                "starter",
+                "2.0.0",
+                "second-checksum",
+                "starter-2.tar",
+                List.of(new TemplateFileManifestEntry("server.jar", jar.length, sha256Hex(jar), 0644))
+        );
+
+        assertThat(storageClient.requestedKeys()).containsExactly("starter-1.tar", "files/" + sha256Hex(jar));
+        assertThat(Files.readString(result.contentsDir().resolve("server.jar"))).isEqualTo("jar-bytes");
+    }
+
+    @Test
+    void manifestRecordsFileModes() throws Exception {
+        Assumptions.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        byte[] tarballBytes = createTarballWithModes(Map.of(
+                "start.sh", new TarEntrySpec("#!/bin/sh", 0755),
+                "server.properties", new TarEntrySpec("motd=hello", 0644)
+        ));
+        NodeConfig config = createConfig();
+        config.getTemplateDelta().setEnabled(true);
+        TemplateCacheLayout layout = createLayout(config);
+        TemplateCachePopulateService service = createService(new InMemoryTemplateStorageClient(tarballBytes), layout, config);
+
+        service.ensureCachedTemplate("starter", "1.0.0", sha256Hex(tarballBytes), "starter.tar");
+
+        Path manifestFile = layout.resolveTemplateVersion("starter", "1.0.0").versionRoot()
+                .resolve(TemplateCacheLayout.MANIFEST_FILENAME);
+        List<TemplateFileManifestEntry> manifest =
+                new ObjectMapper().readValue(manifestFile.toFile(), new TypeReference<List<TemplateFileManifestEntry>>() {
+                });
+        assertThat(manifest.stream().map(TemplateFileManifestEntry::mode).toList()).containsExactly(0644, 0755);
+    }
+
     private TemplateCachePopulateService createService(
             TemplateStorageClient storageClient,
             TemplateCacheLayout layout,
             NodeConfig config
     ) {
-        TemplateCacheLookupService lookupService = new TemplateCacheLookupService(layout);
+        return createService(storageClient, layout, config, new TemplateCacheIndex(layout), new TemplateVersionLocks());
+    }
+
+    private TemplateCachePopulateService createService(
+            TemplateStorageClient storageClient,
+            TemplateCacheLayout layout,
+            NodeConfig config,
+            TemplateCacheIndex index,
+            TemplateVersionLocks versionLocks
+    ) {
+        TemplateCacheMetrics metrics = new TemplateCacheMetrics(meterRegistry, index);
+        TemplateCacheLookupService lookupService = new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics);
         ObjectMapper mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
         DevModeService devModeService = new DevModeService(config);
-        return new TemplateCachePopulateService(layout, lookupService, storageClient, mapper, devModeService, config);
+        return new TemplateCachePopulateService(layout, lookupService, storageClient, mapper, devModeService, config, new TemplateObjectStore(config, layout), metrics, versionLocks);
     }
 
     private NodeConfig createConfig() {
@@ -193,6 +675,25 @@ class TemplateCachePopulateServiceTest {
         return outputStream.toByteArray();
     }
 
+    private void writeTarEntry(TarArchiveOutputStream tarOutput, String name, String contents, int mode)
+            throws IOException {
+        byte[] content = contents.getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry tarEntry = new TarArchiveEntry(name);
+        tarEntry.setMode(mode);
+        tarEntry.setSize(content.length);
+        tarOutput.putArchiveEntry(tarEntry);
+        tarOutput.write(content);
+        tarOutput.closeArchiveEntry();
+    }
+
+    private byte[] gzip(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(outputStream)) {
+            gzipOutput.write(data, offset, length);
+        }
+        return outputStream.toByteArray();
+    }
+
     private record TarEntrySpec(String contents, int mode) {
     }
 
@@ -211,6 +712,48 @@ class TemplateCachePopulateServiceTest {
         }
     }
 
+    private static class BlockingTemplateStorageClient implements TemplateStorageClient {
+
+        private final byte[] tarballBytes;
+        private final AtomicInteger fetchCount = new AtomicInteger();
+        private final CountDownLatch firstFetch = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private BlockingTemplateStorageClient(byte[] tarballBytes) {
+            this.tarballBytes = tarballBytes;
+        }
+
+        @Override
+        public TemplateTarball getTemplateTarball(String templateId, String version, String s3Key) {
+            fetchCount.incrementAndGet();
+            firstFetch.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new TemplateTarball(
+                    templateId,
+                    version,
+                    s3Key,
+                    tarballBytes.length,
+                    new ByteArrayInputStream(tarballBytes)
+            );
+        }
+
+        private boolean awaitFirstFetch() throws InterruptedException {
+            return firstFetch.await(10, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            release.countDown();
+        }
+
+        private int getFetchCount() {
+            return fetchCount.get();
+        }
+    }
+
     private static class InMemoryTemplateStorageClient implements TemplateStorageClient {
 
         private final byte[] tarballBytes;
@@ -236,4 +779,28 @@ class TemplateCachePopulateServiceTest {
             return fetchCount;
         }
     }
+
+    private static class KeyedTemplateStorageClient implements TemplateStorageClient {
+
+        private final Map<String, byte[]> objects;
+        private final List<String> requestedKeys = new ArrayList<>();
+
+        private KeyedTemplateStorageClient(Map<String, byte[]> objects) {
+            this.objects = objects;
+        }
+
+        @Override
+        public TemplateTarball getTemplateTarball(String templateId, String version, String s3Key) {
+            requestedKeys.add(s3Key);
+            byte[] bytes = objects.get(s3Key);
+            if (bytes == null) {
+                throw new TemplateStorageObjectNotFoundException("No object stored at " + s3Key);
+            }
+            return new TemplateTarball(templateId, version, s3Key, bytes.length, new ByteArrayInputStream(bytes));
+        }
+
+        private List<String> requestedKeys() {
+            return requestedKeys;
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.devmode.service.DevModeService;
+import net.spookly.kodama.nodeagent.template.storage.TemplateStorageClient;
+import net.spookly.kodama.nodeagent.template.storage.TemplateTarball;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCachePrefetchServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void populatesQueuedItemsByPriorityAndReportsProgress() throws Exception {
+        byte[] tarball = createTarball();
+        String checksum = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(tarball));
+        GatedStorageClient storageClient = new GatedStorageClient(tarball);
+        TemplateCachePrefetchService service = createService(storageClient, 1, 10);
+        try {
+            TemplateCachePrefetchStatus first = service.submit(List.of(item("first", checksum, 0)));
+            assertThat(storageClient.awaitFirstFetch()).isTrue();
+            TemplateCachePrefetchStatus second = service.submit(List.of(
+                    item("low", checksum, 1),
+                    item("high", checksum, 5),
+                    item("broken", "deadbeef", 3)
+            ));
+
+            assertThat(service.findStatus(second.prefetchId()).orElseThrow().count(TemplateCachePrefetchState.QUEUED))
+                    .isEqualTo(3);
+            storageClient.release();
+            awaitComplete(service, second.prefetchId());
+
+            TemplateCachePrefetchStatus status = service.findStatus(second.prefetchId()).orElseThrow();
+            assertThat(storageClient.fetchedTemplates()).containsExactly("first", "high", "broken", "low");
+            assertThat(status.count(TemplateCachePrefetchState.CACHED)).isEqualTo(2);
+            assertThat(status.count(TemplateCachePrefetchState.FAILED)).isEqualTo(1);
+            assertThat(status.items().get(2).error()).contains("checksum");
+            assertThat(service.findStatus(first.prefetchId()).orElseThrow().isComplete()).isTrue();
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsSubmissionsBeyondPendingLimit() throws Exception {
+        GatedStorageClient storageClient = new GatedStorageClient(createTarball());
+        TemplateCachePrefetchService service = createService(storageClient, 1, 2);
+        try {
+            service.submit(List.of(item("first", "abc", 0), item("second", "abc", 0)));
+
+            assertThatThrownBy(() -> service.submit(List.of(item("third", "abc", 0))))
+                    .isInstanceOf(TemplateCachePrefetchRejectedException.class);
+            assertThatThrownBy(() -> service.submit(List.of(new TemplateCachePrefetchItem("../x", "1", "abc", "k", 0))))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            storageClient.release();
+            service.shutdown();
+        }
+    }
+
+    private void awaitComplete(TemplateCachePrefetchService service, String prefetchId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!service.findStatus(prefetchId).orElseThrow().isComplete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    private TemplateCachePrefetchItem item(String templateId, String checksum, int priority) {
+        return new TemplateCachePrefetchItem(templateId, "1.0.0", checksum, "templates/" + templateId + ".tar", priority);
+    }
+
+    private TemplateCachePrefetchService createService(
+            TemplateStorageClient storageClient,
+            int concurrency,
+            int maxPendingItems
+    ) {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        config.getTemplateCachePrefetch().setConcurrency(concurrency);
+        config.getTemplateCachePrefetch().setMaxPendingItems(maxPendingItems);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCacheIndex index = new TemplateCacheIndex(layout);
+        TemplateCacheMetrics metrics = new TemplateCacheMetrics(new SimpleMeterRegistry(), index);
+        TemplateCacheLookupService lookupService =
+                new TemplateCacheLookupService(layout, index, new TemplateCacheAccessTracker(), metrics);
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        TemplateCachePopulateService populateService = new TemplateCachePopulateService(
+                layout,
+                lookupService,
+                storageClient,
+                mapper,
+                new DevModeService(config),
+                config,
+                new TemplateObjectStore(config, layout),
+                metrics,
+                new TemplateVersionLocks()
+        );
+        return new TemplateCachePrefetchService(layout, populateService, config);
+    }
+
+    private byte[] createTarball() throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (TarArchiveOutputStream tarOutput = new TarArchiveOutputStream(outputStream)) {
+            byte[] content = "motd=hello".getBytes(StandardCharsets.UTF_8);
+            TarArchiveEntry entry = new TarArchiveEntry("server.properties");
+            entry.setSize(content.length);
+            tarOutput.putArchiveEntry(entry);
+            tarOutput.write(content);
+            tarOutput.closeArchiveEntry();
+            tarOutput.finish();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static class GatedStorageClient implements TemplateStorageClient {
+
+        private final byte[] tarballBytes;
+        private final List<String> fetchedTemplates = new CopyOnWriteArrayList<>();
+        private final CountDownLatch firstFetch = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private GatedStorageClient(byte[] tarballBytes) {
+            this.tarballBytes = tarballBytes;
+        }
+
+        @Override
+        public TemplateTarball getTemplateTarball(String templateId, String version, String s3Key) {
+            fetchedTemplates.add(templateId);
+            firstFetch.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new TemplateTarball(
+                    templateId,
+                    version,
+                    s3Key,
+                    tarballBytes.length,
+                    new ByteArrayInputStream(tarballBytes)
+            );
+        }
+
+        private boolean awaitFirstFetch() throws InterruptedException {
+            return firstFetch.await(10, TimeUnit.SECONDS);
+        }
+
+        private void release() {
+            release.countDown();
+        }
+
+        private List<String> fetchedTemplates() {
+            return fetchedTemplates;
+        }
+    }
+}
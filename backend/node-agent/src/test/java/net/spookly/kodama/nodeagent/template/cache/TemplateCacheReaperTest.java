@@ -0,0 +1,159 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCacheReaperTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void purgeTemplateMovesToTrashAndReportsCountsOnceReaped() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheReaper reaper = createReaper(layout);
+        try {
+            createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
+            createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
+
+            TemplateCachePurgeStatus submitted = reaper.purgeTemplate("starter");
+
+            assertThat(Files.exists(layout.resolveTemplateRoot("starter"))).isFalse();
+            assertThat(Files.exists(layout.resolveTemplateRoot("survival"))).isTrue();
+            assertThat(submitted.trashedEntries()).isEqualTo(1);
+            TemplateCachePurgeStatus status = awaitComplete(reaper, submitted.purgeId());
+            assertThat(status.state()).isEqualTo(TemplateCachePurgeState.COMPLETED);
+            assertThat(status.result().deletedFiles()).isEqualTo(2);
+            assertThat(status.result().deletedDirectories()).isEqualTo(3);
+            assertThat(status.result().deletedBytes()).isEqualTo(3 + 4);
+            assertThat(status.completedAt()).isNotNull();
+            assertEmptyTrash(layout);
+        } finally {
+            reaper.shutdown();
+        }
+    }
+
+    @Test
+    void purgeAllEmptiesCacheImmediatelyAndReapsInBackground() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheReaper reaper = createReaper(layout);
+        try {
+            createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
+            createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
+
+            TemplateCachePurgeStatus submitted = reaper.purgeAll();
+
+            try (var stream = Files.list(layout.getTemplatesRoot())) {
+                assertThat(stream.count()).isZero();
+            }
+            TemplateCachePurgeStatus status = awaitComplete(reaper, submitted.purgeId());
+            assertThat(status.result().deletedFiles()).isEqualTo(4);
+            assertThat(status.result().deletedBytes()).isEqualTo(5 + 5 + 3 + 4);
+            assertEmptyTrash(layout);
+        } finally {
+            reaper.shutdown();
+        }
+    }
+
+    @Test
+    void purgeAllReportsLockedTemplatesAndSweepsOrphanedObjects() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateVersionLocks versionLocks = new TemplateVersionLocks();
+        TemplateCacheReaper reaper = createReaper(layout, versionLocks);
+        try {
+            createTemplateVersion(layout, "starter", "1.0.0", "abc", "1234");
+            createTemplateVersion(layout, "survival", "2.0.0", "hello", "world");
+            Path orphan = layout.resolveObject("0123abcd-644");
+            Files.createDirectories(orphan.getParent());
+            Files.writeString(orphan, "orphan");
+
+            TemplateCachePurgeStatus status;
+            try (TemplateVersionLocks.Lock ignored =
+                         versionLocks.lock(layout.resolveTemplateVersion("starter", "1.1.0"))) {
+                TemplateCachePurgeStatus submitted = reaper.purgeAll();
+                assertThat(submitted.skippedTemplates()).containsExactly("starter");
+                status = awaitComplete(reaper, submitted.purgeId());
+            }
+
+            assertThat(status.skippedTemplates()).containsExactly("starter");
+            assertThat(Files.exists(layout.resolveTemplateVersion("starter", "1.0.0").contentsDir())).isTrue();
+            assertThat(Files.exists(layout.resolveTemplateRoot("survival"))).isFalse();
+            assertThat(Files.exists(orphan)).isFalse();
+        } finally {
+            reaper.shutdown();
+        }
+    }
+
+    @Test
+    void reapsTrashLeftFromEarlierRun() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheReaper reaper = createReaper(layout);
+        try {
+            Path leftover = layout.getTrashRoot().resolve("old-starter");
+            Files.createDirectories(leftover.resolve("contents"));
+            Files.writeString(leftover.resolve("contents").resolve("content.txt"), "stale");
+
+            reaper.reapLeftovers();
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (Files.exists(leftover) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(Files.exists(leftover)).isFalse();
+        } finally {
+            reaper.shutdown();
+        }
+    }
+
+    private TemplateCachePurgeStatus awaitComplete(TemplateCacheReaper reaper, String purgeId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!reaper.findStatus(purgeId).orElseThrow().isComplete() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        return reaper.findStatus(purgeId).orElseThrow();
+    }
+
+    private void assertEmptyTrash(TemplateCacheLayout layout) throws Exception {
+        try (var stream = Files.list(layout.getTrashRoot())) {
+            assertThat(stream.count()).isZero();
+        }
+    }
+
+    private TemplateCacheReaper createReaper(TemplateCacheLayout layout) {
+        return createReaper(layout, new TemplateVersionLocks());
+    }
+
+    private TemplateCacheReaper createReaper(TemplateCacheLayout layout, TemplateVersionLocks versionLocks) {
+        NodeConfig config = new NodeConfig();
+        config.getTemplateCachePurge().setBackgroundEnabled(true);
+        TemplateCacheManager manager =
+                new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(config, layout), versionLocks, new ObjectMapper());
+        return new TemplateCacheReaper(layout, manager, config);
+    }
+
+    private TemplateCacheLayout createLayout() {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        return new TemplateCacheLayout(config);
+    }
+
+    private void createTemplateVersion(
+            TemplateCacheLayout layout,
+            String templateId,
+            String version,
+            String firstFileContent,
+            String secondFileContent
+    ) throws Exception {
+        TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.contentsDir().resolve("content.txt"), firstFileContent);
+        Files.writeString(paths.versionRoot().resolve("checksum.sha256"), secondFileContent);
+    }
+}
@@ -0,0 +1,117 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateCompositeCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void stackKeyDependsOnLayerOrderAndChecksum() {
+        TemplateCompositeCache cache = createCache(8);
+        TemplateStackEntry base = new TemplateStackEntry("base", "1.0.0", "aaa");
+        TemplateStackEntry overlay = new TemplateStackEntry("overlay", "1.0.0", "bbb");
+
+        String key = cache.stackKey(List.of(base, overlay));
+
+        assertThat(key).hasSize(64);
+        assertThat(cache.stackKey(List.of(base, overlay))).isEqualTo(key);
+        assertThat(cache.stackKey(List.of(overlay, base))).isNotEqualTo(key);
+        assertThat(cache.stackKey(List.of(base, new TemplateStackEntry("overlay", "1.0.0", "ccc")))).isNotEqualTo(key);
+    }
+
+    @Test
+    void commitsStagedCompositeAndFindsIt() throws Exception {
+        TemplateCompositeCache cache = createCache(8);
+        List<TemplateStackEntry> stack = List.of(new TemplateStackEntry("base", "1.0.0", "aaa"));
+        String key = cache.stackKey(stack);
+
+        Path contents = commit(cache, stack, "merged");
+
+        assertThat(cache.findComposite(key)).contains(contents);
+        assertThat(Files.readString(contents.resolve("file.txt"))).isEqualTo("merged");
+        try (var entries = Files.list(contents.getParent().getParent())) {
+            assertThat(entries.filter(path -> path.getFileName().toString().startsWith(".")).count()).isZero();
+        }
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedCompositeAboveLimit() throws Exception {
+        TemplateCompositeCache cache = createCache(2);
+        List<TemplateStackEntry> first = List.of(new TemplateStackEntry("a", "1", "aaa"));
+        List<TemplateStackEntry> second = List.of(new TemplateStackEntry("b", "1", "bbb"));
+        List<TemplateStackEntry> third = List.of(new TemplateStackEntry("c", "1", "ccc"));
+
+        commit(cache, first, "first");
+        commit(cache, second, "second");
+        age(cache.stackKey(first), 2_000);
+        age(cache.stackKey(second), 1_000);
+        assertThat(cache.findComposite(cache.stackKey(first))).isPresent();
+        commit(cache, third, "third");
+
+        assertThat(cache.findComposite(cache.stackKey(first))).isPresent();
+        assertThat(cache.findComposite(cache.stackKey(second))).isEmpty();
+        assertThat(cache.findComposite(cache.stackKey(third))).isPresent();
+    }
+
+    @Test
+    void purgeTemplateRemovesCompositesContainingTemplate() throws Exception {
+        TemplateCacheLayout layout = createLayout();
+        TemplateCacheManager manager = new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(new NodeConfig(), layout), new TemplateVersionLocks(), new ObjectMapper());
+        TemplateCompositeCache cache = new TemplateCompositeCache(createConfig(8), layout, manager);
+        List<TemplateStackEntry> withStarter = List.of(
+                new TemplateStackEntry("starter", "1.0.0", "aaa"),
+                new TemplateStackEntry("lobby", "1.0.0", "bbb")
+        );
+        List<TemplateStackEntry> withoutStarter = List.of(new TemplateStackEntry("lobby", "1.0.0", "bbb"));
+        commit(cache, withStarter, "one");
+        commit(cache, withoutStarter, "two");
+
+        TemplateCachePurgeResult result = manager.purgeTemplate("starter");
+
+        assertThat(result.deletedFiles()).isEqualTo(2);
+        assertThat(cache.findComposite(cache.stackKey(withStarter))).isEmpty();
+        assertThat(cache.findComposite(cache.stackKey(withoutStarter))).isPresent();
+    }
+
+    private Path commit(TemplateCompositeCache cache, List<TemplateStackEntry> stack, String content) throws Exception {
+        Path stagingDir = cache.createStagingDir();
+        Path stagingContents = cache.stagingContentsDir(stagingDir);
+        Files.createDirectories(stagingContents);
+        Files.writeString(stagingContents.resolve("file.txt"), content);
+        return cache.commitComposite(cache.stackKey(stack), stack, stagingDir);
+    }
+
+    private void age(String stackKey, long millis) throws Exception {
+        Path stackFile = createLayout().resolveComposite(stackKey).stackFile();
+        Files.setLastModifiedTime(stackFile, FileTime.fromMillis(System.currentTimeMillis() - millis));
+    }
+
+    private TemplateCompositeCache createCache(int maxEntries) {
+        TemplateCacheLayout layout = createLayout();
+        return new TemplateCompositeCache(createConfig(maxEntries), layout, new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(new NodeConfig(), layout), new TemplateVersionLocks(), new ObjectMapper()));
+    }
+
+    private TemplateCacheLayout createLayout() {
+        return new TemplateCacheLayout(createConfig(8));
+    }
+
+    private NodeConfig createConfig(int maxEntries) {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        config.getTemplateCompositeCache().setEnabled(true);
+        config.getTemplateCompositeCache().setMaxEntries(maxEntries);
+        return config;
+    }
+}
@@ -0,0 +1,137 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateObjectStoreTest {
+
+    private static final String SHARED = "x".repeat(1_000);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void storesIdenticalFilesOnceAcrossVersions() throws Exception {
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateObjectStore store = new TemplateObjectStore(config, layout);
+        assumeTrue(store.isEnabled());
+        TemplateCachePaths first = createVersion(layout, "starter", "1.0.0", "one");
+        TemplateCachePaths second = createVersion(layout, "starter", "2.0.0", "two");
+
+        TemplateObjectInternResult firstResult = store.intern(first.contentsDir(), Map.of());
+        TemplateObjectInternResult secondResult = store.intern(second.contentsDir(), Map.of());
+
+        assertThat(firstResult.reusedFiles()).isZero();
+        assertThat(secondResult.files()).isEqualTo(2);
+        assertThat(secondResult.reusedFiles()).isEqualTo(1);
+        assertThat(secondResult.reusedBytes()).isEqualTo(SHARED.length());
+        assertThat(Files.isSameFile(first.contentsDir().resolve("server.jar"), second.contentsDir().resolve("server.jar")))
+                .isTrue();
+        assertThat(store.linkCount(second.contentsDir().resolve("server.jar"))).isEqualTo(3);
+        assertThat(Files.readString(second.contentsDir().resolve("config.yml"))).isEqualTo("two");
+    }
+
+    @Test
+    void purgeCountsOnlyFreedBytesAndSweepsUnreferencedObjects() throws Exception {
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateObjectStore store = new TemplateObjectStore(config, layout);
+        assumeTrue(store.isEnabled());
+        TemplateCacheManager manager = new TemplateCacheManager(layout, new TemplateCacheIndex(layout), store, new TemplateVersionLocks(), new ObjectMapper());
+        store.intern(createVersion(layout, "starter", "1.0.0", "one").contentsDir(), Map.of());
+        store.intern(createVersion(layout, "starter", "2.0.0", "two").contentsDir(), Map.of());
+
+        TemplateCachePurgeResult firstPurge = manager.purgeVersion("starter", "1.0.0").orElseThrow();
+        TemplateCachePurgeResult secondPurge = manager.purgeVersion("starter", "2.0.0").orElseThrow();
+
+        // Version 1.0.0 frees its checksum file and its own config object; the shared jar stays referenced.
+        assertThat(firstPurge.deletedBytes()).isEqualTo("abc".length() + "one".length());
+        assertThat(secondPurge.deletedBytes()).isEqualTo("abc".length() + "two".length() + SHARED.length());
+        try (var objects = Files.walk(layout.getObjectsRoot())) {
+            assertThat(objects.filter(Files::isRegularFile).count()).isZero();
+        }
+    }
+
+    @Test
+    void purgeWithManifestSweepsOnlyTheVersionsObjects() throws Exception {
+        NodeConfig config = createConfig();
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateObjectStore store = new TemplateObjectStore(config, layout);
+        assumeTrue(store.isEnabled());
+        ObjectMapper mapper = new ObjectMapper();
+        TemplateCacheManager manager =
+                new TemplateCacheManager(layout, new TemplateCacheIndex(layout), store, new TemplateVersionLocks(), mapper);
+        TemplateCachePaths paths = createVersion(layout, "starter", "1.0.0", "one");
+        store.intern(paths.contentsDir(), Map.of());
+        Path manifestFile = paths.versionRoot().resolve(TemplateCacheLayout.MANIFEST_FILENAME);
+        mapper.writeValue(manifestFile.toFile(), List.of(
+                new TemplateFileManifestEntry("server.jar", SHARED.length(), sha256(SHARED), null),
+                new TemplateFileManifestEntry("config.yml", 3, sha256("one"), null)
+        ));
+        // Left behind by an earlier run; a full sweep would remove it.
+        Path orphan = layout.resolveObject(sha256("orphan") + "-644");
+        Files.createDirectories(orphan.getParent());
+        Files.writeString(orphan, "orphan");
+        long manifestBytes = Files.size(manifestFile);
+
+        TemplateCachePurgeResult result = manager.purgeVersion("starter", "1.0.0").orElseThrow();
+
+        assertThat(result.deletedBytes()).isEqualTo("abc".length() + "one".length() + SHARED.length() + manifestBytes);
+        try (var objects = Files.walk(layout.getObjectsRoot())) {
+            assertThat(objects.filter(Files::isRegularFile).toList()).containsExactly(orphan);
+        }
+    }
+
+    @Test
+    void staysDisabledByDefault() throws Exception {
+        NodeConfig config = createConfig();
+        config.getTemplateObjectStore().setEnabled(false);
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateObjectStore store = new TemplateObjectStore(config, layout);
+        TemplateCachePaths paths = createVersion(layout, "starter", "1.0.0", "one");
+
+        TemplateObjectInternResult result = store.intern(paths.contentsDir(), Map.of());
+
+        assertThat(result.files()).isZero();
+        assertThat(Files.exists(layout.getObjectsRoot())).isFalse();
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("unix"));
+        assertThat(store.linkCount(paths.contentsDir().resolve("server.jar"))).isEqualTo(1);
+    }
+
+    private TemplateCachePaths createVersion(TemplateCacheLayout layout, String templateId, String version, String config)
+            throws Exception {
+        TemplateCachePaths paths = layout.resolveTemplateVersion(templateId, version);
+        Files.createDirectories(paths.contentsDir());
+        Files.writeString(paths.contentsDir().resolve("server.jar"), SHARED);
+        Files.writeString(paths.contentsDir().resolve("config.yml"), config);
+        Files.writeString(paths.checksumFile(), "abc");
+        return paths;
+    }
+
+    private String sha256(String contents) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(contents.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    private NodeConfig createConfig() {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        config.getTemplateObjectStore().setEnabled(true);
+        return config;
+    }
+}
@@ -0,0 +1,80 @@
+package net.spookly.kodama.nodeagent.template.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TemplateVersionLocksTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void tryLockFailsWhileVersionIsHeld() throws Exception {
+        TemplateVersionLocks locks = new TemplateVersionLocks();
+        TemplateCachePaths paths = createLayout().resolveTemplateVersion("starter", "1.0.0");
+
+        try (TemplateVersionLocks.Lock ignored = locks.lock(paths)) {
+            assertThat(Files.exists(paths.lockFile())).isTrue();
+            assertThat(locks.tryLock(paths)).isEmpty();
+        }
+
+        try (TemplateVersionLocks.Lock lock = locks.tryLock(paths).orElseThrow()) {
+            assertThat(lock).isNotNull();
+        }
+    }
+
+    @Test
+    void lastHolderRemovesLockAndLockFile() throws Exception {
+        TemplateVersionLocks locks = new TemplateVersionLocks();
+        TemplateCacheLayout layout = createLayout();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String version = "1.0." + (i % 4);
+                futures.add(executor.submit(() -> {
+                    try (TemplateVersionLocks.Lock ignored = locks.lock(layout.resolveTemplateVersion("starter", version))) {
+                        if (version.equals("1.0.0")) {
+                            maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                            Thread.sleep(5);
+                            holders.decrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxHolders.get()).isEqualTo(1);
+        assertThat(locks.size()).isZero();
+        try (var stream = Files.list(layout.resolveTemplateRoot("starter"))) {
+            assertThat(stream.toList()).isEmpty();
+        }
+    }
+
+    private TemplateCacheLayout createLayout() {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache-root").toString());
+        return new TemplateCacheLayout(config);
+    }
+}
@@ -2,10 +2,25 @@ package net.spookly.kodama.nodeagent.template.merge;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.spookly.kodama.nodeagent.config.NodeConfig;
+import net.spookly.kodama.nodeagent.instance.workspace.InstanceWorkspaceLayout;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheIndex;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheLayout;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCacheManager;
+import net.spookly.kodama.nodeagent.template.cache.TemplateCompositeCache;
+import net.spookly.kodama.nodeagent.template.cache.TemplateObjectStore;
+import net.spookly.kodama.nodeagent.template.cache.TemplateVersionLocks;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -16,7 +31,7 @@ class TemplateLayerMergeServiceTest {
 
     @Test
     void mergesLayersWithLastLayerWinning() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "config/settings.yml", "from-base");
         Path layerTwo = createLayer("overlay", "1.0.0", "config/settings.yml", "from-overlay");
         Path targetDir = tempDir.resolve("workspace");
@@ -35,7 +50,7 @@ class TemplateLayerMergeServiceTest {
 
     @Test
     void mergesDirectoryTreesWithoutRemovingEarlierFiles() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "maps/base.txt", "base");
         Path layerTwo = createLayer("overlay", "1.0.0", "maps/addon.txt", "addon");
         Path targetDir = tempDir.resolve("workspace");
@@ -55,7 +70,7 @@ class TemplateLayerMergeServiceTest {
 
     @Test
     void sortsLayersByOrderIndexBeforeMerging() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "server.txt", "from-base");
         Path layerTwo = createLayer("overlay", "1.0.0", "server.txt", "from-overlay");
         Path targetDir = tempDir.resolve("workspace");
@@ -74,7 +89,7 @@ class TemplateLayerMergeServiceTest {
 
     @Test
     void rejectsDuplicateOrderIndexes() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "a.txt", "one");
         Path layerTwo = createLayer("overlay", "1.0.0", "b.txt", "two");
 
@@ -92,7 +107,7 @@ class TemplateLayerMergeServiceTest {
 
     @Test
     void replacesDirectoryWithFileWhenLaterLayerOverrides() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "conflict/file.txt", "dir-content");
         Path layerTwo = createLayer("overlay", "1.0.0", "conflict", "file-content");
         Path targetDir = tempDir.resolve("workspace");
@@ -111,9 +126,34 @@ class TemplateLayerMergeServiceTest {
         assertThat(Files.exists(targetDir.resolve("conflict/file.txt"))).isFalse();
     }
 
+    @Test
+    void resolvesFileAndDirectoryConflictsAcrossLayerStack() throws Exception {
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
+        Path layerOne = createLayer("base", "1.0.0", "conflict/old.txt", "old");
+        Files.writeString(layerOne.resolve("conflict-sibling.txt"), "sibling");
+        Path layerTwo = createLayer("middle", "1.0.0", "conflict", "file-content");
+        Path layerThree = createLayer("overlay", "1.0.0", "conflict/new.txt", "new");
+        Path targetDir = tempDir.resolve("workspace");
+
+        service.mergeLayers(
+                "instance-7",
+                targetDir,
+                List.of(
+                        new TemplateLayerSource("base", "1.0.0", 0, layerOne),
+                        new TemplateLayerSource("middle", "1.0.0", 1, layerTwo),
+                        new TemplateLayerSource("overlay", "1.0.0", 2, layerThree)
+                )
+        );
+
+        assertThat(Files.isDirectory(targetDir.resolve("conflict"))).isTrue();
+        assertThat(Files.readString(targetDir.resolve("conflict/new.txt"))).isEqualTo("new");
+        assertThat(Files.exists(targetDir.resolve("conflict/old.txt"))).isFalse();
+        assertThat(Files.readString(targetDir.resolve("conflict-sibling.txt"))).isEqualTo("sibling");
+    }
+
     @Test
     void clearsExistingWorkspaceBeforeMerging() throws Exception {
-        TemplateLayerMergeService service = new TemplateLayerMergeService();
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.COPY);
         Path layerOne = createLayer("base", "1.0.0", "config/current.yml", "current");
         Path targetDir = tempDir.resolve("workspace");
         Files.createDirectories(targetDir);
@@ -129,6 +169,184 @@ class TemplateLayerMergeServiceTest {
         assertThat(Files.readString(targetDir.resolve("config/current.yml"))).isEqualTo("current");
     }
 
+    @Test
+    void hardlinksCachedFilesIntoWorkspace() throws Exception {
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.HARDLINK);
+        Path layerOne = createLayer("base", "1.0.0", "plugins/core.jar", "core");
+        Path layerTwo = createLayer("overlay", "1.0.0", "plugins/core.jar", "patched");
+        Path targetDir = tempDir.resolve("workspace");
+
+        service.mergeLayers(
+                "instance-7",
+                targetDir,
+                List.of(
+                        new TemplateLayerSource("base", "1.0.0", 0, layerOne),
+                        new TemplateLayerSource("overlay", "1.0.0", 1, layerTwo)
+                )
+        );
+
+        Path merged = targetDir.resolve("plugins/core.jar");
+        assertThat(Files.readString(merged)).isEqualTo("patched");
+        assertThat(Files.isSameFile(merged, layerTwo.resolve("plugins/core.jar"))).isTrue();
+        assertThat(Files.readString(layerOne.resolve("plugins/core.jar"))).isEqualTo("core");
+    }
+
+    @Test
+    void hardlinksOnlyImmutableFilesAndCopiesTheRest() throws Exception {
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.HARDLINK_IMMUTABLE);
+        Path layer = createLayer("base", "1.0.0", "plugins/core.jar", "core");
+        Files.writeString(layer.resolve("server.properties"), "motd=base");
+        Files.createDirectories(layer.resolve("world/region"));
+        Files.writeString(layer.resolve("world/region/r.0.0.mca"), "region");
+        Path targetDir = tempDir.resolve("workspace");
+
+        service.mergeLayers(
+                "instance-8",
+                targetDir,
+                List.of(new TemplateLayerSource("base", "1.0.0", 0, layer))
+        );
+
+        assertThat(Files.isSameFile(targetDir.resolve("plugins/core.jar"), layer.resolve("plugins/core.jar"))).isTrue();
+        assertThat(Files.isSameFile(targetDir.resolve("server.properties"), layer.resolve("server.properties"))).isFalse();
+        assertThat(Files.readString(targetDir.resolve("server.properties"))).isEqualTo("motd=base");
+        Path region = targetDir.resolve("world/region/r.0.0.mca");
+        assertThat(Files.isSameFile(region, layer.resolve("world/region/r.0.0.mca"))).isFalse();
+        Files.writeString(region, "rewritten");
+        assertThat(Files.readString(layer.resolve("world/region/r.0.0.mca"))).isEqualTo("region");
+    }
+
+    @Test
+    void reflinkStrategyProducesSameTreeAsCopy() throws Exception {
+        TemplateLayerMergeService service = createService(TemplateMergeStrategy.REFLINK);
+        Path layerOne = createLayer("base", "1.0.0", "conflict/file.txt", "dir-content");
+        Files.writeString(layerOne.resolve("base.txt"), "base");
+        Path layerTwo = createLayer("overlay", "1.0.0", "conflict", "file-content");
+        Path targetDir = tempDir.resolve("workspace");
+
+        service.mergeLayers(
+                "instance-9",
+                targetDir,
+                List.of(
+                        new TemplateLayerSource("base", "1.0.0", 0, layerOne),
+                        new TemplateLayerSource("overlay", "1.0.0", 1, layerTwo)
+                )
+        );
+
+        assertThat(Files.readString(targetDir.resolve("base.txt"))).isEqualTo("base");
+        assertThat(Files.readString(targetDir.resolve("conflict"))).isEqualTo("file-content");
+        assertThat(Files.isSameFile(targetDir.resolve("base.txt"), layerOne.resolve("base.txt"))).isFalse();
+    }
+
+    @Test
+    void parallelMergeWritesEveryFileAndAppliesDirectoryPermissionsLast() throws Exception {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        NodeConfig config = createConfig();
+        config.getTemplateMerge().setParallelism(4);
+        TemplateLayerMergeService service = createService(config);
+        Path layerOne = createLayer("base", "1.0.0", "world/region/r.0.0.mca", "base-0");
+        Path layerTwo = createLayer("overlay", "1.0.0", "world/region/r.0.0.mca", "overlay-0");
+        for (int i = 1; i < 1000; i++) {
+            Files.writeString(layerOne.resolve("world/region/r.0." + i + ".mca"), "base-" + i);
+            if (i % 3 == 0) {
+                Files.writeString(layerTwo.resolve("world/region/r.0." + i + ".mca"), "overlay-" + i);
+            }
+        }
+        Set<PosixFilePermission> readOnly = PosixFilePermissions.fromString("r-xr-xr-x");
+        Files.setPosixFilePermissions(layerTwo.resolve("world/region"), readOnly);
+        Path targetDir = tempDir.resolve("workspace");
+
+        try {
+            service.mergeLayers(
+                    "instance-11",
+                    targetDir,
+                    List.of(
+                            new TemplateLayerSource("base", "1.0.0", 0, layerOne),
+                            new TemplateLayerSource("overlay", "1.0.0", 1, layerTwo)
+                    )
+            );
+        } finally {
+            service.shutdown();
+        }
+
+        Path region = targetDir.resolve("world/region");
+        try (var files = Files.list(region)) {
+            assertThat(files.count()).isEqualTo(1000);
+        }
+        for (int i = 0; i < 1000; i++) {
+            String expected = (i % 3 == 0 ? "overlay-" : "base-") + i;
+            assertThat(Files.readString(region.resolve("r.0." + i + ".mca"))).isEqualTo(expected);
+        }
+        assertThat(Files.getPosixFilePermissions(region)).isEqualTo(readOnly);
+        Files.setPosixFilePermissions(region, PosixFilePermissions.fromString("rwxr-xr-x"));
+        Files.setPosixFilePermissions(layerTwo.resolve("world/region"), PosixFilePermissions.fromString("rwxr-xr-x"));
+    }
+
+    @Test
+    void reusesCachedCompositeForSameLayerStack() throws Exception {
+        NodeConfig config = createConfig();
+        config.getTemplateCompositeCache().setEnabled(true);
+        TemplateLayerMergeService service = createService(config);
+        Path layerOne = createLayer("base", "1.0.0", "server.properties", "motd=base");
+        Path layerTwo = createLayer("overlay", "1.0.0", "plugins/lobby.jar", "lobby");
+        List<TemplateLayerSource> stack = List.of(
+                new TemplateLayerSource("base", "1.0.0", 0, layerOne, "aaa"),
+                new TemplateLayerSource("overlay", "1.0.0", 1, layerTwo, "bbb")
+        );
+
+        service.mergeLayers("instance-12", tempDir.resolve("workspace-1"), stack);
+        // The composite is keyed by checksum, so edits behind the cache's back are not picked up.
+        Files.writeString(layerOne.resolve("server.properties"), "motd=changed");
+        service.mergeLayers("instance-13", tempDir.resolve("workspace-2"), stack);
+
+        assertThat(Files.readString(tempDir.resolve("workspace-2/server.properties"))).isEqualTo("motd=base");
+        assertThat(Files.readString(tempDir.resolve("workspace-2/plugins/lobby.jar"))).isEqualTo("lobby");
+        assertThat(Files.readString(tempDir.resolve("workspaces/instances/instance-13/template-layers.tsv")))
+                .isEqualTo("base\t1.0.0\taaa\noverlay\t1.0.0\tbbb\n");
+        try (var composites = Files.list(tempDir.resolve("cache/composites"))) {
+            assertThat(composites.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void mergesDirectlyWhenLayerChecksumIsMissing() throws Exception {
+        NodeConfig config = createConfig();
+        config.getTemplateCompositeCache().setEnabled(true);
+        TemplateLayerMergeService service = createService(config);
+        Path layerOne = createLayer("base", "1.0.0", "server.properties", "motd=base");
+
+        service.mergeLayers(
+                "instance-14",
+                tempDir.resolve("workspace"),
+                List.of(new TemplateLayerSource("base", "1.0.0", 0, layerOne))
+        );
+
+        assertThat(Files.readString(tempDir.resolve("workspace/server.properties"))).isEqualTo("motd=base");
+        assertThat(Files.exists(tempDir.resolve("cache/composites"))).isFalse();
+    }
+
+    private TemplateLayerMergeService createService(TemplateMergeStrategy strategy) {
+        NodeConfig config = createConfig();
+        config.getTemplateMerge().setStrategy(strategy);
+        return createService(config);
+    }
+
+    private TemplateLayerMergeService createService(NodeConfig config) {
+        TemplateCacheLayout layout = new TemplateCacheLayout(config);
+        TemplateCompositeCache compositeCache = new TemplateCompositeCache(
+                config,
+                layout,
+                new TemplateCacheManager(layout, new TemplateCacheIndex(layout), new TemplateObjectStore(config, layout), new TemplateVersionLocks(), new ObjectMapper())
+        );
+        return new TemplateLayerMergeService(config, compositeCache, new InstanceWorkspaceLayout(config));
+    }
+
+    private NodeConfig createConfig() {
+        NodeConfig config = new NodeConfig();
+        config.setCacheDir(tempDir.resolve("cache").toString());
+        config.setWorkspaceDir(tempDir.resolve("workspaces").toString());
+        return config;
+    }
+
     private Path createLayer(String templateId, String version, String relativeFile, String contents) throws Exception {
         Path root = tempDir.resolve(templateId + "-" + version);
         Path filePath = root.resolve(relativeFile);
@@ -1,24 +1,37 @@
 package net.spookly.kodama.nodeagent.template.storage.s3;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
 import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
 
 import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
 import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
 import io.minio.errors.ErrorResponseException;
 import io.minio.messages.ErrorResponse;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageObjectNotFoundException;
 import net.spookly.kodama.nodeagent.template.storage.TemplateStorageTimeoutException;
+import okhttp3.Headers;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 class S3TemplateStorageClientTest {
 
+    @TempDir
+    Path tempDir;
+
     private MinioClient minioClient;
     private S3TemplateStorageClient client;
 
@@ -67,4 +80,76 @@ class S3TemplateStorageClientTest {
                 .isInstanceOf(TemplateStorageException.class)
                 .hasMessageContaining("Failed to fetch");
     }
+
+    @Test
+    void getTemplateTarballReportsContentLength() throws Exception {
+        byte[] payload = "tarball".getBytes();
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenReturn(new GetObjectResponse(
+                Headers.of("Content-Length", String.valueOf(payload.length)),
+                "templates",
+                null,
+                "templates/base.tar",
+                new ByteArrayInputStream(payload)
+        ));
+
+        try (var tarball = client.getTemplateTarball("template", "1.0", "templates/base.tar")) {
+            assertThat(tarball.getContentLength()).isEqualTo(payload.length);
+        }
+    }
+
+    @Test
+    void downloadTemplateTarballReassemblesRangedParts() throws Exception {
+        byte[] payload = new byte[10_000];
+        new Random(42).nextBytes(payload);
+        StatObjectResponse stat = Mockito.mock(StatObjectResponse.class);
+        when(stat.size()).thenReturn((long) payload.length);
+        when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(stat);
+        when(minioClient.getObject(any(GetObjectArgs.class))).thenAnswer(invocation -> {
+            GetObjectArgs args = invocation.getArgument(0);
+            int offset = args.offset().intValue();
+            int length = args.length().intValue();
+            return new GetObjectResponse(
+                    Headers.of(),
+                    "templates",
+                    null,
+                    "templates/base.tar",
+                    new ByteArrayInputStream(payload, offset, length)
+            );
+        });
+        S3TemplateStorageClient rangedClient = new S3TemplateStorageClient(
+                minioClient,
+                "templates",
+                new S3RangedDownloadSettings(true, 1024, 3)
+        );
+        Path target = tempDir.resolve("base.tar");
+
+        long contentLength = rangedClient.downloadTemplateTarball("template", "1.0", "templates/base.tar", target);
+
+        assertThat(contentLength).isEqualTo(payload.length);
+        assertThat(Files.readAllBytes(target)).isEqualTo(payload);
+        Mockito.verify(minioClient, Mockito.times(10)).getObject(any(GetObjectArgs.class));
+    }
+
+    @Test
+    void downloadTemplateTarballMapsNotFoundOnStat() throws Exception {
+        ErrorResponseException errorResponseException = Mockito.mock(ErrorResponseException.class);
+        ErrorResponse errorResponse = Mockito.mock(ErrorResponse.class);
+        when(errorResponseException.errorResponse()).thenReturn(errorResponse);
+        when(errorResponse.code()).thenReturn("NoSuchKey");
+        when(minioClient.statObject(any(StatObjectArgs.class))).thenThrow(errorResponseException);
+        S3TemplateStorageClient rangedClient = new S3TemplateStorageClient(
+                minioClient,
+                "templates",
+                new S3RangedDownloadSettings(true, 1024, 3)
+        );
+
+        assertThatThrownBy(() -> rangedClient.downloadTemplateTarball(
+                "template",
+                "1.0",
+                "templates/base.tar",
+                tempDir.resolve("base.tar")
+        ))
+                .isInstanceOf(TemplateStorageObjectNotFoundException.class)
+                .hasMessageContaining("templates/base.tar");
+    }
 }
@@ -0,0 +1,54 @@
+package net.spookly.kodama.nodeagent.trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class PrepareTraceTest {
+
+    @Test
+    void sumsPhasesInFirstSeenOrder() {
+        try (PrepareTrace trace = PrepareTrace.begin("trace-1")) {
+            PrepareTrace.record(PrepareTrace.PHASE_DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(300));
+            PrepareTrace.record(PrepareTrace.PHASE_EXTRACT, TimeUnit.MILLISECONDS.toNanos(50));
+            PrepareTrace.record(PrepareTrace.PHASE_DOWNLOAD, TimeUnit.MILLISECONDS.toNanos(200));
+
+            assertThat(trace.traceId()).isEqualTo("trace-1");
+            assertThat(trace.phases()).containsExactly(
+                    new PrepareTracePhase(PrepareTrace.PHASE_DOWNLOAD, 500, 2),
+                    new PrepareTracePhase(PrepareTrace.PHASE_EXTRACT, 50, 1)
+            );
+        }
+    }
+
+    @Test
+    void ignoresPhasesOutsideATrace() {
+        PrepareTrace.record(PrepareTrace.PHASE_MERGE, 1_000);
+
+        assertThat(PrepareTrace.current()).isEmpty();
+    }
+
+    @Test
+    void closingRestoresThePreviousTrace() {
+        try (PrepareTrace outer = PrepareTrace.begin("outer")) {
+            try (PrepareTrace inner = PrepareTrace.begin("inner")) {
+                PrepareTrace.record(PrepareTrace.PHASE_MERGE, 1_000);
+                assertThat(PrepareTrace.current()).contains(inner);
+            }
+            PrepareTrace.record(PrepareTrace.PHASE_DOWNLOAD, 1_000);
+
+            assertThat(PrepareTrace.current()).contains(outer);
+            assertThat(outer.phases()).containsExactly(new PrepareTracePhase(PrepareTrace.PHASE_DOWNLOAD, 0, 1));
+        }
+        assertThat(PrepareTrace.current()).isEmpty();
+    }
+
+    @Test
+    void rejectsBlankTraceId() {
+        assertThatThrownBy(() -> PrepareTrace.begin(" "))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}